@@ -1,25 +1,34 @@
 package com.xmxe.algorithm;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.xmxe.algorithm.balance.ConsistentHashing;
+import com.xmxe.algorithm.balance.Endpoint;
+import com.xmxe.algorithm.balance.EwmaLatencyBalancer;
+import com.xmxe.algorithm.balance.HashRing;
+import com.xmxe.algorithm.balance.JumpHash;
+import com.xmxe.algorithm.balance.LoadBalancer;
+import com.xmxe.algorithm.balance.MaglevHash;
+import com.xmxe.algorithm.balance.P2cLeastActive;
+import com.xmxe.algorithm.balance.SmoothWeightedRoundRobin;
+import com.xmxe.util.IoExecutors;
+
 /**
  * 负载均衡算法
  * 微信红包业务,为什么采用轮询算法？ https://mp.weixin.qq.com/s/HSgenPLZ22b3RDEZoewJaQ
  */
 public class Balance {
 
-    // 模拟配置的集群节点
+    // 模拟配置的集群节点,节点列表需要运行时变化时用ServiceDiscoveryByCurator从zookeeper同步给LoadBalancer
     public static List<String> SERVERS = Arrays.asList(
             "44.120.110.001:8080",
             "44.120.110.002:8081",
@@ -200,105 +209,28 @@ public class Balance {
 
     // ------
 
-    /**
-     * 权重类
-     */
-    static class Weight {
-        // 节点信息
-        private String server;
-        // 节点权重值
-        private Integer weight;
-        // 动态权重值
-        private Integer currentWeight;
-
-        // 构造方法
-        public Weight() {
-        }
-
-        public Weight(String server, Integer weight, Integer currentWeight) {
-            this.server = server;
-            this.weight = weight;
-            this.currentWeight = currentWeight;
-        }
-
-        // 封装方法
-        public String getServer() {
-            return server;
-        }
-
-        public void setServer(String server) {
-            this.server = server;
-        }
-
-        public Integer getWeight() {
-            return weight;
-        }
-
-        public void setWeight(Integer weight) {
-            this.weight = weight;
-        }
-
-        public Integer getCurrentWeight() {
-            return this.currentWeight;
-        }
-
-        public void setCurrentWeight(Integer currentWeight) {
-            this.currentWeight = currentWeight;
-        }
-    }
-
     /**
      * 平滑加权轮询算法
+     * 原来的写法每次请求都修改共享HashMap中所有节点的动态权重,多线程下没有同步,会选错节点甚至破坏HashMap。
+     * 现在委托给{@link SmoothWeightedRoundRobin}:节点变化时预先算好一整轮的选择顺序,选择时只有一次原子自增
      */
     static class RoundRobinWeight {
-        // 初始化存储每个节点的权重容器
-        private static Map<String, Weight> weightMap = new HashMap<>();
+        private static final LoadBalancer BALANCER = new SmoothWeightedRoundRobin(toEndpoints());
 
-        // 计算总权重值,只需要计算一次,因此放在静态代码块中执行
-        private static int weightTotal = 0;
-        static {
-            sumWeightTotal();
+        private static List<Endpoint> toEndpoints() {
+            List<Endpoint> endpoints = new ArrayList<>();
+            WEIGHT_SERVERS.forEach((server, weight) -> endpoints.add(new Endpoint(server, weight)));
+            return endpoints;
         }
 
-        // 求和总权重值,后续动态伸缩节点时,再次调用该方法即可。
-        public static void sumWeightTotal() {
-            for (Integer weight : WEIGHT_SERVERS.values()) {
-                weightTotal += weight;
-            }
+        // 节点或权重变化后调用
+        public static void refresh() {
+            BALANCER.setEndpoints(toEndpoints());
         }
 
         // 获取处理本次请求的具体服务器IP
         public static String getServer() {
-            // 判断权重容器中是否有节点信息
-            if (weightMap.isEmpty()) {
-                // 如果没有则将配置的权重服务器列表挨个载入容器
-                WEIGHT_SERVERS.forEach((servers, weight) -> {
-                    // 初始化时,每个节点的动态权重值都为0
-                    weightMap.put(servers, new Weight(servers, weight, 0));
-                });
-            }
-
-            // 每次请求时,更改动态权重值
-            for (Weight weight : weightMap.values()) {
-                weight.setCurrentWeight(weight.getCurrentWeight()
-                        + weight.getWeight());
-            }
-
-            // 判断权重容器中最大的动态权重值
-            Weight maxCurrentWeight = null;
-            for (Weight weight : weightMap.values()) {
-                if (maxCurrentWeight == null || weight.getCurrentWeight() > maxCurrentWeight.getCurrentWeight()) {
-                    maxCurrentWeight = weight;
-                }
-            }
-            if (maxCurrentWeight != null) {
-                // 最后用最大的动态权重值减去所有节点的总权重值
-                maxCurrentWeight.setCurrentWeight(maxCurrentWeight.getCurrentWeight() - weightTotal);
-
-                // 返回最大的动态权重值对应的节点IP
-                return maxCurrentWeight.getServer();
-            }
-            throw new RuntimeException("maxCurrentWeight=null");
+            return BALANCER.pick().getAddress();
         }
 
         public static void main(String[] args) {
@@ -319,59 +251,27 @@ public class Balance {
 
     /**
      * 一致性哈希算法
+     * 哈希环见{@link HashRing}:有序int[]+二分查找,越过最后一个虚拟节点时回到起点,增删节点时整体替换
+     * 另有{@link JumpHash}、{@link MaglevHash}两种实现
      */
     static class ConsistentHash {
-        // 使用有序的红黑树结构,用于实现哈希环结构
-        private static TreeMap<Integer, String> virtualNodes = new TreeMap<>();
         // 每个真实节点的虚拟节点数量
         private static final int VIRTUAL_NODES = 160;
+        // 对每个真实节点添加虚拟节点,虚拟节点会根据哈希算法进行散列
+        private static final ConsistentHashing<String> RING = new HashRing<>(SERVERS, VIRTUAL_NODES);
 
-        static {
-            // 对每个真实节点添加虚拟节点,虚拟节点会根据哈希算法进行散列
-            for (String serverIP : SERVERS) {
-                // 将真实节点的IP映射到哈希环上
-                virtualNodes.put(getHashCode(serverIP), serverIP);
-                // 根据设定的虚拟节点数量进行虚拟节点映射
-                for (int i = 0; i < VIRTUAL_NODES; i++) {
-                    // 计算出一个虚拟节点的哈希值（只要不同即可）
-                    int hash = getHashCode(serverIP + i);
-                    // 将虚拟节点添加到哈希环结构上
-                    virtualNodes.put(hash, serverIP);
-                }
-            }
+        public static String getServer(String IP) {
+            return RING.select(IP);
         }
 
-        public static String getServer(String IP) {
-            int hashCode = getHashCode(IP);
-            // 得到大于该Hash值的子红黑树
-            SortedMap<Integer, String> sortedMap = virtualNodes.tailMap(hashCode);
-            // 得到该树的第一个元素,也就是最小的元素
-            Integer treeNodeKey = sortedMap.firstKey();
-
-            // 如果没有大于该元素的子树了,则取整棵树的第一个元素,相当于取哈希环中的最小元素
-            // if (sortedMap == null)
-            //  treeNodeKey = virtualNodes.firstKey();
-
-            // 返回对应的虚拟节点名称
-            return virtualNodes.get(treeNodeKey);
+        // 节点上线
+        public static boolean addServer(String serverIP) {
+            return RING.addNode(serverIP);
         }
 
-        // 哈希方法：用于计算一个IP的哈希值
-        public static int getHashCode(String IP) {
-            final int p = 1904390101;
-            int hash = (int) 1901102097L;
-            for (int i = 0; i < IP.length(); i++)
-                hash = (hash ^ IP.charAt(i)) * p;
-            hash += hash << 13;
-            hash ^= hash >> 7;
-            hash += hash << 3;
-            hash ^= hash >> 17;
-            hash += hash << 5;
-
-            // 如果算出来的值为负数则取其绝对值
-            if (hash < 0)
-                hash = Math.abs(hash);
-            return hash;
+        // 节点下线
+        public static boolean removeServer(String serverIP) {
+            return RING.removeNode(serverIP);
         }
 
         public static void main(String[] args) {
@@ -477,6 +377,7 @@ public class Balance {
 
     /**
      * 最小活跃数算法实现类
+     * 节点多、并发高时用{@link P2cLeastActive}:随机两选一,不需要遍历全部节点
      */
     static class LeastActive {
 
@@ -519,42 +420,30 @@ public class Balance {
 
     /**
      * 最优响应算法
+     * 每次选择都要ping所有节点,只适合演示;实际调用中用{@link EwmaLatencyBalancer},以真实调用的延迟作为反馈
      */
     static class ResponseTime {
-        // 创建一个定长的线程池,用于去执行ping任务
-        static ExecutorService pingServerPool = Executors.newFixedThreadPool(Servers.SERVERS.size());
+        // 执行ping任务的线程池,JDK21+是每个任务一个虚拟线程,节点再多也不会被池大小卡住
+        static ExecutorService pingServerPool = IoExecutors.executor();
 
         public static String getServer() throws InterruptedException {
-            // 创建一个CompletableFuture用于拼接任务
-            CompletableFuture<Object> cfAnyOf;
-            // 创建一个接收结果返回的server节点对象
-            final Server resultServer = new Server();
             // 根据集群节点数量初始化一个异步任务数组
-            CompletableFuture<String>[] cfs = new CompletableFuture[Servers.SERVERS.size()];
+            CompletableFuture<?>[] cfs = new CompletableFuture[Servers.SERVERS.size()];
 
-            // 遍历整个服务器列表,为每个节点创建一个ping任务
-            for (Server server : Servers.SERVERS) {
-                // 获取当前节点在集群列表中的下标
-                int index = Servers.SERVERS.indexOf(server);
-                // 为每个节点创建一个ping任务,并交给pingServerPool线程池执行
-                CompletableFuture<String> cf = CompletableFuture.supplyAsync(server::ping, pingServerPool);
-                // 将创建好的异步任务加入数组中
-                cfs[index] = cf;
+            // 遍历整个服务器列表,为每个节点创建一个ping任务,并交给pingServerPool线程池执行
+            for (int index = 0; index < Servers.SERVERS.size(); index++) {
+                cfs[index] = CompletableFuture.supplyAsync(Servers.SERVERS.get(index)::ping, pingServerPool);
             }
 
-            // 将创建好的多个Ping任务组合成一个聚合任务并执行
-            cfAnyOf = CompletableFuture.anyOf(cfs);
-
-            // 监听执行完成后的回调,谁先执行完成则返回谁
-            cfAnyOf.thenAccept(resultIP -> {
+            // 将创建好的多个Ping任务组合成一个聚合任务,谁先执行完成则返回谁
+            // 原来固定sleep 3秒再取结果,最快的节点1秒就返回了也要等3秒;现在第一个结果到达就返回
+            try {
+                String resultIP = (String) CompletableFuture.anyOf(cfs).get();
                 System.out.println("最先响应检测请求的节点为：" + resultIP);
-                resultServer.setIP((String) resultIP);
-            });
-            // 阻塞主线程一段时间,防止CompletableFuture退出
-            Thread.sleep(3000);
-
-            // 返回最先响应检测请求（ping）的节点作为本次处理客户端请求的节点
-            return resultServer.getIP();
+                return resultIP;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
         }
 
         public static void main(String[] args) throws InterruptedException {
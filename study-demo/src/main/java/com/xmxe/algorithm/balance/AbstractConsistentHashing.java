@@ -0,0 +1,114 @@
+package com.xmxe.algorithm.balance;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * 写时复制的一致性哈希基类,成员变更时用新的节点列表构建查找表S,再通过volatile整体替换
+ * 查找线程要么看到旧表要么看到新表,不会看到构建了一半的表
+ *
+ * @param <T> 节点类型,用toString()的结果计算节点哈希,不同节点的toString()不能相同
+ * @param <S> 查找表类型,构建后不再修改
+ */
+public abstract class AbstractConsistentHashing<T, S> implements ConsistentHashing<T> {
+
+    private volatile List<T> nodes;
+
+    /**
+     * 查找表,没有节点时为null
+     */
+    private volatile S table;
+
+    protected AbstractConsistentHashing() {
+    }
+
+    /**
+     * 子类构造方法设置好参数后调用
+     */
+    protected final void init(Collection<T> initialNodes) {
+        List<T> list = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(initialNodes)));
+        this.table = list.isEmpty() ? null : build(list);
+        this.nodes = list;
+    }
+
+    @Override
+    public T select(CharSequence key) {
+        return select(hash(key));
+    }
+
+    @Override
+    public T select(long keyHash) {
+        S current = table;
+        return current == null ? null : select(current, keyHash);
+    }
+
+    @Override
+    public synchronized boolean addNode(T node) {
+        if (nodes.contains(node)) {
+            return false;
+        }
+        List<T> copy = new ArrayList<>(nodes);
+        copy.add(node);
+        swap(copy);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean removeNode(T node) {
+        if (!nodes.contains(node)) {
+            return false;
+        }
+        swap(removed(nodes, node));
+        return true;
+    }
+
+    @Override
+    public List<T> nodes() {
+        return nodes;
+    }
+
+    /**
+     * 删除节点后的节点顺序,默认保持原有顺序
+     */
+    protected List<T> removed(List<T> current, T node) {
+        List<T> copy = new ArrayList<>(current);
+        copy.remove(node);
+        return copy;
+    }
+
+    /**
+     * 用不可变的节点列表构建查找表,节点列表非空
+     */
+    protected abstract S build(List<T> nodes);
+
+    protected abstract T select(S table, long keyHash);
+
+    /**
+     * 64位FNV-1a再做一次MurmurHash3的fmix64,逐个char计算,不需要把字符串编码成byte[]
+     */
+    public static long hash(CharSequence key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private void swap(List<T> copy) {
+        List<T> list = Collections.unmodifiableList(copy);
+        table = list.isEmpty() ? null : build(list);
+        nodes = list;
+    }
+}
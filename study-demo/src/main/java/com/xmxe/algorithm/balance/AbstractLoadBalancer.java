@@ -0,0 +1,107 @@
+package com.xmxe.algorithm.balance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 负载均衡基类:节点列表和由它构建的选择状态S一起放在不可变快照里,通过volatile整体替换
+ * pick只读一次快照,不加锁
+ *
+ * @param <S> 策略自己的选择状态,例如轮询序列
+ */
+public abstract class AbstractLoadBalancer<S> implements LoadBalancer {
+
+    private volatile Snapshot<S> snapshot;
+
+    protected AbstractLoadBalancer(List<Endpoint> endpoints) {
+        setEndpoints(endpoints);
+    }
+
+    @Override
+    public Endpoint pick() {
+        Snapshot<S> current = snapshot;
+        Endpoint[] endpoints = current.endpoints;
+        if (endpoints.length == 0) {
+            return null;
+        }
+        if (endpoints.length == 1) {
+            return endpoints[0];
+        }
+        return pick(endpoints, current.state);
+    }
+
+    @Override
+    public void setEndpoints(List<Endpoint> endpoints) {
+        Endpoint[] array = endpoints.toArray(new Endpoint[0]);
+        snapshot = new Snapshot<>(array, array.length == 0 ? null : build(array),
+                Collections.unmodifiableList(new ArrayList<>(endpoints)));
+    }
+
+    @Override
+    public List<Endpoint> getEndpoints() {
+        return snapshot.list;
+    }
+
+    /**
+     * 节点变化时构建选择状态,endpoints非空
+     */
+    protected abstract S build(Endpoint[] endpoints);
+
+    /**
+     * 从至少两个节点中选择一个
+     */
+    protected abstract Endpoint pick(Endpoint[] endpoints, S state);
+
+    /**
+     * power of two choices:随机选两个不同的节点,返回score较小的,不可用的节点尽量不选
+     */
+    protected static Endpoint pickTwo(Endpoint[] endpoints, Scorer scorer) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int n = endpoints.length;
+        int i = random.nextInt(n);
+        int j = random.nextInt(n - 1);
+        if (j >= i) {
+            j++;
+        }
+        Endpoint a = endpoints[i];
+        Endpoint b = endpoints[j];
+        boolean aAvailable = a.isAvailable();
+        boolean bAvailable = b.isAvailable();
+        if (aAvailable != bAvailable) {
+            return aAvailable ? a : b;
+        }
+        if (!aAvailable) {
+            // 两个都不可用,在剩下的节点里找一个可用的
+            for (int k = 0; k < n; k++) {
+                Endpoint candidate = endpoints[(i + k) % n];
+                if (candidate.isAvailable()) {
+                    return candidate;
+                }
+            }
+            return a;
+        }
+        return scorer.score(b) < scorer.score(a) ? b : a;
+    }
+
+    @FunctionalInterface
+    protected interface Scorer {
+        double score(Endpoint endpoint);
+    }
+
+    private static final class Snapshot<S> {
+
+        private final Endpoint[] endpoints;
+
+        private final S state;
+
+        private final List<Endpoint> list;
+
+        private Snapshot(Endpoint[] endpoints, S state, List<Endpoint> list) {
+            this.endpoints = endpoints;
+            this.state = state;
+            this.list = list;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.xmxe.algorithm.balance;
+
+import java.util.List;
+
+/**
+ * 一致性哈希:同一个key总是路由到同一个节点,节点增减时只有少量key改变归属
+ * 实现:
+ * {@link HashRing} 虚拟节点哈希环,有序int[]+二分查找
+ * {@link JumpHash} Google的jump consistent hash,不占内存,只适合在末尾增删节点
+ * {@link MaglevHash} Maglev查找表,O(1)查找,分布最均匀
+ * 节点增删时整体构建新的查找结构再原子替换,查找不加锁
+ */
+public interface ConsistentHashing<T> {
+
+    /**
+     * 按key选择节点,不分配对象
+     *
+     * @return 没有节点时返回null
+     */
+    T select(CharSequence key);
+
+    /**
+     * 按调用方算好的64位哈希值选择节点,例如IpLongUtil.ip2Long的结果
+     */
+    T select(long keyHash);
+
+    /**
+     * @return false表示节点已存在
+     */
+    boolean addNode(T node);
+
+    /**
+     * @return false表示节点不存在
+     */
+    boolean removeNode(T node);
+
+    /**
+     * 当前节点的不可变快照
+     */
+    List<T> nodes();
+}
@@ -0,0 +1,146 @@
+package com.xmxe.algorithm.balance;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 负载均衡的一个后端节点,地址和权重不可变,运行时统计由调用方反馈:
+ * long start = endpoint.begin();
+ * try { 调用; endpoint.end(start, true); } catch (Exception e) { endpoint.end(start, false); }
+ * 1.active:正在进行的调用数
+ * 2.EWMA延迟:按时间衰减的指数加权平均,比平均值高的样本直接顶上去(peak EWMA),变慢的节点能立刻被发现
+ * 3.连续失败达到阈值时摘除一段时间,摘除时间随连续失败次数翻倍;到期后进入半开状态,第一个看到到期的调用方
+ *   用CAS抢到试探资格,其他调用方仍然看到不可用,试探成功即恢复,失败则摘除时间继续翻倍;
+ *   抢到资格却没有发起调用(例如P2C比较后选了另一个节点)时,试探资格在PROBE_NANOS后重新放出
+ */
+public class Endpoint {
+
+    /**
+     * EWMA的衰减时间常数,超过这个时间没有新样本时旧值基本失效
+     */
+    private static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static final int FAILURE_THRESHOLD = 5;
+
+    private static final long BASE_EJECT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private static final long MAX_EJECT_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    /**
+     * 试探调用的最长等待时间,超过后允许下一个调用方重新试探
+     */
+    private static final long PROBE_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final String address;
+
+    private final int weight;
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * EWMA延迟(纳秒)的double bits
+     */
+    private final AtomicLong ewmaBits = new AtomicLong(Double.doubleToRawLongBits(0));
+
+    private volatile long lastSampleNanos = System.nanoTime();
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    /**
+     * 摘除到期时间,0表示正常;半开状态下是当前试探的超时时间
+     */
+    final AtomicLong ejectedUntilNanos = new AtomicLong();
+
+    public Endpoint(String address) {
+        this(address, 1);
+    }
+
+    public Endpoint(String address, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
+        this.address = address;
+        this.weight = weight;
+    }
+
+    /**
+     * 调用开始前调用,返回开始时间
+     */
+    public long begin() {
+        active.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * 调用结束后调用,更新活跃数、延迟和健康状态
+     */
+    public void end(long beginNanos, boolean success) {
+        long now = System.nanoTime();
+        active.decrementAndGet();
+        observe(now - beginNanos, now);
+        if (success) {
+            consecutiveFailures.set(0);
+            ejectedUntilNanos.set(0);
+        } else {
+            int failures = consecutiveFailures.incrementAndGet();
+            if (failures >= FAILURE_THRESHOLD) {
+                int times = Math.min(failures - FAILURE_THRESHOLD, 16);
+                ejectedUntilNanos.set(now + Math.min(BASE_EJECT_NANOS << times, MAX_EJECT_NANOS));
+            }
+        }
+    }
+
+    /**
+     * 没有被摘除,或者摘除时间已到并且抢到了试探资格;返回true时调用方应当把请求发给这个节点
+     */
+    public boolean isAvailable() {
+        long until = ejectedUntilNanos.get();
+        if (until == 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        return now - until >= 0 && ejectedUntilNanos.compareAndSet(until, now + PROBE_NANOS);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * 当前EWMA延迟,单位纳秒,按距上次样本的时间衰减
+     */
+    public double getEwmaNanos() {
+        double ewma = Double.longBitsToDouble(ewmaBits.get());
+        long idle = System.nanoTime() - lastSampleNanos;
+        // 距上次样本不到DECAY的千分之一时衰减不到0.1%,省掉exp
+        return idle < DECAY_NANOS / 1000 ? ewma : ewma * Math.exp((double) -idle / DECAY_NANOS);
+    }
+
+    private void observe(long rttNanos, long now) {
+        long elapsed = Math.max(0, now - lastSampleNanos);
+        lastSampleNanos = now;
+        double w = Math.exp((double) -elapsed / DECAY_NANOS);
+        for (;;) {
+            long bits = ewmaBits.get();
+            double ewma = Double.longBitsToDouble(bits);
+            double next = rttNanos > ewma ? rttNanos : ewma * w + rttNanos * (1 - w);
+            if (ewmaBits.compareAndSet(bits, Double.doubleToRawLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return address;
+    }
+}
@@ -0,0 +1,27 @@
+package com.xmxe.algorithm.balance;
+
+import java.util.List;
+
+/**
+ * 按延迟选择节点(Finagle/Linkerd的peak EWMA)
+ * Balance.ResponseTime每次选择都去ping所有节点并等待结果;这里用真实调用反馈的EWMA延迟,
+ * 随机选两个节点,取 EWMA延迟*(活跃数+1)/权重 较小的。活跃数让排队中的节点分数变高,
+ * 还没有延迟样本的新节点分数为0,会先得到一些流量用来建立样本
+ */
+public class EwmaLatencyBalancer extends AbstractLoadBalancer<Void> {
+
+    public EwmaLatencyBalancer(List<Endpoint> endpoints) {
+        super(endpoints);
+    }
+
+    @Override
+    protected Void build(Endpoint[] endpoints) {
+        return null;
+    }
+
+    @Override
+    protected Endpoint pick(Endpoint[] endpoints, Void state) {
+        return pickTwo(endpoints,
+                endpoint -> endpoint.getEwmaNanos() * (endpoint.getActive() + 1) / endpoint.getWeight());
+    }
+}
@@ -0,0 +1,91 @@
+package com.xmxe.algorithm.balance;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 虚拟节点哈希环(ketama)
+ * 每个节点在环上放virtualNodes个虚拟节点,环用两个平行数组表示:有序的int[]哈希值和对应的节点下标,
+ * 查找时二分找到第一个不小于key哈希的位置,越过末尾则回到第一个,不装箱也不分配对象
+ * 增删一个节点时只有该节点虚拟节点附近的key改变归属,约为 1/节点数
+ */
+public class HashRing<T> extends AbstractConsistentHashing<T, HashRing.Ring<T>> {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final int virtualNodes;
+
+    public HashRing(Collection<T> nodes) {
+        this(nodes, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public HashRing(Collection<T> nodes, int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes must be positive");
+        }
+        this.virtualNodes = virtualNodes;
+        init(nodes);
+    }
+
+    @Override
+    protected Ring<T> build(List<T> nodes) {
+        // 高32位哈希、低32位节点下标,排序后拆成两个数组
+        long[] entries = new long[nodes.size() * virtualNodes];
+        int n = 0;
+        for (int index = 0; index < nodes.size(); index++) {
+            String name = nodes.get(index).toString();
+            for (int i = 0; i < virtualNodes; i++) {
+                int hash = (int) (hash(name + "#" + i) >>> 32);
+                entries[n++] = (long) hash << 32 | index;
+            }
+        }
+        Arrays.sort(entries);
+        int[] hashes = new int[entries.length];
+        int[] owners = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            hashes[i] = (int) (entries[i] >> 32);
+            owners[i] = (int) entries[i];
+        }
+        @SuppressWarnings("unchecked")
+        T[] array = (T[]) nodes.toArray();
+        return new Ring<>(hashes, owners, array);
+    }
+
+    @Override
+    protected T select(Ring<T> ring, long keyHash) {
+        int key = (int) (keyHash >>> 32);
+        int[] hashes = ring.hashes;
+        // 第一个 >= key 的位置
+        int low = 0;
+        int high = hashes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (hashes[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        // 越过最后一个虚拟节点时回到环的起点
+        if (low == hashes.length) {
+            low = 0;
+        }
+        return ring.nodes[ring.owners[low]];
+    }
+
+    static final class Ring<T> {
+
+        private final int[] hashes;
+
+        private final int[] owners;
+
+        private final T[] nodes;
+
+        private Ring(int[] hashes, int[] owners, T[] nodes) {
+            this.hashes = hashes;
+            this.owners = owners;
+            this.nodes = nodes;
+        }
+    }
+}
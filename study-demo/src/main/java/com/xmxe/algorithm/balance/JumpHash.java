@@ -0,0 +1,54 @@
+package com.xmxe.algorithm.balance;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Jump Consistent Hash (Lamping & Veach, 2014)
+ * 不需要任何查找表,几行代码算出key落在[0, n)的哪个桶,分布均匀,n变成n+1时恰好有1/(n+1)的key移动到新桶
+ * 限制:桶只能在末尾增删。删除中间的节点时这里把最后一个节点移到被删节点的位置,
+ * 被删节点的key全部交给原来的最后一个节点,最后一个桶的key重新分散,移动比例约为 2/n
+ */
+public class JumpHash<T> extends AbstractConsistentHashing<T, Object[]> {
+
+    public JumpHash(Collection<T> nodes) {
+        init(nodes);
+    }
+
+    @Override
+    protected Object[] build(List<T> nodes) {
+        return nodes.toArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected T select(Object[] nodes, long keyHash) {
+        return (T) nodes[bucket(keyHash, nodes.length)];
+    }
+
+    @Override
+    protected List<T> removed(List<T> current, T node) {
+        List<T> copy = new ArrayList<>(current);
+        int index = copy.indexOf(node);
+        T last = copy.remove(copy.size() - 1);
+        if (index < copy.size()) {
+            copy.set(index, last);
+        }
+        return copy;
+    }
+
+    /**
+     * @return [0, buckets)之间的桶编号
+     */
+    public static int bucket(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+}
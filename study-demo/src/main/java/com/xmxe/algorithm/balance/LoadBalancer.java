@@ -0,0 +1,51 @@
+package com.xmxe.algorithm.balance;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 负载均衡策略,实例化使用,节点列表可以在运行时整体替换
+ * 实现:
+ * {@link SmoothWeightedRoundRobin} 平滑加权轮询
+ * {@link P2cLeastActive} 随机选两个节点取活跃数少的(power of two choices)
+ * {@link EwmaLatencyBalancer} 随机选两个节点取 EWMA延迟*(活跃数+1) 小的
+ * 用{@link LoadBalancers}按名称创建
+ */
+public interface LoadBalancer {
+
+    /**
+     * 选择一个节点,优先选可用的节点,全部不可用时仍然返回一个节点
+     *
+     * @return 没有节点时返回null
+     */
+    Endpoint pick();
+
+    /**
+     * 替换节点列表,传入的列表会被复制
+     */
+    void setEndpoints(List<Endpoint> endpoints);
+
+    /**
+     * 当前节点列表的不可变快照
+     */
+    List<Endpoint> getEndpoints();
+
+    /**
+     * 选择节点并执行调用,自动反馈活跃数、延迟和成败
+     */
+    default <R> R execute(Function<Endpoint, R> call) {
+        Endpoint endpoint = pick();
+        if (endpoint == null) {
+            throw new IllegalStateException("no endpoint available");
+        }
+        long begin = endpoint.begin();
+        boolean success = false;
+        try {
+            R result = call.apply(endpoint);
+            success = true;
+            return result;
+        } finally {
+            endpoint.end(begin, success);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.xmxe.algorithm.balance;
+
+import java.util.List;
+
+/**
+ * 按名称创建负载均衡策略,名称通常来自配置
+ */
+public final class LoadBalancers {
+
+    public static final String ROUND_ROBIN = "round_robin";
+    public static final String LEAST_ACTIVE = "least_active";
+    public static final String EWMA = "ewma";
+
+    private LoadBalancers() {
+    }
+
+    public static LoadBalancer create(String strategy, List<Endpoint> endpoints) {
+        switch (strategy) {
+            case ROUND_ROBIN:
+                return new SmoothWeightedRoundRobin(endpoints);
+            case LEAST_ACTIVE:
+                return new P2cLeastActive(endpoints);
+            case EWMA:
+                return new EwmaLatencyBalancer(endpoints);
+            default:
+                throw new IllegalArgumentException("unknown load balance strategy: " + strategy);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.xmxe.algorithm.balance;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Maglev一致性哈希(Google Maglev负载均衡器, NSDI 2016)
+ * 1.每个节点由名称的两个哈希得到offset、skip,生成一个[0, M)的排列 (offset + j*skip) mod M,M为质数
+ * 2.各节点轮流按自己的排列认领查找表中还空着的槽,直到M个槽都被认领,每个节点分到的槽数最多相差1
+ * 3.查找就是 table[hash mod M],O(1)且没有分支;节点变更时只有少量槽换主人,但不如哈希环少
+ * M应远大于节点数(100倍以上),默认65537
+ */
+public class MaglevHash<T> extends AbstractConsistentHashing<T, MaglevHash.Table<T>> {
+
+    public static final int DEFAULT_TABLE_SIZE = 65537;
+
+    private final int tableSize;
+
+    public MaglevHash(Collection<T> nodes) {
+        this(nodes, DEFAULT_TABLE_SIZE);
+    }
+
+    /**
+     * @param tableSize 查找表大小,必须是质数
+     */
+    public MaglevHash(Collection<T> nodes, int tableSize) {
+        if (!isPrime(tableSize)) {
+            throw new IllegalArgumentException("tableSize must be a prime: " + tableSize);
+        }
+        this.tableSize = tableSize;
+        init(nodes);
+    }
+
+    @Override
+    protected Table<T> build(List<T> nodes) {
+        int n = nodes.size();
+        int[] offsets = new int[n];
+        int[] skips = new int[n];
+        for (int i = 0; i < n; i++) {
+            String name = nodes.get(i).toString();
+            long h = hash(name);
+            offsets[i] = (int) Long.remainderUnsigned(h, tableSize);
+            skips[i] = (int) Long.remainderUnsigned(mix(h ^ 0x9e3779b97f4a7c15L), tableSize - 1) + 1;
+        }
+        int[] next = new int[n];
+        int[] lookup = new int[tableSize];
+        Arrays.fill(lookup, -1);
+        int filled = 0;
+        while (true) {
+            for (int i = 0; i < n; i++) {
+                int slot = (int) ((offsets[i] + (long) next[i] * skips[i]) % tableSize);
+                while (lookup[slot] >= 0) {
+                    next[i]++;
+                    slot = (int) ((offsets[i] + (long) next[i] * skips[i]) % tableSize);
+                }
+                lookup[slot] = i;
+                next[i]++;
+                if (++filled == tableSize) {
+                    @SuppressWarnings("unchecked")
+                    T[] array = (T[]) nodes.toArray();
+                    return new Table<>(lookup, array);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected T select(Table<T> table, long keyHash) {
+        return table.nodes[table.lookup[(int) Long.remainderUnsigned(keyHash, tableSize)]];
+    }
+
+    private static boolean isPrime(int value) {
+        if (value < 2) {
+            return false;
+        }
+        for (int i = 2; (long) i * i <= value; i++) {
+            if (value % i == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static final class Table<T> {
+
+        private final int[] lookup;
+
+        private final T[] nodes;
+
+        private Table(int[] lookup, T[] nodes) {
+            this.lookup = lookup;
+            this.nodes = nodes;
+        }
+    }
+}
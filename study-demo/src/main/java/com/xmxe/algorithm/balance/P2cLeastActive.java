@@ -0,0 +1,25 @@
+package com.xmxe.algorithm.balance;
+
+import java.util.List;
+
+/**
+ * 最小活跃数,power of two choices版本
+ * Balance.LeastActive每次遍历全部节点找活跃数最小的,节点多时开销大,而且所有请求同时涌向同一个最小节点(羊群效应)。
+ * 随机选两个节点取 活跃数/权重 较小的,期望负载和全局最小几乎一样好,开销是O(1)
+ */
+public class P2cLeastActive extends AbstractLoadBalancer<Void> {
+
+    public P2cLeastActive(List<Endpoint> endpoints) {
+        super(endpoints);
+    }
+
+    @Override
+    protected Void build(Endpoint[] endpoints) {
+        return null;
+    }
+
+    @Override
+    protected Endpoint pick(Endpoint[] endpoints, Void state) {
+        return pickTwo(endpoints, endpoint -> (endpoint.getActive() + 1.0) / endpoint.getWeight());
+    }
+}
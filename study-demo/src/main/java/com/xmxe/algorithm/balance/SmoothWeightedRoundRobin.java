@@ -0,0 +1,92 @@
+package com.xmxe.algorithm.balance;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁平滑加权轮询
+ * Balance.RoundRobinWeight(nginx的算法)每次选择都要修改所有节点的currentWeight,多线程下必须加锁。
+ * 这里在节点列表变化时把一整轮的选择结果预先算成int[]序列(长度=总权重/最大公约数),
+ * 选择时只需要一次getAndIncrement取序列中的下一个,结果与nginx算法完全相同
+ * 权重总和过大时按比例缩小到MAX_SEQUENCE以内
+ */
+public class SmoothWeightedRoundRobin extends AbstractLoadBalancer<SmoothWeightedRoundRobin.Sequence> {
+
+    private static final int MAX_SEQUENCE = 1 << 16;
+
+    private final AtomicLong counter = new AtomicLong();
+
+    public SmoothWeightedRoundRobin(List<Endpoint> endpoints) {
+        super(endpoints);
+    }
+
+    @Override
+    protected Sequence build(Endpoint[] endpoints) {
+        int n = endpoints.length;
+        long[] weights = new long[n];
+        long gcd = 0;
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            weights[i] = endpoints[i].getWeight();
+            gcd = gcd(gcd, weights[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            weights[i] /= gcd;
+            total += weights[i];
+        }
+        if (total > MAX_SEQUENCE) {
+            long scaledTotal = 0;
+            for (int i = 0; i < n; i++) {
+                weights[i] = Math.max(1, weights[i] * MAX_SEQUENCE / total);
+                scaledTotal += weights[i];
+            }
+            total = scaledTotal;
+        }
+        int[] sequence = new int[(int) total];
+        long[] current = new long[n];
+        for (int s = 0; s < sequence.length; s++) {
+            int best = 0;
+            for (int i = 0; i < n; i++) {
+                current[i] += weights[i];
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            sequence[s] = best;
+        }
+        return new Sequence(sequence);
+    }
+
+    @Override
+    protected Endpoint pick(Endpoint[] endpoints, Sequence state) {
+        int[] sequence = state.order;
+        long next = counter.getAndIncrement();
+        // 不可用的节点跳过,最多看一整轮
+        for (int k = 0; k < sequence.length; k++) {
+            Endpoint endpoint = endpoints[sequence[(int) ((next + k) % sequence.length)]];
+            if (endpoint.isAvailable()) {
+                return endpoint;
+            }
+        }
+        return endpoints[sequence[(int) (next % sequence.length)]];
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    static final class Sequence {
+
+        private final int[] order;
+
+        private Sequence(int[] order) {
+            this.order = order;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.xmxe.algorithm.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 无锁固定窗口限流器
+ * 窗口编号和窗口内计数打包在一个long里:高40位窗口编号,低24位计数,一次CAS同时完成"跨窗口重置"和"计数",
+ * 不会出现LimitAlgorithm.RateLimiterSimpleWindow中先重置再计数两步之间被其他线程插入的问题
+ * 预约时当前窗口已满就记到下一个窗口,状态中的窗口编号可以领先于当前时间
+ */
+public class FixedWindowLimiter implements Limiter {
+
+    private static final int COUNT_BITS = 24;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    /**
+     * 每个窗口最多允许的许可数
+     */
+    private final int limit;
+
+    private final long windowNanos;
+
+    private final LongSupplier nanoClock;
+
+    private final long startNanos;
+
+    /**
+     * 高40位窗口编号 | 低24位窗口内已发放的许可数
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * @param limit  每个窗口允许的许可数,最大2^24-1
+     * @param window 窗口大小
+     */
+    public FixedWindowLimiter(int limit, long window, TimeUnit unit) {
+        this(limit, window, unit, System::nanoTime);
+    }
+
+    FixedWindowLimiter(int limit, long window, TimeUnit unit, LongSupplier nanoClock) {
+        if (limit <= 0 || limit > COUNT_MASK) {
+            throw new IllegalArgumentException("limit must be in [1, " + COUNT_MASK + "]");
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        this.limit = limit;
+        this.windowNanos = unit.toNanos(window);
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+    }
+
+    @Override
+    public long tryReserve(int permits, long timeout, TimeUnit unit) {
+        if (permits <= 0 || permits > limit) {
+            throw new IllegalArgumentException("permits must be in [1, " + limit + "]");
+        }
+        long timeoutNanos = Math.max(0, unit.toNanos(timeout));
+        long elapsed = nanoClock.getAsLong() - startNanos;
+        long nowWindow = elapsed / windowNanos;
+        for (;;) {
+            long current = state.get();
+            long window = current >>> COUNT_BITS;
+            long count = current & COUNT_MASK;
+            if (window < nowWindow) {
+                // 进入新窗口,计数从0开始
+                window = nowWindow;
+                count = 0;
+            }
+            if (count + permits > limit) {
+                // 本窗口(可能是已预约的未来窗口)放不下,顺延到下一个窗口
+                window++;
+                count = 0;
+            }
+            long waitNanos = Math.max(0, window * windowNanos - elapsed);
+            if (waitNanos > timeoutNanos) {
+                return -1;
+            }
+            if (state.compareAndSet(current, window << COUNT_BITS | (count + permits))) {
+                return waitNanos;
+            }
+        }
+    }
+}
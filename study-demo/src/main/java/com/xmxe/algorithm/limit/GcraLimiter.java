@@ -0,0 +1,85 @@
+package com.xmxe.algorithm.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * GCRA(Generic Cell Rate Algorithm)限流器,效果等价于令牌桶,但只需要维护一个long:理论到达时间TAT
+ * 1.每个许可占用interval = 1s/rate 的时间,桶容量burst个许可,相当于允许TAT领先当前时间 burst*interval
+ * 2.请求permits个许可时 newTat = max(tat, now) + permits*interval,
+ *   newTat - burst*interval <= now 则立即放行,否则需要等待 newTat - burst*interval - now
+ * 3.不需要像令牌桶那样按时间补充令牌,一次CAS完成判断和扣减;预约就是把TAT往后推,和Guava RateLimiter的"预支"一致
+ */
+public class GcraLimiter implements Limiter {
+
+    private final long intervalNanos;
+
+    /**
+     * 允许TAT领先当前时间的最大值 burst*interval
+     */
+    private final long burstNanos;
+
+    private final int burst;
+
+    private final LongSupplier nanoClock;
+
+    private final long startNanos;
+
+    /**
+     * 相对startNanos的理论到达时间
+     */
+    private final AtomicLong tat = new AtomicLong();
+
+    /**
+     * @param permitsPerSecond 稳定速率
+     * @param burst            最大突发许可数,即令牌桶容量
+     */
+    public GcraLimiter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    GcraLimiter(double permitsPerSecond, int burst, LongSupplier nanoClock) {
+        if (permitsPerSecond <= 0 || Double.isNaN(permitsPerSecond)) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        if (burst <= 0) {
+            throw new IllegalArgumentException("burst must be positive");
+        }
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burst = burst;
+        this.burstNanos = intervalNanos * burst;
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+    }
+
+    @Override
+    public long tryReserve(int permits, long timeout, TimeUnit unit) {
+        if (permits <= 0 || permits > burst) {
+            throw new IllegalArgumentException("permits must be in [1, " + burst + "]");
+        }
+        long timeoutNanos = Math.max(0, unit.toNanos(timeout));
+        long now = nanoClock.getAsLong() - startNanos;
+        long cost = permits * intervalNanos;
+        for (;;) {
+            long current = tat.get();
+            long newTat = Math.max(current, now) + cost;
+            long waitNanos = newTat - burstNanos - now;
+            if (waitNanos > timeoutNanos) {
+                return -1;
+            }
+            if (tat.compareAndSet(current, newTat)) {
+                return Math.max(0, waitNanos);
+            }
+        }
+    }
+
+    /**
+     * 当前可以立即获取的许可数,仅用于监控
+     */
+    public int availablePermits() {
+        long now = nanoClock.getAsLong() - startNanos;
+        long ahead = Math.max(0, tat.get() - now);
+        return (int) ((burstNanos - ahead) / intervalNanos);
+    }
+}
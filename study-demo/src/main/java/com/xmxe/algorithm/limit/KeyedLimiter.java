@@ -0,0 +1,271 @@
+package com.xmxe.algorithm.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import com.xmxe.util.Murmur3;
+
+/**
+ * 按key限流(每个用户、每个IP一个令牌桶),面向百万级key
+ * 1.每个key用GCRA算法,状态只有一个long:理论到达时间TAT,与{@link GcraLimiter}相同
+ * 2.key和TAT分别存在两个long[]中,开放寻址+线性探测,不为每个key创建对象,每个key占用16字节/装载率
+ * 3.按key的哈希分成多个段(stripe),每段一把锁、一组数组,各段独立扩容,减少锁竞争
+ * 4.GCRA的TAT不晚于当前时间时,桶已经是满的,与新建的桶完全等价,可以直接删掉而不影响限流结果。
+ *   段装满需要扩容前先清掉这些空闲桶,清完仍然装不下才扩容,空闲key不会无限堆积
+ * 5.long型key直接使用,IP用IpLongUtil.ip2Long转换;字符串key取64位哈希,百万级key下冲突概率可以忽略
+ */
+public class KeyedLimiter {
+
+    private static final int DEFAULT_STRIPES = 64;
+    private static final int INITIAL_STRIPE_CAPACITY = 1 << 10;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final long intervalNanos;
+
+    private final long burstNanos;
+
+    private final int burst;
+
+    private final LongSupplier nanoClock;
+
+    private final long startNanos;
+
+    private final Stripe[] stripes;
+
+    private final int stripeShift;
+
+    /**
+     * @param permitsPerSecond 每个key的稳定速率
+     * @param burst            每个key的最大突发许可数
+     */
+    public KeyedLimiter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, DEFAULT_STRIPES, System::nanoTime);
+    }
+
+    /**
+     * @param stripes 段数,向上取整到2的幂,一般取CPU核数的几倍
+     */
+    public KeyedLimiter(double permitsPerSecond, int burst, int stripes) {
+        this(permitsPerSecond, burst, stripes, System::nanoTime);
+    }
+
+    KeyedLimiter(double permitsPerSecond, int burst, int stripes, LongSupplier nanoClock) {
+        if (permitsPerSecond <= 0 || Double.isNaN(permitsPerSecond)) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        if (burst <= 0) {
+            throw new IllegalArgumentException("burst must be positive");
+        }
+        if (stripes <= 0 || stripes > 1 << 16) {
+            throw new IllegalArgumentException("stripes must be in [1, 65536]");
+        }
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burst = burst;
+        this.burstNanos = intervalNanos * burst;
+        this.nanoClock = nanoClock;
+        // TAT为0表示空槽,让时间从1开始
+        this.startNanos = nanoClock.getAsLong() - 1;
+        int stripeCount = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.stripeShift = Long.SIZE - Integer.numberOfTrailingZeros(stripeCount);
+    }
+
+    public boolean tryAcquire(long key) {
+        return tryAcquire(key, 1);
+    }
+
+    /**
+     * 立即为key获取permits个许可,拿不到返回false
+     */
+    public boolean tryAcquire(long key, int permits) {
+        if (permits <= 0 || permits > burst) {
+            throw new IllegalArgumentException("permits must be in [1, " + burst + "]");
+        }
+        long hash = mix(key);
+        long now = nanoClock.getAsLong() - startNanos;
+        return stripeOf(hash).tryAcquire(key, hash, permits, now);
+    }
+
+    public boolean tryAcquire(String key) {
+        return tryAcquire(key, 1);
+    }
+
+    public boolean tryAcquire(String key, int permits) {
+        return tryAcquire(Murmur3.hash128(key)[0], permits);
+    }
+
+    /**
+     * 当前跟踪的key数,包含尚未清理的空闲key
+     */
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 各段数组占用的字节数,不含对象头
+     */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                bytes += (long) stripe.keys.length * Long.BYTES * 2;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 主动清理所有段的空闲key,一般不需要调用,扩容前会自动清理
+     *
+     * @return 清理的key数
+     */
+    public long evictIdle() {
+        long now = nanoClock.getAsLong() - startNanos;
+        long evicted = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                evicted += stripe.evictIdle(now);
+            }
+        }
+        return evicted;
+    }
+
+    private Stripe stripeOf(long hash) {
+        return stripeShift == Long.SIZE ? stripes[0] : stripes[(int) (hash >>> stripeShift)];
+    }
+
+    /**
+     * 连续的key(例如同一网段的IP)打散到不同的段和槽
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private final class Stripe {
+
+        private long[] keys = new long[INITIAL_STRIPE_CAPACITY];
+
+        /**
+         * 相对startNanos的TAT,0表示空槽
+         */
+        private long[] tats = new long[INITIAL_STRIPE_CAPACITY];
+
+        private int size;
+
+        private int threshold = (int) (INITIAL_STRIPE_CAPACITY * LOAD_FACTOR);
+
+        synchronized boolean tryAcquire(long key, long hash, int permits, long now) {
+            int mask = keys.length - 1;
+            int index = (int) hash & mask;
+            long tat;
+            while ((tat = tats[index]) != 0) {
+                if (keys[index] == key) {
+                    long newTat = Math.max(tat, now) + permits * intervalNanos;
+                    if (newTat - burstNanos > now) {
+                        return false;
+                    }
+                    tats[index] = newTat;
+                    return true;
+                }
+                index = (index + 1) & mask;
+            }
+            // 新key,桶是满的,permits不超过burst时一定能拿到
+            if (size >= threshold) {
+                if (evictIdle(now) == 0 || size >= threshold * 3 / 4) {
+                    resize();
+                }
+                insert(key, hash, now + permits * intervalNanos);
+            } else {
+                keys[index] = key;
+                tats[index] = now + permits * intervalNanos;
+            }
+            size++;
+            return true;
+        }
+
+        /**
+         * 删除TAT不晚于now的槽,删除后把后面同一探测链上的元素前移(backward shift),不需要墓碑
+         */
+        int evictIdle(long now) {
+            int mask = keys.length - 1;
+            int evicted = 0;
+            // 从一个空槽之后开始,保证探测链不会跨过起点
+            int start = 0;
+            while (tats[start] != 0) {
+                start++;
+            }
+            int i = (start + 1) & mask;
+            for (int n = 0; n < keys.length;) {
+                long tat = tats[i];
+                if (tat != 0 && tat <= now) {
+                    delete(i);
+                    evicted++;
+                    // 删除后当前位置可能移入了后面的元素,需要重新检查
+                    continue;
+                }
+                i = (i + 1) & mask;
+                n++;
+            }
+            size -= evicted;
+            return evicted;
+        }
+
+        private void delete(int index) {
+            int mask = keys.length - 1;
+            int hole = index;
+            int i = index;
+            for (;;) {
+                i = (i + 1) & mask;
+                if (tats[i] == 0) {
+                    break;
+                }
+                int home = (int) mix(keys[i]) & mask;
+                // home不在(hole, i]区间内时,元素可以前移到hole
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    keys[hole] = keys[i];
+                    tats[hole] = tats[i];
+                    hole = i;
+                }
+            }
+            keys[hole] = 0;
+            tats[hole] = 0;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            long[] oldTats = tats;
+            keys = new long[oldKeys.length << 1];
+            tats = new long[oldKeys.length << 1];
+            threshold = (int) (keys.length * LOAD_FACTOR);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldTats[i] != 0) {
+                    insert(oldKeys[i], mix(oldKeys[i]), oldTats[i]);
+                }
+            }
+        }
+
+        private void insert(long key, long hash, long tat) {
+            int mask = keys.length - 1;
+            int index = (int) hash & mask;
+            while (tats[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            tats[index] = tat;
+        }
+    }
+}
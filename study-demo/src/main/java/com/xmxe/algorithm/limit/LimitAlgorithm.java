@@ -6,6 +6,10 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 限流算法示例,这里的实现都用synchronized,便于理解原理
+ * 高并发场景使用无锁版本:{@link FixedWindowLimiter}、{@link SlidingWindowLimiter}、{@link GcraLimiter}
+ */
 public class LimitAlgorithm {
 
     /**
@@ -0,0 +1,47 @@
+package com.xmxe.algorithm.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 无锁限流器,LimitAlgorithm中各算法的生产版本
+ * 实现类只用CAS更新预先分配好的状态,tryAcquire不加锁也不分配对象
+ * {@link FixedWindowLimiter} 固定窗口
+ * {@link SlidingWindowLimiter} 滑动窗口,环形long数组存子窗口计数
+ * {@link GcraLimiter} GCRA,等价于令牌桶,支持预约
+ */
+public interface Limiter {
+
+    default boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * 立即获取permits个许可,获取不到直接返回false,不等待
+     */
+    default boolean tryAcquire(int permits) {
+        return tryReserve(permits, 0, TimeUnit.NANOSECONDS) == 0;
+    }
+
+    /**
+     * 在timeout内获取许可,需要等待时阻塞当前线程
+     */
+    default boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+        long waitNanos = tryReserve(permits, timeout, unit);
+        if (waitNanos < 0) {
+            return false;
+        }
+        if (waitNanos > 0) {
+            LockSupport.parkNanos(waitNanos);
+        }
+        return true;
+    }
+
+    /**
+     * 预约permits个许可,预约成功后许可已经记到账上,调用方需要等待返回的时间后再执行
+     *
+     * @param timeout 最多愿意等待的时间
+     * @return 需要等待的纳秒数,0表示可以立即执行,-1表示timeout内拿不到许可,此时不占用任何许可
+     */
+    long tryReserve(int permits, long timeout, TimeUnit unit);
+}
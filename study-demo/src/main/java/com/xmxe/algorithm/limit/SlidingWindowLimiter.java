@@ -0,0 +1,120 @@
+package com.xmxe.algorithm.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * 无锁滑动窗口限流器
+ * 1.窗口切成bucketCount个子窗口,子窗口计数放在环形long数组中,每个元素高40位是子窗口编号,低24位是计数,
+ *   编号落后的元素被新子窗口复用时一次CAS完成重置和计数,不需要像LimitAlgorithm.RateLimiterSlidingWindow那样逐个重置
+ * 2.先乐观地在当前子窗口加上permits,再统计窗口内的总数,超过阈值就减回去并拒绝,
+ *   并发时最多短暂地少放行,不会多放行;滑动日志需要为每个请求记录时间点,这里的内存是固定的
+ * 3.窗口内的计数只有时间流逝才会减少,无法给出确定的可用时间,所以不支持预约,tryReserve的timeout不生效
+ */
+public class SlidingWindowLimiter implements Limiter {
+
+    private static final int COUNT_BITS = 24;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final int limit;
+
+    private final int bucketCount;
+
+    private final long bucketNanos;
+
+    private final LongSupplier nanoClock;
+
+    private final long startNanos;
+
+    /**
+     * 子窗口编号 << 24 | 计数
+     */
+    private final AtomicLongArray buckets;
+
+    /**
+     * @param limit       窗口内允许的许可数,最大2^24-1
+     * @param window      窗口大小
+     * @param bucketCount 子窗口个数,越多越平滑,统计开销也越大
+     */
+    public SlidingWindowLimiter(int limit, long window, TimeUnit unit, int bucketCount) {
+        this(limit, window, unit, bucketCount, System::nanoTime);
+    }
+
+    SlidingWindowLimiter(int limit, long window, TimeUnit unit, int bucketCount, LongSupplier nanoClock) {
+        if (limit <= 0 || limit > COUNT_MASK) {
+            throw new IllegalArgumentException("limit must be in [1, " + COUNT_MASK + "]");
+        }
+        if (bucketCount <= 0) {
+            throw new IllegalArgumentException("bucketCount must be positive");
+        }
+        long windowNanos = unit.toNanos(window);
+        if (windowNanos < bucketCount) {
+            throw new IllegalArgumentException("window is too small for " + bucketCount + " buckets");
+        }
+        this.limit = limit;
+        this.bucketCount = bucketCount;
+        this.bucketNanos = windowNanos / bucketCount;
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        this.buckets = new AtomicLongArray(bucketCount);
+    }
+
+    @Override
+    public long tryReserve(int permits, long timeout, TimeUnit unit) {
+        if (permits <= 0 || permits > limit) {
+            throw new IllegalArgumentException("permits must be in [1, " + limit + "]");
+        }
+        long epoch = (nanoClock.getAsLong() - startNanos) / bucketNanos;
+        int index = (int) (epoch % bucketCount);
+        // 1.当前子窗口加上permits,记下实际写入的子窗口编号
+        long written;
+        for (;;) {
+            long current = buckets.get(index);
+            long bucketEpoch = current >>> COUNT_BITS;
+            // 编号比自己新说明别的线程读到的时间更晚,直接计入那个子窗口
+            long count = bucketEpoch < epoch ? 0 : current & COUNT_MASK;
+            if (count + permits > limit) {
+                return -1;
+            }
+            written = Math.max(bucketEpoch, epoch);
+            if (buckets.compareAndSet(index, current, written << COUNT_BITS | (count + permits))) {
+                break;
+            }
+        }
+        // 2.统计窗口内总数,超过阈值则撤销
+        if (sum(written) > limit) {
+            for (;;) {
+                long current = buckets.get(index);
+                if (current >>> COUNT_BITS != written || (current & COUNT_MASK) < permits) {
+                    // 子窗口已经被新的时间复用,计数随之作废
+                    break;
+                }
+                if (buckets.compareAndSet(index, current, current - permits)) {
+                    break;
+                }
+            }
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * 当前窗口内已发放的许可数
+     */
+    public long used() {
+        return sum((nanoClock.getAsLong() - startNanos) / bucketNanos);
+    }
+
+    private long sum(long epoch) {
+        long oldest = epoch - bucketCount;
+        long sum = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            long value = buckets.get(i);
+            if ((value >>> COUNT_BITS) > oldest) {
+                sum += value & COUNT_MASK;
+            }
+        }
+        return sum;
+    }
+}
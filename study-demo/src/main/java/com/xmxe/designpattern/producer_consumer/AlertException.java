@@ -0,0 +1,16 @@
+package com.xmxe.designpattern.producer_consumer;
+
+/**
+ * RingBuffer.halt()之后,正在等待数据的消费者收到这个异常退出等待
+ * 只用来控制流程,共用一个实例,不填充栈
+ */
+public final class AlertException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    static final AlertException INSTANCE = new AlertException();
+
+    private AlertException() {
+        super("ring buffer halted", null, false, false);
+    }
+}
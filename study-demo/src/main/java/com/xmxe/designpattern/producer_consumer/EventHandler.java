@@ -0,0 +1,13 @@
+package com.xmxe.designpattern.producer_consumer;
+
+/**
+ * 消费RingBuffer里的事件,事件对象会被生产者复用,需要保留的数据要在返回前复制出来
+ */
+@FunctionalInterface
+public interface EventHandler<E> {
+
+    /**
+     * @param endOfBatch 是否是这一批的最后一个,可以在这里做批量flush
+     */
+    void onEvent(E event, long sequence, boolean endOfBatch);
+}
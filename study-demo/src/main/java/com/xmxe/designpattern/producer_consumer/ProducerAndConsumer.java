@@ -15,7 +15,18 @@ import java.util.concurrent.locks.ReentrantLock;
  * 消峰：例如在某项工作中，假如A操作生产数据的速度很快，B操作处理速度很慢，那么A操作就必须等待B操作完成才能结束，反之亦然。如果将A操作和B操作进行解耦，中间插入一个缓冲区，这样A操作将生产的数据存入缓冲区，就接受了.B操作从缓冲区获取数据并进行处理，平衡好A操作和B操作之间的缓冲区，可以显著提升系统的数据处理能力
  */
 public class ProducerAndConsumer {
-    
+
+    /**
+     * 是否打印每一次存取,压测时关掉
+     */
+    static volatile boolean verbose = true;
+
+    static void print(String message) {
+        if (verbose) {
+            System.out.println(message);
+        }
+    }
+
     /**
      * 利用wait / notify方法实现思路
      */
@@ -34,14 +45,21 @@ public class ProducerAndConsumer {
          */
         private LinkedList<Integer> list = new LinkedList<Integer>();
 
+        public Container() {
+        }
+
+        public Container(int capacity) {
+            this.capacity = capacity;
+        }
+
 
         /**
          * 添加数据到缓冲区
          * @param value
          */
         public synchronized void add(Integer value) {
-            if(list.size() >= capacity){
-                System.out.println("生产者："+ Thread.currentThread().getName()+"，缓冲区已满,生产者进入waiting...");
+            while(list.size() >= capacity){
+                print("生产者："+ Thread.currentThread().getName()+"，缓冲区已满,生产者进入waiting...");
                 try {
                     // 进入等待状态
                     wait();
@@ -49,7 +67,7 @@ public class ProducerAndConsumer {
                     e.printStackTrace();
                 }
             }
-            System.out.println("生产者："+ Thread.currentThread().getName()+"，add：" + value);
+            print("生产者："+ Thread.currentThread().getName()+"，add：" + value);
             list.add(value);
 
             //唤醒其他所有处于wait()的线程，包括消费者和生产者
@@ -60,9 +78,9 @@ public class ProducerAndConsumer {
         /**
          * 从缓冲区获取数据
          */
-        public synchronized void get() {
-            if(list.size() == 0){
-                System.out.println("消费者："+ Thread.currentThread().getName()+"，缓冲区为空,消费者进入waiting...");
+        public synchronized Integer get() {
+            while(list.size() == 0){
+                print("消费者："+ Thread.currentThread().getName()+"，缓冲区为空,消费者进入waiting...");
                 try {
                     // 进入等待状态
                     wait();
@@ -72,10 +90,11 @@ public class ProducerAndConsumer {
             }
             // 从头部获取数据，并移除元素
             Integer val = list.removeFirst();
-            System.out.println("消费者："+ Thread.currentThread().getName()+"，value：" + val);
+            print("消费者："+ Thread.currentThread().getName()+"，value：" + val);
 
             //唤醒其他所有处于wait()的线程，包括消费者和生产者
             notifyAll();
+            return val;
         }
     }
     /**
@@ -148,6 +167,13 @@ public class ProducerAndConsumer {
 
         private LinkedList<Integer> list = new LinkedList<Integer>();
 
+        public Container1() {
+        }
+
+        public Container1(int capacity) {
+            this.capacity = capacity;
+        }
+
 
         /**
          * 添加数据到缓冲区
@@ -157,12 +183,12 @@ public class ProducerAndConsumer {
             boolean flag = false;
             try {
                 flag = lock.tryLock(3, TimeUnit.SECONDS);
-                if(list.size() >= capacity){
-                    System.out.println("生产者："+ Thread.currentThread().getName()+"，缓冲区已满,生产者进入waiting...");
+                while(list.size() >= capacity){
+                    print("生产者："+ Thread.currentThread().getName()+"，缓冲区已满,生产者进入waiting...");
                     // 进入等待状态
                     condition.await();
                 }
-                System.out.println("生产者："+ Thread.currentThread().getName()+"，add：" + value);
+                print("生产者："+ Thread.currentThread().getName()+"，add：" + value);
                 list.add(value);
 
                 //唤醒其他所有处于wait()的线程，包括消费者和生产者
@@ -180,18 +206,19 @@ public class ProducerAndConsumer {
         /**
          * 从缓冲区获取数据
          */
-        public void get() {
+        public Integer get() {
+            Integer val = null;
             boolean flag = false;
             try {
                 flag = lock.tryLock(3, TimeUnit.SECONDS);
-                if(list.size() == 0){
-                    System.out.println("消费者："+ Thread.currentThread().getName()+"，缓冲区为空,消费者进入waiting...");
+                while(list.size() == 0){
+                    print("消费者："+ Thread.currentThread().getName()+"，缓冲区为空,消费者进入waiting...");
                     // 进入等待状态
                     condition.await();
                 }
                 // 从头部获取数据，并移除元素
-                Integer val = list.removeFirst();
-                System.out.println("消费者："+ Thread.currentThread().getName()+"，value：" + val);
+                val = list.removeFirst();
+                print("消费者："+ Thread.currentThread().getName()+"，value：" + val);
 
                 //唤醒其他所有处于wait()的线程，包括消费者和生产者
                 condition.signalAll();
@@ -202,6 +229,7 @@ public class ProducerAndConsumer {
                     lock.unlock();
                 }
             }
+            return val;
         }
     }
 
@@ -227,6 +255,13 @@ public class ProducerAndConsumer {
         private int capacity = 3;
         private LinkedList<Integer> list = new LinkedList<Integer>();
 
+        public ContainerDemo() {
+        }
+
+        public ContainerDemo(int capacity) {
+            this.capacity = capacity;
+        }
+
 
         /**
          * 添加数据到缓冲区
@@ -236,12 +271,12 @@ public class ProducerAndConsumer {
             boolean flag = false;
             try {
                 flag = lock.tryLock(3, TimeUnit.SECONDS);
-                if(list.size() >= capacity){
-                    System.out.println("生产者："+ Thread.currentThread().getName()+"，缓冲区已满,生产者进入waiting...");
+                while(list.size() >= capacity){
+                    print("生产者："+ Thread.currentThread().getName()+"，缓冲区已满,生产者进入waiting...");
                     // 生产者进入等待状态
                     producerCondition.await();
                 }
-                System.out.println("生产者："+ Thread.currentThread().getName()+"，add：" + value);
+                print("生产者："+ Thread.currentThread().getName()+"，add：" + value);
                 list.add(value);
 
                 // 唤醒所有消费者处于wait()的线程
@@ -259,18 +294,19 @@ public class ProducerAndConsumer {
         /**
          * 从缓冲区获取数据
          */
-        public void get() {
+        public Integer get() {
+            Integer val = null;
             boolean flag = false;
             try {
                 flag = lock.tryLock(3, TimeUnit.SECONDS);
-                if(list.size() == 0){
-                    System.out.println("消费者："+ Thread.currentThread().getName()+"，缓冲区为空,消费者进入waiting...");
+                while(list.size() == 0){
+                    print("消费者："+ Thread.currentThread().getName()+"，缓冲区为空,消费者进入waiting...");
                     // 消费者进入等待状态
                     consumerCondition.await();
                 }
                 // 从头部获取数据，并移除元素
-                Integer val = list.removeFirst();
-                System.out.println("消费者："+ Thread.currentThread().getName()+"，value：" + val);
+                val = list.removeFirst();
+                print("消费者："+ Thread.currentThread().getName()+"，value：" + val);
 
                 // 唤醒所有生产者处于wait()的线程
                 producerCondition.signalAll();
@@ -281,6 +317,7 @@ public class ProducerAndConsumer {
                     lock.unlock();
                 }
             }
+            return val;
         }
     }
     /**
@@ -344,5 +381,109 @@ public class ProducerAndConsumer {
         }
     }
 
+    /**
+     * 利用RingBuffer实现思路
+     * 上面的容器每次存取都要加锁,唤醒等待线程时还要经过操作系统,吞吐量在每秒几百万次以内
+     * RingBuffer预先分配好槽位,生产者和消费者各自用CAS推进序号,不加锁;消费者一次取一批,生产者也可以一次发布一批
+     * 每个消费线程持有自己的RingBuffer.Consumer,不再消费时close
+     */
+    static class RingBufferContainer {
+
+        /**
+         * 槽位里的可变对象,生产者复用
+         */
+        static final class IntEvent {
+            int value;
+        }
+
+        private final RingBuffer<IntEvent> ring;
+
+        /**
+         * @param capacity 向上取整到2的幂
+         */
+        public RingBufferContainer(int capacity, WaitStrategy waitStrategy) {
+            int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+            this.ring = RingBuffer.createMultiProducer(IntEvent::new, size, waitStrategy);
+        }
+
+        /**
+         * 添加数据到缓冲区,满了就等待
+         */
+        public void add(int value) {
+            long sequence = ring.next();
+            ring.get(sequence).value = value;
+            ring.publish(sequence);
+        }
+
+        /**
+         * 批量添加,一次领取一段序号,只唤醒一次消费者
+         */
+        public void addAll(int[] values, int from, int count) {
+            long hi = ring.next(count);
+            long lo = hi - count + 1;
+            for (int i = 0; i < count; i++) {
+                ring.get(lo + i).value = values[from + i];
+            }
+            ring.publish(lo, hi);
+        }
+
+        public RingBuffer.Consumer<IntEvent> newConsumer() {
+            return ring.newConsumer();
+        }
+
+        /**
+         * 让等待中的消费者退出
+         */
+        public void halt() {
+            ring.halt();
+        }
+    }
+
+    /**
+     * 测试类
+     */
+    static class MyThreadTest2 {
+
+        public static void main(String[] args) throws InterruptedException {
+            RingBufferContainer container = new RingBufferContainer(4, WaitStrategy.blocking());
+
+            List<Thread> threadList = new ArrayList<>();
+            // 2个消费者线程,消费者要在生产者之前创建
+            for (int i = 0; i < 2; i++) {
+                RingBuffer.Consumer<RingBufferContainer.IntEvent> consumer = container.newConsumer();
+                threadList.add(new Thread(() -> {
+                    try (RingBuffer.Consumer<RingBufferContainer.IntEvent> c = consumer) {
+                        while (true) {
+                            c.consume((event, sequence, endOfBatch) -> System.out.println("消费者："
+                                    + Thread.currentThread().getName() + "，value：" + event.value), 2);
+                        }
+                    } catch (AlertException e) {
+                        System.out.println("消费者：" + Thread.currentThread().getName() + "，退出");
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+            }
+            // 2个生产者线程
+            List<Thread> producers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                int base = i * 100;
+                producers.add(new Thread(() -> {
+                    for (int j = 0; j < 6; j++) {
+                        container.add(base + j);
+                    }
+                }));
+            }
+            threadList.addAll(producers);
+            for (Thread thread : threadList) {
+                thread.start();
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            Thread.sleep(100);
+            container.halt();
+        }
+    }
 
 }
@@ -0,0 +1,395 @@
+package com.xmxe.designpattern.producer_consumer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 参考LMAX Disruptor的有界无锁环形缓冲区,多生产者多消费者,每个事件只被一个消费者处理
+ * 1.槽位在创建时用工厂一次性填满,生产者领取序号后修改槽位里的事件对象再发布,运行中不分配对象
+ * 2.生产者:单生产者只用普通字段记录领取位置;多生产者CAS推进游标领取一段序号,
+ *   每个槽位另有一个发布标记(序号的圈数),发布时写标记,消费者只读连续发布完成的部分
+ * 3.消费者:共享一个workSequence,CAS一次领取一批(最多maxBatch个)连续序号后逐个处理;
+ *   每个消费者还有自己的Sequence,生产者取所有消费者进度的最小值,保证不覆盖还没处理完的槽位
+ * 4.游标和各个进度都是填充过的Sequence,避免伪共享;生产者缓存上一次看到的最小进度,空间够时不去读消费者的序号
+ * 5.消费者等待数据的方式由WaitStrategy决定;生产者等待空位时短暂park
+ * 消费者要在生产者开始发布之前创建,不再消费的消费者要close,否则它停住的进度会让生产者一直等待
+ *
+ * 用法:
+ * RingBuffer<LongEvent> ring = RingBuffer.createMultiProducer(LongEvent::new, 1024, WaitStrategy.yielding());
+ * RingBuffer.Consumer<LongEvent> consumer = ring.newConsumer();
+ * long seq = ring.next();
+ * try { ring.get(seq).value = 42; } finally { ring.publish(seq); }
+ * consumer.consume((event, sequence, endOfBatch) -> handle(event.value), 64);
+ */
+public final class RingBuffer<E> {
+
+    private static final VarHandle PUBLISHED = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private static final Sequence[] NO_SEQUENCES = new Sequence[0];
+
+    private final Object[] entries;
+
+    private final int mask;
+
+    private final int indexShift;
+
+    private final boolean multiProducer;
+
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * 单生产者:已发布的最大序号;多生产者:已领取的最大序号
+     */
+    private final Sequence cursor = new Sequence();
+
+    /**
+     * 多生产者共享的最小消费进度缓存
+     */
+    private final Sequence gatingCache = new Sequence();
+
+    /**
+     * 多生产者的发布标记,下标是槽位,值是序号的圈数
+     */
+    private final int[] published;
+
+    /**
+     * 单生产者领取到的位置和缓存的最小消费进度,只有生产者线程读写
+     */
+    private long nextValue = -1;
+
+    private long cachedGating = -1;
+
+    /**
+     * 消费者之间共享的领取位置
+     */
+    private final Sequence workSequence = new Sequence();
+
+    private volatile Sequence[] gatingSequences = NO_SEQUENCES;
+
+    private final SequenceBarrier barrier;
+
+    private RingBuffer(Supplier<E> factory, int bufferSize, WaitStrategy waitStrategy, boolean multiProducer) {
+        if (bufferSize < 1 || Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("bufferSize must be a power of 2");
+        }
+        this.entries = new Object[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            entries[i] = factory.get();
+        }
+        this.mask = bufferSize - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(bufferSize);
+        this.waitStrategy = waitStrategy;
+        this.multiProducer = multiProducer;
+        if (multiProducer) {
+            this.published = new int[bufferSize];
+            Arrays.fill(published, -1);
+        } else {
+            this.published = null;
+        }
+        this.barrier = new SequenceBarrier(this, waitStrategy);
+    }
+
+    /**
+     * 只能有一个线程调用next/publish
+     */
+    public static <E> RingBuffer<E> createSingleProducer(Supplier<E> factory, int bufferSize, WaitStrategy waitStrategy) {
+        return new RingBuffer<>(factory, bufferSize, waitStrategy, false);
+    }
+
+    public static <E> RingBuffer<E> createMultiProducer(Supplier<E> factory, int bufferSize, WaitStrategy waitStrategy) {
+        return new RingBuffer<>(factory, bufferSize, waitStrategy, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) sequence & mask];
+    }
+
+    public int getBufferSize() {
+        return entries.length;
+    }
+
+    /**
+     * 领取下一个序号,没有空位时等待
+     */
+    public long next() {
+        return next(1);
+    }
+
+    /**
+     * 领取连续n个序号,返回最大的一个,[返回值-n+1, 返回值]都属于调用方
+     */
+    public long next(int n) {
+        checkBatch(n);
+        if (!multiProducer) {
+            long next = nextValue + n;
+            long wrapPoint = next - entries.length;
+            if (wrapPoint > cachedGating || cachedGating > nextValue) {
+                long min;
+                while (wrapPoint > (min = Sequence.min(gatingSequences, nextValue))) {
+                    LockSupport.parkNanos(1);
+                }
+                cachedGating = min;
+            }
+            nextValue = next;
+            return next;
+        }
+        while (true) {
+            long current = cursor.get();
+            long next = current + n;
+            long wrapPoint = next - entries.length;
+            long cached = gatingCache.get();
+            if (wrapPoint > cached || cached > current) {
+                long min = Sequence.min(gatingSequences, current);
+                if (wrapPoint > min) {
+                    LockSupport.parkNanos(1);
+                    continue;
+                }
+                gatingCache.set(min);
+            } else if (cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * @return 没有足够空位时返回-1
+     */
+    public long tryNext() {
+        return tryNext(1);
+    }
+
+    public long tryNext(int n) {
+        checkBatch(n);
+        if (!multiProducer) {
+            long next = nextValue + n;
+            long wrapPoint = next - entries.length;
+            if (wrapPoint > cachedGating || cachedGating > nextValue) {
+                long min = Sequence.min(gatingSequences, nextValue);
+                cachedGating = min;
+                if (wrapPoint > min) {
+                    return -1;
+                }
+            }
+            nextValue = next;
+            return next;
+        }
+        while (true) {
+            long current = cursor.get();
+            long next = current + n;
+            long wrapPoint = next - entries.length;
+            long cached = gatingCache.get();
+            if (wrapPoint > cached || cached > current) {
+                long min = Sequence.min(gatingSequences, current);
+                gatingCache.set(min);
+                if (wrapPoint > min) {
+                    return -1;
+                }
+            }
+            if (cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    public void publish(long sequence) {
+        publish(sequence, sequence);
+    }
+
+    /**
+     * 批量发布[lo, hi],只唤醒一次消费者
+     */
+    public void publish(long lo, long hi) {
+        if (multiProducer) {
+            for (long sequence = lo; sequence <= hi; sequence++) {
+                PUBLISHED.setRelease(published, (int) sequence & mask, (int) (sequence >>> indexShift));
+            }
+        } else {
+            cursor.set(hi);
+        }
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    /**
+     * 领取、填充、发布一个事件
+     */
+    public <A> void publishEvent(BiConsumer<? super E, A> translator, A arg) {
+        long sequence = next();
+        try {
+            translator.accept(get(sequence), arg);
+        } finally {
+            publish(sequence);
+        }
+    }
+
+    /**
+     * @return 没有空位时返回false
+     */
+    public <A> boolean tryPublishEvent(BiConsumer<? super E, A> translator, A arg) {
+        long sequence = tryNext();
+        if (sequence < 0) {
+            return false;
+        }
+        try {
+            translator.accept(get(sequence), arg);
+        } finally {
+            publish(sequence);
+        }
+        return true;
+    }
+
+    /**
+     * 还没被消费的事件数(近似值)
+     */
+    public long size() {
+        long produced = multiProducer ? cursor.get() : nextValue;
+        return Math.max(0, produced - Sequence.min(gatingSequences, workSequence.get()));
+    }
+
+    /**
+     * 创建一个消费者,它的进度参与生产者的空位判断
+     */
+    public Consumer<E> newConsumer() {
+        Consumer<E> consumer = new Consumer<>(this, workSequence.get());
+        synchronized (this) {
+            Sequence[] current = gatingSequences;
+            Sequence[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = consumer.sequence;
+            gatingSequences = updated;
+        }
+        return consumer;
+    }
+
+    /**
+     * 让所有正在等待数据的消费者抛出AlertException,用于停止消费线程
+     */
+    public void halt() {
+        barrier.alert();
+    }
+
+    Sequence cursor() {
+        return cursor;
+    }
+
+    /**
+     * [lo, available]中从lo开始连续发布完成的最大序号,lo本身没发布时返回lo-1
+     */
+    long highestPublished(long lo, long available) {
+        if (!multiProducer) {
+            return available;
+        }
+        for (long sequence = lo; sequence <= available; sequence++) {
+            if ((int) PUBLISHED.getAcquire(published, (int) sequence & mask) != (int) (sequence >>> indexShift)) {
+                return sequence - 1;
+            }
+        }
+        return available;
+    }
+
+    private synchronized void removeGatingSequence(Sequence sequence) {
+        Sequence[] current = gatingSequences;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == sequence) {
+                Sequence[] updated = new Sequence[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                gatingSequences = updated;
+                return;
+            }
+        }
+    }
+
+    private void checkBatch(int n) {
+        if (n < 1 || n > entries.length) {
+            throw new IllegalArgumentException("n must be in [1, bufferSize]");
+        }
+    }
+
+    /**
+     * 竞争消费的一方,每个消费线程一个,不能在多个线程间共享
+     */
+    public static final class Consumer<E> implements AutoCloseable {
+
+        private final RingBuffer<E> ring;
+
+        /**
+         * 自己处理完的位置:领取前是领取起点,处理完是这一批的终点
+         */
+        private final Sequence sequence;
+
+        private Consumer(RingBuffer<E> ring, long initial) {
+            this.ring = ring;
+            this.sequence = new Sequence(initial);
+        }
+
+        /**
+         * 等到有数据后领取一批(最多maxBatch个)并处理
+         *
+         * @return 处理的事件数
+         * @throws AlertException 已经halt
+         */
+        public int consume(EventHandler<? super E> handler, int maxBatch) throws AlertException, InterruptedException {
+            SequenceBarrier barrier = ring.barrier;
+            while (true) {
+                long current = ring.workSequence.get();
+                sequence.set(current);
+                long available = barrier.waitFor(current + 1);
+                if (available <= current) {
+                    // 序号已被领取但还没发布
+                    Thread.onSpinWait();
+                    continue;
+                }
+                long hi = Math.min(available, current + maxBatch);
+                if (ring.workSequence.compareAndSet(current, hi)) {
+                    process(handler, current + 1, hi);
+                    return (int) (hi - current);
+                }
+            }
+        }
+
+        /**
+         * 不等待,没有已发布的数据时返回0
+         */
+        public int tryConsume(EventHandler<? super E> handler, int maxBatch) {
+            while (true) {
+                long current = ring.workSequence.get();
+                sequence.set(current);
+                long cursor = ring.cursor.get();
+                if (cursor <= current) {
+                    return 0;
+                }
+                long available = ring.highestPublished(current + 1, Math.min(cursor, current + maxBatch));
+                if (available <= current) {
+                    return 0;
+                }
+                if (ring.workSequence.compareAndSet(current, available)) {
+                    process(handler, current + 1, available);
+                    return (int) (available - current);
+                }
+            }
+        }
+
+        /**
+         * 退出消费,不再阻挡生产者
+         */
+        @Override
+        public void close() {
+            ring.removeGatingSequence(sequence);
+        }
+
+        private void process(EventHandler<? super E> handler, long lo, long hi) {
+            try {
+                for (long s = lo; s <= hi; s++) {
+                    handler.onEvent(ring.get(s), s, s == hi);
+                }
+            } finally {
+                // 处理异常时这一批剩下的事件被丢弃,进度照样推进,不能卡住生产者
+                sequence.set(hi);
+            }
+        }
+    }
+}
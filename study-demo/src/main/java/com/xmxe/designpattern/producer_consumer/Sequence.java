@@ -0,0 +1,80 @@
+package com.xmxe.designpattern.producer_consumer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * 带缓存行填充的long序号,RingBuffer的游标和每个消费者的进度都是一个Sequence
+ * 前后各填充7个long(56字节),value单独占一个缓存行,生产者和消费者频繁写各自的序号时不会互相使缓存行失效(伪共享)
+ * 填充字段放在父类里,JVM不会把父类和子类的字段重排到一起
+ */
+public class Sequence extends RhsPadding {
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(Value.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public Sequence() {
+        this(-1);
+    }
+
+    public Sequence(long initial) {
+        VALUE.setRelease(this, initial);
+    }
+
+    public long get() {
+        return (long) VALUE.getAcquire(this);
+    }
+
+    /**
+     * 只保证之前的写先于这次写可见,比volatile写便宜,用于发布
+     */
+    public void set(long value) {
+        VALUE.setRelease(this, value);
+    }
+
+    public void setVolatile(long value) {
+        VALUE.setVolatile(this, value);
+    }
+
+    public boolean compareAndSet(long expected, long value) {
+        return VALUE.compareAndSet(this, expected, value);
+    }
+
+    public long addAndGet(long delta) {
+        return (long) VALUE.getAndAdd(this, delta) + delta;
+    }
+
+    /**
+     * 一组序号里的最小值,都比minimum大时返回minimum
+     */
+    public static long min(Sequence[] sequences, long minimum) {
+        for (Sequence sequence : sequences) {
+            minimum = Math.min(minimum, sequence.get());
+        }
+        return minimum;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
+
+abstract class LhsPadding {
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class Value extends LhsPadding {
+    protected volatile long value;
+}
+
+abstract class RhsPadding extends Value {
+    protected long p9, p10, p11, p12, p13, p14, p15;
+}
@@ -0,0 +1,47 @@
+package com.xmxe.designpattern.producer_consumer;
+
+/**
+ * 消费者通过屏障等待生产者:先由WaitStrategy等到游标越过目标序号,
+ * 多生产者时再逐个检查发布标记,只返回连续发布完成的最大序号
+ */
+public final class SequenceBarrier {
+
+    private final RingBuffer<?> ring;
+
+    private final WaitStrategy waitStrategy;
+
+    private volatile boolean alerted;
+
+    SequenceBarrier(RingBuffer<?> ring, WaitStrategy waitStrategy) {
+        this.ring = ring;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * @return 不小于sequence的最大已发布序号
+     * @throws AlertException 已经halt
+     */
+    public long waitFor(long sequence) throws AlertException, InterruptedException {
+        checkAlert();
+        long available = waitStrategy.waitFor(sequence, ring.cursor(), this);
+        if (available < sequence) {
+            return available;
+        }
+        return ring.highestPublished(sequence, available);
+    }
+
+    public void checkAlert() throws AlertException {
+        if (alerted) {
+            throw AlertException.INSTANCE;
+        }
+    }
+
+    void alert() {
+        alerted = true;
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    public boolean isAlerted() {
+        return alerted;
+    }
+}
@@ -0,0 +1,131 @@
+package com.xmxe.designpattern.producer_consumer;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 消费者等待生产者发布的策略
+ * 1.busySpin:一直自旋,延迟最低,每个消费者独占一个核,只适合线程数少于核数的场景
+ * 2.yielding:自旋100次后Thread.yield,延迟和CPU占用折中
+ * 3.blocking:锁+条件变量,空闲时不占CPU;生产者只有在有消费者睡着时才加锁唤醒,平时发布不碰锁
+ * 生产者等待空位(消费太慢)时统一短暂park,不走这里
+ */
+public interface WaitStrategy {
+
+    /**
+     * 等到cursor不小于sequence
+     *
+     * @return cursor当前值,多生产者时其中可能还有没发布完的序号,由SequenceBarrier再检查
+     */
+    long waitFor(long sequence, Sequence cursor, SequenceBarrier barrier) throws AlertException, InterruptedException;
+
+    /**
+     * 生产者发布后调用,唤醒阻塞的消费者
+     */
+    void signalAllWhenBlocking();
+
+    static WaitStrategy busySpin() {
+        return new BusySpin();
+    }
+
+    static WaitStrategy yielding() {
+        return new Yielding();
+    }
+
+    static WaitStrategy blocking() {
+        return new Blocking();
+    }
+
+    final class BusySpin implements WaitStrategy {
+
+        @Override
+        public long waitFor(long sequence, Sequence cursor, SequenceBarrier barrier) throws AlertException {
+            long available;
+            while ((available = cursor.get()) < sequence) {
+                barrier.checkAlert();
+                Thread.onSpinWait();
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAllWhenBlocking() {
+        }
+    }
+
+    final class Yielding implements WaitStrategy {
+
+        private static final int SPIN_TRIES = 100;
+
+        @Override
+        public long waitFor(long sequence, Sequence cursor, SequenceBarrier barrier) throws AlertException {
+            long available;
+            int counter = SPIN_TRIES;
+            while ((available = cursor.get()) < sequence) {
+                barrier.checkAlert();
+                if (counter > 0) {
+                    counter--;
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAllWhenBlocking() {
+        }
+    }
+
+    final class Blocking implements WaitStrategy {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Condition published = lock.newCondition();
+
+        /**
+         * 有消费者准备睡眠;消费者先置true再检查cursor,生产者先推进cursor再读这个标记,两边至少有一方能看到对方
+         */
+        private final AtomicBoolean signalNeeded = new AtomicBoolean();
+
+        @Override
+        public long waitFor(long sequence, Sequence cursor, SequenceBarrier barrier) throws AlertException, InterruptedException {
+            long available = cursor.get();
+            if (available < sequence) {
+                lock.lock();
+                try {
+                    while (true) {
+                        signalNeeded.set(true);
+                        // 和signalAllWhenBlocking里的屏障配对,保证写标记和读cursor不重排
+                        VarHandle.fullFence();
+                        if ((available = cursor.get()) >= sequence) {
+                            break;
+                        }
+                        barrier.checkAlert();
+                        published.await();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAllWhenBlocking() {
+            // 发布(release写)之后再读标记,中间需要一次全屏障
+            VarHandle.fullFence();
+            if (signalNeeded.get() && signalNeeded.getAndSet(false)) {
+                lock.lock();
+                try {
+                    published.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
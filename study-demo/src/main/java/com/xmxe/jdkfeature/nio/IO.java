@@ -11,6 +11,8 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 
+import com.xmxe.util.FileCopier;
+
 public class IO {
     /**
      * 传统io操作读取文件
@@ -120,43 +122,18 @@ public class IO {
 
     /**
      * 复制文件
+     * 字节数组循环每块数据要在内核和用户态之间拷两次;FileCopier用FileChannel.transferTo在内核里完成,
+     * 大文件还会分段并行复制,中断后再调用从checkpoint继续
      */
     public void copyFile() {
         // 构建源文件
         File file = new File("E:" + File.separator + "HelloWorld.txt");
         // 构建目标文件
         File fileCopy = new File("D:" + File.separator + "HelloWorld");
-        InputStream in = null;
-        OutputStream out = null;
         try {
-            // 目标文件不存在就创建
-            if (!(fileCopy.exists())) {
-                fileCopy.createNewFile();
-            }
-            // 源文件创建输入流
-            in = new FileInputStream(file);
-            // 目标文件创建输出流
-            out = new FileOutputStream(fileCopy, true);
-            // 创建字节数组
-            byte[] temp = new byte[1024];
-            int length = 0;
-            // 源文件读取一部分内容
-            while ((length = in.read(temp)) != -1) {
-                // 目标文件写入一部分内容
-                out.write(temp, 0, length);
-            }
+            FileCopier.DEFAULT.copy(file.toPath(), fileCopy.toPath());
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            try {
-                // 关闭文件输入输出流
-                if (in != null)
-                    in.close();
-                if (out != null)
-                    out.close();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
         }
     }
 
@@ -0,0 +1,51 @@
+package com.xmxe.jdkfeature.nio.aio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 固定大小的直接内存缓冲区池
+ * AIO的回调可能在通道组里任意一个线程上执行,借和还不一定在同一个线程,所以用无锁队列而不是每线程一个池
+ */
+final class AioBufferPool {
+
+    private final int chunkSize;
+
+    private final int maxPooled;
+
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    AioBufferPool(int chunkSize, int maxPooled) {
+        this.chunkSize = chunkSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @return 写模式的空缓冲区
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(chunkSize);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        // 先占名额再入队,并发归还时池也不会超过maxPooled
+        if (pooled.incrementAndGet() <= maxPooled) {
+            free.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    int pooled() {
+        return pooled.get();
+    }
+}
@@ -0,0 +1,205 @@
+package com.xmxe.jdkfeature.nio.aio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xmxe.jdkfeature.nio.reactor.StaticFileHandler;
+
+/**
+ * 一个连接的状态机,同时是这个连接所有读写操作的回调:
+ * 读请求行 -> 打开文件 -> (读一块文件 -> 写到socket)* -> 回到读请求行
+ * 同一时刻只有一个操作在进行,前一个回调发起下一个操作,AIO保证发起和回调之间的happens-before,字段不需要volatile
+ */
+final class AioConnection implements CompletionHandler<Integer, AioConnection.Op> {
+
+    private static final Logger log = LoggerFactory.getLogger(AioConnection.class);
+
+    enum Op {
+        READ_REQUEST, READ_FILE, WRITE
+    }
+
+    private final AioServer server;
+
+    private final AsynchronousSocketChannel channel;
+
+    /**
+     * 请求行缓冲区,等待数据时是写模式,解析时是读模式
+     */
+    private final ByteBuffer in = ByteBuffer.allocate(AioServer.MAX_REQUEST_LINE);
+
+    /**
+     * 正在发送的响应,从池里借
+     */
+    private ByteBuffer out;
+
+    private AsynchronousFileChannel file;
+
+    private long filePosition;
+
+    private long fileSize;
+
+    private boolean closed;
+
+    AioConnection(AioServer server, AsynchronousSocketChannel channel) {
+        this.server = server;
+        this.channel = channel;
+    }
+
+    void start() {
+        channel.read(in, Op.READ_REQUEST, this);
+    }
+
+    @Override
+    public void completed(Integer n, Op op) {
+        switch (op) {
+            case READ_REQUEST:
+                if (n < 0) {
+                    close();
+                    return;
+                }
+                in.flip();
+                nextRequest();
+                break;
+            case READ_FILE:
+                if (n < 0) {
+                    // 文件在发送过程中被截短,已经发出去的长度对不上了,只能断开
+                    close();
+                    return;
+                }
+                filePosition += n;
+                out.flip();
+                channel.write(out, Op.WRITE, this);
+                break;
+            case WRITE:
+                if (out.hasRemaining()) {
+                    channel.write(out, Op.WRITE, this);
+                } else if (filePosition < fileSize) {
+                    out.clear();
+                    readFile();
+                } else {
+                    finishResponse();
+                    nextRequest();
+                }
+                break;
+            default:
+                throw new AssertionError(op);
+        }
+    }
+
+    @Override
+    public void failed(Throwable exc, Op op) {
+        if (!(exc instanceof IOException)) {
+            log.warn("{} failed", op, exc);
+        }
+        close();
+    }
+
+    /**
+     * in是读模式;有完整的请求行就开始响应,没有就接着读
+     */
+    private void nextRequest() {
+        int end = -1;
+        for (int i = in.position(); i < in.limit(); i++) {
+            if (in.get(i) == '\n') {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            if (in.remaining() == in.capacity()) {
+                log.warn("request line longer than {}, closing", in.capacity());
+                close();
+                return;
+            }
+            in.compact();
+            channel.read(in, Op.READ_REQUEST, this);
+            return;
+        }
+        int limit = in.limit();
+        in.limit(end);
+        String name = StandardCharsets.UTF_8.decode(in).toString().trim();
+        in.limit(limit).position(end + 1);
+        respond(name);
+    }
+
+    private void respond(String name) {
+        Path path = StaticFileHandler.resolve(server.root, name);
+        file = null;
+        fileSize = 0;
+        if (path != null && Files.isRegularFile(path)) {
+            try {
+                file = AsynchronousFileChannel.open(path, Collections.singleton(StandardOpenOption.READ), server.executor);
+                fileSize = file.size();
+            } catch (IOException e) {
+                // 刚被删掉或没有权限,按不存在处理
+                closeFile();
+            }
+        }
+        filePosition = 0;
+        out = server.pool.acquire();
+        out.putLong(file == null ? StaticFileHandler.NOT_FOUND : fileSize);
+        if (file != null && fileSize > 0) {
+            // 文件的第一块跟在长度后面一起发
+            readFile();
+        } else {
+            out.flip();
+            channel.write(out, Op.WRITE, this);
+        }
+    }
+
+    /**
+     * 从filePosition读一块文件追加到out;最多读到响应头声明的长度为止,文件在发送过程中变长时多出来的部分不能发出去
+     */
+    private void readFile() {
+        long remaining = fileSize - filePosition;
+        if (out.remaining() > remaining) {
+            out.limit(out.position() + (int) remaining);
+        }
+        file.read(out, filePosition, Op.READ_FILE, this);
+    }
+
+    private void finishResponse() {
+        closeFile();
+        if (out != null) {
+            server.pool.release(out);
+            out = null;
+        }
+    }
+
+    private void closeFile() {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            file = null;
+        }
+    }
+
+    private void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        server.connections.decrementAndGet();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        // 关闭时没有进行中的操作了,缓冲区可以安全归还
+        finishResponse();
+    }
+}
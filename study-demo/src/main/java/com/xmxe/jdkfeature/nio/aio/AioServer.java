@@ -0,0 +1,181 @@
+package com.xmxe.jdkfeature.nio.aio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.ShutdownChannelGroupException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于AsynchronousChannelGroup的静态文件服务,是SocketServer.aioServer的完整版本
+ * 1.通道组用固定大小的线程池,文件读取(AsynchronousFileChannel)用同一个线程池,回调都在这些线程上执行
+ * 2.回调对象复用:accept只有一个CompletionHandler实例;每个连接本身就是它的读写回调,用附件区分是哪种操作,
+ *   读写过程中不再new匿名CompletionHandler
+ * 3.请求行读进连接自己的小缓冲区(建立连接时分配一次,反复使用);发送文件的64K直接内存缓冲区从池里借,发完归还
+ * 4.协议和StaticFileHandler相同:每行一个相对于root的路径,响应是8字节长度(-1表示不存在)加文件内容
+ * AsynchronousSocketChannel不是WritableByteChannel,不能作为FileChannel.transferTo的目标,
+ * 文件内容要经过一次用户态缓冲区;需要零拷贝时用ReactorServer + StaticFileHandler
+ *
+ * 用法:
+ * AioServer server = new AioServer(8080, 4, Paths.get("/data/static"));
+ * server.start();
+ */
+public class AioServer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(AioServer.class);
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    static final int MAX_REQUEST_LINE = 1024;
+
+    /**
+     * accept失败(比如文件描述符耗尽)后等待多久再重试,立即重试会在错误消失前空转
+     */
+    static final long ACCEPT_RETRY_DELAY_MS = 100;
+
+    private final int port;
+
+    private final int threads;
+
+    final Path root;
+
+    final AioBufferPool pool = new AioBufferPool(CHUNK_SIZE, 256);
+
+    final AtomicInteger connections = new AtomicInteger();
+
+    ExecutorService executor;
+
+    private AsynchronousChannelGroup group;
+
+    /**
+     * 延迟重新发起accept,通道组的线程不能sleep
+     */
+    private ScheduledExecutorService acceptRetry;
+
+    private AsynchronousServerSocketChannel serverChannel;
+
+    private final Acceptor acceptor = new Acceptor();
+
+    /**
+     * @param port    0表示随机端口,启动后用getPort取得
+     * @param threads 通道组的线程数
+     * @param root    文件根目录,请求的路径不能越出这个目录
+     */
+    public AioServer(int port, int threads, Path root) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.port = port;
+        this.threads = threads;
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    public synchronized void start() throws IOException {
+        if (group != null) {
+            throw new IllegalStateException("already started");
+        }
+        AtomicInteger index = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> new Thread(r, "aio-worker-" + index.getAndIncrement()));
+        group = AsynchronousChannelGroup.withThreadPool(executor);
+        acceptRetry = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "aio-accept-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        serverChannel = AsynchronousServerSocketChannel.open(group);
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(port), 4096);
+        serverChannel.accept(null, acceptor);
+        log.info("aio server started on port {} with {} threads, root {}", getPort(), threads, root);
+    }
+
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            throw new IllegalStateException("server is closed", e);
+        }
+    }
+
+    /**
+     * 当前连接数
+     */
+    public int connections() {
+        return connections.get();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (group == null) {
+            return;
+        }
+        serverChannel.close();
+        acceptRetry.shutdownNow();
+        // 关闭通道组里所有连接并停止线程
+        group.shutdownNow();
+        try {
+            group.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 所有accept共用的回调
+     */
+    private final class Acceptor implements CompletionHandler<AsynchronousSocketChannel, Void> {
+
+        @Override
+        public void completed(AsynchronousSocketChannel channel, Void attachment) {
+            // 先发起下一次accept,再处理这个连接
+            serverChannel.accept(null, this);
+            try {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            } catch (IOException e) {
+                log.debug("set TCP_NODELAY failed", e);
+            }
+            connections.incrementAndGet();
+            new AioConnection(AioServer.this, channel).start();
+        }
+
+        @Override
+        public void failed(Throwable exc, Void attachment) {
+            if (exc instanceof AsynchronousCloseException || exc instanceof ClosedChannelException || !serverChannel.isOpen()) {
+                return;
+            }
+            // 文件描述符耗尽之类的错误,立即重试还是失败,等一会再继续accept
+            log.warn("accept failed, retry in {}ms", ACCEPT_RETRY_DELAY_MS, exc);
+            try {
+                acceptRetry.schedule(this::retry, ACCEPT_RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // 服务器已经关闭
+            }
+        }
+
+        private void retry() {
+            if (!serverChannel.isOpen()) {
+                return;
+            }
+            try {
+                serverChannel.accept(null, this);
+            } catch (ShutdownChannelGroupException e) {
+                // 两次检查之间服务器关闭了
+            }
+        }
+    }
+}
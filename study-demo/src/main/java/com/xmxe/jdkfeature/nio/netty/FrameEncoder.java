@@ -0,0 +1,28 @@
+package com.xmxe.jdkfeature.nio.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+/**
+ * 长度前缀帧的编码器:[长度int][内容]
+ * LengthFieldPrepender给每个帧输出长度和内容两个ByteBuf,出站缓冲区的条目和writev的iovec都翻倍;
+ * 这里把长度和内容拷进同一个池化的直接内存缓冲区,小帧拷贝的开销比多一个条目小
+ */
+@ChannelHandler.Sharable
+public class FrameEncoder extends MessageToByteEncoder<ByteBuf> {
+
+    public static final FrameEncoder INSTANCE = new FrameEncoder();
+
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, ByteBuf msg, boolean preferDirect) {
+        return ctx.alloc().ioBuffer(4 + msg.readableBytes());
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ByteBuf msg, ByteBuf out) {
+        out.writeInt(msg.readableBytes());
+        out.writeBytes(msg, msg.readerIndex(), msg.readableBytes());
+    }
+}
@@ -1,14 +1,19 @@
 package com.xmxe.jdkfeature.nio.netty;
 
+import java.util.function.Supplier;
+
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
@@ -56,6 +61,27 @@ public class NettyClient {
         }
     }
 
+    /**
+     * 连接NettyServer高吞吐模式的Bootstrap:和服务端相同的传输层、池化分配器、帧编解码和写缓冲水位
+     *
+     * @param handler 每个连接创建一个处理器,收到的是去掉长度前缀的帧
+     */
+    public static Bootstrap framedBootstrap(EventLoopGroup group, Supplier<? extends ChannelHandler> handler) {
+        return new Bootstrap().group(group)
+                .channel(NettyTransport.channelClass())
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                        new WriteBufferWaterMark(NettyServer.LOW_WATER_MARK, NettyServer.HIGH_WATER_MARK))
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    public void initChannel(SocketChannel ch) throws Exception {
+                        NettyServer.addFrameCodec(ch.pipeline());
+                        ch.pipeline().addLast(handler.get());
+                    }
+                });
+    }
+
     static class EchoClientHandler extends ChannelInboundHandlerAdapter {
 
         private final ByteBuf firstMessage;
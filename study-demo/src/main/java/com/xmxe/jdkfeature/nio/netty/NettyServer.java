@@ -1,35 +1,114 @@
 package com.xmxe.jdkfeature.nio.netty;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 
+/**
+ * Echo服务端,两种模式:
+ * 1.默认模式:NIO,收到什么原样写回,每次channelReadComplete时flush
+ * 2.高吞吐模式(framed=true):
+ *   a.有epoll本地库时用epoll,否则NIO,见NettyTransport
+ *   b.池化的直接内存ByteBuf,读写都不在堆上分配、不多拷贝一次
+ *   c.长度前缀的二进制帧:[长度int][内容],内容原样写回,第一个8字节可以当作请求id,所以也是最简单的RPC;编码见FrameEncoder
+ *   d.FlushConsolidationHandler把一次读循环里每个响应的flush合并成一次,读循环外最多攒256次flush再真正flush,减少write系统调用
+ *   e.写缓冲超过高水位时关闭autoRead不再读这个连接的请求,降到低水位以下再打开,客户端只发不收时服务端内存不会无限增长
+ * 压测见NettyLoadGenerator
+ */
 public class NettyServer {
 
+    /**
+     * 单个帧的最大长度,超过时关闭连接
+     */
+    static final int MAX_FRAME_LENGTH = 1 << 20;
+
+    static final int LOW_WATER_MARK = 32 * 1024;
+
+    static final int HIGH_WATER_MARK = 128 * 1024;
+
+    /**
+     * 读循环之外最多合并多少次flush
+     */
+    static final int EXPLICIT_FLUSH_AFTER_FLUSHES = 256;
+
     private final int port;
 
+    private final boolean framed;
+
+    private EventLoopGroup bossGroup;
+
+    private EventLoopGroup workerGroup;
+
+    private Channel channel;
+
     public NettyServer(int port) {
+        this(port, false);
+    }
+
+    /**
+     * @param framed 是否使用高吞吐模式
+     */
+    public NettyServer(int port, boolean framed) {
         this.port = port;
+        this.framed = framed;
     }
 
     /**
      * 启动服务端new NettyServer(9999).run();
      */
     public void run() throws Exception {
-        // Configure the server.
-        EventLoopGroup bossGroup = new NioEventLoopGroup();
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
+        start();
         try {
-            ServerBootstrap serverBootstrap = new ServerBootstrap();
+            // Wait until the server socket is closed.
+            channel.closeFuture().sync();
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * 绑定端口后返回,port为0时从返回的Channel.localAddress()取实际端口
+     */
+    public synchronized Channel start() throws InterruptedException {
+        ServerBootstrap serverBootstrap = new ServerBootstrap();
+        if (framed) {
+            bossGroup = NettyTransport.newEventLoopGroup(1, "netty-boss");
+            workerGroup = NettyTransport.newEventLoopGroup(0, "netty-worker");
+            serverBootstrap.group(bossGroup, workerGroup)
+                    .channel(NettyTransport.serverChannelClass())
+                    .option(ChannelOption.SO_BACKLOG, 1024)
+                    .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                    .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                            new WriteBufferWaterMark(LOW_WATER_MARK, HIGH_WATER_MARK))
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        public void initChannel(SocketChannel ch) throws Exception {
+                            addFrameCodec(ch.pipeline());
+                            ch.pipeline().addLast(FramedEchoHandler.INSTANCE);
+                        }
+                    });
+        } else {
+            // Configure the server.
+            bossGroup = new NioEventLoopGroup();
+            workerGroup = new NioEventLoopGroup();
             serverBootstrap.group(bossGroup, workerGroup)
                     .channel(NioServerSocketChannel.class)
                     .option(ChannelOption.SO_BACKLOG, 100)
@@ -42,18 +121,42 @@ public class NettyServer {
                                     new EchoServerHandler());
                         }
                     });
-
+        }
+        try {
             // Start the server.
             ChannelFuture channelFuture = serverBootstrap.bind(port).sync();
-            // Wait until the server socket is closed.
-            channelFuture.channel().closeFuture().sync();
-        } finally {
-            // Shut down all event loops to terminate all threads.
+            channel = channelFuture.channel();
+            return channel;
+        } catch (Throwable e) {
+            // 端口被占用等
+            stop();
+            throw e;
+        }
+    }
+
+    public synchronized void stop() {
+        if (channel != null) {
+            channel.close().syncUninterruptibly();
+            channel = null;
+        }
+        // Shut down all event loops to terminate all threads.
+        if (bossGroup != null) {
             bossGroup.shutdownGracefully();
             workerGroup.shutdownGracefully();
+            bossGroup = null;
+            workerGroup = null;
         }
     }
 
+    /**
+     * 高吞吐模式的帧编解码,客户端也用同一套,见NettyClient.framedBootstrap
+     */
+    static void addFrameCodec(ChannelPipeline pipeline) {
+        pipeline.addLast("flushConsolidation", new FlushConsolidationHandler(EXPLICIT_FLUSH_AFTER_FLUSHES, true));
+        pipeline.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 0, 4, 0, 4));
+        pipeline.addLast("frameEncoder", FrameEncoder.INSTANCE);
+    }
+
     static class EchoServerHandler extends ChannelInboundHandlerAdapter {
 
         @Override
@@ -73,4 +176,34 @@ public class NettyServer {
             ctx.close();
         }
     }
+
+    /**
+     * 每个帧原样写回并flush,和普通RPC处理器一样逐个响应flush,由FlushConsolidationHandler负责合并
+     */
+    @ChannelHandler.Sharable
+    static class FramedEchoHandler extends ChannelInboundHandlerAdapter {
+
+        static final FramedEchoHandler INSTANCE = new FramedEchoHandler();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            // 解码器给出的帧是接收缓冲区的retainedSlice,编码器拷进输出缓冲区后释放
+            ctx.writeAndFlush(msg, ctx.voidPromise());
+        }
+
+        /**
+         * 写缓冲超过高水位时停止读取,回到低水位以下再恢复
+         */
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+            ctx.channel().config().setAutoRead(ctx.channel().isWritable());
+            ctx.fireChannelWritabilityChanged();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            // 帧超长或连接被重置,关闭连接
+            ctx.close();
+        }
+    }
 }
@@ -0,0 +1,53 @@
+package com.xmxe.jdkfeature.nio.netty;
+
+import java.util.concurrent.ThreadFactory;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * 选择传输层实现:Linux上有epoll本地库时用Epoll,否则退回NIO
+ * epoll是边缘触发,直接调用epoll_wait,没有JDK Selector的selectedKeys集合和空轮询问题,每次读写少一些对象分配和系统调用
+ * -Dnetty.transport.native=false强制使用NIO;本地库在netty-transport-native-epoll的linux-x86_64/aarch64分类jar里
+ */
+public final class NettyTransport {
+
+    private static final boolean EPOLL = Boolean.parseBoolean(System.getProperty("netty.transport.native", "true"))
+            && Epoll.isAvailable();
+
+    private NettyTransport() {
+    }
+
+    public static boolean isEpoll() {
+        return EPOLL;
+    }
+
+    /**
+     * @param threads 0表示Netty默认的CPU数*2
+     */
+    public static EventLoopGroup newEventLoopGroup(int threads, String name) {
+        ThreadFactory threadFactory = new DefaultThreadFactory(name, true);
+        return EPOLL ? new EpollEventLoopGroup(threads, threadFactory) : new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    public static Class<? extends ServerChannel> serverChannelClass() {
+        return EPOLL ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public static Class<? extends SocketChannel> channelClass() {
+        return EPOLL ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    public static String name() {
+        return EPOLL ? "epoll" : "nio";
+    }
+}
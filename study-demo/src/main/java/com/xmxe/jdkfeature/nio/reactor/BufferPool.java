@@ -0,0 +1,56 @@
+package com.xmxe.jdkfeature.nio.reactor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * 固定大小的直接内存缓冲区池,每个worker一个,只在worker线程上使用,不需要同步
+ * 直接内存的分配和回收(Cleaner)都比堆内存贵得多,读写缓冲区都从这里借;
+ * 超过chunkSize的缓冲区(大帧)不入池,用完交给GC
+ */
+final class BufferPool {
+
+    private final int chunkSize;
+
+    private final int maxPooled;
+
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+    BufferPool(int chunkSize, int maxPooled) {
+        this.chunkSize = chunkSize;
+        this.maxPooled = maxPooled;
+    }
+
+    int chunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return 写模式的空缓冲区
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = free.pollLast();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(chunkSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    ByteBuffer acquire(int minCapacity) {
+        if (minCapacity <= chunkSize) {
+            return acquire();
+        }
+        return ByteBuffer.allocateDirect(Integer.highestOneBit(minCapacity - 1) << 1);
+    }
+
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() == chunkSize && free.size() < maxPooled) {
+            free.addLast(buffer);
+        }
+    }
+
+    int pooled() {
+        return free.size();
+    }
+}
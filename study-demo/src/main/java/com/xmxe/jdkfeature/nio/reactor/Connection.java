@@ -0,0 +1,250 @@
+package com.xmxe.jdkfeature.nio.reactor;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * 一个客户端连接,固定属于一个worker,所有方法(execute除外)只能在这个worker线程上调用
+ * 1.接收:平时直接读进worker共用的读缓冲区,只有读完还剩半个帧时才从池里借一个缓冲区挂在连接上,
+ *   一万个空闲连接不会各占一块接收缓冲区
+ * 2.发送:write把数据拷进池化缓冲区组成的队列,flush用一次gathering write(writev)把队列写出去;
+ *   没写完才打开OP_WRITE,写完就关掉,只改interestOps,不重新register
+ * 3.背压:待发送数据超过高水位时关闭OP_READ,不再读这个连接的请求,降到低水位以下再打开
+ * 4.文件:transferFile把文件区段排进同一个发送队列,轮到它时用transferTo发送(零拷贝),和前后write的数据保持顺序
+ */
+public final class Connection {
+
+    private final Worker worker;
+
+    private final SocketChannel channel;
+
+    private final SelectionKey key;
+
+    /**
+     * 挂在连接上的半个帧,读模式,没有时为null
+     */
+    ByteBuffer inbound;
+
+    /**
+     * 待发送的ByteBuffer(读模式)和FileRegion
+     */
+    private final ArrayDeque<Object> outbound = new ArrayDeque<>(4);
+
+    private long pendingBytes;
+
+    private int interestOps = SelectionKey.OP_READ;
+
+    private boolean readSuspended;
+
+    private boolean closed;
+
+    private Object attachment;
+
+    Connection(Worker worker, SocketChannel channel, SelectionKey key) {
+        this.worker = worker;
+        this.channel = channel;
+        this.key = key;
+    }
+
+    /**
+     * 把src的剩余内容拷进发送队列,src的position移到limit;真正发送在flush或这一轮读处理完之后
+     */
+    public void write(ByteBuffer src) {
+        checkInWorker();
+        if (closed) {
+            src.position(src.limit());
+            return;
+        }
+        pendingBytes += src.remaining();
+        BufferPool pool = worker.pool;
+        while (src.hasRemaining()) {
+            Object last = outbound.peekLast();
+            ByteBuffer tail = last instanceof ByteBuffer ? (ByteBuffer) last : null;
+            if (tail == null || tail.limit() == tail.capacity()) {
+                tail = pool.acquire();
+                tail.limit(0);
+                outbound.addLast(tail);
+            }
+            // 切到写模式追加,再切回读模式
+            int position = tail.position();
+            tail.position(tail.limit()).limit(tail.capacity());
+            int n = Math.min(tail.remaining(), src.remaining());
+            int srcLimit = src.limit();
+            src.limit(src.position() + n);
+            tail.put(src);
+            src.limit(srcLimit);
+            tail.limit(tail.position()).position(position);
+        }
+        checkHighWaterMark();
+    }
+
+    /**
+     * 把文件的[position, position+count)排进发送队列,用transferTo发送;文件归连接所有,发完或连接关闭时关闭
+     * 大文件会让待发送字节数超过高水位,发完之前不再读这个连接的后续请求
+     */
+    public void transferFile(FileChannel file, long position, long count) {
+        checkInWorker();
+        FileRegion region = new FileRegion(file, position, count);
+        if (closed || count <= 0) {
+            region.close();
+            return;
+        }
+        pendingBytes += count;
+        outbound.addLast(region);
+        checkHighWaterMark();
+    }
+
+    /**
+     * 尽量把发送队列写出去,socket缓冲区满时打开OP_WRITE等下次可写
+     */
+    public void flush() {
+        checkInWorker();
+        if (closed) {
+            return;
+        }
+        ByteBuffer[] gather = worker.gather;
+        try {
+            while (!outbound.isEmpty()) {
+                Object head = outbound.peekFirst();
+                if (head instanceof FileRegion) {
+                    FileRegion region = (FileRegion) head;
+                    pendingBytes -= region.transferTo(channel);
+                    if (!region.isDone()) {
+                        break;
+                    }
+                    outbound.pollFirst();
+                    region.close();
+                    continue;
+                }
+                // 连续的ByteBuffer一起gathering write,遇到FileRegion为止
+                int count = 0;
+                long expected = 0;
+                for (Object item : outbound) {
+                    if (!(item instanceof ByteBuffer)) {
+                        break;
+                    }
+                    ByteBuffer buffer = (ByteBuffer) item;
+                    gather[count++] = buffer;
+                    expected += buffer.remaining();
+                    if (count == gather.length) {
+                        break;
+                    }
+                }
+                long written = channel.write(gather, 0, count);
+                pendingBytes -= written;
+                Object first;
+                while ((first = outbound.peekFirst()) instanceof ByteBuffer && !((ByteBuffer) first).hasRemaining()) {
+                    worker.pool.release((ByteBuffer) outbound.pollFirst());
+                }
+                if (written < expected) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (readSuspended && pendingBytes < worker.lowWaterMark) {
+            readSuspended = false;
+        }
+        updateInterest();
+    }
+
+    /**
+     * 把任务放到这个连接的worker线程上执行,可以在任意线程调用
+     */
+    public void execute(Runnable task) {
+        worker.execute(task);
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * 待发送的字节数没超过高水位
+     */
+    public boolean isWritable() {
+        return pendingBytes <= worker.highWaterMark;
+    }
+
+    public SocketAddress remoteAddress() {
+        try {
+            return channel.getRemoteAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public Object attachment() {
+        return attachment;
+    }
+
+    public void attach(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    /**
+     * 立即关闭,没发完的数据丢弃
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        if (inbound != null) {
+            worker.pool.release(inbound);
+            inbound = null;
+        }
+        Object item;
+        while ((item = outbound.pollFirst()) != null) {
+            if (item instanceof ByteBuffer) {
+                worker.pool.release((ByteBuffer) item);
+            } else {
+                ((FileRegion) item).close();
+            }
+        }
+        pendingBytes = 0;
+        worker.closed(this);
+    }
+
+    SocketChannel channel() {
+        return channel;
+    }
+
+    boolean isReadSuspended() {
+        return readSuspended;
+    }
+
+    private void checkHighWaterMark() {
+        if (!readSuspended && pendingBytes > worker.highWaterMark) {
+            readSuspended = true;
+            updateInterest();
+        }
+    }
+
+    private void updateInterest() {
+        int ops = (readSuspended ? 0 : SelectionKey.OP_READ) | (outbound.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+        if (ops != interestOps && key.isValid()) {
+            interestOps = ops;
+            key.interestOps(ops);
+        }
+    }
+
+    private void checkInWorker() {
+        if (Thread.currentThread() != worker.thread) {
+            throw new IllegalStateException("must be called on the connection's worker thread, use execute()");
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.xmxe.jdkfeature.nio.reactor;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 发送队列里的一段文件,用FileChannel.transferTo发送,Linux上是sendfile,数据从页缓存直接进socket,不经过用户态缓冲区
+ * 发完或连接关闭时关闭文件
+ */
+final class FileRegion {
+
+    private final FileChannel file;
+
+    private long position;
+
+    private final long end;
+
+    FileRegion(FileChannel file, long position, long count) {
+        this.file = file;
+        this.position = position;
+        this.end = position + count;
+    }
+
+    /**
+     * 非阻塞socket写满时只发一部分,返回实际发送的字节数
+     */
+    long transferTo(WritableByteChannel target) throws IOException {
+        long n = file.transferTo(position, end - position, target);
+        if (n == 0 && position < end && position >= file.size()) {
+            // 发送过程中文件被截短,已经发出去的长度对不上了,只能断开
+            throw new IOException("file truncated while sending");
+        }
+        position += n;
+        return n;
+    }
+
+    boolean isDone() {
+        return position >= end;
+    }
+
+    void close() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.xmxe.jdkfeature.nio.reactor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 从接收缓冲区里切出一个完整的帧,只看数据不移动position,所以解码本身不分配对象、不拷贝
+ * 实现必须是无状态的,所有连接共用一个实例
+ */
+@FunctionalInterface
+public interface FrameDecoder {
+
+    /**
+     * @param buffer 读模式,position到limit是还没处理的数据,不能修改position和limit
+     * @return 下一个完整帧的字节数(包括帧头),数据不够一帧时返回0
+     * @throws IOException 帧不合法,连接会被关闭
+     */
+    int decode(ByteBuffer buffer) throws IOException;
+
+    /**
+     * [长度int(大端)][内容],交给处理器的帧包括4字节长度
+     */
+    static FrameDecoder lengthField(int maxFrameLength) {
+        return buffer -> {
+            if (buffer.remaining() < 4) {
+                return 0;
+            }
+            int length = buffer.getInt(buffer.position());
+            if (length < 0 || length > maxFrameLength) {
+                throw new IOException("frame length " + length + " out of range [0, " + maxFrameLength + "]");
+            }
+            return buffer.remaining() >= 4 + length ? 4 + length : 0;
+        };
+    }
+
+    /**
+     * 以\n结尾的一行,交给处理器的帧包括\n
+     */
+    static FrameDecoder line(int maxLineLength) {
+        return buffer -> {
+            int start = buffer.position();
+            int end = Math.min(buffer.limit(), start + maxLineLength + 1);
+            for (int i = start; i < end; i++) {
+                if (buffer.get(i) == '\n') {
+                    return i - start + 1;
+                }
+            }
+            if (buffer.remaining() > maxLineLength) {
+                throw new IOException("line longer than " + maxLineLength);
+            }
+            return 0;
+        };
+    }
+
+    /**
+     * 不切分,每次读到多少就是一帧
+     */
+    static FrameDecoder raw() {
+        return ByteBuffer::remaining;
+    }
+}
@@ -0,0 +1,26 @@
+package com.xmxe.jdkfeature.nio.reactor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 帧处理器,在连接所属的worker线程上调用,所有连接共用一个实例,每个连接自己的状态放在Connection.attach里
+ * onFrame里的frame只在调用期间有效,之后缓冲区会被复用,需要保留时要自己拷贝
+ * 处理耗时的请求时不能阻塞worker线程:交给别的线程池处理,完成后用Connection.execute回到worker线程写响应
+ */
+public interface FrameHandler {
+
+    void onFrame(Connection connection, ByteBuffer frame) throws Exception;
+
+    default void onOpen(Connection connection) throws Exception {
+    }
+
+    default void onClose(Connection connection) {
+    }
+
+    /**
+     * 原样写回
+     */
+    static FrameHandler echo() {
+        return Connection::write;
+    }
+}
@@ -0,0 +1,153 @@
+package com.xmxe.jdkfeature.nio.reactor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 主从Reactor(multi-reactor)模式的NIO服务端,是SocketServer.nioServer和NIO_Selector.ServerSelector的通用版本
+ * 1.一个boss线程阻塞accept,新连接按轮询固定分给N个worker,之后这个连接的所有读写都在同一个worker线程上,不需要加锁
+ * 2.每个worker一个Selector和一个直接内存缓冲区池;读写缓冲区从池里借,用完归还,见Connection
+ * 3.读写切换只改interestOps,发送用gathering write,一轮读事件里的多个响应合并成一次writev
+ * 4.帧的切分由FrameDecoder决定(长度前缀、按行、不切分),业务逻辑写在FrameHandler里,处理器拿到的是缓冲区上的视图,不new String
+ * 单selector的写法里accept、读、写都挤在一个线程,连接多了以后一个慢连接或者一次大写入就会拖慢所有连接
+ *
+ * 用法:
+ * ReactorServer server = new ReactorServer(8888, 4, FrameDecoder.lengthField(65536), FrameHandler.echo());
+ * server.start();
+ */
+public class ReactorServer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactorServer.class);
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private static final int MAX_BUFFER_SIZE = 16 * 1024 * 1024;
+
+    private static final int LOW_WATER_MARK = 32 * 1024;
+
+    private static final int HIGH_WATER_MARK = 128 * 1024;
+
+    private final int port;
+
+    private final Worker[] workers;
+
+    private ServerSocketChannel serverChannel;
+
+    private Thread boss;
+
+    private int next;
+
+    private boolean closed;
+
+    /**
+     * @param port        0表示随机端口,启动后用getPort取得
+     * @param workerCount worker线程数,一般等于CPU核数
+     */
+    public ReactorServer(int port, int workerCount, FrameDecoder decoder, FrameHandler handler) throws IOException {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("workerCount must be positive");
+        }
+        this.port = port;
+        this.workers = new Worker[workerCount];
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                workers[i] = new Worker("reactor-worker-" + i, decoder, handler, CHUNK_SIZE, MAX_BUFFER_SIZE,
+                        LOW_WATER_MARK, HIGH_WATER_MARK);
+            }
+        } catch (IOException e) {
+            closeWorkerSelectors();
+            throw e;
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        if (serverChannel != null || closed) {
+            throw new IllegalStateException(closed ? "closed" : "already started");
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(port), 4096);
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+        boss = new Thread(this::accept, "reactor-boss");
+        boss.start();
+        log.info("reactor server started on port {} with {} workers", getPort(), workers.length);
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * 当前连接数
+     */
+    public int connections() {
+        int total = 0;
+        for (Worker worker : workers) {
+            total += worker.connections();
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (serverChannel == null) {
+            // 没有start过,worker线程不会运行,Selector只能在这里关
+            closeWorkerSelectors();
+            return;
+        }
+        serverChannel.close();
+        for (Worker worker : workers) {
+            worker.shutdown();
+        }
+        try {
+            boss.join();
+            for (Worker worker : workers) {
+                worker.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeWorkerSelectors() {
+        for (Worker worker : workers) {
+            if (worker != null) {
+                worker.closeSelector();
+            }
+        }
+    }
+
+    private void accept() {
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                workers[next].register(channel);
+                next = next + 1 == workers.length ? 0 : next + 1;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                // 文件描述符耗尽等,稍等再继续accept
+                log.warn("accept failed", e);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.xmxe.jdkfeature.nio.reactor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 静态文件服务,配合FrameDecoder.line使用:每行是一个相对于root的文件路径,
+ * 响应是8字节的文件长度(文件不存在或路径越出root时为-1)加文件内容,文件内容用Connection.transferFile零拷贝发送
+ * 同一连接上可以连续发多个请求,响应按请求顺序返回
+ *
+ * 用法:
+ * new ReactorServer(8080, 4, FrameDecoder.line(1024), new StaticFileHandler(Paths.get("/data/static")));
+ */
+public class StaticFileHandler implements FrameHandler {
+
+    /**
+     * 文件不存在时响应头里的长度
+     */
+    public static final long NOT_FOUND = -1;
+
+    private final Path root;
+
+    public StaticFileHandler(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void onFrame(Connection connection, ByteBuffer frame) throws Exception {
+        String name = StandardCharsets.UTF_8.decode(frame).toString().trim();
+        Path file = resolve(root, name);
+        FileChannel channel = null;
+        if (file != null && Files.isRegularFile(file)) {
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.READ);
+            } catch (IOException e) {
+                // 刚被删掉或没有权限,按不存在处理
+            }
+        }
+        ByteBuffer header = ByteBuffer.allocate(8);
+        if (channel == null) {
+            connection.write(header.putLong(0, NOT_FOUND));
+            return;
+        }
+        long size;
+        try {
+            size = channel.size();
+        } catch (IOException e) {
+            // 交给transferFile之前文件还归这里所有
+            channel.close();
+            throw e;
+        }
+        connection.write(header.putLong(0, size));
+        connection.transferFile(channel, 0, size);
+    }
+
+    /**
+     * 把请求里的路径解析到root下(root要求是normalize过的绝对路径),空路径、非法路径和越出root的路径(如../)返回null
+     */
+    public static Path resolve(Path root, String name) {
+        if (name.isEmpty()) {
+            return null;
+        }
+        try {
+            Path path = root.resolve(name).normalize();
+            return path.startsWith(root) && !path.equals(root) ? path : null;
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+}
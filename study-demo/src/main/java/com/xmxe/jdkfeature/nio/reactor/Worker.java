@@ -0,0 +1,309 @@
+package com.xmxe.jdkfeature.nio.reactor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 从属Reactor:一个线程一个Selector,负责分到自己名下的连接的全部读写
+ * 其他线程交给它的事情(新连接注册、Connection.execute)放进任务队列,需要时才wakeup,不在别的线程上调用register
+ */
+final class Worker implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(Worker.class);
+
+    /**
+     * 一次可读事件最多连续read的次数,避免一个大流量连接饿死同一worker上的其他连接
+     */
+    private static final int MAX_READS_PER_EVENT = 16;
+
+    final Thread thread;
+
+    final BufferPool pool;
+
+    /**
+     * gathering write一次最多写的缓冲区数
+     */
+    final ByteBuffer[] gather = new ByteBuffer[64];
+
+    final int lowWaterMark;
+
+    final int highWaterMark;
+
+    private final Selector selector;
+
+    private final FrameDecoder decoder;
+
+    private final FrameHandler handler;
+
+    private final int maxBufferSize;
+
+    /**
+     * 所有连接共用的读缓冲区,写模式
+     */
+    private final ByteBuffer readBuffer;
+
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean wakenUp = new AtomicBoolean();
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private volatile boolean running = true;
+
+    Worker(String name, FrameDecoder decoder, FrameHandler handler, int chunkSize, int maxBufferSize, int lowWaterMark,
+            int highWaterMark) throws IOException {
+        this.selector = Selector.open();
+        this.decoder = decoder;
+        this.handler = handler;
+        this.pool = new BufferPool(chunkSize, 1024);
+        this.readBuffer = ByteBuffer.allocateDirect(chunkSize);
+        this.maxBufferSize = maxBufferSize;
+        this.lowWaterMark = lowWaterMark;
+        this.highWaterMark = highWaterMark;
+        this.thread = new Thread(this, name);
+    }
+
+    void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                Connection connection = new Connection(this, channel, key);
+                key.attach(connection);
+                connections.incrementAndGet();
+                try {
+                    handler.onOpen(connection);
+                } catch (Exception e) {
+                    log.warn("onOpen failed, closing {}", connection.remoteAddress(), e);
+                    connection.close();
+                }
+            } catch (IOException e) {
+                log.warn("register failed", e);
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // ignore
+                }
+            }
+        });
+    }
+
+    void execute(Runnable task) {
+        tasks.offer(task);
+        if (Thread.currentThread() != thread && wakenUp.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    int connections() {
+        return connections.get();
+    }
+
+    void closed(Connection connection) {
+        connections.decrementAndGet();
+        try {
+            handler.onClose(connection);
+        } catch (RuntimeException e) {
+            log.warn("onClose failed", e);
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * 线程启动后Selector由run结束时关闭,这里只用于线程从未启动的情况
+     */
+    void closeSelector() {
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                wakenUp.set(false);
+                // 有任务时不阻塞;先清标志再检查队列,之后入队的任务一定会wakeup
+                if (tasks.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+                processSelectedKeys();
+                runTasks();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            log.error("worker selector failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Set<SelectionKey> selected = selector.selectedKeys();
+        if (selected.isEmpty()) {
+            return;
+        }
+        Iterator<SelectionKey> iterator = selected.iterator();
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+            Connection connection = (Connection) key.attachment();
+            if (!key.isValid()) {
+                connection.close();
+                continue;
+            }
+            int ready = key.readyOps();
+            if ((ready & SelectionKey.OP_WRITE) != 0) {
+                connection.flush();
+            }
+            if ((ready & SelectionKey.OP_READ) != 0 && connection.isOpen()) {
+                read(connection);
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                log.warn("worker task failed", e);
+            }
+        }
+    }
+
+    /**
+     * 读、切帧、交给处理器,最后统一flush一次,同一轮里的多个响应合并成一次writev
+     */
+    private void read(Connection connection) {
+        ByteBuffer buffer = connection.inbound != null ? prepareForRead(connection.inbound) : readBuffer.clear();
+        try {
+            for (int reads = 0; reads < MAX_READS_PER_EVENT && !connection.isReadSuspended(); reads++) {
+                int space = buffer.remaining();
+                int n = connection.channel().read(buffer);
+                if (n < 0) {
+                    connection.close();
+                    return;
+                }
+                if (n == 0) {
+                    break;
+                }
+                buffer.flip();
+                decode(connection, buffer);
+                if (!connection.isOpen()) {
+                    return;
+                }
+                buffer = keepRemainder(connection, buffer);
+                if (n < space) {
+                    // 没读满说明socket里已经没有数据了,省掉一次返回0的read
+                    break;
+                }
+            }
+            if (connection.inbound != null) {
+                // 挂在连接上的缓冲区保持读模式
+                connection.inbound.flip();
+            }
+        } catch (IOException e) {
+            connection.close();
+            return;
+        }
+        connection.flush();
+    }
+
+    private void decode(Connection connection, ByteBuffer buffer) throws IOException {
+        int limit = buffer.limit();
+        while (buffer.hasRemaining()) {
+            int length = decoder.decode(buffer);
+            if (length <= 0) {
+                break;
+            }
+            int end = buffer.position() + length;
+            buffer.limit(end);
+            try {
+                handler.onFrame(connection, buffer);
+            } catch (Exception e) {
+                log.warn("onFrame failed, closing {}", connection.remoteAddress(), e);
+                connection.close();
+                return;
+            } finally {
+                buffer.limit(limit).position(end);
+            }
+            if (!connection.isOpen()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * buffer是读模式,处理完后剩下的半个帧挂到连接上;返回写模式的缓冲区供下一次read
+     */
+    private ByteBuffer keepRemainder(Connection connection, ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            if (buffer != readBuffer) {
+                pool.release(buffer);
+                connection.inbound = null;
+            }
+            readBuffer.clear();
+            return readBuffer;
+        }
+        if (buffer == readBuffer) {
+            ByteBuffer own = pool.acquire();
+            own.put(buffer);
+            readBuffer.clear();
+            connection.inbound = own;
+            buffer = own;
+        } else {
+            buffer.compact();
+        }
+        if (!buffer.hasRemaining()) {
+            // 一个帧比缓冲区还大,扩容
+            if (buffer.capacity() >= maxBufferSize) {
+                throw new IOException("frame larger than " + maxBufferSize);
+            }
+            ByteBuffer bigger = pool.acquire(buffer.capacity() * 2);
+            buffer.flip();
+            bigger.put(buffer);
+            pool.release(buffer);
+            connection.inbound = bigger;
+            buffer = bigger;
+        }
+        return buffer;
+    }
+
+    /**
+     * 把连接上读模式的半个帧切换成写模式,接着往后读
+     */
+    private static ByteBuffer prepareForRead(ByteBuffer inbound) {
+        inbound.position(inbound.limit()).limit(inbound.capacity());
+        return inbound;
+    }
+}
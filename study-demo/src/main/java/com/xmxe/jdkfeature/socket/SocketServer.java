@@ -21,11 +21,17 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.Iterator;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import com.xmxe.jdkfeature.nio.aio.AioServer;
+import com.xmxe.jdkfeature.nio.reactor.FrameDecoder;
+import com.xmxe.jdkfeature.nio.reactor.ReactorServer;
+
 public class SocketServer {
 
 	public static void main(String[] args) throws Exception {
@@ -44,8 +50,12 @@ public class SocketServer {
 		bioServer();
 		// NIO
 		nioServer();
+		// 多Reactor
+		reactorServer();
 		// AIO
 		aioServer();
+		// AIO静态文件服务
+		aioFileServer();
 	}
 
 	/**
@@ -433,6 +443,23 @@ public class SocketServer {
 	}
 
 
+	/**
+	 * nioServer的多Reactor版本:1个boss线程accept,连接轮流分给CPU数个worker,每个worker一个selector
+	 * 按行拆包,同一连接上粘在一起或被拆开的消息都能正确处理,读写切换只改interestOps不重新register
+	 */
+	public static void reactorServer() throws Exception {
+		try (ReactorServer server = new ReactorServer(8888, Runtime.getRuntime().availableProcessors(),
+				FrameDecoder.line(1024), (connection, frame) -> {
+					String message = StandardCharsets.UTF_8.decode(frame).toString().trim();
+					System.out.println("收到客户端消息：" + message);
+					connection.write(ByteBuffer.wrap("你好，坤坤！\n".getBytes(StandardCharsets.UTF_8)));
+				})) {
+			server.start();
+			System.out.println("===========Reactor服务端启动============");
+			Thread.currentThread().join();
+		}
+	}
+
 	public static void aioServer() throws Exception {
 		// 创建异步通道组，处理IO事件
         AsynchronousChannelGroup group = AsynchronousChannelGroup.withFixedThreadPool(10, Executors.defaultThreadFactory());
@@ -509,4 +536,16 @@ public class SocketServer {
         // 等待所有连接都处理完毕
         group.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
 	}
+
+	/**
+	 * aioServer的完整版本:回调对象复用,缓冲区池化,按行请求当前目录下的文件
+	 * 文件内容要零拷贝(transferTo)发送时用ReactorServer + StaticFileHandler
+	 */
+	public static void aioFileServer() throws Exception {
+		try (AioServer server = new AioServer(8888, Runtime.getRuntime().availableProcessors(), Paths.get("."))) {
+			server.start();
+			System.out.println("=============AIO文件服务端启动=========");
+			Thread.currentThread().join();
+		}
+	}
 }
@@ -14,6 +14,8 @@ import org.apache.commons.collections4.CollectionUtils;
 
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.xmxe.jdkfeature.thread.monitor.ExecutorRegistry;
+import com.xmxe.jdkfeature.thread.monitor.InstrumentedExecutor;
 
 import lombok.Data;
 
@@ -27,9 +29,9 @@ public class TaskProcessUtil {
     // 每个任务,都有自己单独的线程池
     private static Map<String, ExecutorService> executors = new ConcurrentHashMap<>();
 
-    // 初始化一个线程池
+    // 初始化一个线程池,带排队/执行时间统计和慢任务抓栈,运行情况见ExecutorRegistry.dump()或jconsole
     private static ExecutorService init(String poolName, int poolSize) {
-        return new ThreadPoolExecutor(poolSize, poolSize,
+        return InstrumentedExecutor.create(poolName, poolSize, poolSize,
                 0L, TimeUnit.MILLISECONDS,
                 new LinkedBlockingQueue<Runnable>(),
                 new ThreadFactoryBuilder().setNameFormat("Pool-" + poolName).setDaemon(false).build(),
@@ -51,6 +53,11 @@ public class TaskProcessUtil {
         return executorService;
     }
 
+    // 所有线程池的运行情况
+    public static String dump() {
+        return ExecutorRegistry.dump();
+    }
+
     // 回收线程资源
     public static void releaseExecutors(String poolName) {
         ExecutorService executorService = executors.remove(poolName);
@@ -192,6 +199,7 @@ class LoopTask {
         LoopTask loopTask = new LoopTask();
         loopTask.initLoopTask();
         Thread.sleep(5000L);
+        System.out.println(TaskProcessUtil.dump());
         loopTask.shutdownLoopTask();
     }
 }
\ No newline at end of file
@@ -0,0 +1,202 @@
+package com.xmxe.jdkfeature.thread.dynamic_threadpool;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DynamicThreadPool的自动调整,每个采样窗口执行一次:
+ * 1.过载(有拒绝或p99排队延迟超过目标):核心线程数加一个固定步长(加性增)
+ *   如果上一次加了线程吞吐却没有提升5%以上,说明瓶颈不在线程数(CPU已满、下游限流),撤销上一步并在5个窗口内不再加
+ * 2.连续5个窗口空闲(p99排队延迟低于目标的1/4且活跃线程不到一半):核心线程数减少1/4(乘性减),
+ *   要求连续空闲是为了周期性突发的间隙里不把线程减掉,下一次突发又要重新加
+ * 3.最大线程数 = 核心线程数*2,队列满时多出的线程吸收突发流量,空闲后按keepAlive回收
+ * 4.队列容量按Little定律:在目标延迟内能处理完的任务数 = 目标延迟 * 核心线程数 / 平均执行时间,
+ *   队列再长只会让排在后面的任务超时,不如直接拒绝
+ */
+public final class AutoTuner {
+
+    private static final Logger log = LoggerFactory.getLogger(AutoTuner.class);
+
+    private static final double MIN_GAIN = 1.05;
+
+    private static final int BLOCKED_WINDOWS = 5;
+
+    private static final int IDLE_WINDOWS = 5;
+
+    private final DynamicThreadPool pool;
+
+    private final int minThreads;
+
+    private final int maxThreads;
+
+    private final int minQueueCapacity;
+
+    private final int maxQueueCapacity;
+
+    private final long targetQueueDelayNanos;
+
+    private final int step;
+
+    private long lastTick;
+
+    private long lastCompleted;
+
+    private long lastRejected;
+
+    private long lastExecutionNanos;
+
+    private long[] lastHistogram;
+
+    private double lastThroughput;
+
+    private int lastCore;
+
+    private boolean grew;
+
+    private int growthBlocked;
+
+    private int idleWindows;
+
+    AutoTuner(DynamicThreadPool pool, int minThreads, int maxThreads, int minQueueCapacity, int maxQueueCapacity,
+            long targetQueueDelayNanos) {
+        if (minThreads <= 0 || maxThreads < minThreads) {
+            throw new IllegalArgumentException("require 0 < minThreads <= maxThreads");
+        }
+        if (minQueueCapacity <= 0 || maxQueueCapacity < minQueueCapacity) {
+            throw new IllegalArgumentException("require 0 < minQueueCapacity <= maxQueueCapacity");
+        }
+        if (targetQueueDelayNanos <= 0) {
+            throw new IllegalArgumentException("targetQueueDelay must be positive");
+        }
+        this.pool = pool;
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.minQueueCapacity = minQueueCapacity;
+        this.maxQueueCapacity = maxQueueCapacity;
+        this.targetQueueDelayNanos = targetQueueDelayNanos;
+        this.step = Math.max(1, (maxThreads - minThreads) / 8);
+        // 第一个窗口从现在开始
+        sample(System.nanoTime());
+    }
+
+    void tick() {
+        try {
+            Window window = sample(System.nanoTime());
+            pool.setRecentWindow(window);
+            if (pool.isAutoTuning()) {
+                adjust(window, pool.getThreadPoolExecutor().getActiveCount());
+            }
+        } catch (RuntimeException e) {
+            // 异常会让scheduleAtFixedRate停止后续执行
+            log.warn("线程池自动调整失败", e);
+        }
+    }
+
+    Window sample(long now) {
+        long completed = pool.getCompletedTaskCount();
+        long rejected = pool.getRejectedCount();
+        long executionNanos = pool.getTotalExecutionNanos();
+        LatencyHistogram queueDelay = pool.getQueueDelayHistogram();
+        long[] histogram = queueDelay.snapshot();
+        long elapsed = Math.max(1, now - lastTick);
+        long done = completed - lastCompleted;
+        Window window = new Window(done * 1e9 / elapsed, rejected - lastRejected, lastHistogram == null ? 0
+                : queueDelay.percentile(LatencyHistogram.minus(histogram, lastHistogram), 0.99),
+                done == 0 ? 0 : (executionNanos - lastExecutionNanos) / done);
+        lastTick = now;
+        lastCompleted = completed;
+        lastRejected = rejected;
+        lastExecutionNanos = executionNanos;
+        lastHistogram = histogram;
+        return window;
+    }
+
+    void adjust(Window window, int active) {
+        ThreadPoolExecutor executor = pool.getThreadPoolExecutor();
+        int core = executor.getCorePoolSize();
+        boolean overloaded = window.rejected > 0 || window.queueDelayP99Nanos > targetQueueDelayNanos;
+        boolean idle = !overloaded && window.queueDelayP99Nanos <= targetQueueDelayNanos / 4 && active * 2 < core;
+        int next = core;
+        if (growthBlocked > 0) {
+            growthBlocked--;
+        }
+        if (overloaded) {
+            if (grew && window.throughput < lastThroughput * MIN_GAIN) {
+                // 加线程没有带来吞吐提升,退回去
+                next = lastCore;
+                growthBlocked = BLOCKED_WINDOWS;
+            } else if (growthBlocked == 0) {
+                next = core + step;
+            }
+        } else if (idle && ++idleWindows >= IDLE_WINDOWS) {
+            next = core - Math.max(1, core / 4);
+        }
+        if (!idle) {
+            idleWindows = 0;
+        }
+        next = Math.max(minThreads, Math.min(maxThreads, next));
+        grew = next > core;
+        lastCore = core;
+        lastThroughput = window.throughput;
+        if (next != core || executor.getMaximumPoolSize() != Math.min(maxThreads, next * 2)) {
+            pool.resize(next, Math.min(maxThreads, next * 2));
+        }
+        if (pool.isQueueResizable() && window.avgExecutionNanos > 0) {
+            long capacity = targetQueueDelayNanos * next / window.avgExecutionNanos;
+            pool.setQueueCapacity((int) Math.max(minQueueCapacity, Math.min(maxQueueCapacity, capacity)));
+        }
+        if (next != core) {
+            log.debug("线程池核心线程数 {} -> {}, {}", core, next, window);
+        }
+    }
+
+    /**
+     * 一个采样窗口的统计
+     */
+    public static final class Window {
+
+        static final Window EMPTY = new Window(0, 0, 0, 0);
+
+        private final double throughput;
+
+        private final long rejected;
+
+        private final long queueDelayP99Nanos;
+
+        private final long avgExecutionNanos;
+
+        Window(double throughput, long rejected, long queueDelayP99Nanos, long avgExecutionNanos) {
+            this.throughput = throughput;
+            this.rejected = rejected;
+            this.queueDelayP99Nanos = queueDelayP99Nanos;
+            this.avgExecutionNanos = avgExecutionNanos;
+        }
+
+        /**
+         * 每秒完成的任务数
+         */
+        public double getThroughput() {
+            return throughput;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getQueueDelayP99Nanos() {
+            return queueDelayP99Nanos;
+        }
+
+        public long getAvgExecutionNanos() {
+            return avgExecutionNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("throughput=%.1f/s, rejected=%d, queueP99=%.2fms, avgExec=%.2fms", throughput,
+                    rejected, queueDelayP99Nanos / 1e6, avgExecutionNanos / 1e6);
+        }
+    }
+}
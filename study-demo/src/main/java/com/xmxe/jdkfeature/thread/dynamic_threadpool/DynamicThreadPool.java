@@ -1,25 +1,264 @@
 package com.xmxe.jdkfeature.thread.dynamic_threadpool;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * 可以在运行时调整参数的线程池
+ * 1.手动调整:通过DynamicThreadPoolMBean在jconsole中修改核心线程数、最大线程数、队列容量
+ * 2.自动调整:startAutoTuning后按固定间隔采样排队延迟、执行时间、完成速率、拒绝数,由AutoTuner在给定范围内调整
+ * 3.每个任务包装一次,记录提交到开始执行的排队时间和执行时间,队列容量可调需要使用ResizableBlockingQueue
+ */
 public class DynamicThreadPool {
-    private ThreadPoolExecutor threadPoolExecutor;
+
+    private final ThreadPoolExecutor threadPoolExecutor;
+
+    private final LongAdder completed = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder queueNanos = new LongAdder();
+
+    private final LongAdder executionNanos = new LongAdder();
+
+    private final LatencyHistogram queueDelay = new LatencyHistogram();
+
+    private volatile boolean autoTuning;
+
+    private volatile AutoTuner.Window recent = AutoTuner.Window.EMPTY;
+
+    private ScheduledExecutorService tuner;
 
     public DynamicThreadPool(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue) {
-        threadPoolExecutor = new ThreadPoolExecutor(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public DynamicThreadPool(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+            BlockingQueue<Runnable> workQueue, RejectedExecutionHandler handler) {
+        threadPoolExecutor = new TimingExecutor(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue,
+                (r, executor) -> {
+                    rejected.increment();
+                    handler.rejectedExecution(unwrap(r), executor);
+                });
     }
 
     public ThreadPoolExecutor getThreadPoolExecutor() {
         return threadPoolExecutor;
     }
 
+    /**
+     * 核心线程数大于当前最大线程数时同时调大最大线程数
+     */
     public void setCorePoolSize(int corePoolSize) {
-        threadPoolExecutor.setCorePoolSize(corePoolSize);
+        resize(corePoolSize, Math.max(corePoolSize, threadPoolExecutor.getMaximumPoolSize()));
     }
 
     public void setMaximumPoolSize(int maximumPoolSize) {
         threadPoolExecutor.setMaximumPoolSize(maximumPoolSize);
     }
+
+    /**
+     * 同时修改核心线程数和最大线程数,按不违反core<=max的顺序设置
+     */
+    public synchronized void resize(int corePoolSize, int maximumPoolSize) {
+        if (corePoolSize > maximumPoolSize) {
+            throw new IllegalArgumentException("corePoolSize > maximumPoolSize");
+        }
+        if (maximumPoolSize >= threadPoolExecutor.getCorePoolSize()) {
+            threadPoolExecutor.setMaximumPoolSize(maximumPoolSize);
+            threadPoolExecutor.setCorePoolSize(corePoolSize);
+        } else {
+            threadPoolExecutor.setCorePoolSize(corePoolSize);
+            threadPoolExecutor.setMaximumPoolSize(maximumPoolSize);
+        }
+    }
+
+    /**
+     * @return 队列容量,不是ResizableBlockingQueue时返回当前 已用+剩余
+     */
+    public int getQueueCapacity() {
+        BlockingQueue<Runnable> queue = threadPoolExecutor.getQueue();
+        if (queue instanceof ResizableBlockingQueue) {
+            return ((ResizableBlockingQueue<Runnable>) queue).getCapacity();
+        }
+        long capacity = (long) queue.size() + queue.remainingCapacity();
+        return (int) Math.min(Integer.MAX_VALUE, capacity);
+    }
+
+    public boolean isQueueResizable() {
+        return threadPoolExecutor.getQueue() instanceof ResizableBlockingQueue;
+    }
+
+    public void setQueueCapacity(int capacity) {
+        BlockingQueue<Runnable> queue = threadPoolExecutor.getQueue();
+        if (!(queue instanceof ResizableBlockingQueue)) {
+            throw new UnsupportedOperationException("queue capacity is fixed: " + queue.getClass().getName());
+        }
+        ((ResizableBlockingQueue<Runnable>) queue).setCapacity(capacity);
+    }
+
+    /**
+     * 开始自动调整,每秒采样一次
+     *
+     * @param targetQueueDelay 期望的p99排队延迟
+     */
+    public void startAutoTuning(int minThreads, int maxThreads, int minQueueCapacity, int maxQueueCapacity,
+            long targetQueueDelay, TimeUnit unit) {
+        startAutoTuning(new AutoTuner(this, minThreads, maxThreads, minQueueCapacity, maxQueueCapacity,
+                unit.toNanos(targetQueueDelay)), 1000);
+    }
+
+    synchronized void startAutoTuning(AutoTuner autoTuner, long intervalMillis) {
+        if (threadPoolExecutor.isShutdown()) {
+            throw new IllegalStateException("pool is shut down");
+        }
+        stopAutoTuning();
+        tuner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dynamic-pool-tuner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        autoTuning = true;
+        tuner.scheduleAtFixedRate(autoTuner::tick, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopAutoTuning() {
+        autoTuning = false;
+        if (tuner != null) {
+            tuner.shutdownNow();
+            tuner = null;
+        }
+    }
+
+    /**
+     * 采样继续进行,只暂停或恢复调整;没有调过startAutoTuning、已经stopAutoTuning或线程池已关闭时没有采样线程,
+     * 不能恢复
+     */
+    public synchronized void setAutoTuning(boolean autoTuning) {
+        if (autoTuning && (tuner == null || threadPoolExecutor.isShutdown())) {
+            throw new IllegalStateException("auto tuning is not started or pool is shut down");
+        }
+        this.autoTuning = autoTuning;
+    }
+
+    public boolean isAutoTuning() {
+        return autoTuning;
+    }
+
+    public void shutdown() {
+        stopAutoTuning();
+        threadPoolExecutor.shutdown();
+    }
+
+    public long getCompletedTaskCount() {
+        return completed.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getTotalQueueNanos() {
+        return queueNanos.sum();
+    }
+
+    public long getTotalExecutionNanos() {
+        return executionNanos.sum();
+    }
+
+    public LatencyHistogram getQueueDelayHistogram() {
+        return queueDelay;
+    }
+
+    /**
+     * 最近一个采样窗口的统计,没有开启自动调整时为空
+     */
+    public AutoTuner.Window getRecentWindow() {
+        return recent;
+    }
+
+    void setRecentWindow(AutoTuner.Window window) {
+        this.recent = window;
+    }
+
+    /**
+     * 包装任务记录排队时间和执行时间,submit提交的FutureTask也会经过execute
+     * remove、shutdownNow和拒绝策略拿到的都是调用方提交的原始任务;getQueue()里仍然是包装后的任务
+     */
+    private final class TimingExecutor extends ThreadPoolExecutor {
+
+        TimingExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                BlockingQueue<Runnable> workQueue, RejectedExecutionHandler handler) {
+            super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, handler);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (command == null) {
+                throw new NullPointerException();
+            }
+            super.execute(new TimedTask(command));
+        }
+
+        @Override
+        public boolean remove(Runnable task) {
+            for (Runnable queued : getQueue()) {
+                if (queued == task || queued instanceof TimedTask && ((TimedTask) queued).task == task) {
+                    return super.remove(queued);
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            List<Runnable> pending = super.shutdownNow();
+            List<Runnable> tasks = new ArrayList<>(pending.size());
+            for (Runnable r : pending) {
+                tasks.add(unwrap(r));
+            }
+            return tasks;
+        }
+    }
+
+    private static Runnable unwrap(Runnable r) {
+        return r instanceof TimedTask ? ((TimedTask) r).task : r;
+    }
+
+    private final class TimedTask implements Runnable {
+
+        private final Runnable task;
+
+        private final long enqueuedAt = System.nanoTime();
+
+        TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            long waited = start - enqueuedAt;
+            queueNanos.add(waited);
+            queueDelay.record(waited);
+            try {
+                task.run();
+            } finally {
+                executionNanos.add(System.nanoTime() - start);
+                completed.increment();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+    }
 }
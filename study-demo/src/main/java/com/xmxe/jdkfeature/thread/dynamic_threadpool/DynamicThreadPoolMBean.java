@@ -11,15 +11,22 @@ public class DynamicThreadPoolMBean extends StandardMBean implements DynamicThre
     private DynamicThreadPool dynamicThreadPool;
 
     public DynamicThreadPoolMBean(DynamicThreadPool dynamicThreadPool) throws Exception {
+        this(dynamicThreadPool, "org.javaboy:type=DynamicThreadPool");
+    }
+
+    /**
+     * 一个进程中有多个线程池时用不同的名称注册
+     */
+    public DynamicThreadPoolMBean(DynamicThreadPool dynamicThreadPool, String objectName) throws Exception {
         super(DynamicThreadPoolMXBean.class);
         this.dynamicThreadPool = dynamicThreadPool;
-        registerMBean();
+        registerMBean(objectName);
     }
 
-    private void registerMBean() {
+    private void registerMBean(String objectName) {
         try {
             MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
-            ObjectName name = new ObjectName("org.javaboy:type=DynamicThreadPool");
+            ObjectName name = new ObjectName(objectName);
             mbs.registerMBean(this, name);
         } catch (Exception e) {
             e.printStackTrace();
@@ -45,5 +52,82 @@ public class DynamicThreadPoolMBean extends StandardMBean implements DynamicThre
     public void setMaximumPoolSize(int maximumPoolSize) {
         dynamicThreadPool.setMaximumPoolSize(maximumPoolSize);
     }
+
+    @Override
+    public int getQueueCapacity() {
+        return dynamicThreadPool.getQueueCapacity();
+    }
+
+    @Override
+    public void setQueueCapacity(int queueCapacity) {
+        dynamicThreadPool.setQueueCapacity(queueCapacity);
+    }
+
+    @Override
+    public boolean isAutoTuning() {
+        return dynamicThreadPool.isAutoTuning();
+    }
+
+    @Override
+    public void setAutoTuning(boolean autoTuning) {
+        dynamicThreadPool.setAutoTuning(autoTuning);
+    }
+
+    @Override
+    public int getPoolSize() {
+        return dynamicThreadPool.getThreadPoolExecutor().getPoolSize();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return dynamicThreadPool.getThreadPoolExecutor().getActiveCount();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return dynamicThreadPool.getThreadPoolExecutor().getQueue().size();
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return dynamicThreadPool.getCompletedTaskCount();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return dynamicThreadPool.getRejectedCount();
+    }
+
+    @Override
+    public double getAvgQueueDelayMillis() {
+        long completed = dynamicThreadPool.getCompletedTaskCount();
+        return completed == 0 ? 0 : dynamicThreadPool.getTotalQueueNanos() / 1e6 / completed;
+    }
+
+    @Override
+    public double getAvgExecutionMillis() {
+        long completed = dynamicThreadPool.getCompletedTaskCount();
+        return completed == 0 ? 0 : dynamicThreadPool.getTotalExecutionNanos() / 1e6 / completed;
+    }
+
+    @Override
+    public double getQueueDelayP99Millis() {
+        return dynamicThreadPool.getQueueDelayHistogram().percentile(0.99) / 1e6;
+    }
+
+    @Override
+    public double getRecentThroughput() {
+        return dynamicThreadPool.getRecentWindow().getThroughput();
+    }
+
+    @Override
+    public double getRecentQueueDelayP99Millis() {
+        return dynamicThreadPool.getRecentWindow().getQueueDelayP99Nanos() / 1e6;
+    }
+
+    @Override
+    public long getRecentRejectedCount() {
+        return dynamicThreadPool.getRecentWindow().getRejected();
+    }
     
 }
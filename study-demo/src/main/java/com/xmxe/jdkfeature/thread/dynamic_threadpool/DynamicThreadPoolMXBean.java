@@ -5,4 +5,24 @@ public interface DynamicThreadPoolMXBean {
     void setCorePoolSize(int corePoolSize);
     int getMaximumPoolSize();
     void setMaximumPoolSize(int maximumPoolSize);
+    int getQueueCapacity();
+    // 队列不是ResizableBlockingQueue时抛出UnsupportedOperationException
+    void setQueueCapacity(int queueCapacity);
+    boolean isAutoTuning();
+    // 只在调用过startAutoTuning后生效
+    void setAutoTuning(boolean autoTuning);
+
+    int getPoolSize();
+    int getActiveCount();
+    int getQueueSize();
+    long getCompletedTaskCount();
+    long getRejectedCount();
+    double getAvgQueueDelayMillis();
+    double getAvgExecutionMillis();
+    // 启动以来的p99排队延迟
+    double getQueueDelayP99Millis();
+    // 最近一个采样窗口
+    double getRecentThroughput();
+    double getRecentQueueDelayP99Millis();
+    long getRecentRejectedCount();
 }
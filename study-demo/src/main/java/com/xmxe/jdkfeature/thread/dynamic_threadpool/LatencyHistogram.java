@@ -0,0 +1,138 @@
+package com.xmxe.jdkfeature.thread.dynamic_threadpool;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对数分桶的延迟直方图(HdrHistogram的简化版),单位纳秒
+ * 1.每个2的幂区间再均分2^subBucketBits个子桶,相对误差不超过 1/2^subBucketBits,覆盖全部long范围
+ * 2.记录只有一次原子加;多线程频繁记录时按线程id分条(stripe),不同线程落到不同的计数数组,减少同一缓存行上的竞争
+ * 3.计算窗口内的分位数时,用两次snapshot相减
+ */
+public class LatencyHistogram {
+
+    private final int subBucketBits;
+
+    private final int subBuckets;
+
+    private final int buckets;
+
+    private final int stripeMask;
+
+    private final AtomicLongArray counts;
+
+    /**
+     * 4个子桶(误差25%),不分条
+     */
+    public LatencyHistogram() {
+        this(2, 1);
+    }
+
+    /**
+     * @param subBucketBits 每个2的幂区间的子桶位数,5表示32个子桶,误差约3%
+     * @param stripes       分条数,向上取整到2的幂
+     */
+    public LatencyHistogram(int subBucketBits, int stripes) {
+        if (subBucketBits < 1 || subBucketBits > 10) {
+            throw new IllegalArgumentException("subBucketBits must be in [1, 10]");
+        }
+        if (stripes <= 0 || stripes > 1 << 10) {
+            throw new IllegalArgumentException("stripes must be in [1, 1024]");
+        }
+        this.subBucketBits = subBucketBits;
+        this.subBuckets = 1 << subBucketBits;
+        this.buckets = (64 - subBucketBits) * subBuckets;
+        int stripeCount = Integer.highestOneBit(stripes - 1 == 0 ? 1 : (stripes - 1) << 1);
+        this.stripeMask = stripeCount - 1;
+        this.counts = new AtomicLongArray(stripeCount * buckets);
+    }
+
+    public void record(long nanos) {
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        counts.getAndIncrement(stripe * buckets + bucket(Math.max(0, nanos)));
+    }
+
+    /**
+     * 各分条合并后的计数,下标是桶号
+     */
+    public long[] snapshot() {
+        long[] copy = new long[buckets];
+        for (int i = 0; i < counts.length(); i++) {
+            copy[i % buckets] += counts.get(i);
+        }
+        return copy;
+    }
+
+    public long percentile(double p) {
+        return percentile(snapshot(), p);
+    }
+
+    /**
+     * @return 分位数所在桶的上界,没有数据时返回0
+     */
+    public long percentile(long[] snapshot, double p) {
+        long total = count(snapshot);
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * p));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(snapshot.length - 1);
+    }
+
+    /**
+     * @return 最大值所在桶的上界,没有数据时返回0
+     */
+    public long max(long[] snapshot) {
+        for (int i = snapshot.length - 1; i >= 0; i--) {
+            if (snapshot[i] > 0) {
+                return upperBound(i);
+            }
+        }
+        return 0;
+    }
+
+    public static long count(long[] snapshot) {
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * a-b,用于计算两次快照之间的窗口
+     */
+    public static long[] minus(long[] a, long[] b) {
+        long[] result = new long[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i] - b[i];
+        }
+        return result;
+    }
+
+    int bucket(long value) {
+        if (value < subBuckets) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - subBucketBits)) & (subBuckets - 1);
+        return (exponent - subBucketBits + 1) * subBuckets + sub;
+    }
+
+    long upperBound(int bucket) {
+        if (bucket < subBuckets) {
+            return bucket;
+        }
+        int exponent = bucket / subBuckets + subBucketBits - 1;
+        long sub = bucket % subBuckets;
+        long width = 1L << (exponent - subBucketBits);
+        long lower = (subBuckets + sub) << (exponent - subBucketBits);
+        return lower + width - 1 < 0 ? Long.MAX_VALUE : lower + width - 1;
+    }
+}
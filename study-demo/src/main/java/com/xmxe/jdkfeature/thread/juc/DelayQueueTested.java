@@ -1,17 +1,53 @@
 package com.xmxe.jdkfeature.thread.juc;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.DelayQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.Delayed;
 
+import com.xmxe.jdkfeature.thread.timer.Timeout;
+import com.xmxe.jdkfeature.thread.timer.WheelTimer;
+
 /**
  * DelayQueue是一个无界的BlockingQueue,用于放置实现了Delayed接口的对象,其中的对象只能在其到期时才能从队列中取走。这种队列是有序的,即队头对象的延迟到期时间最长。注意：不能将null元素放置到这种队列中。
  *
  * poll():获取并移除队列的超时元素,没有则返回空
  * take():获取并移除队列的超时元素,如果没有则wait当前线程,直到有元素满足超时条件,返回结果。
+ *
+ * DelayQueue内部是一把锁加一个二叉堆,插入O(log n),remove是O(n)遍历,订单量到百万、千万级时这把锁和取消操作都会成为瓶颈。
+ * 订单自动取消这种场景改用时间轮实现的WheelTimer(见wheelTimer方法):插入、取消都是O(1),到期的订单批量交给线程池处理,
+ * 还可以持久化,服务重启后未到期的订单超时不会丢失。对比数据见WheelTimerBenchmark
  */
 public class DelayQueueTested {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
+        wheelTimer();
+    }
+
+    /**
+     * 用WheelTimer实现同样的订单超时:支付成功的订单直接cancel,不需要等到期后再判断状态
+     */
+    static void wheelTimer() throws InterruptedException {
+        WheelTimer timer = new WheelTimer("order-timeout");
+        String[] orderIds = {"000001", "000002", "000003", "000004", "000005"};
+        int[] seconds = {20, 17, 32, 31, 28};
+        Timeout[] timeouts = new Timeout[orderIds.length];
+        CountDownLatch unpaid = new CountDownLatch(3);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < orderIds.length; i++) {
+            String orderId = orderIds[i];
+            timeouts[i] = timer.newTimeout(timeout -> {
+                System.out.println("订单" + orderId + "的超时时间到了" + (System.currentTimeMillis() - start) + ",取消订单");
+                unpaid.countDown();
+            }, seconds[i], TimeUnit.SECONDS);
+        }
+        // 模拟订单支付
+        timeouts[0].cancel();
+        timeouts[3].cancel();
+        unpaid.await();
+        timer.stop();
+    }
+
+    static void delayQueue() {
         // 模拟5个订单 超时时间为5s 超过5s如果订单没有支付则判定为超时订单
         OrderDelay oider1 = new OrderDelay("000001", TimeUnit.MILLISECONDS.convert(20, TimeUnit.SECONDS));
         OrderDelay oider2 = new OrderDelay("000002", TimeUnit.MILLISECONDS.convert(17, TimeUnit.SECONDS));
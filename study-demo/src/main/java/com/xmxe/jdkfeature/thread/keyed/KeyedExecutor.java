@@ -0,0 +1,358 @@
+package com.xmxe.jdkfeature.thread.keyed;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 按key保序的并行执行器:同一个key的任务严格按提交顺序执行,不同key的任务并行执行
+ * 1.key哈希到N条通道(lane),每条通道是一个有界的MpscRingBuffer,同一时刻最多一个工作线程在消费一条通道,所以通道内有序
+ * 2.通道有任务时被放进它所属工作线程的双端队列;工作线程从自己队列头部取通道,一次最多执行64个任务,
+ *   通道还有任务就放回自己队列尾部,让同一线程上的其他通道也能轮到
+ * 3.工作线程自己的队列空了就从其他线程队列尾部偷整条通道,偷走的是通道而不是单个任务,所以不会破坏顺序
+ * 4.背压按通道隔离:热点key只会塞满自己的通道,execute在通道满时阻塞,tryExecute返回false,其他通道不受影响
+ * 通道数默认是线程数的4倍,越多偷取越均匀,同一通道里不同key之间也要排队
+ *
+ * 用法:
+ * KeyedExecutor executor = new KeyedExecutor("order", 8);
+ * executor.execute(orderId, () -> handle(event));
+ */
+public class KeyedExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyedExecutor.class);
+
+    private static final int IDLE = 0;
+
+    private static final int SCHEDULED = 1;
+
+    /**
+     * 一条通道一次最多连续执行的任务数
+     */
+    private static final int BATCH = 64;
+
+    /**
+     * 空闲线程的最长休眠时间,兜底偷取的唤醒
+     */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * 通道满时提交线程的重试间隔
+     */
+    private static final long BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Lane[] lanes;
+
+    private final int laneMask;
+
+    private final Worker[] workers;
+
+    private volatile boolean shutdown;
+
+    /**
+     * 正在提交的任务数,关闭时要等它们放进通道
+     */
+    private final AtomicInteger submitting = new AtomicInteger();
+
+    private final CountDownLatch terminated;
+
+    public KeyedExecutor(String name, int threads) {
+        this(name, threads, threads * 4, 1024);
+    }
+
+    /**
+     * @param laneCount    通道数,向上取整到2的幂
+     * @param laneCapacity 每条通道最多积压的任务数,向上取整到2的幂
+     */
+    public KeyedExecutor(String name, int threads, int laneCount, int laneCapacity) {
+        if (threads <= 0 || laneCount <= 0 || laneCapacity <= 0) {
+            throw new IllegalArgumentException("threads, laneCount and laneCapacity must be positive");
+        }
+        int size = laneCount == 1 ? 1 : Integer.highestOneBit(laneCount - 1) << 1;
+        this.lanes = new Lane[size];
+        this.laneMask = size - 1;
+        for (int i = 0; i < size; i++) {
+            lanes[i] = new Lane(i, laneCapacity);
+        }
+        this.workers = new Worker[threads];
+        this.terminated = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(name + "-" + i);
+        }
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+    }
+
+    /**
+     * 提交任务,通道满时阻塞等待
+     *
+     * @throws RejectedExecutionException 已关闭或等待时被中断
+     */
+    public void execute(Object key, Runnable task) {
+        try {
+            if (!execute(key, task, Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                throw new RejectedExecutionException("lane full");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("interrupted", e);
+        }
+    }
+
+    /**
+     * @return false表示通道已满
+     * @throws RejectedExecutionException 已关闭
+     */
+    public boolean tryExecute(Object key, Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        submitting.incrementAndGet();
+        try {
+            checkShutdown();
+            return offer(laneOf(key), task);
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    /**
+     * 通道满时最多等待timeout
+     *
+     * @return false表示超时
+     */
+    public boolean execute(Object key, Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        Lane lane = laneOf(key);
+        long deadline = System.nanoTime() + Math.min(unit.toNanos(timeout), Long.MAX_VALUE / 2);
+        submitting.incrementAndGet();
+        try {
+            while (true) {
+                checkShutdown();
+                if (offer(lane, task)) {
+                    return true;
+                }
+                if (System.nanoTime() - deadline >= 0) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, BACKOFF_NANOS);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    /**
+     * key所在通道积压的任务数
+     */
+    public int backlog(Object key) {
+        return laneOf(key).ring.size();
+    }
+
+    /**
+     * 所有通道积压的任务数
+     */
+    public long backlog() {
+        long total = 0;
+        for (Lane lane : lanes) {
+            total += lane.ring.size();
+        }
+        return total;
+    }
+
+    /**
+     * 不再接受新任务,已提交的任务执行完后工作线程退出
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker.thread);
+        }
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    int laneIndex(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & laneMask;
+    }
+
+    int homeWorker(Object key) {
+        return laneIndex(key) % workers.length;
+    }
+
+    private Lane laneOf(Object key) {
+        return lanes[laneIndex(key)];
+    }
+
+    private void checkShutdown() {
+        if (shutdown) {
+            throw new RejectedExecutionException("executor has been shut down");
+        }
+    }
+
+    private boolean offer(Lane lane, Runnable task) {
+        if (!lane.ring.offer(task)) {
+            return false;
+        }
+        if (lane.state.get() == IDLE && lane.state.compareAndSet(IDLE, SCHEDULED)) {
+            schedule(lane);
+        }
+        return true;
+    }
+
+    /**
+     * 通道放进所属线程的队列,所属线程在休眠就唤醒它,否则唤醒一个空闲线程来偷
+     */
+    private void schedule(Lane lane) {
+        Worker home = workers[lane.index % workers.length];
+        home.lanes.addLast(lane);
+        if (home.parked) {
+            LockSupport.unpark(home.thread);
+        } else {
+            signalIdle(home);
+        }
+    }
+
+    private void signalIdle(Worker except) {
+        for (Worker worker : workers) {
+            if (worker != except && worker.parked) {
+                LockSupport.unpark(worker.thread);
+                return;
+            }
+        }
+    }
+
+    private boolean drained() {
+        if (submitting.get() != 0) {
+            return false;
+        }
+        for (Lane lane : lanes) {
+            if (lane.state.get() != IDLE || !lane.ring.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Lane {
+
+        private final int index;
+
+        private final MpscRingBuffer<Runnable> ring;
+
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+
+        Lane(int index, int capacity) {
+            this.index = index;
+            this.ring = new MpscRingBuffer<>(capacity);
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        private final Thread thread;
+
+        /**
+         * 有任务的通道,自己从头部取,别人从尾部偷
+         */
+        private final ConcurrentLinkedDeque<Lane> lanes = new ConcurrentLinkedDeque<>();
+
+        private volatile boolean parked;
+
+        Worker(String name) {
+            this.thread = new Thread(this, name);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Lane lane = lanes.pollFirst();
+                    if (lane == null) {
+                        lane = steal();
+                    }
+                    if (lane != null) {
+                        runLane(lane);
+                        continue;
+                    }
+                    if (shutdown && drained()) {
+                        return;
+                    }
+                    parked = true;
+                    // 设置parked之后再检查一次,生产者先放通道再读parked,不会丢失唤醒
+                    if (lanes.isEmpty() && !shutdown) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    parked = false;
+                }
+            } finally {
+                terminated.countDown();
+            }
+        }
+
+        private Lane steal() {
+            int n = workers.length;
+            int start = ThreadLocalRandom.current().nextInt(n);
+            for (int i = 0; i < n; i++) {
+                Worker victim = workers[(start + i) % n];
+                if (victim != this) {
+                    Lane lane = victim.lanes.pollLast();
+                    if (lane != null) {
+                        return lane;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void runLane(Lane lane) {
+            for (int i = 0; i < BATCH; i++) {
+                Runnable task = lane.ring.poll();
+                if (task == null) {
+                    break;
+                }
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    log.error("keyed task failed", e);
+                }
+            }
+            if (!lane.ring.isEmpty()) {
+                requeue(lane);
+                return;
+            }
+            lane.state.set(IDLE);
+            // 置为空闲之前生产者可能刚放入任务但看到的还是SCHEDULED,没有调度
+            if (!lane.ring.isEmpty() && lane.state.compareAndSet(IDLE, SCHEDULED)) {
+                requeue(lane);
+            }
+        }
+
+        private void requeue(Lane lane) {
+            lanes.addLast(lane);
+            if (lanes.peekFirst() != lane) {
+                // 自己还有别的通道要处理,叫一个空闲线程来分担
+                signalIdle(this);
+            }
+        }
+    }
+}
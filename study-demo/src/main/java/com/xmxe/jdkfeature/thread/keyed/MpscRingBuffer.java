@@ -0,0 +1,108 @@
+package com.xmxe.jdkfeature.thread.keyed;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁的多生产者单消费者环形队列(参考JCTools的MpscArrayQueue)
+ * 1.生产者CAS推进producerIndex抢到一个槽位,再用lazySet写入元素;消费者看到槽位非空才算发布完成
+ * 2.生产者缓存一个producerLimit(消费位置+容量),大多数offer不需要读消费者的位置
+ * 3.消费者只有一个,位置用lazySet更新,取出后把槽位置空给生产者复用
+ * poll只能由同一时刻唯一的消费者调用,不同线程轮流消费时需要由调用方保证交接的先后顺序
+ */
+public class MpscRingBuffer<E> {
+
+    private final AtomicReferenceArray<E> buffer;
+
+    private final int mask;
+
+    private final int capacity;
+
+    private final AtomicLong producerIndex = new AtomicLong();
+
+    private final AtomicLong consumerIndex = new AtomicLong();
+
+    /**
+     * 生产者可以写到的位置(不含),只是个缓存,过期了最多多读一次consumerIndex
+     */
+    private volatile long producerLimit;
+
+    /**
+     * @param capacity 向上取整到2的幂
+     */
+    public MpscRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be in [1, 2^30]");
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.capacity = size;
+        this.producerLimit = size;
+    }
+
+    /**
+     * @return false表示队列已满
+     */
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long limit = producerLimit;
+        long index;
+        do {
+            index = producerIndex.get();
+            if (index >= limit) {
+                limit = consumerIndex.get() + capacity;
+                if (index >= limit) {
+                    return false;
+                }
+                producerLimit = limit;
+            }
+        } while (!producerIndex.compareAndSet(index, index + 1));
+        buffer.lazySet((int) index & mask, e);
+        return true;
+    }
+
+    /**
+     * @return 队列为空时返回null
+     */
+    public E poll() {
+        long index = consumerIndex.get();
+        int offset = (int) index & mask;
+        E e = buffer.get(offset);
+        if (e == null) {
+            if (index == producerIndex.get()) {
+                return null;
+            }
+            // 生产者已经抢到槽位但还没写入,等它写完
+            int spins = 0;
+            do {
+                if (++spins > 64) {
+                    Thread.yield();
+                } else {
+                    Thread.onSpinWait();
+                }
+                e = buffer.get(offset);
+            } while (e == null);
+        }
+        buffer.lazySet(offset, null);
+        consumerIndex.lazySet(index + 1);
+        return e;
+    }
+
+    public boolean isEmpty() {
+        return consumerIndex.get() == producerIndex.get();
+    }
+
+    public int size() {
+        // 先读消费者位置,避免得到负数
+        long consumer = consumerIndex.get();
+        long producer = producerIndex.get();
+        return (int) Math.max(0, Math.min(capacity, producer - consumer));
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
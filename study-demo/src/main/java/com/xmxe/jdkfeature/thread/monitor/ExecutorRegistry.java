@@ -0,0 +1,158 @@
+package com.xmxe.jdkfeature.thread.monitor;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xmxe.jdkfeature.thread.dynamic_threadpool.LatencyHistogram;
+
+/**
+ * 所有InstrumentedExecutor的登记处
+ * 1.每个线程池以 com.xmxe:type=ThreadPool,name=池名 注册到平台MBeanServer,jconsole里可以直接看
+ * 2.dump()输出所有线程池的一览表和最近的慢任务栈,可以打到日志或者暴露成一个http接口
+ * 3.一个守护线程每100ms巡检一次正在执行的任务,给超过慢任务阈值的任务抓栈
+ */
+public final class ExecutorRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutorRegistry.class);
+
+    private static final long INSPECT_INTERVAL_MILLIS = 100;
+
+    private static final Map<String, InstrumentedExecutor> EXECUTORS = new ConcurrentSkipListMap<>();
+
+    private static ScheduledExecutorService inspector;
+
+    private ExecutorRegistry() {
+    }
+
+    /**
+     * 同名的线程池后注册的覆盖先注册的
+     */
+    static synchronized void register(InstrumentedExecutor executor) {
+        InstrumentedExecutor previous = EXECUTORS.put(executor.getName(), executor);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = objectName(executor.getName());
+            if (previous != null && server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(executor, name);
+        } catch (Exception e) {
+            log.warn("线程池{}注册JMX失败", executor.getName(), e);
+        }
+        if (inspector == null) {
+            inspector = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "executor-inspector");
+                thread.setDaemon(true);
+                return thread;
+            });
+            inspector.scheduleWithFixedDelay(ExecutorRegistry::inspect, INSPECT_INTERVAL_MILLIS,
+                    INSPECT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    static synchronized void unregister(InstrumentedExecutor executor) {
+        if (!EXECUTORS.remove(executor.getName(), executor)) {
+            return;
+        }
+        try {
+            ObjectName name = objectName(executor.getName());
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            log.warn("线程池{}注销JMX失败", executor.getName(), e);
+        }
+        if (EXECUTORS.isEmpty() && inspector != null) {
+            inspector.shutdown();
+            inspector = null;
+        }
+    }
+
+    public static InstrumentedExecutor get(String name) {
+        return EXECUTORS.get(name);
+    }
+
+    /**
+     * 按名称排序的所有线程池
+     */
+    public static Collection<InstrumentedExecutor> list() {
+        return new ArrayList<>(EXECUTORS.values());
+    }
+
+    public static List<SlowTask> slowTasks() {
+        List<SlowTask> tasks = new ArrayList<>();
+        for (InstrumentedExecutor executor : EXECUTORS.values()) {
+            tasks.addAll(executor.getSlowTasks());
+        }
+        tasks.sort((a, b) -> a.getTime().compareTo(b.getTime()));
+        return tasks;
+    }
+
+    /**
+     * 所有线程池的一览表,时间单位毫秒,最后附上最近的慢任务
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder();
+        appendHeader(sb);
+        for (InstrumentedExecutor executor : EXECUTORS.values()) {
+            appendRow(sb, executor);
+        }
+        List<SlowTask> tasks = slowTasks();
+        if (!tasks.isEmpty()) {
+            sb.append("slow tasks:\n");
+            for (SlowTask task : tasks) {
+                sb.append(task).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    static ObjectName objectName(String pool) throws Exception {
+        return new ObjectName("com.xmxe:type=ThreadPool,name=" + ObjectName.quote(pool));
+    }
+
+    static void appendHeader(StringBuilder sb) {
+        sb.append(String.format("%-20s %9s %6s %8s %10s %10s %8s %6s %6s %23s %23s%n", "pool", "threads", "active",
+                "queue", "submitted", "completed", "rejected", "failed", "slow", "wait p50/p99/max", "run p50/p99/max"));
+    }
+
+    static void appendRow(StringBuilder sb, InstrumentedExecutor executor) {
+        long[] wait = executor.getWaitHistogram().snapshot();
+        long[] run = executor.getRunHistogram().snapshot();
+        sb.append(String.format("%-20s %9s %6d %8d %10d %10d %8d %6d %6d %23s %23s%n", executor.getName(),
+                executor.getPoolSize() + "/" + executor.getMaximumPoolSize(), executor.getActiveCount(),
+                executor.getQueueSize(), executor.getSubmittedCount(), LatencyHistogram.count(run),
+                executor.getRejectedCount(), executor.getFailedCount(), executor.getSlowCount(),
+                millis(executor.getWaitHistogram(), wait), millis(executor.getRunHistogram(), run)));
+    }
+
+    private static String millis(LatencyHistogram histogram, long[] snapshot) {
+        return String.format("%.2f/%.2f/%.2f", histogram.percentile(snapshot, 0.5) / 1e6,
+                histogram.percentile(snapshot, 0.99) / 1e6, histogram.max(snapshot) / 1e6);
+    }
+
+    private static void inspect() {
+        long now = System.nanoTime();
+        for (InstrumentedExecutor executor : EXECUTORS.values()) {
+            try {
+                executor.inspect(now);
+            } catch (RuntimeException e) {
+                log.warn("巡检线程池{}失败", executor.getName(), e);
+            }
+        }
+    }
+}
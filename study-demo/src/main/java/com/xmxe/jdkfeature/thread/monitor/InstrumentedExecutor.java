@@ -0,0 +1,382 @@
+package com.xmxe.jdkfeature.thread.monitor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.xmxe.jdkfeature.thread.dynamic_threadpool.LatencyHistogram;
+
+/**
+ * 带统计的线程池,通过create创建,构造完成后登记到ExecutorRegistry(JMX + 文本dump),terminated后自动注销
+ * 1.每个任务包装一次,记录排队时间(提交到开始执行)和执行时间,写入分条的对数直方图(误差约3%)
+ *   一次System.nanoTime()约25ns,为了把每个任务的统计开销控制在100ns以内,执行时间每个任务都记,
+ *   排队时间每8个任务抽样1个(提交时少取一次时间),对分位数没有影响
+ * 2.提交数、拒绝数、异常数用LongAdder计数,完成数就是执行时间直方图的总数,不再单独计数
+ * 3.慢任务:每个工作线程有一个槽位记录正在执行的任务和开始时间,ExecutorRegistry的巡检线程发现执行超过阈值时
+ *   抓取该线程当时的栈,任务结束后连同耗时记入最近慢任务列表,抓栈只发生在巡检线程,不影响任务执行路径
+ * 4.submit提交的任务被FutureTask包住,异常不会抛到线程池,不计入异常数
+ * 5.remove、shutdownNow和拒绝策略拿到的都是调用方提交的原始任务;getQueue()里仍然是包装后的任务
+ */
+public class InstrumentedExecutor extends ThreadPoolExecutor implements InstrumentedExecutorMXBean {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int MAX_SLOW_TASKS = 16;
+
+    private static final int WAIT_SAMPLE_MASK = 7;
+
+    private static final StackTraceElement[] NO_STACK = new StackTraceElement[0];
+
+    private final String name;
+
+    private final LatencyHistogram waitHistogram;
+
+    private final LatencyHistogram runHistogram;
+
+    private final LongAdder submitted = new LongAdder();
+
+    private final CountingHandler rejection;
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder slow = new LongAdder();
+
+    private volatile long slowThresholdNanos = TimeUnit.SECONDS.toNanos(1);
+
+    private final List<Slot> slots = new CopyOnWriteArrayList<>();
+
+    private final ThreadLocal<Slot> slot = ThreadLocal.withInitial(this::newSlot);
+
+    private final ArrayDeque<SlowTask> slowTasks = new ArrayDeque<>();
+
+    /**
+     * 排队时间抽样用的序号,多线程提交时不加同步,丢几次自增不影响抽样
+     */
+    private int sampleSequence;
+
+    /**
+     * 创建线程池并登记到ExecutorRegistry;登记放在构造完成之后,巡检线程和JMX不会看到构造了一半的对象
+     */
+    public static InstrumentedExecutor create(String name, int corePoolSize, int maximumPoolSize, long keepAliveTime,
+            TimeUnit unit, BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory,
+            RejectedExecutionHandler handler) {
+        InstrumentedExecutor executor = new InstrumentedExecutor(name, corePoolSize, maximumPoolSize, keepAliveTime,
+                unit, workQueue, threadFactory, handler);
+        ExecutorRegistry.register(executor);
+        return executor;
+    }
+
+    private InstrumentedExecutor(String name, int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+            BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, new CountingHandler(handler));
+        this.name = name;
+        this.rejection = (CountingHandler) super.getRejectedExecutionHandler();
+        int stripes = Math.min(Runtime.getRuntime().availableProcessors(), maximumPoolSize);
+        this.waitHistogram = new LatencyHistogram(SUB_BUCKET_BITS, Math.min(stripes, 8));
+        this.runHistogram = new LatencyHistogram(SUB_BUCKET_BITS, Math.min(stripes, 8));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        submitted.increment();
+        long enqueuedAt = (++sampleSequence & WAIT_SAMPLE_MASK) == 0 ? System.nanoTime() : 0;
+        super.execute(new Task(command, enqueuedAt));
+    }
+
+    @Override
+    public boolean remove(Runnable task) {
+        for (Runnable queued : getQueue()) {
+            if (queued == task || queued instanceof Task && ((Task) queued).command == task) {
+                return super.remove(queued);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = super.shutdownNow();
+        List<Runnable> tasks = new ArrayList<>(pending.size());
+        for (Runnable r : pending) {
+            tasks.add(unwrap(r));
+        }
+        return tasks;
+    }
+
+    /**
+     * 拒绝计数始终生效,替换的只是计数之后的处理策略
+     */
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        if (handler == null) {
+            throw new NullPointerException();
+        }
+        rejection.delegate = handler;
+    }
+
+    @Override
+    public RejectedExecutionHandler getRejectedExecutionHandler() {
+        return rejection.delegate;
+    }
+
+    @Override
+    protected void terminated() {
+        super.terminated();
+        ExecutorRegistry.unregister(this);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getQueueSize() {
+        return getQueue().size();
+    }
+
+    @Override
+    public int getQueueRemainingCapacity() {
+        return getQueue().remainingCapacity();
+    }
+
+    @Override
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    @Override
+    public long getCompletedCount() {
+        return LatencyHistogram.count(runHistogram.snapshot());
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejection.rejected.sum();
+    }
+
+    @Override
+    public long getSlowCount() {
+        return slow.sum();
+    }
+
+    @Override
+    public double getWaitP50Millis() {
+        return waitHistogram.percentile(0.5) / 1e6;
+    }
+
+    @Override
+    public double getWaitP99Millis() {
+        return waitHistogram.percentile(0.99) / 1e6;
+    }
+
+    @Override
+    public double getWaitMaxMillis() {
+        return waitHistogram.max(waitHistogram.snapshot()) / 1e6;
+    }
+
+    @Override
+    public double getRunP50Millis() {
+        return runHistogram.percentile(0.5) / 1e6;
+    }
+
+    @Override
+    public double getRunP99Millis() {
+        return runHistogram.percentile(0.99) / 1e6;
+    }
+
+    @Override
+    public double getRunMaxMillis() {
+        return runHistogram.max(runHistogram.snapshot()) / 1e6;
+    }
+
+    @Override
+    public long getSlowThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowThresholdNanos);
+    }
+
+    @Override
+    public void setSlowThresholdMillis(long slowThresholdMillis) {
+        if (slowThresholdMillis <= 0) {
+            throw new IllegalArgumentException("slowThresholdMillis must be positive");
+        }
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+    }
+
+    public LatencyHistogram getWaitHistogram() {
+        return waitHistogram;
+    }
+
+    public LatencyHistogram getRunHistogram() {
+        return runHistogram;
+    }
+
+    /**
+     * 最近的慢任务,最多16个,按发生顺序
+     */
+    public List<SlowTask> getSlowTasks() {
+        synchronized (slowTasks) {
+            return new ArrayList<>(slowTasks);
+        }
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        ExecutorRegistry.appendHeader(sb);
+        ExecutorRegistry.appendRow(sb, this);
+        for (SlowTask task : getSlowTasks()) {
+            sb.append(task).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 巡检:执行超过阈值且还没抓过栈的任务,抓取执行线程的栈;顺便清理已经结束的线程的槽位
+     */
+    void inspect(long now) {
+        long threshold = slowThresholdNanos;
+        for (Slot s : slots) {
+            if (!s.thread.isAlive()) {
+                slots.remove(s);
+                continue;
+            }
+            Task task = s.running.get();
+            if (task != null && s.capturedTask != task && now - task.startedAt > threshold) {
+                StackTraceElement[] stack = s.thread.getStackTrace();
+                if (s.running.get() == task) {
+                    s.stack = stack;
+                    s.capturedTask = task;
+                }
+            }
+        }
+    }
+
+    private Slot newSlot() {
+        Slot s = new Slot(Thread.currentThread());
+        slots.add(s);
+        return s;
+    }
+
+    private void slow(Task task, Slot s, long elapsed) {
+        slow.increment();
+        StackTraceElement[] stack = s.capturedTask == task ? s.stack : NO_STACK;
+        SlowTask record = new SlowTask(name, task.command.toString(), s.thread.getName(), elapsed, stack);
+        synchronized (slowTasks) {
+            if (slowTasks.size() == MAX_SLOW_TASKS) {
+                slowTasks.pollFirst();
+            }
+            slowTasks.addLast(record);
+        }
+    }
+
+    private static Runnable unwrap(Runnable r) {
+        return r instanceof Task ? ((Task) r).command : r;
+    }
+
+    private final class Task implements Runnable {
+
+        private final Runnable command;
+
+        /**
+         * 不抽样时为0
+         */
+        private final long enqueuedAt;
+
+        /**
+         * 在发布到Slot.running之前写入,巡检线程读到running后一定能看到
+         */
+        private long startedAt;
+
+        Task(Runnable command, long enqueuedAt) {
+            this.command = command;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public void run() {
+            Slot s = slot.get();
+            long start = System.nanoTime();
+            if (enqueuedAt != 0) {
+                waitHistogram.record(start - enqueuedAt);
+            }
+            startedAt = start;
+            s.running.lazySet(this);
+            try {
+                command.run();
+            } catch (RuntimeException | Error e) {
+                failed.increment();
+                throw e;
+            } finally {
+                s.running.lazySet(null);
+                long elapsed = System.nanoTime() - start;
+                runHistogram.record(elapsed);
+                if (elapsed > slowThresholdNanos) {
+                    slow(this, s, elapsed);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return command.toString();
+        }
+    }
+
+    /**
+     * 一个工作线程正在执行的任务
+     */
+    private static final class Slot {
+
+        private final Thread thread;
+
+        /**
+         * 只有工作线程自己写,用lazySet(release)代替volatile写,x86上就是普通的store
+         */
+        private final AtomicReference<Task> running = new AtomicReference<>();
+
+        private volatile StackTraceElement[] stack;
+
+        private volatile Task capturedTask;
+
+        Slot(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    private static final class CountingHandler implements RejectedExecutionHandler {
+
+        private final LongAdder rejected = new LongAdder();
+
+        private volatile RejectedExecutionHandler delegate;
+
+        CountingHandler(RejectedExecutionHandler delegate) {
+            if (delegate == null) {
+                throw new NullPointerException();
+            }
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejected.increment();
+            delegate.rejectedExecution(unwrap(r), executor);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.xmxe.jdkfeature.thread.monitor;
+
+/**
+ * 通过jconsole查看线程池运行情况,时间单位毫秒,分位数是启动以来的统计
+ */
+public interface InstrumentedExecutorMXBean {
+    String getName();
+    int getCorePoolSize();
+    int getMaximumPoolSize();
+    int getPoolSize();
+    int getActiveCount();
+    int getLargestPoolSize();
+    int getQueueSize();
+    int getQueueRemainingCapacity();
+    long getSubmittedCount();
+    long getCompletedCount();
+    long getFailedCount();
+    long getRejectedCount();
+    long getSlowCount();
+    double getWaitP50Millis();
+    double getWaitP99Millis();
+    double getWaitMaxMillis();
+    double getRunP50Millis();
+    double getRunP99Millis();
+    double getRunMaxMillis();
+    long getSlowThresholdMillis();
+    void setSlowThresholdMillis(long slowThresholdMillis);
+    String dump();
+}
@@ -0,0 +1,68 @@
+package com.xmxe.jdkfeature.thread.monitor;
+
+import java.time.Instant;
+
+/**
+ * 一次慢任务的记录,执行期间被巡检线程发现时带有当时的线程栈
+ */
+public class SlowTask {
+
+    private final String pool;
+
+    private final String task;
+
+    private final String thread;
+
+    private final long elapsedNanos;
+
+    private final Instant time;
+
+    private final StackTraceElement[] stackTrace;
+
+    SlowTask(String pool, String task, String thread, long elapsedNanos, StackTraceElement[] stackTrace) {
+        this.pool = pool;
+        this.task = task;
+        this.thread = thread;
+        this.elapsedNanos = elapsedNanos;
+        this.time = Instant.now();
+        this.stackTrace = stackTrace;
+    }
+
+    public String getPool() {
+        return pool;
+    }
+
+    public String getTask() {
+        return task;
+    }
+
+    public String getThread() {
+        return thread;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public Instant getTime() {
+        return time;
+    }
+
+    /**
+     * @return 执行结束前没有被巡检到时为空数组
+     */
+    public StackTraceElement[] getStackTrace() {
+        return stackTrace.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(time).append(' ').append(pool).append(" [").append(thread).append("] ")
+                .append(String.format("%.1fms ", elapsedNanos / 1e6)).append(task);
+        for (StackTraceElement element : stackTrace) {
+            sb.append("\n\tat ").append(element);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package com.xmxe.jdkfeature.thread.timer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import com.xmxe.util.cache.TimingWheel;
+
+/**
+ * WheelTimer.newTimeout返回的句柄,同时也是时间轮里的节点和提交队列里的节点,一个待执行的超时只占这一个对象
+ * cancel只CAS一次状态,再把自己交给tick线程从时间轮里摘掉,提交线程不碰时间轮
+ */
+public final class Timeout extends TimingWheel.Node {
+
+    private static final VarHandle STATE;
+
+    private static final VarHandle QUEUE_NEXT;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            STATE = lookup.findVarHandle(Timeout.class, "state", int.class);
+            QUEUE_NEXT = lookup.findVarHandle(Timeout.class, "queueNext", Timeout.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    static final int INIT = 0;
+
+    static final int CANCELLED = 1;
+
+    static final int EXPIRED = 2;
+
+    private final WheelTimer timer;
+
+    private final TimerTask task;
+
+    /**
+     * 持久化超时的key,普通超时为null
+     */
+    private final String key;
+
+    /**
+     * 到期时间戳(毫秒),用墙上时钟,重启后才能接着算
+     */
+    private final long deadline;
+
+    private volatile int state;
+
+    /**
+     * 提交队列的后继
+     */
+    private volatile Timeout queueNext;
+
+    /**
+     * 已经写入日志,只有tick线程读写
+     */
+    boolean journaled;
+
+    Timeout(WheelTimer timer, TimerTask task, String key, long deadline) {
+        this.timer = timer;
+        this.task = task;
+        this.key = key;
+        this.deadline = deadline;
+    }
+
+    /**
+     * 取消还没到期的超时
+     *
+     * @return false表示已经到期或已经取消
+     */
+    public boolean cancel() {
+        if (!STATE.compareAndSet(this, INIT, CANCELLED)) {
+            return false;
+        }
+        timer.cancelled(this);
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    public boolean isExpired() {
+        return state == EXPIRED;
+    }
+
+    public TimerTask task() {
+        return task;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public long deadline() {
+        return deadline;
+    }
+
+    @Override
+    protected long getDeadline() {
+        return deadline;
+    }
+
+    boolean expire() {
+        return STATE.compareAndSet(this, INIT, EXPIRED);
+    }
+
+    Timeout queueNext() {
+        return (Timeout) QUEUE_NEXT.getAcquire(this);
+    }
+
+    void queueNext(Timeout next) {
+        QUEUE_NEXT.setRelease(this, next);
+    }
+
+    @Override
+    public String toString() {
+        return "Timeout(" + (key != null ? key + ", " : "") + "deadline=" + deadline + ", state="
+                + (state == INIT ? "pending" : state == CANCELLED ? "cancelled" : "expired") + ")";
+    }
+}
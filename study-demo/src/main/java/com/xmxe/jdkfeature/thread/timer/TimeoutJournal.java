@@ -0,0 +1,275 @@
+package com.xmxe.jdkfeature.thread.timer;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * WheelTimer持久化超时的日志,服务重启后把还没到期(或到期了还没执行完)的超时装回时间轮
+ * 文件格式和CacheSnapshot一样是追加写的日志:文件头(魔数+版本)之后是一条条记录,每条记录=[长度int][CRC32 int][内容],
+ * 内容=[类型byte][到期时间long][key长度short][key]
+ * 1.新超时写SCHEDULE,取消或执行完成写DONE,回放时DONE只抵消key和到期时间都相同的SCHEDULE
+ * 2.记录先写进64KB的直接内存缓冲区,tick线程每一格flush一次,相当于按格组提交;fsync=true时每次flush都force到磁盘
+ * 3.记录数超过存活数的两倍(且超过10万)时,把存活的超时全量写到临时文件再原子替换
+ * 4.启动时CRC校验失败或记录不完整(进程在写入中途退出)时丢弃之后的内容,并把文件截断到最后一条完整记录
+ * 执行完才写DONE,进程在任务执行中退出时重启后会再执行一次,任务本身要能重复执行
+ * load之外的方法只由WheelTimer的tick线程调用
+ */
+public class TimeoutJournal implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(TimeoutJournal.class);
+
+    private static final int MAGIC = 0x58544A31; // "XTJ1"
+    private static final int HEADER_SIZE = 8;
+    private static final byte TYPE_SCHEDULE = 1;
+    private static final byte TYPE_DONE = 2;
+
+    /**
+     * key的最大字符数,UTF-8编码后不超过short能表示的长度
+     */
+    static final int MAX_KEY_LENGTH = 8192;
+
+    private static final long MIN_COMPACT_RECORDS = 100_000;
+
+    private final Path path;
+
+    private final boolean fsync;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+    private final CRC32 crc = new CRC32();
+
+    private FileChannel channel;
+
+    /**
+     * 最后一条完整记录的结尾,load之后有效
+     */
+    private long validEnd = -1;
+
+    /**
+     * 文件里的记录数
+     */
+    private long records;
+
+    public TimeoutJournal(Path path) {
+        this(path, false);
+    }
+
+    /**
+     * @param fsync 每次flush是否force到磁盘,false时只保证进程崩溃不丢,机器掉电可能丢最后一段
+     */
+    public TimeoutJournal(Path path, boolean fsync) {
+        this.path = path;
+        this.fsync = fsync;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * 回放日志,文件不存在时返回空
+     *
+     * @return 还没完成的超时,key到到期时间,按第一次写入的顺序
+     */
+    public synchronized Map<String, Long> load() throws IOException {
+        Map<String, Long> pending = new LinkedHashMap<>();
+        records = 0;
+        validEnd = 0;
+        if (!Files.exists(path)) {
+            return pending;
+        }
+        long begin = System.currentTimeMillis();
+        long fileSize = Files.size(path);
+        try (InputStream is = Files.newInputStream(path);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(is, 1 << 16))) {
+            if (fileSize < HEADER_SIZE) {
+                return pending;
+            }
+            if (in.readInt() != MAGIC || in.readInt() != 1) {
+                throw new IOException("not a timeout journal: " + path);
+            }
+            long position = HEADER_SIZE;
+            validEnd = position;
+            byte[] record = new byte[256];
+            while (position + 8 <= fileSize) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 11 || position + 8 + length > fileSize) {
+                    log.warn("超时日志{}在偏移{}处记录不完整,丢弃之后的内容", path, position);
+                    break;
+                }
+                if (record.length < length) {
+                    record = new byte[length];
+                }
+                in.readFully(record, 0, length);
+                crc.reset();
+                crc.update(record, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("超时日志{}在偏移{}处校验失败,丢弃之后的内容", path, position);
+                    break;
+                }
+                ByteBuffer content = ByteBuffer.wrap(record, 0, length);
+                byte type = content.get();
+                long deadline = content.getLong();
+                int keyLength = content.getShort() & 0xFFFF;
+                String key = new String(record, 11, keyLength, StandardCharsets.UTF_8);
+                if (type == TYPE_SCHEDULE) {
+                    pending.put(key, deadline);
+                } else {
+                    pending.remove(key, deadline);
+                }
+                position += 8 + length;
+                validEnd = position;
+                records++;
+            }
+        } catch (EOFException e) {
+            // 文件在读取过程中被截断,按已读到的为准
+        }
+        log.info("从超时日志{}回放{}条记录,待执行{}个,耗时{}ms", path, records, pending.size(),
+                System.currentTimeMillis() - begin);
+        return pending;
+    }
+
+    /**
+     * 打开文件准备追加,没有load过时先load一次找到最后一条完整记录
+     */
+    synchronized void open() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        if (validEnd < 0) {
+            load();
+        }
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (validEnd < HEADER_SIZE) {
+            channel.truncate(0);
+            writeHeader(channel);
+        } else {
+            channel.truncate(validEnd);
+            channel.position(validEnd);
+        }
+    }
+
+    void scheduled(String key, long deadline) throws IOException {
+        append(TYPE_SCHEDULE, key, deadline);
+    }
+
+    void done(String key, long deadline) throws IOException {
+        append(TYPE_DONE, key, deadline);
+    }
+
+    /**
+     * 把缓冲区写到文件
+     */
+    void flush() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    boolean needsCompaction(int live) {
+        return records > Math.max(live * 2L, MIN_COMPACT_RECORDS);
+    }
+
+    /**
+     * 把存活的超时写成新文件再原子替换
+     */
+    void compact(Collection<Timeout> live) throws IOException {
+        flush();
+        long begin = System.currentTimeMillis();
+        Path temp = Paths.get(path + ".tmp");
+        FileChannel old = channel;
+        channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        long before = records;
+        records = 0;
+        try {
+            writeHeader(channel);
+            for (Timeout timeout : live) {
+                if (!timeout.isCancelled()) {
+                    scheduled(timeout.key(), timeout.deadline());
+                }
+            }
+            flush();
+            channel.force(false);
+        } catch (IOException e) {
+            channel.close();
+            channel = old;
+            records = before;
+            throw e;
+        }
+        old.close();
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("压缩超时日志{}:{}条记录压缩为{}条,耗时{}ms", path, before, records, System.currentTimeMillis() - begin);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            flush();
+            channel.force(false);
+        } finally {
+            channel.close();
+            channel = null;
+            validEnd = -1;
+        }
+    }
+
+    private void append(byte type, String key, long deadline) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = 11 + keyBytes.length;
+        if (buffer.remaining() < 8 + length) {
+            flush();
+        }
+        int start = buffer.position();
+        buffer.position(start + 8);
+        buffer.put(type).putLong(deadline).putShort((short) keyBytes.length).put(keyBytes);
+        ByteBuffer content = buffer.duplicate();
+        content.position(start + 8).limit(start + 8 + length);
+        crc.reset();
+        crc.update(content);
+        buffer.putInt(start, length).putInt(start + 4, (int) crc.getValue());
+        records++;
+    }
+
+    private void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(1).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.xmxe.jdkfeature.thread.timer;
+
+/**
+ * WheelTimer到期后执行的任务,在工作线程池中执行
+ */
+@FunctionalInterface
+public interface TimerTask {
+
+    void run(Timeout timeout) throws Exception;
+}
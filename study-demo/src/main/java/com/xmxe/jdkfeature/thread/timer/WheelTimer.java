@@ -0,0 +1,399 @@
+package com.xmxe.jdkfeature.thread.timer;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xmxe.util.IoExecutors;
+import com.xmxe.util.cache.TimingWheel;
+
+/**
+ * 基于分层时间轮的定时器,用来管理海量的超时任务(如千万级待支付订单的自动取消),作用和DelayQueue、HashedWheelTimer相同
+ * 1.时间轮复用util.cache.TimingWheel,6层*64槽,添加、删除都是O(1),只有一个tick线程读写,没有锁竞争;
+ *   DelayQueue是一个全局锁加二叉堆,每次插入O(log n)、取消(remove)是O(n)遍历
+ * 2.提交线程只把Timeout挂到一个无锁的多生产者单消费者链表上(一次getAndSet),tick线程每一格批量取出放进时间轮
+ * 3.cancel只CAS一次状态,把句柄放进完成队列,由tick线程从时间轮里摘掉,取消后立即不再占用时间轮
+ * 4.每一格到期的超时按batchSize分批提交到工作线程池执行,一批一个任务,默认工作线程池是IoExecutors(JDK21+虚拟线程)
+ * 5.可选持久化:recover之后用newTimeout(key, ...)创建的超时写入TimeoutJournal,重启后再recover就会装回时间轮,
+ *   执行完成或取消才写DONE,所以是至少执行一次;持久化的超时可以按key取消(重启后没有句柄)
+ * 精度是tickMs,到期时间用墙上时钟(持久化需要),系统时间被往前调时超时会提前触发
+ *
+ * 用法:
+ * WheelTimer timer = new WheelTimer("order-timeout");
+ * timer.recover(new TimeoutJournal(Paths.get("data/order-timeout.log")), t -> orderService.cancel(t.key()));
+ * timer.newTimeout(orderId, 30, TimeUnit.MINUTES);
+ * timer.cancel(orderId); // 支付成功
+ */
+public class WheelTimer {
+
+    private static final Logger log = LoggerFactory.getLogger(WheelTimer.class);
+
+    private static final VarHandle SUBMIT_TAIL;
+
+    static {
+        try {
+            SUBMIT_TAIL = MethodHandles.lookup().findVarHandle(WheelTimer.class, "submitTail", Timeout.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final int INIT = 0;
+
+    private static final int STARTED = 1;
+
+    private static final int STOPPED = 2;
+
+    private final long tickMs;
+
+    private final Executor workers;
+
+    private final int batchSize;
+
+    private final TimingWheel<Timeout> wheel;
+
+    private final Thread thread;
+
+    private final AtomicInteger state = new AtomicInteger(INIT);
+
+    /**
+     * 提交链表的尾部,生产者getAndSet;头部是一个已经取出的节点(最开始是哨兵),只有tick线程访问
+     */
+    private volatile Timeout submitTail;
+
+    private Timeout submitHead;
+
+    /**
+     * 取消的超时和执行完的持久化超时,由tick线程摘出时间轮、写DONE
+     */
+    private final ConcurrentLinkedQueue<Timeout> doneQueue = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder pending = new LongAdder();
+
+    /**
+     * 还没完成的持久化超时
+     */
+    private final Map<String, Timeout> keyed = new ConcurrentHashMap<>();
+
+    private volatile TimeoutJournal journal;
+
+    private volatile TimerTask keyedTask;
+
+    public WheelTimer(String name) {
+        this(name, 10, IoExecutors.executor(), 256);
+    }
+
+    /**
+     * @param tickMs    每一格的时间跨度,也是精度
+     * @param workers   执行到期任务的线程池
+     * @param batchSize 一批最多多少个到期任务,任务是阻塞IO并且workers是虚拟线程时适当调小
+     */
+    public WheelTimer(String name, long tickMs, Executor workers, int batchSize) {
+        if (tickMs <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("tickMs and batchSize must be positive");
+        }
+        this.tickMs = tickMs;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.wheel = new TimingWheel<>(tickMs);
+        Timeout stub = new Timeout(this, null, null, 0);
+        this.submitHead = stub;
+        this.submitTail = stub;
+        this.thread = new Thread(this::run, name + "-tick");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * 开启持久化并装回日志里没完成的超时,已经过期的在第一格立即执行;必须在第一次newTimeout之前调用
+     *
+     * @param task 持久化超时到期时执行的任务,通过Timeout.key()区分
+     * @return 装回的超时数
+     */
+    public synchronized int recover(TimeoutJournal journal, TimerTask task) throws IOException {
+        if (state.get() != INIT || this.journal != null) {
+            throw new IllegalStateException("recover must be called once before the timer starts");
+        }
+        Map<String, Long> restored = journal.load();
+        journal.open();
+        this.keyedTask = task;
+        this.journal = journal;
+        for (Map.Entry<String, Long> entry : restored.entrySet()) {
+            Timeout timeout = new Timeout(this, task, entry.getKey(), entry.getValue());
+            timeout.journaled = true;
+            keyed.put(entry.getKey(), timeout);
+            pending.increment();
+            submit(timeout);
+        }
+        start();
+        return restored.size();
+    }
+
+    /**
+     * 创建一个delay之后执行的超时
+     *
+     * @throws RejectedExecutionException 已经stop
+     */
+    public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        return schedule(new Timeout(this, task, null, deadline(delay, unit)));
+    }
+
+    /**
+     * 创建一个持久化的超时,到期执行recover时传入的任务;同一个key已有未完成的超时时,旧的被取消
+     *
+     * @throws IllegalStateException 没有调用recover
+     */
+    public Timeout newTimeout(String key, long delay, TimeUnit unit) {
+        TimerTask task = keyedTask;
+        if (task == null) {
+            throw new IllegalStateException("persistent timeouts need recover(journal, task) first");
+        }
+        if (key.length() > TimeoutJournal.MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("key too long");
+        }
+        Timeout timeout = new Timeout(this, task, key, deadline(delay, unit));
+        Timeout old = keyed.put(key, timeout);
+        if (old != null) {
+            old.cancel();
+        }
+        return schedule(timeout);
+    }
+
+    /**
+     * 按key取消持久化的超时
+     *
+     * @return false表示没有这个key或者已经到期
+     */
+    public boolean cancel(String key) {
+        Timeout timeout = keyed.get(key);
+        return timeout != null && timeout.cancel();
+    }
+
+    /**
+     * 还没到期也没取消的超时数
+     */
+    public long pending() {
+        return pending.sum();
+    }
+
+    /**
+     * 停止tick线程,不再触发任何超时;持久化的超时留在日志里,下次recover时装回
+     *
+     * @return 停止时还没触发的超时数
+     */
+    public long stop() {
+        if (state.getAndSet(STOPPED) == STARTED && Thread.currentThread() != thread) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return pending.sum();
+    }
+
+    /**
+     * Timeout.cancel成功后回调
+     */
+    void cancelled(Timeout timeout) {
+        pending.decrement();
+        if (timeout.key() != null) {
+            keyed.remove(timeout.key(), timeout);
+        }
+        doneQueue.offer(timeout);
+    }
+
+    private Timeout schedule(Timeout timeout) {
+        start();
+        if (state.get() == STOPPED) {
+            if (timeout.key() != null) {
+                keyed.remove(timeout.key(), timeout);
+            }
+            throw new RejectedExecutionException("timer stopped");
+        }
+        pending.increment();
+        submit(timeout);
+        // stop发生在上面的检查和挂入链表之间时,tick线程可能已经退出,这个超时不会再被取出;
+        // 取消成功说明没有被触发,按已经stop拒绝,否则它已经到期执行或者会被stop计入未触发数
+        if (state.get() == STOPPED && timeout.cancel()) {
+            throw new RejectedExecutionException("timer stopped");
+        }
+        return timeout;
+    }
+
+    private void start() {
+        if (state.get() == INIT && state.compareAndSet(INIT, STARTED)) {
+            thread.start();
+        }
+    }
+
+    private long deadline(long delay, TimeUnit unit) {
+        return System.currentTimeMillis() + Math.max(0, unit.toMillis(delay));
+    }
+
+    /**
+     * 挂到提交链表尾部:先抢到尾部再把前驱的next指过来,两步之间tick线程看到的链表暂时是断开的,下一格再取
+     */
+    private void submit(Timeout timeout) {
+        Timeout prev = (Timeout) SUBMIT_TAIL.getAndSet(this, timeout);
+        prev.queueNext(timeout);
+    }
+
+    private void run() {
+        List<Timeout> expired = new ArrayList<>();
+        long nextTick = (System.currentTimeMillis() / tickMs + 1) * tickMs;
+        while (state.get() == STARTED) {
+            long now = System.currentTimeMillis();
+            if (now < nextTick) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(nextTick - now));
+                continue;
+            }
+            nextTick = (now / tickMs + 1) * tickMs;
+            try {
+                tick(now, expired);
+            } catch (Throwable e) {
+                log.error("timer tick failed", e);
+            } finally {
+                expired.clear();
+            }
+        }
+        TimeoutJournal journal = this.journal;
+        if (journal != null) {
+            try {
+                drainDone(journal);
+                journal.close();
+            } catch (IOException e) {
+                log.error("关闭超时日志失败", e);
+            }
+        }
+    }
+
+    private void tick(long now, List<Timeout> expired) {
+        TimeoutJournal journal = this.journal;
+        drainSubmissions(journal, expired);
+        drainDone(journal);
+        expired.addAll(wheel.advance(now));
+        dispatch(expired);
+        if (journal != null) {
+            try {
+                journal.flush();
+                if (journal.needsCompaction(keyed.size())) {
+                    // 压缩时写进去的超时标记为已写入,之后取出时不再重复写SCHEDULE
+                    List<Timeout> live = new ArrayList<>(keyed.values());
+                    journal.compact(live);
+                    for (Timeout timeout : live) {
+                        timeout.journaled = true;
+                    }
+                }
+            } catch (IOException e) {
+                log.error("写超时日志失败", e);
+            }
+        }
+    }
+
+    private void drainSubmissions(TimeoutJournal journal, List<Timeout> expired) {
+        Timeout timeout;
+        while ((timeout = submitHead.queueNext()) != null) {
+            // 断开旧头节点,否则调用方手里留着的旧Timeout会把后面整条链都引用住
+            submitHead.queueNext(null);
+            submitHead = timeout;
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            if (timeout.key() != null && !timeout.journaled && journal != null) {
+                try {
+                    journal.scheduled(timeout.key(), timeout.deadline());
+                    timeout.journaled = true;
+                } catch (IOException e) {
+                    log.error("写超时日志失败", e);
+                }
+            }
+            if (!wheel.add(timeout)) {
+                // 已经过期,这一格就执行
+                expired.add(timeout);
+            }
+        }
+    }
+
+    private void drainDone(TimeoutJournal journal) {
+        Timeout timeout;
+        while ((timeout = doneQueue.poll()) != null) {
+            wheel.remove(timeout);
+            if (timeout.journaled && journal != null) {
+                try {
+                    journal.done(timeout.key(), timeout.deadline());
+                } catch (IOException e) {
+                    log.error("写超时日志失败", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 到期的超时按batchSize分批交给工作线程池,线程池拒绝时在tick线程上直接执行
+     */
+    private void dispatch(List<Timeout> expired) {
+        Timeout[] batch = null;
+        int count = 0;
+        for (Timeout timeout : expired) {
+            // 和cancel竞争,CAS失败说明已经取消
+            if (!timeout.expire()) {
+                continue;
+            }
+            pending.decrement();
+            if (batch == null) {
+                batch = new Timeout[Math.min(batchSize, expired.size())];
+            }
+            batch[count++] = timeout;
+            if (count == batch.length) {
+                execute(batch, count);
+                batch = null;
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            execute(batch, count);
+        }
+    }
+
+    private void execute(Timeout[] batch, int count) {
+        Runnable runnable = () -> {
+            for (int i = 0; i < count; i++) {
+                Timeout timeout = batch[i];
+                try {
+                    timeout.task().run(timeout);
+                } catch (Throwable e) {
+                    log.warn("timer task failed: {}", timeout, e);
+                } finally {
+                    if (timeout.key() != null) {
+                        keyed.remove(timeout.key(), timeout);
+                        doneQueue.offer(timeout);
+                    }
+                }
+            }
+        };
+        try {
+            workers.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            log.warn("timer workers rejected {} timeouts, running on tick thread", count);
+            runnable.run();
+        }
+    }
+}
@@ -1,104 +1,259 @@
 package com.xmxe.util;
 
-import java.util.BitSet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.google.common.base.Charsets;
 
-public class BloomFilter {
+/**
+ * 布隆过滤器
+ * 1.根据预计插入数量n和期望误判率p计算最优位数 m = -n*ln(p)/(ln2)^2 和哈希函数个数 k = m/n*ln2
+ * 2.位数组是long[](AtomicLongArray),置位用CAS,多线程并发add/contains不需要加锁
+ * 3.只计算一次128位MurmurHash3,用 h1+i*h2 得到k个下标,不需要k个独立的哈希函数
+ * 4.支持序列化为紧凑的二进制格式:[版本byte][k byte][long个数int][long...]
+ */
+public class BloomFilter implements ProbabilisticSet {
+
+    private static final byte SERIAL_VERSION = 1;
+
     /**
-     * 一个长度为10亿的比特位
+     * 位数组
      */
-    private static final int DEFAULT_SIZE = 256 << 22;
+    private final AtomicLongArray bits;
 
     /**
-     * 为了降低错误率,使用加法hash算法,所以定义一个8个元素的质数数组
+     * 总位数,是64的整数倍
      */
-    private static final int[] seeds = { 3, 5, 7, 11, 13, 31, 37, 61 };
+    private final long bitSize;
 
     /**
-     * 相当于构建8个不同的hash算法
+     * 哈希函数个数
      */
-    private static HashFunction[] functions = new HashFunction[seeds.length];
+    private final int numHashFunctions;
 
     /**
-     * 初始化布隆过滤器的bitmap
+     * 已置为1的位数,用于估算当前误判率
      */
-    private static BitSet bitset = new BitSet(DEFAULT_SIZE);
+    private final LongAdder bitCount = new LongAdder();
+
+    /**
+     * @param expectedInsertions 预计插入数量
+     * @param fpp                期望误判率,取值(0,1)
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("expectedInsertions must be positive");
+        }
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("fpp must be in (0, 1)");
+        }
+        long numBits = optimalNumOfBits(expectedInsertions, fpp);
+        int longs = (int) Math.min((numBits + 63) >>> 6, Integer.MAX_VALUE - 8);
+        this.bits = new AtomicLongArray(longs);
+        this.bitSize = (long) longs << 6;
+        this.numHashFunctions = optimalNumOfHashFunctions(expectedInsertions, bitSize);
+    }
+
+    private BloomFilter(AtomicLongArray bits, int numHashFunctions) {
+        this.bits = bits;
+        this.bitSize = (long) bits.length() << 6;
+        this.numHashFunctions = numHashFunctions;
+        long count = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            count += Long.bitCount(bits.get(i));
+        }
+        this.bitCount.add(count);
+    }
 
     /**
      * 添加数据
      *
      * @param value 需要加入的值
+     * @return true表示至少有一位从0变成1,即这个值之前一定不存在
      */
-    public static void add(String value) {
-        if (value != null) {
-            for (HashFunction f : functions) {
-                // 计算 hash 值并修改 bitmap 中相应位置为 true
-                bitset.set(f.hash(value), true);
-            }
+    @Override
+    public boolean add(String value) {
+        if (value == null) {
+            return false;
+        }
+        return add(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean add(byte[] value) {
+        long[] hash = Murmur3.hash128(value, 0, value.length, 0);
+        long combined = hash[0];
+        boolean changed = false;
+        for (int i = 0; i < numHashFunctions; i++) {
+            // 取正数后取模,得到第i个下标
+            changed |= set((combined & Long.MAX_VALUE) % bitSize);
+            combined += hash[1];
         }
+        return changed;
     }
 
     /**
      * 判断相应元素是否存在
-     * 
+     *
      * @param value 需要判断的元素
-     * @return 结果
+     * @return false表示一定不存在,true表示可能存在
      */
-    public static boolean contains(String value) {
+    @Override
+    public boolean contains(String value) {
         if (value == null) {
             return false;
         }
-        boolean ret = true;
-        for (HashFunction f : functions) {
-            ret = bitset.get(f.hash(value));
-            // 一个 hash 函数返回 false 则跳出循环
-            if (!ret) {
-                break;
+        return contains(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean contains(byte[] value) {
+        long[] hash = Murmur3.hash128(value, 0, value.length, 0);
+        long combined = hash[0];
+        for (int i = 0; i < numHashFunctions; i++) {
+            if (!get((combined & Long.MAX_VALUE) % bitSize)) {
+                // 一位为0则一定不存在
+                return false;
             }
+            combined += hash[1];
         }
-        return ret;
+        return true;
     }
 
-    static class HashFunction {
+    /**
+     * 按当前置位比例估算的误判率 (置位数/总位数)^k
+     */
+    public double expectedFpp() {
+        return Math.pow((double) bitCount.sum() / bitSize, numHashFunctions);
+    }
 
-        private int size;
-        private int seed;
+    /**
+     * 按置位数估算已插入的元素个数 n ≈ -m/k*ln(1-x/m)
+     */
+    public long approximateElementCount() {
+        double fractionOfBitsSet = (double) bitCount.sum() / bitSize;
+        return Math.round(-Math.log1p(-fractionOfBitsSet) * bitSize / numHashFunctions);
+    }
+
+    @Override
+    public long bitSize() {
+        return bitSize;
+    }
+
+    public int numHashFunctions() {
+        return numHashFunctions;
+    }
 
-        public HashFunction(int size, int seed) {
-            this.size = size;
-            this.seed = seed;
+    /**
+     * 序列化,写入期间的并发add可能只有部分生效
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.writeByte(SERIAL_VERSION);
+        dout.writeByte(numHashFunctions);
+        dout.writeInt(bits.length());
+        for (int i = 0; i < bits.length(); i++) {
+            dout.writeLong(bits.get(i));
         }
+        dout.flush();
+    }
 
-        public int hash(String value) {
-            int result = 0;
-            int len = value.length();
-            for (int i = 0; i < len; i++) {
-                result = seed * result + value.charAt(i);
-            }
-            // int r = (size - 1) & result;
-            return (size - 1) & result;
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(6 + bits.length() * 8);
+        try {
+            writeTo(bos);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bos.toByteArray();
+    }
+
+    public static BloomFilter readFrom(InputStream in) throws IOException {
+        DataInputStream din = new DataInputStream(in);
+        byte version = din.readByte();
+        if (version != SERIAL_VERSION) {
+            throw new IOException("unsupported bloom filter version: " + version);
+        }
+        int numHashFunctions = din.readUnsignedByte();
+        int longs = din.readInt();
+        if (numHashFunctions <= 0 || longs <= 0) {
+            throw new IOException("corrupt bloom filter data");
+        }
+        AtomicLongArray bits = new AtomicLongArray(longs);
+        for (int i = 0; i < longs; i++) {
+            bits.set(i, din.readLong());
+        }
+        return new BloomFilter(bits, numHashFunctions);
+    }
+
+    public static BloomFilter fromByteArray(byte[] bytes) {
+        try {
+            return readFrom(new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
         }
     }
 
+    /**
+     * m = -n*ln(p)/(ln2)^2
+     */
+    static long optimalNumOfBits(long n, double p) {
+        return Math.max(64, (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2))));
+    }
+
+    /**
+     * k = m/n*ln2,至少为1
+     */
+    static int optimalNumOfHashFunctions(long n, long m) {
+        return Math.max(1, Math.min(255, (int) Math.round((double) m / n * Math.log(2))));
+    }
+
+    private boolean set(long bitIndex) {
+        int index = (int) (bitIndex >>> 6);
+        long mask = 1L << bitIndex;
+        long current;
+        do {
+            current = bits.get(index);
+            if ((current & mask) != 0) {
+                return false;
+            }
+        } while (!bits.compareAndSet(index, current, current | mask));
+        bitCount.increment();
+        return true;
+    }
+
+    private boolean get(long bitIndex) {
+        return (bits.get((int) (bitIndex >>> 6)) & (1L << bitIndex)) != 0;
+    }
+
     /**
      * 测试。。。
      */
     public static void main(String[] args) {
-
-        for (int i = 0; i < seeds.length; i++) {
-            functions[i] = new HashFunction(DEFAULT_SIZE, seeds[i]);
-        }
+        // 预计1亿数据,误判率1%,约需要114MB
+        BloomFilter filter = new BloomFilter(100000000, 0.01);
+        System.out.println("bits=" + filter.bitSize() + ", k=" + filter.numHashFunctions());
 
         // 添加1亿数据
         for (int i = 0; i < 100000000; i++) {
-            add(String.valueOf(i));
+            filter.add(String.valueOf(i));
         }
         String id = "123456789";
-        add(id);
+        filter.add(id);
+
+        System.out.println(filter.contains(id)); // true
+        System.out.println("" + filter.contains("234567890")); // 大概率false
+        System.out.println("expectedFpp=" + filter.expectedFpp());
 
-        System.out.println(contains(id)); // true
-        System.out.println("" + contains("234567890")); // false
+        // 序列化后还原
+        BloomFilter copy = BloomFilter.fromByteArray(filter.toByteArray());
+        System.out.println(copy.contains(id)); // true
 
         // Guava版本的布隆过滤器实现
         // 初始化一个存储String类型的布隆过滤器,预计插入100个元素,误判率为0.01,默认值是0.03
@@ -110,7 +265,7 @@ public class BloomFilter {
         // 判断元素是否存在
         System.out.println(bloomFilter.mightContain("Lynn")); // true
         System.out.println(bloomFilter.mightContain("张三"));  // false
-        
+
         // redis布隆过滤器
     }
 }
@@ -0,0 +1,136 @@
+package com.xmxe.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 计数布隆过滤器,把布隆过滤器的每一位换成4位计数器,添加时k个计数器加1,删除时减1,计数器不为0即认为该位存在
+ * 一个long存16个计数器,内存是同样参数布隆过滤器的4倍。计数器加到15后不再变化（饱和）,也不会被删除减少,
+ * 这样最多多出一些误判,不会产生漏判。4位计数器在最优参数下溢出的概率极低
+ */
+public class CountingBloomFilter implements ProbabilisticSet {
+
+    private static final int COUNTER_BITS = 4;
+    private static final long COUNTER_MASK = 0xfL;
+
+    /**
+     * 计数器数组,每个long存16个计数器
+     */
+    private final AtomicLongArray counters;
+
+    /**
+     * 计数器个数
+     */
+    private final long counterSize;
+
+    private final int numHashFunctions;
+
+    /**
+     * @param expectedInsertions 预计插入数量
+     * @param fpp                期望误判率,取值(0,1)
+     */
+    public CountingBloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("expectedInsertions must be positive");
+        }
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("fpp must be in (0, 1)");
+        }
+        long numCounters = BloomFilter.optimalNumOfBits(expectedInsertions, fpp);
+        int longs = (int) Math.min((numCounters + 15) >>> 4, Integer.MAX_VALUE - 8);
+        this.counters = new AtomicLongArray(longs);
+        this.counterSize = (long) longs << 4;
+        this.numHashFunctions = BloomFilter.optimalNumOfHashFunctions(expectedInsertions, counterSize);
+    }
+
+    @Override
+    public boolean add(String value) {
+        if (value == null) {
+            return false;
+        }
+        long[] hash = Murmur3.hash128(value);
+        long combined = hash[0];
+        for (int i = 0; i < numHashFunctions; i++) {
+            increment((combined & Long.MAX_VALUE) % counterSize);
+            combined += hash[1];
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(String value) {
+        if (value == null) {
+            return false;
+        }
+        long[] hash = Murmur3.hash128(value);
+        long combined = hash[0];
+        for (int i = 0; i < numHashFunctions; i++) {
+            if (count((combined & Long.MAX_VALUE) % counterSize) == 0) {
+                return false;
+            }
+            combined += hash[1];
+        }
+        return true;
+    }
+
+    /**
+     * 删除前先判断是否可能存在,一定不存在的元素不做任何修改
+     */
+    @Override
+    public boolean remove(String value) {
+        if (!contains(value)) {
+            return false;
+        }
+        long[] hash = Murmur3.hash128(value);
+        long combined = hash[0];
+        for (int i = 0; i < numHashFunctions; i++) {
+            decrement((combined & Long.MAX_VALUE) % counterSize);
+            combined += hash[1];
+        }
+        return true;
+    }
+
+    @Override
+    public long bitSize() {
+        return counterSize * COUNTER_BITS;
+    }
+
+    public int numHashFunctions() {
+        return numHashFunctions;
+    }
+
+    int count(long counterIndex) {
+        long word = counters.get((int) (counterIndex >>> 4));
+        return (int) ((word >>> offset(counterIndex)) & COUNTER_MASK);
+    }
+
+    private void increment(long counterIndex) {
+        int index = (int) (counterIndex >>> 4);
+        int offset = offset(counterIndex);
+        long current;
+        do {
+            current = counters.get(index);
+            if (((current >>> offset) & COUNTER_MASK) == COUNTER_MASK) {
+                // 饱和
+                return;
+            }
+        } while (!counters.compareAndSet(index, current, current + (1L << offset)));
+    }
+
+    private void decrement(long counterIndex) {
+        int index = (int) (counterIndex >>> 4);
+        int offset = offset(counterIndex);
+        long current;
+        do {
+            current = counters.get(index);
+            long count = (current >>> offset) & COUNTER_MASK;
+            if (count == 0 || count == COUNTER_MASK) {
+                // 已经为0（并发删除）或者已饱和,饱和的计数器不知道真实次数,不能减
+                return;
+            }
+        } while (!counters.compareAndSet(index, current, current - (1L << offset)));
+    }
+
+    private static int offset(long counterIndex) {
+        return (int) (counterIndex & 15) << 2;
+    }
+}
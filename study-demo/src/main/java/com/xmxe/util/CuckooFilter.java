@@ -0,0 +1,206 @@
+package com.xmxe.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 布谷鸟过滤器(Cuckoo Filter),只存元素的16位指纹,误判率约为 2*4/2^16 ≈ 0.012%
+ * 1.每个桶4个槽,一个long正好存一个桶的4个16位指纹,指纹为0表示空槽
+ * 2.每个元素有两个候选桶 i1=hash&mask, i2=i1^hash(指纹),只靠指纹就能算出另一个桶,所以删除、搬迁都不需要原始值
+ * 3.两个桶都满时随机踢出一个指纹,搬到它的另一个桶,最多搬MAX_KICKS次,仍然失败时把最后一个指纹放进victim,之后拒绝写入
+ * 4.低误判率(<3%)下每个元素占用的空间比布隆过滤器少,且支持删除;同一元素最多插入2*4次
+ * 读写都用synchronized,适合写少读多或单线程场景
+ */
+public class CuckooFilter implements ProbabilisticSet {
+
+    private static final int SLOTS_PER_BUCKET = 4;
+    private static final int FINGERPRINT_BITS = 16;
+    private static final long FINGERPRINT_MASK = 0xffffL;
+    private static final int MAX_KICKS = 500;
+
+    /**
+     * 装载因子,4槽的布谷鸟哈希在95%左右开始频繁插入失败
+     */
+    private static final double LOAD_FACTOR = 0.95;
+
+    private final long[] buckets;
+
+    private final int bucketMask;
+
+    private long count;
+
+    /**
+     * 搬迁失败时无处安放的指纹及其所在桶,victimFingerprint不为0表示过滤器已满
+     */
+    private int victimIndex;
+    private long victimFingerprint;
+
+    /**
+     * @param capacity 最大元素个数,桶数会向上取整到2的幂
+     */
+    public CuckooFilter(long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        long needed = (long) Math.ceil(capacity / (SLOTS_PER_BUCKET * LOAD_FACTOR));
+        if (needed > 1 << 30) {
+            throw new IllegalArgumentException("capacity too large: " + capacity);
+        }
+        int bucketCount = Integer.highestOneBit((int) Math.max(1, needed - 1)) << 1;
+        this.buckets = new long[bucketCount];
+        this.bucketMask = bucketCount - 1;
+    }
+
+    /**
+     * @return false表示过滤器已满,写入失败
+     */
+    @Override
+    public synchronized boolean add(String value) {
+        if (value == null || victimFingerprint != 0) {
+            return false;
+        }
+        long[] hash = Murmur3.hash128(value);
+        long fingerprint = fingerprint(hash[1]);
+        int i1 = index(hash[0]);
+        int i2 = altIndex(i1, fingerprint);
+        if (insert(i1, fingerprint) || insert(i2, fingerprint)) {
+            count++;
+            return true;
+        }
+        // 两个桶都满,随机踢出一个指纹到它的另一个桶
+        int index = ThreadLocalRandom.current().nextBoolean() ? i1 : i2;
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            int slot = ThreadLocalRandom.current().nextInt(SLOTS_PER_BUCKET);
+            long evicted = slotOf(buckets[index], slot);
+            buckets[index] = withSlot(buckets[index], slot, fingerprint);
+            fingerprint = evicted;
+            index = altIndex(index, fingerprint);
+            if (insert(index, fingerprint)) {
+                count++;
+                return true;
+            }
+        }
+        victimIndex = index;
+        victimFingerprint = fingerprint;
+        count++;
+        return true;
+    }
+
+    @Override
+    public synchronized boolean contains(String value) {
+        if (value == null) {
+            return false;
+        }
+        long[] hash = Murmur3.hash128(value);
+        long fingerprint = fingerprint(hash[1]);
+        int i1 = index(hash[0]);
+        int i2 = altIndex(i1, fingerprint);
+        if (victimFingerprint == fingerprint && (victimIndex == i1 || victimIndex == i2)) {
+            return true;
+        }
+        return hasFingerprint(buckets[i1], fingerprint) || hasFingerprint(buckets[i2], fingerprint);
+    }
+
+    @Override
+    public synchronized boolean remove(String value) {
+        if (value == null) {
+            return false;
+        }
+        long[] hash = Murmur3.hash128(value);
+        long fingerprint = fingerprint(hash[1]);
+        int i1 = index(hash[0]);
+        int i2 = altIndex(i1, fingerprint);
+        if (victimFingerprint == fingerprint && (victimIndex == i1 || victimIndex == i2)) {
+            victimFingerprint = 0;
+            count--;
+            return true;
+        }
+        if (delete(i1, fingerprint) || delete(i2, fingerprint)) {
+            count--;
+            // 腾出了位置,尝试把victim放回去
+            if (victimFingerprint != 0) {
+                long fp = victimFingerprint;
+                int index = victimIndex;
+                if (insert(index, fp) || insert(altIndex(index, fp), fp)) {
+                    victimFingerprint = 0;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public long bitSize() {
+        return (long) buckets.length * Long.SIZE;
+    }
+
+    public synchronized long size() {
+        return count;
+    }
+
+    /**
+     * 当前装载率
+     */
+    public synchronized double loadFactor() {
+        return (double) count / ((long) buckets.length * SLOTS_PER_BUCKET);
+    }
+
+    private int index(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & bucketMask;
+    }
+
+    /**
+     * i1^hash(fp),对i2再算一次得到i1,所以搬迁时不需要知道当前在哪个桶
+     */
+    private int altIndex(int index, long fingerprint) {
+        return (index ^ (int) ((fingerprint * 0x5bd1e995L) >>> 8)) & bucketMask;
+    }
+
+    /**
+     * 取哈希的低16位作指纹,0表示空槽,所以0映射成1
+     */
+    private static long fingerprint(long hash) {
+        long fingerprint = hash & FINGERPRINT_MASK;
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    private boolean insert(int index, long fingerprint) {
+        long bucket = buckets[index];
+        for (int slot = 0; slot < SLOTS_PER_BUCKET; slot++) {
+            if (slotOf(bucket, slot) == 0) {
+                buckets[index] = withSlot(bucket, slot, fingerprint);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean delete(int index, long fingerprint) {
+        long bucket = buckets[index];
+        for (int slot = 0; slot < SLOTS_PER_BUCKET; slot++) {
+            if (slotOf(bucket, slot) == fingerprint) {
+                buckets[index] = withSlot(bucket, slot, 0);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasFingerprint(long bucket, long fingerprint) {
+        for (int slot = 0; slot < SLOTS_PER_BUCKET; slot++) {
+            if (slotOf(bucket, slot) == fingerprint) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long slotOf(long bucket, int slot) {
+        return (bucket >>> (slot * FINGERPRINT_BITS)) & FINGERPRINT_MASK;
+    }
+
+    private static long withSlot(long bucket, int slot, long fingerprint) {
+        int shift = slot * FINGERPRINT_BITS;
+        return (bucket & ~(FINGERPRINT_MASK << shift)) | (fingerprint << shift);
+    }
+}
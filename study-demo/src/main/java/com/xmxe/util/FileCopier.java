@@ -0,0 +1,427 @@
+package com.xmxe.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 文件复制和目录树复制/删除,代替FileUtils里byte[]循环和递归File.listFiles的写法
+ * 1.单个文件用FileChannel.transferTo,Linux上文件到文件走sendfile/copy_file_range,数据不进用户态
+ * 2.大文件(不小于2个rangeSize)先把目标文件设成源文件大小,按rangeSize切成区段,parallelism个任务各自打开通道,
+ *   从共享的游标领取区段并行复制;每完成一个区段就force并记进checkpoint文件(目标文件名加.copy-checkpoint)
+ * 3.复制中断(进程被杀、磁盘满)后再次调用copy,checkpoint里源文件的大小、修改时间、区段大小都一致时只复制没完成的区段,
+ *   全部完成后删除checkpoint;不一致就从头复制
+ * 4.目录树:parallelism个任务从共享队列里取目录,列出内容,子目录放回队列,文件当场复制或删除;
+ *   同时在跑的IO任务数有上限,百万个小文件也不会一下子堆出百万个任务;符号链接本身被复制或删除,不跟进去
+ * 任务默认跑在IoExecutors的虚拟线程上;没有虚拟线程时用单独的file-copier线程池,不用IoExecutors的有界平台线程池:
+ * copy/copyTree会阻塞等待自己提交的任务,调用方本身跑在那个线程池里时,线程全被等待的调用方占住,子任务永远轮不到
+ *
+ * 用法:
+ * FileCopier.DEFAULT.copy(Paths.get("/data/big.iso"), Paths.get("/backup/big.iso"));
+ * FileCopier.DEFAULT.copyTree(Paths.get("/data/photos"), Paths.get("/backup/photos"));
+ * FileCopier.DEFAULT.deleteTree(Paths.get("/tmp/cache"));
+ */
+public final class FileCopier {
+
+    public static final long DEFAULT_RANGE_SIZE = 64L * 1024 * 1024;
+
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    public static final FileCopier DEFAULT = new FileCopier(DEFAULT_PARALLELISM, DEFAULT_RANGE_SIZE, null);
+
+    static final String CHECKPOINT_SUFFIX = ".copy-checkpoint";
+
+    private final int parallelism;
+
+    private final long rangeSize;
+
+    private final ExecutorService executor;
+
+    /**
+     * @param parallelism 一次复制或遍历同时运行的任务数
+     * @param rangeSize   大文件并行复制的区段大小,也是checkpoint的粒度
+     * @param executor    执行任务的线程池,null表示默认的执行器;传入有界线程池时,不要在它的任务里调用这个FileCopier
+     */
+    public FileCopier(int parallelism, long rangeSize, ExecutorService executor) {
+        if (parallelism <= 0 || rangeSize <= 0) {
+            throw new IllegalArgumentException("parallelism and rangeSize must be positive");
+        }
+        this.parallelism = parallelism;
+        this.rangeSize = rangeSize;
+        this.executor = executor;
+    }
+
+    /**
+     * 复制一个文件,目标已存在时覆盖;大文件并行复制,可以从上次中断的地方继续
+     */
+    public void copy(Path src, Path dst) throws IOException {
+        long size = Files.size(src);
+        if (size < 2 * rangeSize) {
+            Files.deleteIfExists(checkpointOf(dst));
+            transfer(src, dst);
+            return;
+        }
+        copyRanges(src, dst, size);
+    }
+
+    /**
+     * 复制目录树,目标目录可以已经存在,同名文件被覆盖
+     *
+     * @return 复制的文件数(含符号链接)
+     */
+    public long copyTree(Path src, Path dst) throws IOException {
+        if (!Files.isDirectory(src, LinkOption.NOFOLLOW_LINKS)) {
+            copy(src, dst);
+            return 1;
+        }
+        Files.createDirectories(dst);
+        AtomicLong files = new AtomicLong();
+        walk(src, dir -> {
+            Path target = dst.resolve(src.relativize(dir).toString());
+            List<Path> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    Path to = target.resolve(entry.getFileName().toString());
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attributes.isDirectory()) {
+                        mkdir(to);
+                        subdirectories.add(entry);
+                    } else if (attributes.isRegularFile()) {
+                        // 大文件也在当前任务里顺序复制:并行度已经用在遍历上,再嵌套并行任务可能把线程池占满互相等待
+                        transfer(entry, to);
+                        files.incrementAndGet();
+                    } else {
+                        Files.copy(entry, to, StandardCopyOption.REPLACE_EXISTING, LinkOption.NOFOLLOW_LINKS);
+                        files.incrementAndGet();
+                    }
+                }
+            }
+            return subdirectories;
+        });
+        return files.get();
+    }
+
+    /**
+     * 删除文件或整个目录树,不存在时什么也不做
+     *
+     * @return 删除的文件和目录数
+     */
+    public long deleteTree(Path root) throws IOException {
+        if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS)) {
+            return 0;
+        }
+        if (!Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+            Files.deleteIfExists(root);
+            return 1;
+        }
+        AtomicLong deleted = new AtomicLong();
+        ConcurrentLinkedQueue<Path> directories = new ConcurrentLinkedQueue<>();
+        directories.add(root);
+        // 遍历时并行删除文件,记下目录
+        walk(root, dir -> {
+            List<Path> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        subdirectories.add(entry);
+                        directories.add(entry);
+                    } else if (Files.deleteIfExists(entry)) {
+                        deleted.incrementAndGet();
+                    }
+                }
+            }
+            return subdirectories;
+        });
+        // 目录从深到浅删除,这时都已经是空目录
+        List<Path> ordered = new ArrayList<>(directories);
+        ordered.sort(Comparator.comparingInt(Path::getNameCount).reversed());
+        for (Path dir : ordered) {
+            if (Files.deleteIfExists(dir)) {
+                deleted.incrementAndGet();
+            }
+        }
+        return deleted.get();
+    }
+
+    static Path checkpointOf(Path dst) {
+        return dst.resolveSibling(dst.getFileName() + CHECKPOINT_SUFFIX);
+    }
+
+    /**
+     * 顺序复制整个文件
+     */
+    private static void transfer(Path src, Path dst) throws IOException {
+        try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(dst, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long n = in.transferTo(position, size - position, out);
+                if (n <= 0) {
+                    // 复制过程中源文件被截短
+                    break;
+                }
+                position += n;
+            }
+        }
+    }
+
+    private static void mkdir(Path dir) throws IOException {
+        try {
+            Files.createDirectory(dir);
+        } catch (FileAlreadyExistsException e) {
+            if (!Files.isDirectory(dir)) {
+                throw e;
+            }
+        }
+    }
+
+    private void copyRanges(Path src, Path dst, long size) throws IOException {
+        long modified = Files.getLastModifiedTime(src).toMillis();
+        int ranges = (int) ((size + rangeSize - 1) / rangeSize);
+        Path checkpointFile = checkpointOf(dst);
+        Checkpoint checkpoint = Checkpoint.load(checkpointFile);
+        if (checkpoint == null || !checkpoint.matches(size, modified, rangeSize) || !Files.exists(dst)
+                || Files.size(dst) != size) {
+            checkpoint = new Checkpoint(size, modified, rangeSize, new BitSet(ranges));
+            try (RandomAccessFile file = new RandomAccessFile(dst.toFile(), "rw")) {
+                // 先定好长度,各区段可以按任意顺序写
+                file.setLength(0);
+                file.setLength(size);
+            }
+            checkpoint.save(checkpointFile);
+        }
+        Checkpoint progress = checkpoint;
+        AtomicInteger next = new AtomicInteger();
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(parallelism, ranges); i++) {
+            workers.add(CompletableFuture.runAsync(() -> {
+                try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+                        FileChannel out = FileChannel.open(dst, StandardOpenOption.WRITE)) {
+                    int range;
+                    while ((range = next.getAndIncrement()) < ranges) {
+                        if (progress.isDone(range)) {
+                            continue;
+                        }
+                        long position = range * rangeSize;
+                        long end = Math.min(size, position + rangeSize);
+                        // 目标通道的当前位置决定写到哪里,每个任务有自己的通道
+                        out.position(position);
+                        while (position < end) {
+                            long n = in.transferTo(position, end - position, out);
+                            if (n <= 0) {
+                                throw new IOException("source truncated while copying: " + src);
+                            }
+                            position += n;
+                        }
+                        out.force(false);
+                        progress.markDone(range, checkpointFile);
+                    }
+                } catch (IOException e) {
+                    // 让其他任务尽快停下
+                    next.set(ranges);
+                    throw new UncheckedIOException(e);
+                }
+            }, executor()));
+        }
+        await(workers);
+        Files.deleteIfExists(checkpointFile);
+    }
+
+    /**
+     * 有界的并行遍历:最多parallelism个任务,从共享队列里取目录交给visitor,visitor返回要继续遍历的子目录
+     * pending是已入队还没处理完的目录数,队列空且pending为0时遍历结束
+     */
+    private void walk(Path root, DirectoryVisitor visitor) throws IOException {
+        ConcurrentLinkedQueue<Path> queue = new ConcurrentLinkedQueue<>();
+        AtomicLong pending = new AtomicLong(1);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        queue.add(root);
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < parallelism; i++) {
+            workers.add(CompletableFuture.runAsync(() -> {
+                long idleNanos = 1000;
+                while (pending.get() > 0 && failure.get() == null) {
+                    Path dir = queue.poll();
+                    if (dir == null) {
+                        // 其他任务还在列目录,稍后可能有新的子目录
+                        LockSupport.parkNanos(idleNanos);
+                        idleNanos = Math.min(idleNanos * 2, TimeUnit.MILLISECONDS.toNanos(1));
+                        continue;
+                    }
+                    idleNanos = 1000;
+                    try {
+                        List<Path> subdirectories = visitor.visit(dir);
+                        pending.addAndGet(subdirectories.size());
+                        queue.addAll(subdirectories);
+                    } catch (NoSuchFileException e) {
+                        // 遍历期间被别人删掉了
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        pending.decrementAndGet();
+                    }
+                }
+            }, executor()));
+        }
+        await(workers);
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private ExecutorService executor() {
+        if (executor != null) {
+            return executor;
+        }
+        return IoExecutors.isVirtual() ? IoExecutors.executor() : Workers.EXECUTOR;
+    }
+
+    private static void await(List<CompletableFuture<Void>> workers) throws IOException {
+        IOException failure = null;
+        for (CompletableFuture<Void> worker : workers) {
+            try {
+                worker.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException) {
+                    cause = cause.getCause();
+                }
+                if (failure == null) {
+                    failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * 没有虚拟线程时的默认执行器,第一次使用时创建
+     */
+    private static final class Workers {
+
+        private static final ExecutorService EXECUTOR = IoExecutors.newPlatformExecutor("file-copier",
+                Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    private interface DirectoryVisitor {
+        List<Path> visit(Path dir) throws IOException;
+    }
+
+    /**
+     * 复制进度:源文件大小、修改时间、区段大小和已完成区段的位图
+     * 先写临时文件再原子替换,进程在写checkpoint时被杀也不会留下半个文件
+     */
+    static final class Checkpoint {
+
+        private static final int MAGIC = 0x46435031;
+
+        final long size;
+
+        final long modified;
+
+        final long rangeSize;
+
+        private final BitSet done;
+
+        Checkpoint(long size, long modified, long rangeSize, BitSet done) {
+            this.size = size;
+            this.modified = modified;
+            this.rangeSize = rangeSize;
+            this.done = done;
+        }
+
+        static Checkpoint load(Path file) {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            try (InputStream stream = Files.newInputStream(file); DataInputStream in = new DataInputStream(stream)) {
+                if (in.readInt() != MAGIC) {
+                    return null;
+                }
+                long size = in.readLong();
+                long modified = in.readLong();
+                long rangeSize = in.readLong();
+                long[] words = new long[in.readInt()];
+                for (int i = 0; i < words.length; i++) {
+                    words[i] = in.readLong();
+                }
+                return new Checkpoint(size, modified, rangeSize, BitSet.valueOf(words));
+            } catch (IOException e) {
+                // 损坏的checkpoint当作没有
+                return null;
+            }
+        }
+
+        boolean matches(long size, long modified, long rangeSize) {
+            return this.size == size && this.modified == modified && this.rangeSize == rangeSize;
+        }
+
+        synchronized boolean isDone(int range) {
+            return done.get(range);
+        }
+
+        synchronized int doneCount() {
+            return done.cardinality();
+        }
+
+        synchronized void markDone(int range, Path file) throws IOException {
+            done.set(range);
+            save(file);
+        }
+
+        /**
+         * 临时文件先force到磁盘再替换,否则掉电后rename可能已经生效而内容还没落盘,留下一个空的或半个checkpoint
+         */
+        synchronized void save(Path file) throws IOException {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+                long[] words = done.toLongArray();
+                out.writeInt(MAGIC);
+                out.writeLong(size);
+                out.writeLong(modified);
+                out.writeLong(rangeSize);
+                out.writeInt(words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package com.xmxe.util;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.function.Consumer;
 
 public class FileUtils {
 
@@ -113,65 +117,40 @@ public class FileUtils {
 
     /**
      * 以行为单位读取文件,读取到最后一行
+     * 整个文件的行都会留在内存里,几百MB以上的文件用forEachLine或MappedLineReader流式处理
      * 
      * @param filePath
      */
     public static List<String> readFileContent(String filePath) {
-        BufferedReader reader = null;
-        List<String> listContent = new ArrayList<>();
-        try {
-            reader = new BufferedReader(new FileReader(filePath));
-            String tempString = null;
-            // 行数
-            // int line = 1;
-            // 一次读入一行,直到读入null为文件结束
-            while ((tempString = reader.readLine()) != null) {
-                listContent.add(tempString);
-                // line++;
-            }
+        return readFileContent(filePath, Charset.defaultCharset());
+    }
 
-            reader.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e1) {
-                }
-            }
+    /**
+     * 逐行处理文件,不把整个文件读进内存;line是映射区上的视图,只在回调期间有效,要保留时调toString()
+     * 
+     * @param filePath
+     * @param consumer
+     */
+    public static void forEachLine(String filePath, Consumer<? super CharSequence> consumer) throws IOException {
+        try (MappedLineReader reader = MappedLineReader.open(Paths.get(filePath))) {
+            reader.forEachLine(consumer);
         }
-        return listContent;
     }
 
     /**
-     * 读取指定行数据 ,注意：0为开始行
+     * 读取指定行数据 ,注意：0为开始行,超出文件行数返回null
+     * 从文件头扫到这一行就停止;同一文件反复按行号读取时保留一个MappedLineReader用line(n),第一次之后是O(1)
      * 
      * @param filePath
      * @param lineNumber
      */
     public static String readLineContent(String filePath, int lineNumber) {
-        BufferedReader reader = null;
-        String lineContent = "";
-        try {
-            reader = new BufferedReader(new FileReader(filePath));
-            int line = 0;
-            while (line <= lineNumber) {
-                lineContent = reader.readLine();
-                line++;
-            }
-            reader.close();
+        try (MappedLineReader reader = MappedLineReader.open(Paths.get(filePath))) {
+            return reader.findLine(lineNumber);
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e1) {
-                }
-            }
+            return null;
         }
-        return lineContent;
     }
 
     /**
@@ -183,30 +162,11 @@ public class FileUtils {
      * @return
      */
     public static List<String> readLinesContent(String filePath, int beginLineNumber, int endLineNumber) {
-        List<String> listContent = new ArrayList<>();
-        BufferedReader reader = null;
-        try {
-            int count = 0;
-            reader = new BufferedReader(new FileReader(filePath));
-            String content = reader.readLine();
-            while (content != null) {
-                if (count >= beginLineNumber && count <= endLineNumber) {
-                    listContent.add(content);
-                }
-                content = reader.readLine();
-                count++;
-            }
-        } catch (Exception e) {
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+        try (MappedLineReader reader = MappedLineReader.open(Paths.get(filePath))) {
+            return reader.findLines(beginLineNumber, endLineNumber);
+        } catch (IOException e) {
+            return new ArrayList<>();
         }
-        return listContent;
     }
 
     /**
@@ -362,20 +322,8 @@ public class FileUtils {
      */
     public static void deleteEveryThing(String file_path) {
         try {
-            File file = new File(file_path);
-            if (!file.exists()) {
-                return;
-            }
-            if (file.isFile()) {
-                file.delete();
-            } else {
-                File[] files = file.listFiles();
-                for (int i = 0; i < files.length; i++) {
-                    String root = files[i].getAbsolutePath();// 得到子文件或文件夹的绝对路径
-                    deleteEveryThing(root);
-                }
-                file.delete();
-            }
+            // 目录树用有界的并行遍历删除,见FileCopier.deleteTree
+            FileCopier.DEFAULT.deleteTree(Paths.get(file_path));
         } catch (Exception e) {
             System.out.println("删除文件失败");
         }
@@ -433,18 +381,19 @@ public class FileUtils {
     public static void deleteDir(File dir) throws IOException {
         if (dir.isFile())
             throw new IOException("IOException -> BadInputException: not a directory.");
-        File[] files = dir.listFiles();
-        if (files != null) {
-            for (int i = 0; i < files.length; i++) {
-                File file = files[i];
-                if (file.isFile()) {
-                    file.delete();
-                } else {
-                    deleteDir(file);
-                }
-            }
-        }
-        dir.delete();
+        FileCopier.DEFAULT.deleteTree(dir.toPath());
+    }
+
+    /**
+     * 复制整个目录,目标目录不存在时创建,同名文件覆盖
+     * 
+     * @param src
+     * @param dst
+     * @return 复制的文件数
+     * @throws IOException
+     */
+    public static long copyDir(File src, File dst) throws IOException {
+        return FileCopier.DEFAULT.copyTree(src.toPath(), dst.toPath());
     }
 
     /**
@@ -455,37 +404,8 @@ public class FileUtils {
      * @throws Exception
      */
     public static void copy(File src, File dst) throws Exception {
-        int BUFFER_SIZE = 4096;
-        InputStream in = null;
-        OutputStream out = null;
-        try {
-            in = new BufferedInputStream(new FileInputStream(src), BUFFER_SIZE);
-            out = new BufferedOutputStream(new FileOutputStream(dst), BUFFER_SIZE);
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int len = 0;
-            while ((len = in.read(buffer)) > 0) {
-                out.write(buffer, 0, len);
-            }
-        } catch (Exception e) {
-            throw e;
-        } finally {
-            if (null != in) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                in = null;
-            }
-            if (null != out) {
-                try {
-                    out.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                out = null;
-            }
-        }
+        // transferTo零拷贝,大文件分段并行复制,中断后再调用会从checkpoint继续
+        FileCopier.DEFAULT.copy(src.toPath(), dst.toPath());
     }
 
     /**
@@ -496,31 +416,27 @@ public class FileUtils {
      * @return
      */
     public static List<String> readFileContent(String filePath, String code) {
-        InputStreamReader reader = null;
-        BufferedReader br = null;
+        return readFileContent(filePath, Charset.forName(code));
+    }
+
+    private static List<String> readFileContent(String filePath, Charset charset) {
         List<String> listContent = new ArrayList<>();
-        try {
-            File file = new File(filePath);
-            reader = new InputStreamReader(new FileInputStream(file), code);
-            br = new BufferedReader(reader);
-            String tempString = null;
-            // 行数
-            // int line = 1;
-            // 一次读入一行,直到读入null为文件结束
-            while ((tempString = br.readLine()) != null) {
-                listContent.add(tempString);
-                // line++;
+        if (!MappedLineReader.supports(charset)) {
+            // UTF-16等编码的换行符不是单字节,不能按字节切行
+            try (BufferedReader br = Files.newBufferedReader(Paths.get(filePath), charset)) {
+                String tempString;
+                while ((tempString = br.readLine()) != null) {
+                    listContent.add(tempString);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-            reader.close();
+            return listContent;
+        }
+        try (MappedLineReader reader = MappedLineReader.open(Paths.get(filePath), charset)) {
+            reader.forEachLine(line -> listContent.add(line.toString()));
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e1) {
-                }
-            }
         }
         return listContent;
     }
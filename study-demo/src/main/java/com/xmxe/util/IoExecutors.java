@@ -0,0 +1,123 @@
+package com.xmxe.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xmxe.jdkfeature.thread.monitor.InstrumentedExecutor;
+
+/**
+ * 阻塞IO调用(HTTP、SFTP、JDBC)共用的执行器
+ * 1.运行在JDK21+时每个任务一个虚拟线程,阻塞时只挂起虚拟线程,并发数不再受线程池大小限制
+ * 2.源码按java17编译,newVirtualThreadPerTaskExecutor通过反射查找;JDK19/20没有开启预览时调用会抛异常,一样退回平台线程池
+ * 3.平台线程池大小取-Dio.executor.threads,默认CPU数*16,队列满了由提交线程自己执行,相当于限流;
+ *   线程池登记在ExecutorRegistry,名字是blocking-io
+ * 4.-Dio.executor.virtual=false强制使用平台线程池
+ * JDK21~23里虚拟线程在synchronized块中阻塞会占住载体线程,JDBC驱动和JSch内部这样的代码较多,这部分调用的并发仍受载体线程数限制
+ *
+ * 用法:
+ * CompletableFuture<String> f = IoExecutors.supplyAsync(() -> HttpClientUtil.get(url));
+ */
+public final class IoExecutors {
+
+    private static final Logger log = LoggerFactory.getLogger(IoExecutors.class);
+
+    private IoExecutors() {
+    }
+
+    /**
+     * 共享的执行器,第一次使用时创建,线程都是守护线程,不需要关闭
+     */
+    public static ExecutorService executor() {
+        return Holder.EXECUTOR;
+    }
+
+    /**
+     * 当前是否使用虚拟线程
+     */
+    public static boolean isVirtual() {
+        return Holder.VIRTUAL;
+    }
+
+    /**
+     * 在共享执行器上执行阻塞调用,受检异常包装成CompletionException
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Callable<T> task) {
+        return supplyAsync(task, executor());
+    }
+
+    public static <T> CompletableFuture<T> supplyAsync(Callable<T> task, ExecutorService executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * 新建一个虚拟线程执行器,运行时不支持时返回null,调用方负责关闭
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (!Boolean.parseBoolean(System.getProperty("io.executor.virtual", "true"))) {
+            return null;
+        }
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // JDK19/20没有--enable-preview
+            log.debug("virtual threads unavailable", e);
+            return null;
+        }
+    }
+
+    /**
+     * 有界的平台线程池,队列满时提交线程自己执行
+     */
+    public static ExecutorService newPlatformExecutor(String name, int threads) {
+        AtomicInteger index = new AtomicInteger();
+        ThreadPoolExecutor executor = InstrumentedExecutor.create(name, threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 4), r -> {
+                    Thread thread = new Thread(r, name + "-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final class Holder {
+
+        private static final ExecutorService EXECUTOR;
+
+        private static final boolean VIRTUAL;
+
+        static {
+            ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+            VIRTUAL = virtual != null;
+            if (VIRTUAL) {
+                EXECUTOR = virtual;
+            } else {
+                int threads = Integer.getInteger("io.executor.threads", Runtime.getRuntime().availableProcessors() * 16);
+                EXECUTOR = newPlatformExecutor("blocking-io", threads);
+            }
+            log.info("blocking io executor: {}", VIRTUAL ? "virtual threads" : "platform pool");
+        }
+    }
+}
@@ -8,14 +8,49 @@ package com.xmxe.util;
 public class IpLongUtil {
     /**
      * 把字符串IP转换成long
+     * 逐个字符解析,不做split也不装箱,可以在限流等热点路径上调用
      *
      * @param ipStr 字符串IP
      * @return IP对应的long值
      */
     public static long ip2Long(String ipStr) {
-        String[] ip = ipStr.split("\\.");
-        return (Long.valueOf(ip[0]) << 24) + (Long.valueOf(ip[1]) << 16)
-                + (Long.valueOf(ip[2]) << 8) + Long.valueOf(ip[3]);
+        long result = 0;
+        int part = 0;
+        int digits = 0;
+        int dots = 0;
+        for (int i = 0; i < ipStr.length(); i++) {
+            char c = ipStr.charAt(i);
+            if (c == '.') {
+                if (digits == 0 || ++dots > 3) {
+                    throw new IllegalArgumentException("invalid ip: " + ipStr);
+                }
+                result = (result << 8) | part;
+                part = 0;
+                digits = 0;
+            } else if (c >= '0' && c <= '9' && digits < 3) {
+                part = part * 10 + (c - '0');
+                digits++;
+                if (part > 255) {
+                    throw new IllegalArgumentException("invalid ip: " + ipStr);
+                }
+            } else {
+                throw new IllegalArgumentException("invalid ip: " + ipStr);
+            }
+        }
+        if (digits == 0 || dots != 3) {
+            throw new IllegalArgumentException("invalid ip: " + ipStr);
+        }
+        return (result << 8) | part;
+    }
+
+    /**
+     * 把InetAddress.getAddress()得到的4字节IPv4地址转换成long
+     */
+    public static long ip2Long(byte[] address) {
+        if (address.length != 4) {
+            throw new IllegalArgumentException("not an IPv4 address");
+        }
+        return (address[0] & 0xFFL) << 24 | (address[1] & 0xFFL) << 16 | (address[2] & 0xFFL) << 8 | (address[3] & 0xFFL);
     }
 
     /**
@@ -11,6 +11,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
 
 /**
  * 数据库连接类
@@ -70,10 +72,24 @@ public class JDBCUtil {
         }
     }
 
+    /**
+     * 异步调用同时占用的数据库连接数上限,虚拟线程没有池大小的限制,由这里保护数据库
+     */
+    private static final Semaphore ASYNC_PERMITS = new Semaphore(Integer.getInteger("jdbc.async.maxConcurrent", 32));
+
     public JDBCUtil() {
         connnection = getConnection();
     }
 
+    /**
+     * 不预先建立连接,每个方法调用时自己获取连接
+     */
+    private JDBCUtil(boolean connect) {
+        if (connect) {
+            connnection = getConnection();
+        }
+    }
+
     /**
      * 建立数据库连接
      * 
@@ -83,14 +99,17 @@ public class JDBCUtil {
         Connection connn = null;
         try {
             // 获取连接
-            connn = DriverManager.getConnection(url, name,
-                    passw);
+            connn = connect();
         } catch (SQLException e) {
             e.printStackTrace();
         }
         return connn;
     }
 
+    private static Connection connect() throws SQLException {
+        return DriverManager.getConnection(url, name, passw);
+    }
+
     /**
      * insert update delete SQL语句的执行的统一方法
      * 
@@ -166,10 +185,18 @@ public class JDBCUtil {
      * @return 结果集
      */
     public Object executeQuerySingle(String sql, Object[] params) {
-        Object object = null;
+        try {
+            return querySingle(sql, params);
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            return null;
+        }
+    }
+
+    private Object querySingle(String sql, Object[] params) throws SQLException {
         try {
             // 获得连接
-            connnection = this.getConnection();
+            connnection = connect();
 
             // 调用SQL
             preparedStatement = connnection.prepareStatement(sql);
@@ -184,17 +211,10 @@ public class JDBCUtil {
             // 执行
             resultSet = preparedStatement.executeQuery();
 
-            if (resultSet.next()) {
-                object = resultSet.getObject(1);
-            }
-
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            return resultSet.next() ? resultSet.getObject(1) : null;
         } finally {
             closeAll();
         }
-
-        return object;
     }
 
     /**
@@ -242,15 +262,39 @@ public class JDBCUtil {
         return list;
     }
 
-    @SuppressWarnings("unchecked")
     public List<Map<String, Object>> excuteQueryMap(String sql, Object[] params) {
-        List<Object> objs = excuteQueryObj(sql, params);
-        List<Map<String, Object>> res = new ArrayList<Map<String, Object>>(objs.size());
-        for (Object o : objs) {
-            res.add((Map<String, Object>) o);
+        try {
+            return queryMap(sql, params);
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            return new ArrayList<Map<String, Object>>();
+        }
+    }
+
+    private List<Map<String, Object>> queryMap(String sql, Object[] params) throws SQLException {
+        try {
+            connnection = connect();
+            preparedStatement = connnection.prepareStatement(sql);
+            if (params != null) {
+                for (int i = 0; i < params.length; i++) {
+                    preparedStatement.setObject(i + 1, params[i]);
+                }
+            }
+            resultSet = preparedStatement.executeQuery();
+            ResultSetMetaData rsmd = resultSet.getMetaData();
+            int columnCount = rsmd.getColumnCount();
+            List<Map<String, Object>> list = new ArrayList<Map<String, Object>>();
+            while (resultSet.next()) {
+                Map<String, Object> map = new HashMap<String, Object>();
+                for (int i = 1; i <= columnCount; i++) {
+                    map.put(rsmd.getColumnLabel(i), resultSet.getObject(i));
+                }
+                list.add(map);
+            }
+            return list;
+        } finally {
+            closeAll();
         }
-        objs = null;
-        return res;
     }
 
     /**
@@ -303,11 +347,19 @@ public class JDBCUtil {
      * @return
      */
     public int excuteUpdate(String sql, Object[] params) {
-        int num = 0;
-        // 获得连接
-        connnection = this.getConnection();
-        // 调用SQL
         try {
+            return update(sql, params);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    private int update(String sql, Object[] params) throws SQLException {
+        try {
+            // 获得连接
+            connnection = connect();
+            // 调用SQL
             preparedStatement = connnection.prepareStatement(sql);
             // 参数赋值
             if (params != null) {
@@ -315,11 +367,48 @@ public class JDBCUtil {
                     preparedStatement.setObject(i + 1, params[i]);
                 }
             }
-            num = preparedStatement.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
+            return preparedStatement.executeUpdate();
+        } finally {
+            // 释放资源,异步调用时不关闭会一直占着连接
+            closeAll();
         }
-        return num;
+    }
+
+    /**
+     * 异步执行更新,每次调用使用独立的JDBCUtil实例(实例里的连接和语句对象不能并发使用)
+     * 和同步方法不同,SQLException不会被吞掉,返回的future以CompletionException(cause是SQLException)结束
+     */
+    public static CompletableFuture<Integer> excuteUpdateAsync(String sql, Object[] params) {
+        return async(db -> db.update(sql, params));
+    }
+
+    /**
+     * 异步查询:一行一列
+     */
+    public static CompletableFuture<Object> executeQuerySingleAsync(String sql, Object[] params) {
+        return async(db -> db.querySingle(sql, params));
+    }
+
+    /**
+     * 异步查询,结果放在List<Map>中
+     */
+    public static CompletableFuture<List<Map<String, Object>>> excuteQueryMapAsync(String sql, Object[] params) {
+        return async(db -> db.queryMap(sql, params));
+    }
+
+    private static <T> CompletableFuture<T> async(SqlCall<T> call) {
+        return IoExecutors.supplyAsync(() -> {
+            ASYNC_PERMITS.acquire();
+            try {
+                return call.apply(new JDBCUtil(false));
+            } finally {
+                ASYNC_PERMITS.release();
+            }
+        });
+    }
+
+    private interface SqlCall<T> {
+        T apply(JDBCUtil db) throws SQLException;
     }
 
     /**
@@ -0,0 +1,668 @@
+package com.xmxe.util;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 按块内存映射的行读取器,用来处理几个G的日志文件,代替FileUtils里BufferedReader读进List的写法
+ * 1.文件按chunkSize(默认64MB)切块,切点挪到下一个换行符之后,每块单独map,一行不会跨块,块之间可以并行处理
+ * 2.行以CharSequence视图交给调用方,直接读映射的字节,不拷贝、不解码、不new String;
+ *   视图按一个字节一个字符解释,对ASCII(日志的主体)是准确的;含中文等多字节字符时用toString()按charset解码
+ * 3.找换行符一次比较8个字节(SWAR),不逐字节判断
+ * 4.随机访问:第一次按行号访问时并行扫描一遍,每块记录每隔INDEX_STRIDE行的行首偏移(稀疏索引),
+ *   之后line(n)二分找到块,再从最近的索引点最多往后扫INDEX_STRIDE-1行,和文件大小无关
+ * 行以\n分隔,行尾的\r去掉;文件末尾没有换行符的最后一行也算一行,和BufferedReader.readLine一致(单独的\r不当作换行)
+ * 只支持换行符按单字节ASCII编码的charset(UTF-8、GBK、ISO-8859-1等),UTF-16/UTF-32要用Reader读
+ * close时立即解除映射(Windows上映射期间文件不能删除或改名);读取期间文件被截短会导致访问映射区时抛InternalError(SIGBUS)
+ *
+ * 用法:
+ * try (MappedLineReader reader = MappedLineReader.open(Paths.get("app.log"))) {
+ *     long errors = reader.parallelCollect(() -> new long[1], (count, line) -> {
+ *         if (MappedLineReader.contains(line, "ERROR")) count[0]++;
+ *     }, (a, b) -> { a[0] += b[0]; return a; })[0];
+ *     String line = reader.line(1_000_000);
+ * }
+ */
+public final class MappedLineReader implements AutoCloseable {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * 稀疏索引的间隔,每块每隔这么多行记一个偏移,内存是行数/INDEX_STRIDE个int
+     */
+    static final int INDEX_STRIDE = 64;
+
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+
+    private static final long LOW_BITS = 0x0101010101010101L;
+
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /**
+     * sun.misc.Unsafe.invokeCleaner,用来在close时立即解除映射;拿不到时退回由GC释放
+     */
+    private static final Object UNSAFE;
+
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final Charset charset;
+
+    private final long size;
+
+    /**
+     * 每块的映射,小端序,getLong时字节下标和位的对应关系固定
+     */
+    private final MappedByteBuffer[] chunks;
+
+    /**
+     * 稀疏索引,第一次随机访问时建立:每块之前的总行数,每块里第0、STRIDE、2*STRIDE...行的块内偏移
+     */
+    private volatile Index index;
+
+    private MappedLineReader(Charset charset, long size, MappedByteBuffer[] chunks) {
+        this.charset = charset;
+        this.size = size;
+        this.chunks = chunks;
+    }
+
+    public static MappedLineReader open(Path path) throws IOException {
+        return open(path, Charset.defaultCharset(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public static MappedLineReader open(Path path, Charset charset) throws IOException {
+        return open(path, charset, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize 每块的大致大小,实际会延长到下一个换行符;一行不能超过2GB
+     */
+    public static MappedLineReader open(Path path, Charset charset, int chunkSize) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        if (!supports(charset)) {
+            throw new IllegalArgumentException("charset " + charset + " does not encode '\\n' as a single byte");
+        }
+        // 映射在通道关闭后仍然有效
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<MappedByteBuffer> chunks = new ArrayList<>();
+            ByteBuffer probe = ByteBuffer.allocate(8192);
+            long start = 0;
+            while (start < size) {
+                long end = Math.min(size, start + chunkSize);
+                if (end < size) {
+                    end = afterNextNewline(channel, end - 1, size, probe);
+                }
+                if (end - start > Integer.MAX_VALUE) {
+                    throw new IOException("line longer than 2GB at offset " + start);
+                }
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                chunk.order(ByteOrder.LITTLE_ENDIAN);
+                chunks.add(chunk);
+                start = end;
+            }
+            return new MappedLineReader(charset, size, chunks.toArray(new MappedByteBuffer[0]));
+        }
+    }
+
+    /**
+     * charset是否能按字节切行:\r\n编码后就是这两个ASCII字节,多字节字符里也不会出现这两个字节
+     * UTF-16、UTF-32以及只能解码不能编码的charset返回false
+     */
+    public static boolean supports(Charset charset) {
+        if (!charset.canEncode()) {
+            return false;
+        }
+        byte[] bytes = "\r\n".getBytes(charset);
+        return bytes.length == 2 && bytes[0] == '\r' && bytes[1] == '\n';
+    }
+
+    /**
+     * 从from开始找第一个换行符,返回它后面的位置;找不到返回size
+     */
+    private static long afterNextNewline(FileChannel channel, long from, long size, ByteBuffer probe) throws IOException {
+        long position = from;
+        while (position < size) {
+            probe.clear();
+            int n = channel.read(probe, position);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public Charset charset() {
+        return charset;
+    }
+
+    /**
+     * 块数,也是并行处理的最大并行度
+     */
+    public int chunkCount() {
+        return chunks.length;
+    }
+
+    /**
+     * 按顺序处理每一行,在调用线程上执行
+     * 传给consumer的视图对象会被复用,只在调用期间有效,要保留时调toString()
+     */
+    public void forEachLine(Consumer<? super CharSequence> consumer) {
+        Line line = new Line(charset);
+        for (MappedByteBuffer chunk : chunks) {
+            scan(chunk, line, consumer);
+        }
+    }
+
+    /**
+     * 在ForkJoinPool.commonPool上按块并行处理,consumer要线程安全,同一块里的行按顺序处理,块之间没有顺序
+     */
+    public void parallelForEach(Consumer<? super CharSequence> consumer) {
+        parallelCollect(ForkJoinPool.commonPool(), () -> null, (ignored, line) -> consumer.accept(line), (a, b) -> a);
+    }
+
+    /**
+     * 每个并行任务用supplier建一个自己的结果容器,accumulator把行累加进去,最后用combiner按块的顺序两两合并
+     * 任务之间不共享可变状态,适合计数、分组统计、过滤后收集等
+     */
+    public <R> R parallelCollect(Supplier<R> supplier, BiConsumer<R, ? super CharSequence> accumulator,
+            BinaryOperator<R> combiner) {
+        return parallelCollect(ForkJoinPool.commonPool(), supplier, accumulator, combiner);
+    }
+
+    public <R> R parallelCollect(ForkJoinPool pool, Supplier<R> supplier, BiConsumer<R, ? super CharSequence> accumulator,
+            BinaryOperator<R> combiner) {
+        if (chunks.length == 0) {
+            return supplier.get();
+        }
+        return pool.invoke(new CollectTask<>(this, 0, chunks.length, supplier, accumulator, combiner));
+    }
+
+    /**
+     * 总行数,第一次调用时建立索引
+     */
+    public long lineCount() {
+        return index().lineCount;
+    }
+
+    /**
+     * 第lineNumber行(从0开始),超出范围返回null;第一次调用时建立索引
+     */
+    public String line(long lineNumber) {
+        Line line = new Line(charset);
+        return seek(lineNumber, line, true) ? line.toString() : null;
+    }
+
+    /**
+     * [beginLineNumber, endLineNumber]之间的行,两端都包含,超出文件的部分忽略;第一次调用时建立索引
+     */
+    public List<String> lines(long beginLineNumber, long endLineNumber) {
+        return collect(beginLineNumber, endLineNumber, true);
+    }
+
+    /**
+     * 和line一样,但不建立索引:从文件头往后数到第lineNumber行就停止,后面的部分不扫描;索引已经建好时直接用索引
+     * 对同一个文件只按行号读一次时用这个,反复读时用line
+     */
+    public String findLine(long lineNumber) {
+        Line line = new Line(charset);
+        return seek(lineNumber, line, false) ? line.toString() : null;
+    }
+
+    /**
+     * 和lines一样,但不建立索引,扫到endLineNumber行就停止
+     */
+    public List<String> findLines(long beginLineNumber, long endLineNumber) {
+        return collect(beginLineNumber, endLineNumber, false);
+    }
+
+    private List<String> collect(long beginLineNumber, long endLineNumber, boolean buildIndex) {
+        List<String> result = new ArrayList<>();
+        Line line = new Line(charset);
+        if (beginLineNumber < 0 || beginLineNumber > endLineNumber || !seek(beginLineNumber, line, buildIndex)) {
+            return result;
+        }
+        result.add(line.toString());
+        long remaining = endLineNumber - beginLineNumber;
+        int chunk = chunkOf(line.buffer);
+        int position = line.next;
+        while (remaining > 0 && chunk < chunks.length) {
+            MappedByteBuffer buffer = chunks[chunk];
+            int limit = buffer.limit();
+            while (remaining > 0 && position < limit) {
+                int newline = indexOfNewline(buffer, position, limit);
+                line.set(buffer, position, newline < 0 ? limit : newline);
+                result.add(line.toString());
+                position = newline < 0 ? limit : newline + 1;
+                remaining--;
+            }
+            chunk++;
+            position = 0;
+        }
+        return result;
+    }
+
+    /**
+     * 立即解除映射,之后的调用会失败;不能和其它方法并发调用,之前拿到的行视图也不能再访问(访问已解除的映射会让JVM崩溃),
+     * 要保留的行在close之前toString()
+     */
+    @Override
+    public synchronized void close() {
+        for (int i = 0; i < chunks.length; i++) {
+            MappedByteBuffer chunk = chunks[i];
+            chunks[i] = null;
+            if (chunk != null) {
+                unmap(chunk);
+            }
+        }
+        index = null;
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            // 退回由GC释放
+        }
+    }
+
+    /**
+     * 在CharSequence里查找ASCII子串,不转String;Line直接在映射的字节上查找
+     */
+    public static boolean contains(CharSequence line, String ascii) {
+        if (line instanceof Line) {
+            return ((Line) line).indexOf(ascii) >= 0;
+        }
+        int n = ascii.length();
+        if (n == 0) {
+            return true;
+        }
+        char first = ascii.charAt(0);
+        outer:
+        for (int i = 0, last = line.length() - n; i <= last; i++) {
+            if (line.charAt(i) != first) {
+                continue;
+            }
+            for (int j = 1; j < n; j++) {
+                if (line.charAt(i + j) != ascii.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 定位到第lineNumber行;buildIndex为false且还没有索引时从头顺序扫描
+     */
+    private boolean seek(long lineNumber, Line line, boolean buildIndex) {
+        if (buildIndex || index != null) {
+            return locate(lineNumber, line);
+        }
+        if (lineNumber < 0) {
+            return false;
+        }
+        long remaining = lineNumber;
+        for (MappedByteBuffer buffer : chunks) {
+            if (buffer == null) {
+                throw new IllegalStateException("closed");
+            }
+            int limit = buffer.limit();
+            int position = 0;
+            while (position < limit) {
+                int newline = indexOfNewline(buffer, position, limit);
+                int end = newline < 0 ? limit : newline;
+                if (remaining == 0) {
+                    line.set(buffer, position, end);
+                    return true;
+                }
+                remaining--;
+                position = end + 1;
+            }
+        }
+        return false;
+    }
+
+    private boolean locate(long lineNumber, Line line) {
+        Index idx = index();
+        if (lineNumber < 0 || lineNumber >= idx.lineCount) {
+            return false;
+        }
+        // 最后一个起始行号<=lineNumber的块,每块至少有一行,起始行号严格递增
+        int chunk = Arrays.binarySearch(idx.firstLines, lineNumber);
+        if (chunk < 0) {
+            chunk = -chunk - 2;
+        }
+        long local = lineNumber - idx.firstLines[chunk];
+        MappedByteBuffer buffer = chunks[chunk];
+        int limit = buffer.limit();
+        int position = idx.offsets[chunk][(int) (local / INDEX_STRIDE)];
+        for (long skip = local % INDEX_STRIDE; skip > 0; skip--) {
+            position = indexOfNewline(buffer, position, limit) + 1;
+        }
+        int newline = indexOfNewline(buffer, position, limit);
+        line.set(buffer, position, newline < 0 ? limit : newline);
+        return true;
+    }
+
+    private int chunkOf(ByteBuffer buffer) {
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] == buffer) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("closed");
+    }
+
+    private Index index() {
+        Index idx = index;
+        if (idx == null) {
+            synchronized (this) {
+                idx = index;
+                if (idx == null) {
+                    idx = buildIndex();
+                    index = idx;
+                }
+            }
+        }
+        return idx;
+    }
+
+    /**
+     * 各块并行记录块内的稀疏偏移,再按顺序累加出每块的起始行号
+     */
+    private Index buildIndex() {
+        int[][] offsets = new int[chunks.length][];
+        long[] counts = new long[chunks.length];
+        ForkJoinPool.commonPool().invoke(new RecursiveTask<Void>() {
+            @Override
+            protected Void compute() {
+                List<RecursiveTask<Void>> tasks = new ArrayList<>();
+                for (int i = 0; i < chunks.length; i++) {
+                    int chunk = i;
+                    tasks.add(new RecursiveTask<Void>() {
+                        @Override
+                        protected Void compute() {
+                            indexChunk(chunk, offsets, counts);
+                            return null;
+                        }
+                    });
+                }
+                invokeAll(tasks);
+                return null;
+            }
+        });
+        long[] firstLines = new long[chunks.length];
+        long total = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            firstLines[i] = total;
+            total += counts[i];
+        }
+        return new Index(total, firstLines, offsets);
+    }
+
+    private void indexChunk(int chunk, int[][] offsets, long[] counts) {
+        MappedByteBuffer buffer = chunks[chunk];
+        int limit = buffer.limit();
+        int[] sparse = new int[16];
+        int entries = 0;
+        long lines = 0;
+        int position = 0;
+        while (position < limit) {
+            if (lines % INDEX_STRIDE == 0) {
+                if (entries == sparse.length) {
+                    sparse = Arrays.copyOf(sparse, entries * 2);
+                }
+                sparse[entries++] = position;
+            }
+            lines++;
+            int newline = indexOfNewline(buffer, position, limit);
+            position = newline < 0 ? limit : newline + 1;
+        }
+        offsets[chunk] = Arrays.copyOf(sparse, entries);
+        counts[chunk] = lines;
+    }
+
+    private static void scan(MappedByteBuffer buffer, Line line, Consumer<? super CharSequence> consumer) {
+        int limit = buffer.limit();
+        int position = 0;
+        while (position < limit) {
+            int newline = indexOfNewline(buffer, position, limit);
+            int end = newline < 0 ? limit : newline;
+            line.set(buffer, position, end);
+            consumer.accept(line);
+            position = end + 1;
+        }
+    }
+
+    /**
+     * [from, limit)里第一个\n的位置,没有返回-1
+     */
+    static int indexOfNewline(ByteBuffer buffer, int from, int limit) {
+        return indexOf(buffer, (byte) '\n', NEWLINES, from, limit);
+    }
+
+    /**
+     * 每次取8个字节和pattern(8个target)异或,用SWAR判断其中有没有0;
+     * 借位只会让真正的0字节之上的字节被误判,最低的那个命中一定是对的,小端序下就是下标最小的字节
+     */
+    private static int indexOf(ByteBuffer buffer, byte target, long pattern, int from, int limit) {
+        int i = from;
+        for (; i + 8 <= limit; i += 8) {
+            long word = buffer.getLong(i) ^ pattern;
+            long found = (word - LOW_BITS) & ~word & HIGH_BITS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < limit; i++) {
+            if (buffer.get(i) == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Index {
+
+        final long lineCount;
+
+        final long[] firstLines;
+
+        final int[][] offsets;
+
+        Index(long lineCount, long[] firstLines, int[][] offsets) {
+            this.lineCount = lineCount;
+            this.firstLines = firstLines;
+            this.offsets = offsets;
+        }
+    }
+
+    private static final class CollectTask<R> extends RecursiveTask<R> {
+
+        private final MappedLineReader reader;
+
+        private final int from;
+
+        private final int to;
+
+        private final Supplier<R> supplier;
+
+        private final BiConsumer<R, ? super CharSequence> accumulator;
+
+        private final BinaryOperator<R> combiner;
+
+        CollectTask(MappedLineReader reader, int from, int to, Supplier<R> supplier,
+                BiConsumer<R, ? super CharSequence> accumulator, BinaryOperator<R> combiner) {
+            this.reader = reader;
+            this.from = from;
+            this.to = to;
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected R compute() {
+            if (to - from == 1) {
+                R result = supplier.get();
+                Line line = new Line(reader.charset);
+                scan(reader.chunks[from], line, l -> accumulator.accept(result, l));
+                return result;
+            }
+            int middle = (from + to) >>> 1;
+            CollectTask<R> left = new CollectTask<>(reader, from, middle, supplier, accumulator, combiner);
+            CollectTask<R> right = new CollectTask<>(reader, middle, to, supplier, accumulator, combiner);
+            left.fork();
+            R rightResult = right.compute();
+            return combiner.apply(left.join(), rightResult);
+        }
+    }
+
+    /**
+     * 映射区里一行的视图,一个字节对应一个字符;行尾的\r不包含在内
+     */
+    public static final class Line implements CharSequence {
+
+        private final Charset charset;
+
+        private ByteBuffer buffer;
+
+        private int start;
+
+        private int end;
+
+        /**
+         * 下一行的起始位置
+         */
+        int next;
+
+        Line(Charset charset) {
+            this.charset = charset;
+        }
+
+        void set(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.next = end + 1;
+            // end是\n的位置或块尾,这里的\r不会是上一块的
+            this.end = end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return (char) (buffer.get(start + index) & 0xFF);
+        }
+
+        /**
+         * ASCII子串第一次出现的位置,没有返回-1;先用SWAR找首字节,再逐个比较
+         */
+        public int indexOf(String ascii) {
+            int n = ascii.length();
+            if (n == 0) {
+                return 0;
+            }
+            byte first = (byte) ascii.charAt(0);
+            long pattern = (first & 0xFFL) * LOW_BITS;
+            int last = end - n;
+            int i = start;
+            while (i <= last) {
+                int candidate = MappedLineReader.indexOf(buffer, first, pattern, i, last + 1);
+                if (candidate < 0) {
+                    return -1;
+                }
+                int j = 1;
+                while (j < n && buffer.get(candidate + j) == (byte) ascii.charAt(j)) {
+                    j++;
+                }
+                if (j == n) {
+                    return candidate - start;
+                }
+                i = candidate + 1;
+            }
+            return -1;
+        }
+
+        /**
+         * 返回同一映射区上的新视图,不拷贝字节
+         */
+        @Override
+        public Line subSequence(int from, int to) {
+            if (from < 0 || from > to || to > end - start) {
+                throw new IndexOutOfBoundsException("[" + from + ", " + to + ")");
+            }
+            Line sub = new Line(charset);
+            sub.buffer = buffer;
+            sub.start = start + from;
+            sub.end = start + to;
+            return sub;
+        }
+
+        /**
+         * 这一行在文件charset下解码出的字符串,要保留这一行时用它
+         */
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[end - start];
+            buffer.get(start, bytes);
+            return new String(bytes, charset);
+        }
+    }
+}
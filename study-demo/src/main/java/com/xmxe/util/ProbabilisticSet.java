@@ -0,0 +1,39 @@
+package com.xmxe.util;
+
+/**
+ * 概率型集合:contains返回false时一定不存在,返回true时可能存在（有一定误判率）
+ * 实现:
+ * {@link BloomFilter} 标准布隆过滤器,不支持删除
+ * {@link CountingBloomFilter} 计数布隆过滤器,每个位换成4位计数器,支持删除
+ * {@link ScalableBloomFilter} 可扩容布隆过滤器,超出容量后追加新的分片
+ * {@link CuckooFilter} 布谷鸟过滤器,支持删除,低误判率下比布隆过滤器更省空间
+ */
+public interface ProbabilisticSet {
+
+    /**
+     * 添加元素
+     *
+     * @return true表示集合发生了变化
+     */
+    boolean add(String value);
+
+    /**
+     * @return false表示一定不存在,true表示可能存在
+     */
+    boolean contains(String value);
+
+    /**
+     * 删除元素,只能删除确实添加过的元素,否则可能删掉别的元素的痕迹导致漏判
+     *
+     * @return true表示删除成功
+     * @throws UnsupportedOperationException 实现不支持删除时抛出
+     */
+    default boolean remove(String value) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support remove");
+    }
+
+    /**
+     * 占用的位数,用于计算每个元素的内存开销
+     */
+    long bitSize();
+}
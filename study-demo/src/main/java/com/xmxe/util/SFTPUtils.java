@@ -11,6 +11,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.log4j.Logger;
 
@@ -279,6 +280,50 @@ public class SFTPUtils {
 		}
 		return localFileList;
 	}
+	/**
+	 * 并行批量下载文件,ChannelSftp不是线程安全的,每一路单独建立一个SFTP连接
+	 * 
+	 * @param remotePath
+	 *            ：远程下载目录(以路径符号结束)
+	 * @param localPath
+	 *            ：本地保存目录(以路径符号结束)
+	 * @param fileNames
+	 *            ：文件名集合,按下标轮流分给各个连接
+	 * @param parallelism
+	 *            ：同时打开的SFTP连接数
+	 * @return 所有连接下载完成后返回本地文件集合,顺序同fileNames
+	 */
+	public CompletableFuture<List<String>> batchDownloadFileAsync(String remotePath, String localPath,
+			List<String> fileNames, int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("parallelism must be positive");
+		}
+		int n = Math.min(parallelism, Math.max(1, fileNames.size()));
+		List<CompletableFuture<List<String>>> parts = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			List<String> part = new ArrayList<>();
+			for (int j = i; j < fileNames.size(); j += n) {
+				part.add(fileNames.get(j));
+			}
+			parts.add(IoExecutors.supplyAsync(() -> {
+				SFTPUtils worker = new SFTPUtils(masterhost, bakhost, port, username, password);
+				worker.connect();
+				try {
+					return worker.batchDownloadFile(remotePath, localPath, part);
+				} finally {
+					worker.disconnect();
+				}
+			}));
+		}
+		return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+			List<String> localFileList = new ArrayList<>(fileNames.size());
+			for (String fileName : fileNames) {
+				localFileList.add(localPath + fileName);
+			}
+			return localFileList;
+		});
+	}
+
 	/**
 	 * 下载单个文件
 	 * 
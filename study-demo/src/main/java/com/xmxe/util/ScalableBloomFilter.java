@@ -0,0 +1,140 @@
+package com.xmxe.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 可扩容布隆过滤器(Scalable Bloom Filter),插入数量超过预估时不需要重建
+ * 1.由多个分片组成,每个分片是一个普通的BloomFilter,当前分片装满后追加一个新分片,容量是上一个的growth倍
+ * 2.第i个分片的误判率是 p0*(1-r)*r^i,总误判率 <= p0*(1-r)*(1+r+r^2+...) = p0,越往后的分片越严格
+ * 3.contains依次查询所有分片,add之前先查询,已经可能存在的不再写入,避免重复元素占用新分片的容量
+ */
+public class ScalableBloomFilter implements ProbabilisticSet {
+
+    /**
+     * 误判率收紧比例r
+     */
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    private final double fpp;
+
+    private final int growth;
+
+    /**
+     * 分片数组,只在扩容时整体替换,读操作不需要加锁
+     */
+    private volatile Slice[] slices;
+
+    /**
+     * @param initialCapacity 第一个分片的容量
+     * @param fpp             总误判率上限
+     */
+    public ScalableBloomFilter(long initialCapacity, double fpp) {
+        this(initialCapacity, fpp, 2);
+    }
+
+    /**
+     * @param growth 每个新分片的容量是上一个的多少倍
+     */
+    public ScalableBloomFilter(long initialCapacity, double fpp, int growth) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("initialCapacity must be positive");
+        }
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("fpp must be in (0, 1)");
+        }
+        if (growth < 1) {
+            throw new IllegalArgumentException("growth must be >= 1");
+        }
+        this.fpp = fpp;
+        this.growth = growth;
+        this.slices = new Slice[] { new Slice(initialCapacity, fpp * (1 - TIGHTENING_RATIO)) };
+    }
+
+    @Override
+    public boolean add(String value) {
+        if (value == null || contains(value)) {
+            return false;
+        }
+        Slice[] current = slices;
+        Slice last = current[current.length - 1];
+        if (last.count.incrementAndGet() > last.capacity) {
+            last = grow(current);
+        }
+        return last.filter.add(value);
+    }
+
+    @Override
+    public boolean contains(String value) {
+        if (value == null) {
+            return false;
+        }
+        Slice[] current = slices;
+        // 新分片元素更多,从后往前查
+        for (int i = current.length - 1; i >= 0; i--) {
+            if (current[i].filter.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long bitSize() {
+        long bits = 0;
+        for (Slice slice : slices) {
+            bits += slice.filter.bitSize();
+        }
+        return bits;
+    }
+
+    public int sliceCount() {
+        return slices.length;
+    }
+
+    /**
+     * 已插入元素个数（不含判定为已存在而跳过的）
+     */
+    public long size() {
+        long size = 0;
+        for (Slice slice : slices) {
+            size += Math.min(slice.count.get(), slice.capacity);
+        }
+        return size;
+    }
+
+    /**
+     * 追加新分片,多个线程同时发现分片已满时只有一个会扩容
+     */
+    private synchronized Slice grow(Slice[] seen) {
+        Slice[] current = slices;
+        if (current != seen) {
+            // 别的线程已经扩容
+            Slice last = current[current.length - 1];
+            last.count.incrementAndGet();
+            return last;
+        }
+        Slice previous = current[current.length - 1];
+        double sliceFpp = fpp * (1 - TIGHTENING_RATIO) * Math.pow(TIGHTENING_RATIO, current.length);
+        Slice next = new Slice(previous.capacity * growth, Math.max(sliceFpp, Double.MIN_NORMAL));
+        next.count.incrementAndGet();
+        Slice[] copy = new Slice[current.length + 1];
+        System.arraycopy(current, 0, copy, 0, current.length);
+        copy[current.length] = next;
+        slices = copy;
+        return next;
+    }
+
+    private static final class Slice {
+
+        private final BloomFilter filter;
+
+        private final long capacity;
+
+        private final AtomicLong count = new AtomicLong();
+
+        private Slice(long capacity, double fpp) {
+            this.filter = new BloomFilter(capacity, fpp);
+            this.capacity = capacity;
+        }
+    }
+}
@@ -1,42 +1,82 @@
 package com.xmxe.util.cache;
 
 import java.time.Duration;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
 /**
- * 采用ConcurrentHashMap作为缓存数据存储服务,然后开启一个定时调度,每隔500毫秒检查一下过期的缓存数据,然后清除掉
+ * 采用ConcurrentHashMap作为缓存数据存储服务,过期清理交给分层时间轮{@link TimingWheel}
+ * 之前的做法是每隔500毫秒遍历一次整个Map,数据量到百万级以后每次扫描都是一次完整的O(n)开销;
+ * 现在每个key的过期只在put时挂到时间轮上、到期时从时间轮摘下,都是O(1),get时再做一次惰性过期判断
+ * 调用setMaximumSize/setMaximumWeight后按W-TinyLFU{@link TinyLfuPolicy}限制容量,防止突发的大量key把内存撑爆
  */
 public class CacheCustom {
 
+    /**
+     * 时间轮每一格的跨度（毫秒）
+     */
+    private static final long TICK_MS = 100;
+
+    /**
+     * 时间源(毫秒),过期时间和时间轮都按它计算;测试时换成手动推进的时钟
+     */
+    static volatile LongSupplier clock = System::currentTimeMillis;
+
     /**
      * 缓存数据
      */
     private final static Map<String, CacheEntity> CACHE_MAP = new ConcurrentHashMap<>();
 
     /**
-     * 定时器线程池,用于清除过期缓存
+     * 过期时间轮
+     */
+    private final static TimingWheel<CacheEntity> TIMING_WHEEL = new TimingWheel<>(TICK_MS, clock.getAsLong());
+
+    /**
+     * 缓存移除监听器
+     */
+    private final static List<RemovalListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    /**
+     * 缓存写入监听器
+     */
+    private final static List<WriteListener> WRITE_LISTENERS = new CopyOnWriteArrayList<>();
+
+    /**
+     * 容量淘汰策略,为null时不限制容量
+     */
+    private static volatile TinyLfuPolicy policy;
+
+    /**
+     * 定时器线程池,用于推进时间轮
      */
-    private static ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private static ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-custom-timing-wheel");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     static {
-        // 注册一个定时线程任务,服务启动1秒之后,每隔500毫秒执行一次
+        // 注册一个定时线程任务,每隔一格推进一次时间轮
         executor.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
                 // 清理过期缓存
                 clearCache();
             }
-        }, 1000, 500, TimeUnit.MILLISECONDS);
+        }, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
     }
 
     /**
      * 添加缓存
-     * 
+     *
      * @param key   缓存键
      * @param value 缓存值
      */
@@ -46,64 +86,285 @@ public class CacheCustom {
 
     /**
      * 添加缓存
-     * 
+     *
      * @param key    缓存键
      * @param value  缓存值
      * @param expire 缓存时间,单位秒
      */
     public static void put(String key, Object value, long expire) {
+        putMillis(key, value, expire > 0 ? Duration.ofSeconds(expire).toMillis() : 0);
+    }
+
+    /**
+     * 添加缓存
+     *
+     * @param key      缓存键
+     * @param value    缓存值
+     * @param expireMs 缓存时间,单位毫秒,小于等于0表示永不过期
+     */
+    public static void putMillis(String key, Object value, long expireMs) {
+        putMillis(key, value, expireMs, 1);
+    }
+
+    /**
+     * 添加缓存
+     *
+     * @param key      缓存键
+     * @param value    缓存值
+     * @param expireMs 缓存时间,单位毫秒,小于等于0表示永不过期
+     * @param weight   权重,按权重限制容量时使用（例如value的字节数）,必须大于0
+     */
+    public static void putMillis(String key, Object value, long expireMs, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
         CacheEntity cacheEntity = new CacheEntity();
         cacheEntity.setKey(key);
         cacheEntity.setValue(value);
-        if (expire > 0) {
-            Long expireTime = System.currentTimeMillis() + Duration.ofSeconds(expire).toMillis();
-            cacheEntity.setExpireTime(expireTime);
+        cacheEntity.setWeight(weight);
+        if (expireMs > 0) {
+            cacheEntity.setExpireTime(clock.getAsLong() + expireMs);
+        }
+        CacheEntity old = CACHE_MAP.put(key, cacheEntity);
+        if (old != null) {
+            discard(old, RemovalCause.REPLACED);
+        }
+        if (cacheEntity.getExpireTime() != null && !TIMING_WHEEL.add(cacheEntity)) {
+            // 过期时间不足一格,已经过期了
+            if (CACHE_MAP.remove(key, cacheEntity)) {
+                discard(cacheEntity, RemovalCause.EXPIRED);
+            }
+            return;
+        }
+        for (WriteListener listener : WRITE_LISTENERS) {
+            try {
+                listener.onWrite(key, value);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        TinyLfuPolicy current = policy;
+        if (current != null) {
+            evict(current.onAdd(cacheEntity));
         }
-        CACHE_MAP.put(key, cacheEntity);
     }
 
     /**
      * 获取缓存
-     * 
+     *
      * @param key
      * @return
      */
     public static Object get(String key) {
-        if (CACHE_MAP.containsKey(key)) {
-            return CACHE_MAP.get(key).getValue();
+        CacheEntity cacheEntity = CACHE_MAP.get(key);
+        if (cacheEntity == null) {
+            return null;
+        }
+        // 惰性过期:时间轮的精度是一格,这里保证get不会读到已过期的数据
+        if (cacheEntity.isExpired(clock.getAsLong())) {
+            if (CACHE_MAP.remove(key, cacheEntity)) {
+                discard(cacheEntity, RemovalCause.EXPIRED);
+            }
+            return null;
+        }
+        TinyLfuPolicy current = policy;
+        if (current != null) {
+            current.onAccess(cacheEntity);
         }
-        return null;
+        return cacheEntity.getValue();
     }
 
     /**
      * 移除缓存
-     * 
+     *
      * @param key
      */
     public static void remove(String key) {
-        if (CACHE_MAP.containsKey(key)) {
-            CACHE_MAP.remove(key);
+        CacheEntity cacheEntity = CACHE_MAP.remove(key);
+        if (cacheEntity != null) {
+            discard(cacheEntity, RemovalCause.EXPLICIT);
         }
     }
 
     /**
-     * 清理过期的缓存数据
+     * 清空缓存
+     */
+    public static void clear() {
+        for (CacheEntity cacheEntity : CACHE_MAP.values()) {
+            if (CACHE_MAP.remove(cacheEntity.getKey(), cacheEntity)) {
+                discard(cacheEntity, RemovalCause.EXPLICIT);
+            }
+        }
+    }
+
+    /**
+     * 当前缓存数量（包含已过期但还未被清理的数据）
+     */
+    public static int size() {
+        return CACHE_MAP.size();
+    }
+
+    /**
+     * 设置最大缓存数量,超出后按W-TinyLFU策略淘汰,每个缓存的权重为1时等同于{@link #setMaximumWeight(long)}
+     *
+     * @param size 最大缓存数量,必须大于0
+     */
+    public static void setMaximumSize(long size) {
+        setMaximumWeight(size);
+    }
+
+    /**
+     * 设置最大总权重,超出后按W-TinyLFU策略淘汰。切换策略时会把已有数据重新放入新策略,应在启动时设置
+     *
+     * @param maximumWeight 最大总权重,必须大于0
+     */
+    public static synchronized void setMaximumWeight(long maximumWeight) {
+        TinyLfuPolicy newPolicy = new TinyLfuPolicy(maximumWeight);
+        TinyLfuPolicy oldPolicy = policy;
+        policy = newPolicy;
+        for (CacheEntity cacheEntity : CACHE_MAP.values()) {
+            if (oldPolicy != null) {
+                oldPolicy.onRemove(cacheEntity);
+            }
+            evict(newPolicy.onTransfer(cacheEntity));
+        }
+    }
+
+    /**
+     * 当前缓存的总权重,没有设置容量限制时返回-1
+     */
+    public static long weightedSize() {
+        TinyLfuPolicy current = policy;
+        return current == null ? -1 : current.weightedSize();
+    }
+
+    /**
+     * 注册缓存移除监听器,过期、淘汰、覆盖、手动删除时都会回调
+     */
+    public static void addRemovalListener(RemovalListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeRemovalListener(RemovalListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * 注册缓存写入监听器,每次put成功后回调
+     */
+    public static void addWriteListener(WriteListener listener) {
+        WRITE_LISTENERS.add(listener);
+    }
+
+    public static void removeWriteListener(WriteListener listener) {
+        WRITE_LISTENERS.remove(listener);
+    }
+
+    /**
+     * 获取缓存实体（包括过期时间）,给快照等同包工具使用
+     */
+    static CacheEntity getEntity(String key) {
+        return CACHE_MAP.get(key);
+    }
+
+    /**
+     * 所有缓存实体的弱一致视图
+     */
+    static Collection<CacheEntity> entities() {
+        return CACHE_MAP.values();
+    }
+
+    /**
+     * 推进时间轮,清理到期的缓存数据
      */
     private static void clearCache() {
-        if (CACHE_MAP.size() > 0) {
-            return;
+        try {
+            List<CacheEntity> expired = TIMING_WHEEL.advance(clock.getAsLong());
+            for (CacheEntity cacheEntity : expired) {
+                // 只删除时间轮中的这一个实体,避免误删同一个key后写入的新值
+                if (CACHE_MAP.remove(cacheEntity.getKey(), cacheEntity)) {
+                    discard(cacheEntity, RemovalCause.EXPIRED);
+                }
+            }
+        } catch (Throwable e) {
+            // 定时任务抛出异常后会被取消,这里必须吃掉异常
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 删除策略选出的受害者
+     */
+    private static void evict(List<CacheEntity> victims) {
+        for (CacheEntity victim : victims) {
+            if (CACHE_MAP.remove(victim.getKey(), victim)) {
+                TIMING_WHEEL.remove(victim);
+                notifyListeners(victim, RemovalCause.SIZE);
+            }
+        }
+    }
+
+    /**
+     * 数据已经从CACHE_MAP删除,再把它从时间轮和淘汰策略中摘掉
+     */
+    private static void discard(CacheEntity cacheEntity, RemovalCause cause) {
+        TIMING_WHEEL.remove(cacheEntity);
+        TinyLfuPolicy current = policy;
+        if (current != null) {
+            current.onRemove(cacheEntity);
         }
-        Iterator<Map.Entry<String, CacheEntity>> iterator = CACHE_MAP.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<String, CacheEntity> entry = iterator.next();
-            if (entry.getValue().getExpireTime() != null
-                    && entry.getValue().getExpireTime().longValue() > System.currentTimeMillis()) {
-                iterator.remove();
+        notifyListeners(cacheEntity, cause);
+    }
+
+    private static void notifyListeners(CacheEntity cacheEntity, RemovalCause cause) {
+        for (RemovalListener listener : LISTENERS) {
+            try {
+                listener.onRemoval(cacheEntity.getKey(), cacheEntity.getValue(), cause);
+            } catch (Exception e) {
+                e.printStackTrace();
             }
         }
     }
 
-    static class CacheEntity {
+    /**
+     * 缓存被移除的原因
+     */
+    public enum RemovalCause {
+        /**
+         * 到期
+         */
+        EXPIRED,
+        /**
+         * 超出容量被淘汰
+         */
+        SIZE,
+        /**
+         * 同一个key被重新put覆盖
+         */
+        REPLACED,
+        /**
+         * 调用remove手动删除
+         */
+        EXPLICIT
+    }
+
+    /**
+     * 缓存移除监听器
+     */
+    @FunctionalInterface
+    public interface RemovalListener {
+        void onRemoval(String key, Object value, RemovalCause cause);
+    }
+
+    /**
+     * 缓存写入监听器
+     */
+    @FunctionalInterface
+    public interface WriteListener {
+        void onWrite(String key, Object value);
+    }
+
+    static class CacheEntity extends TimingWheel.Node {
 
         /**
          * 缓存键
@@ -120,6 +381,19 @@ public class CacheCustom {
          */
         private Long expireTime;
 
+        /**
+         * 权重
+         */
+        private int weight = 1;
+
+        /**
+         * W-TinyLFU策略使用的链表指针和状态,由策略的锁保护
+         */
+        CacheEntity policyPrev;
+        CacheEntity policyNext;
+        int queueType;
+        int policyState;
+
         public String getKey() {
             return key;
         }
@@ -143,6 +417,23 @@ public class CacheCustom {
         public void setExpireTime(Long expireTime) {
             this.expireTime = expireTime;
         }
-        
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public void setWeight(int weight) {
+            this.weight = weight;
+        }
+
+        public boolean isExpired(long now) {
+            return expireTime != null && expireTime <= now;
+        }
+
+        @Override
+        protected long getDeadline() {
+            return expireTime == null ? Long.MAX_VALUE : expireTime;
+        }
+
     }
 }
@@ -1,36 +1,114 @@
 package com.xmxe.util.cache;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.collect.Maps;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.apache.commons.lang3.StringUtils;
 
+/**
+ * 本地缓存
+ * 1.所有过期时间放在同一个缓存里,每个缓存项自带过期时间（Caffeine的Expiry）,不再按过期时间各建一个Guava Cache
+ * 2.缓存未命中时同一个key只有一个线程在加载(single-flight),其他并发请求共享同一个CompletableFuture
+ * 3.缓存项的存活时间超过REFRESH_AHEAD_RATIO后再被访问,会在后台提前刷新,读请求直接返回旧值不会阻塞
+ * 4.可选的堆外层{@link #enableOffHeap(long, ValueCodec)}:堆内放不下被淘汰的数据序列化后降级到直接内存,再次访问时晋升回堆内,
+ * 大体积的缓存数据不再占用老年代,减少GC停顿
+ */
 @SuppressWarnings("unchecked") // 取消警告
 public class CacheProvider {
 
-    private static Map<String, Cache<String, Object>> _cacheMap = Maps.newConcurrentMap();
-
     private static long CACHE_MAXIMUM_SIZE = 10000;
     private static long CACHE_MINUTE = 1000;
 
-    static {
+    /**
+     * 存活时间超过过期时间的80%后,再次访问触发后台刷新
+     */
+    private static double REFRESH_AHEAD_RATIO = 0.8;
 
-        Cache<String, Object> cacheContainer = CacheBuilder.newBuilder().maximumSize(CACHE_MAXIMUM_SIZE)
-                .expireAfterWrite(CACHE_MINUTE, TimeUnit.MILLISECONDS)// 最后一次写入后的一段时间移出
-                // .expireAfterAccess(AppConst.CACHE_MINUTE, TimeUnit.MILLISECONDS)
-                // //最后一次访问后的一段时间移出
-                .recordStats()// 开启统计功能
-                .build();
+    /**
+     * 时间源,过期和提前刷新都按它计算;测试时换成手动推进的时钟
+     */
+    static volatile Ticker ticker = Ticker.systemTicker();
 
-        _cacheMap.put(String.valueOf(CACHE_MINUTE), cacheContainer);
-    }
+    /**
+     * 所有缓存项共用一个容器,过期时间由每个CacheValue自己决定
+     */
+    private static Cache<String, CacheValue> cacheContainer = Caffeine.newBuilder()
+            .maximumSize(CACHE_MAXIMUM_SIZE)
+            .ticker(() -> ticker.read())
+            .expireAfter(new Expiry<String, CacheValue>() {
+                @Override
+                public long expireAfterCreate(String key, CacheValue value, long currentTime) {
+                    return Math.max(0, value.expireAt - currentTime);
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, CacheValue value, long currentTime,
+                        long currentDuration) {
+                    return Math.max(0, value.expireAt - currentTime);
+                }
+
+                @Override
+                public long expireAfterRead(String key, CacheValue value, long currentTime,
+                        long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            // 容量淘汰时同步回调,开启堆外层后降级到堆外
+            .evictionListener((String key, CacheValue value, RemovalCause cause) -> {
+                if (cause == RemovalCause.SIZE && value != null) {
+                    demote(key, value);
+                }
+            })
+            .recordStats()// 开启统计功能
+            .build();
+
+    /**
+     * 堆外层,为null时不启用
+     */
+    private static volatile OffHeapStore<String> offHeapStore;
+
+    private static volatile ValueCodec valueCodec;
+
+    /**
+     * 定期清理堆外层的过期数据,否则过期数据只在被读到或被淘汰时才释放;开启堆外层时创建
+     */
+    private static ScheduledExecutorService offHeapCleaner;
+
+    private static LongAdder demotions = new LongAdder();
+    private static LongAdder promotions = new LongAdder();
+
+    /**
+     * 正在加载中的key,同一个key的并发请求共享同一个Future
+     */
+    static Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 后台刷新线程池,single-flight保证同一个key最多占用一个线程
+     * 满了必须抛异常:refreshAhead要靠异常把占位的Future从inFlight里移除,静默丢弃会让这个key之后的请求永远等下去
+     */
+    static ExecutorService refreshExecutor = new ThreadPoolExecutor(2, 16,
+            60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(1024),
+            new ThreadFactoryBuilder().setNameFormat("cache-provider-refresh-%d").setDaemon(true).build(),
+            new ThreadPoolExecutor.AbortPolicy());
 
     /**
      * 查询缓存
@@ -96,28 +174,58 @@ public class CacheProvider {
             return obj;
         }
 
-        expireTime = getExpireTime(expireTime);
-
-        Cache<String, Object> cacheContainer = getCacheContainer(expireTime);
-
         try {
-            if (function == null) {
-                obj = (T) cacheContainer.getIfPresent(key);
-            } else {
-                final Long cachedTime = expireTime;
-                System.out.println("cachedTime = " + cachedTime);
-                obj = (T) cacheContainer.get(key, () -> {
-                    T retObj = function.apply(funcParm);
-                    return retObj;
-                });
-            }
-        } catch (Exception e) {
+            obj = (T) getAsync(key, function, funcParm, expireTime).join();
+        } catch (CompletionException e) {
             e.printStackTrace();
         }
 
         return obj;
     }
 
+    /**
+     * 异步查询缓存,命中时返回已完成的Future;未命中时由第一个请求的线程加载,其他并发请求等待同一个Future
+     *
+     * @param key        缓存键 不可为空
+     * @param function   如没有缓存,调用该callable函数返回对象 可为空
+     * @param funcParm   function函数的调用参数
+     * @param expireTime 过期时间（单位：毫秒） 可为空
+     **/
+    public <T extends Object, M extends Object> CompletableFuture<T> getAsync(String key, Function<M, T> function,
+            M funcParm, Long expireTime) {
+        if (StringUtils.isEmpty(key) == true) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        long expireMillis = getExpireTime(expireTime);
+
+        CacheValue cacheValue = cacheContainer.getIfPresent(key);
+        if (cacheValue != null) {
+            if (function != null && cacheValue.needRefresh()) {
+                refreshAhead(key, function, funcParm, expireMillis);
+            }
+            return CompletableFuture.completedFuture((T) cacheValue.value);
+        }
+
+        Object promoted = promote(key);
+        if (promoted != null) {
+            return CompletableFuture.completedFuture((T) promoted);
+        }
+
+        if (function == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return (CompletableFuture<T>) existing;
+        }
+        // 抢到加载权的线程直接在当前线程加载,省去一次线程切换
+        load(key, function, funcParm, expireMillis, future);
+        return (CompletableFuture<T>) future;
+    }
+
     /**
      * 设置缓存键值,直接向缓存中插入值,这会直接覆盖掉给定键之前映射的值
      *
@@ -145,11 +253,8 @@ public class CacheProvider {
             return;
         }
 
-        expireTime = getExpireTime(expireTime);
-
-        Cache<String, Object> cacheContainer = getCacheContainer(expireTime);
-
-        cacheContainer.put(key, obj);
+        cacheContainer.put(key, new CacheValue(obj, getExpireTime(expireTime)));
+        removeOffHeap(key);
     }
 
     /**
@@ -162,11 +267,10 @@ public class CacheProvider {
             return;
         }
 
-        long expireTime = getExpireTime(CACHE_MINUTE);
-
-        Cache<String, Object> cacheContainer = getCacheContainer(expireTime);
-
+        // 先摘掉正在进行的加载,加载完成后发现自己不在inFlight中就不会写回缓存
+        inFlight.remove(key);
         cacheContainer.invalidate(key);
+        removeOffHeap(key);
     }
 
     /**
@@ -189,38 +293,135 @@ public class CacheProvider {
         return exists;
     }
 
-    private static Lock lock = new ReentrantLock();
-
-    private Cache<String, Object> getCacheContainer(Long expireTime) {
+    /**
+     * 缓存统计信息:命中率、加载次数、淘汰次数等
+     */
+    public CacheStats stats() {
+        return cacheContainer.stats();
+    }
 
-        Cache<String, Object> cacheContainer = null;
-        if (expireTime == null) {
-            return cacheContainer;
+    /**
+     * 开启堆外层
+     *
+     * @param capacityBytes 堆外最大字节数
+     * @param codec         缓存值的序列化方式,如{@link ValueCodec#jdk()}、{@link ValueCodec#jackson}
+     */
+    public static synchronized void enableOffHeap(long capacityBytes, ValueCodec codec) {
+        int slabSize = (int) Math.min(64L << 20, Long.highestOneBit(capacityBytes));
+        valueCodec = codec;
+        offHeapStore = new OffHeapStore<>(capacityBytes, slabSize);
+        if (offHeapCleaner == null) {
+            offHeapCleaner = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("cache-provider-offheap-cleaner").setDaemon(true).build());
+            offHeapCleaner.scheduleWithFixedDelay(CacheProvider::purgeOffHeap, 1, 1, TimeUnit.MINUTES);
         }
+    }
 
-        String mapKey = String.valueOf(expireTime);
+    /**
+     * 清理堆外层已过期的数据,返回清理的条数;没有开启堆外层时返回0
+     */
+    public static int purgeOffHeap() {
+        OffHeapStore<String> store = offHeapStore;
+        return store == null ? 0 : store.purgeExpired();
+    }
 
-        if (_cacheMap.containsKey(mapKey) == true) {
-            cacheContainer = _cacheMap.get(mapKey);
-            return cacheContainer;
+    /**
+     * 各层的命中、字节数、淘汰统计
+     */
+    public static TierStats tierStats() {
+        CacheStats heap = cacheContainer.stats();
+        OffHeapStore<String> store = offHeapStore;
+        TierStats tierStats = new TierStats();
+        tierStats.heapHits = heap.hitCount();
+        tierStats.heapMisses = heap.missCount();
+        tierStats.heapEvictions = heap.evictionCount();
+        tierStats.heapSize = cacheContainer.estimatedSize();
+        tierStats.demotions = demotions.sum();
+        tierStats.promotions = promotions.sum();
+        if (store != null) {
+            tierStats.offHeapHits = store.hitCount();
+            tierStats.offHeapMisses = store.missCount();
+            tierStats.offHeapEvictions = store.evictionCount();
+            tierStats.offHeapSize = store.size();
+            tierStats.offHeapUsedBytes = store.usedBytes();
+            tierStats.offHeapReservedBytes = store.reservedBytes();
         }
+        return tierStats;
+    }
 
-        try {
-            lock.lock();
-            cacheContainer = CacheBuilder.newBuilder().maximumSize(CACHE_MAXIMUM_SIZE)
-                    .expireAfterWrite(expireTime, TimeUnit.MILLISECONDS)// 最后一次写入后的一段时间移出
-                    // .expireAfterAccess(AppConst.CACHE_MINUTE, TimeUnit.MILLISECONDS)
-                    // //最后一次访问后的一段时间移出
-                    .recordStats()// 开启统计功能
-                    .build();
+    /**
+     * 堆内淘汰的数据降级到堆外,序列化失败或数据过大时直接丢弃
+     */
+    private static void demote(String key, CacheValue value) {
+        OffHeapStore<String> store = offHeapStore;
+        if (store == null || value.isExpired()) {
+            return;
+        }
+        byte[] bytes = valueCodec.encode(value.value);
+        if (bytes != null && store.put(key, bytes, value.expireAt)) {
+            demotions.increment();
+        }
+    }
+
+    /**
+     * 堆外命中的数据反序列化后晋升回堆内,保留原来的过期时间
+     */
+    private static Object promote(String key) {
+        OffHeapStore<String> store = offHeapStore;
+        if (store == null) {
+            return null;
+        }
+        OffHeapStore.Entry entry = store.take(key);
+        if (entry == null) {
+            return null;
+        }
+        Object value = valueCodec.decode(entry.getBytes());
+        if (value == null) {
+            return null;
+        }
+        cacheContainer.asMap().putIfAbsent(key, CacheValue.promoted(value, entry.getExpireAt()));
+        promotions.increment();
+        return value;
+    }
 
-            _cacheMap.put(mapKey, cacheContainer);
+    private static void removeOffHeap(String key) {
+        OffHeapStore<String> store = offHeapStore;
+        if (store != null) {
+            store.remove(key);
+        }
+    }
 
-        } finally {
-            lock.unlock();
+    /**
+     * 后台刷新,同一个key已经在加载中时不重复提交
+     */
+    private <T, M> void refreshAhead(String key, Function<M, T> function, M funcParm, long expireMillis) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(key, future) != null) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> load(key, function, funcParm, expireMillis, future));
+        } catch (Exception e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
         }
+    }
 
-        return cacheContainer;
+    /**
+     * 执行加载并把结果写回缓存,函数返回null时不缓存
+     */
+    private <T, M> void load(String key, Function<M, T> function, M funcParm, long expireMillis,
+            CompletableFuture<Object> future) {
+        try {
+            T retObj = function.apply(funcParm);
+            if (inFlight.remove(key, future) && retObj != null) {
+                cacheContainer.put(key, new CacheValue(retObj, expireMillis));
+            }
+            future.complete(retObj);
+        } catch (Throwable e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
     }
 
     /**
@@ -236,4 +437,121 @@ public class CacheProvider {
 
         return result;
     }
+
+    /**
+     * 缓存值,记录过期时间点和提前刷新时间点（ticker的纳秒时间）
+     */
+    static class CacheValue {
+
+        private final Object value;
+
+        private final long expireAt;
+
+        private final long refreshAtNanos;
+
+        CacheValue(Object value, long expireMillis) {
+            long now = ticker.read();
+            long expireNanos = TimeUnit.MILLISECONDS.toNanos(expireMillis);
+            this.value = value;
+            this.expireAt = now + expireNanos;
+            this.refreshAtNanos = now + (long) (expireNanos * REFRESH_AHEAD_RATIO);
+        }
+
+        private CacheValue(Object value, long expireAt, long refreshAtNanos) {
+            this.value = value;
+            this.expireAt = expireAt;
+            this.refreshAtNanos = refreshAtNanos;
+        }
+
+        /**
+         * 从堆外晋升回来的数据,沿用原来的过期时间,不再提前刷新
+         */
+        static CacheValue promoted(Object value, long expireAt) {
+            return new CacheValue(value, expireAt, expireAt);
+        }
+
+        boolean needRefresh() {
+            return ticker.read() - refreshAtNanos >= 0;
+        }
+
+        boolean isExpired() {
+            return ticker.read() - expireAt >= 0;
+        }
+    }
+
+    /**
+     * 分层统计
+     */
+    public static class TierStats {
+        private long heapHits;
+        private long heapMisses;
+        private long heapEvictions;
+        private long heapSize;
+        private long offHeapHits;
+        private long offHeapMisses;
+        private long offHeapEvictions;
+        private long offHeapSize;
+        private long offHeapUsedBytes;
+        private long offHeapReservedBytes;
+        private long demotions;
+        private long promotions;
+
+        public long getHeapHits() {
+            return heapHits;
+        }
+
+        public long getHeapMisses() {
+            return heapMisses;
+        }
+
+        public long getHeapEvictions() {
+            return heapEvictions;
+        }
+
+        public long getHeapSize() {
+            return heapSize;
+        }
+
+        public long getOffHeapHits() {
+            return offHeapHits;
+        }
+
+        public long getOffHeapMisses() {
+            return offHeapMisses;
+        }
+
+        public long getOffHeapEvictions() {
+            return offHeapEvictions;
+        }
+
+        public long getOffHeapSize() {
+            return offHeapSize;
+        }
+
+        public long getOffHeapUsedBytes() {
+            return offHeapUsedBytes;
+        }
+
+        public long getOffHeapReservedBytes() {
+            return offHeapReservedBytes;
+        }
+
+        public long getDemotions() {
+            return demotions;
+        }
+
+        public long getPromotions() {
+            return promotions;
+        }
+
+        @Override
+        public String toString() {
+            return "TierStats{heapHits=" + heapHits + ", heapMisses=" + heapMisses + ", heapEvictions="
+                    + heapEvictions + ", heapSize=" + heapSize + ", offHeapHits=" + offHeapHits
+                    + ", offHeapMisses=" + offHeapMisses + ", offHeapEvictions=" + offHeapEvictions
+                    + ", offHeapSize=" + offHeapSize + ", offHeapUsedBytes=" + offHeapUsedBytes
+                    + ", offHeapReservedBytes=" + offHeapReservedBytes + ", demotions=" + demotions
+                    + ", promotions=" + promotions + "}";
+        }
+    }
 }
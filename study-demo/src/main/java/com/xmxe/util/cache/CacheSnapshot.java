@@ -0,0 +1,314 @@
+package com.xmxe.util.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CacheCustom的持久化快照,服务重启后先把快照装回缓存再放流量进来,避免冷启动时把下游打爆
+ * 文件是追加写的日志:文件头(魔数+版本)之后是一条条记录,每条记录=[长度int][CRC32 int][内容],
+ * 内容=[类型byte][过期时间long,0表示永不过期][key长度short][key][value长度int][value],删除记录没有value。
+ * 1.每隔一段时间只把期间写入或删除过的key追加到文件末尾（增量）
+ * 2.文件比上次全量时大一倍以上时,把当前缓存全量写到临时文件再原子替换（压缩）
+ * 3.启动时用内存映射顺序读取回放,CRC校验失败或记录不完整（进程在写入中途退出）时丢弃之后的内容
+ *
+ * 用法:
+ * CacheSnapshot snapshot = new CacheSnapshot(path, ValueCodec.jdk());
+ * snapshot.load();   // 放流量之前同步装载
+ * snapshot.start(30); // 之后每30秒增量落盘
+ */
+public class CacheSnapshot implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheSnapshot.class);
+
+    private static final int MAGIC = 0x58435331; // "XCS1"
+    private static final int HEADER_SIZE = 8;
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+
+    /**
+     * 每次映射的窗口大小,单个MappedByteBuffer不能超过2GB
+     */
+    private static final long MAP_WINDOW = 1L << 30;
+
+    private final Path path;
+    private final ValueCodec codec;
+
+    /**
+     * 上次落盘之后写入或删除过的key
+     */
+    private final Map<String, Boolean> dirtyKeys = new ConcurrentHashMap<>();
+
+    private final CacheCustom.WriteListener writeListener = (key, value) -> dirtyKeys.put(key, Boolean.TRUE);
+
+    /**
+     * 过期不需要记录,装载时会按过期时间跳过;覆盖会由随后的写入记录
+     */
+    private final CacheCustom.RemovalListener removalListener = (key, value, cause) -> {
+        if (cause == CacheCustom.RemovalCause.EXPLICIT || cause == CacheCustom.RemovalCause.SIZE) {
+            dirtyKeys.put(key, Boolean.TRUE);
+        }
+    };
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * JVM退出时最后落盘一次,close时要注销,否则快照对象被关闭后仍然被Runtime持有
+     */
+    private Thread shutdownHook;
+
+    /**
+     * 上次全量写入后的文件大小,用于判断是否需要压缩
+     */
+    private long compactedSize;
+
+    public CacheSnapshot(Path path, ValueCodec codec) {
+        this.path = path;
+        this.codec = codec;
+    }
+
+    /**
+     * 从快照文件装载到CacheCustom,文件不存在时什么也不做
+     *
+     * @return 装载的记录数
+     */
+    public synchronized long load() throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        long now = CacheCustom.clock.getAsLong();
+        long records = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                return 0;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, MAP_WINDOW));
+            if (buffer.getInt() != MAGIC || buffer.getInt() != 1) {
+                throw new IOException("not a cache snapshot file: " + path);
+            }
+            long position = HEADER_SIZE;
+            CRC32 crc = new CRC32();
+            while (position + 8 <= fileSize) {
+                // 当前窗口放不下一条完整记录时,从这条记录开始重新映射
+                if (buffer.remaining() < 8) {
+                    buffer = remap(channel, position, fileSize);
+                }
+                int length = buffer.getInt(buffer.position());
+                if (length <= 0 || position + 8 + length > fileSize) {
+                    log.warn("缓存快照{}在偏移{}处记录不完整,丢弃之后的内容", path, position);
+                    break;
+                }
+                if (buffer.remaining() < 8 + length) {
+                    buffer = remap(channel, position, fileSize);
+                }
+                buffer.getInt();
+                int checksum = buffer.getInt();
+                ByteBuffer record = buffer.slice();
+                record.limit(length);
+                crc.reset();
+                crc.update(record.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("缓存快照{}在偏移{}处校验失败,丢弃之后的内容", path, position);
+                    break;
+                }
+                apply(record, now);
+                buffer.position(buffer.position() + length);
+                position += 8 + length;
+                records++;
+            }
+            compactedSize = position;
+        }
+        log.info("从缓存快照{}装载{}条记录,耗时{}ms", path, records, CacheCustom.clock.getAsLong() - now);
+        return records;
+    }
+
+    /**
+     * 开始监听缓存变更并定期增量落盘,JVM退出时再落盘一次
+     *
+     * @param intervalSeconds 落盘间隔,单位秒
+     */
+    public synchronized void start(long intervalSeconds) throws IOException {
+        if (executor != null) {
+            return;
+        }
+        // 先注册监听再全量写一次,全量期间的变更会被标记,下一轮增量补上
+        CacheCustom.addWriteListener(writeListener);
+        CacheCustom.addRemovalListener(removalListener);
+        compact();
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cache-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Throwable e) {
+                log.error("缓存快照落盘失败", e);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        shutdownHook = new Thread(() -> {
+            try {
+                flush();
+            } catch (IOException e) {
+                log.error("缓存快照落盘失败", e);
+            }
+        }, "cache-snapshot-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * 把变更过的key追加到文件末尾,文件膨胀到上次全量的两倍以上时改为全量重写
+     */
+    public synchronized void flush() throws IOException {
+        if (dirtyKeys.isEmpty()) {
+            return;
+        }
+        if (Files.exists(path) && Files.size(path) > Math.max(compactedSize * 2, 1 << 20)) {
+            compact();
+            return;
+        }
+        long now = CacheCustom.clock.getAsLong();
+        boolean created = !Files.exists(path);
+        try (FileOutputStream fos = new FileOutputStream(path.toFile(), true);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            if (created) {
+                writeHeader(out);
+            }
+            Iterator<String> iterator = dirtyKeys.keySet().iterator();
+            while (iterator.hasNext()) {
+                String key = iterator.next();
+                // 先摘掉再读当前值,期间的新写入会重新标记,下一轮再写
+                iterator.remove();
+                CacheCustom.CacheEntity entity = CacheCustom.getEntity(key);
+                if (entity == null || entity.isExpired(now)) {
+                    writeRecord(out, TYPE_REMOVE, key, 0, null);
+                } else {
+                    writeEntity(out, entity);
+                }
+            }
+            out.flush();
+            fos.getChannel().force(false);
+        }
+    }
+
+    /**
+     * 全量写入当前缓存到临时文件,再原子替换快照文件
+     */
+    public synchronized void compact() throws IOException {
+        long now = CacheCustom.clock.getAsLong();
+        dirtyKeys.clear();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            writeHeader(out);
+            for (CacheCustom.CacheEntity entity : CacheCustom.entities()) {
+                if (!entity.isExpired(now)) {
+                    writeEntity(out, entity);
+                }
+            }
+            out.flush();
+            fos.getChannel().force(false);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        compactedSize = Files.size(path);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+            CacheCustom.removeWriteListener(writeListener);
+            CacheCustom.removeRemovalListener(removalListener);
+        }
+        if (shutdownHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM已经在退出,钩子正在执行或即将执行
+            }
+            shutdownHook = null;
+        }
+        flush();
+    }
+
+    private void apply(ByteBuffer record, long now) {
+        byte type = record.get();
+        long expireAt = record.getLong();
+        byte[] keyBytes = new byte[record.getShort() & 0xffff];
+        record.get(keyBytes);
+        String key = new String(keyBytes, StandardCharsets.UTF_8);
+        if (type == TYPE_REMOVE) {
+            CacheCustom.remove(key);
+            return;
+        }
+        if (expireAt != 0 && expireAt <= now) {
+            CacheCustom.remove(key);
+            return;
+        }
+        byte[] valueBytes = new byte[record.getInt()];
+        record.get(valueBytes);
+        Object value = codec.decode(valueBytes);
+        if (value != null) {
+            CacheCustom.putMillis(key, value, expireAt == 0 ? 0 : expireAt - now);
+        }
+    }
+
+    private void writeEntity(DataOutputStream out, CacheCustom.CacheEntity entity) throws IOException {
+        byte[] valueBytes = codec.encode(entity.getValue());
+        if (valueBytes == null) {
+            return;
+        }
+        Long expireTime = entity.getExpireTime();
+        writeRecord(out, TYPE_PUT, entity.getKey(), expireTime == null ? 0 : expireTime, valueBytes);
+    }
+
+    private void writeRecord(DataOutputStream out, byte type, String key, long expireAt, byte[] valueBytes)
+            throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xffff) {
+            return;
+        }
+        int length = 1 + 8 + 2 + keyBytes.length + (valueBytes == null ? 0 : 4 + valueBytes.length);
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.put(type).putLong(expireAt).putShort((short) keyBytes.length).put(keyBytes);
+        if (valueBytes != null) {
+            record.putInt(valueBytes.length).put(valueBytes);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, length);
+        out.writeInt(length);
+        out.writeInt((int) crc.getValue());
+        out.write(record.array(), 0, length);
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(1);
+    }
+
+    private static MappedByteBuffer remap(FileChannel channel, long position, long fileSize) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(fileSize - position, MAP_WINDOW));
+    }
+}
@@ -0,0 +1,359 @@
+package com.xmxe.util.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 堆外存储,数据放在直接内存(DirectByteBuffer)里,不参与GC扫描和复制,适合缓存体积大的序列化数据
+ * 内存按slab分配:每个slab是一块固定大小的直接内存,按2的幂划分大小级别(64B,128B...),
+ * 同一级别释放的块放入空闲栈复用,slab里剩余的空间按顺序切分。容量用完后按LRU淘汰最久未访问的数据
+ * 为了简单,块不会合并,每个数据最多浪费一半的空间;slab用完后淘汰其他级别的数据腾不出本级别的块,
+ * 所以只淘汰同一级别里最久未访问的数据,没有同级别的数据时放弃存入,适合数据大小比较集中的场景
+ */
+public class OffHeapStore<K> {
+
+    private static final int MIN_CHUNK_SHIFT = 6;
+
+    private final int slabSize;
+    private final int maxSlabs;
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+
+    /**
+     * 当前切分中的slab已使用的偏移
+     */
+    private int slabOffset;
+
+    /**
+     * 每个大小级别的空闲块地址栈,地址=(slab下标<<32)|偏移
+     */
+    private final long[][] freeChunks;
+    private final int[] freeCounts;
+
+    /**
+     * 索引,按访问顺序排列,队首最久未访问
+     */
+    private final LinkedHashMap<K, Slot> index = new LinkedHashMap<>(1024, 0.75f, true);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long usedBytes;
+    private long allocatedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity 最大直接内存字节数
+     * @param slabSize 每个slab的大小,也是单个数据的上限
+     */
+    public OffHeapStore(long capacity, int slabSize) {
+        if (slabSize < (1 << MIN_CHUNK_SHIFT) || Integer.bitCount(slabSize) != 1) {
+            throw new IllegalArgumentException("slabSize must be a power of two and at least 64");
+        }
+        if (capacity < slabSize) {
+            throw new IllegalArgumentException("capacity must not be smaller than slabSize");
+        }
+        this.slabSize = slabSize;
+        this.maxSlabs = (int) Math.min(capacity / slabSize, Integer.MAX_VALUE);
+        int classes = Integer.numberOfTrailingZeros(slabSize) - MIN_CHUNK_SHIFT + 1;
+        this.freeChunks = new long[classes][16];
+        this.freeCounts = new int[classes];
+    }
+
+    /**
+     * 存入数据,空间不够时淘汰同一大小级别里最久未访问的数据
+     *
+     * @param expireAt 过期时间(System.nanoTime()),0表示永不过期
+     * @return false表示数据超过slab大小,或者slab已用完且没有同级别的数据可以淘汰
+     */
+    public boolean put(K key, byte[] bytes, long expireAt) {
+        if (bytes.length > slabSize) {
+            return false;
+        }
+        int sizeClass = sizeClass(bytes.length);
+        lock.lock();
+        try {
+            Slot old = index.remove(key);
+            if (old != null) {
+                free(old);
+            }
+            long address = allocate(sizeClass);
+            if (address < 0) {
+                // 同级别的块释放后一定能分配到
+                if (!evictEldest(sizeClass)) {
+                    return false;
+                }
+                address = allocate(sizeClass);
+            }
+            ByteBuffer slab = slabs.get((int) (address >>> 32)).duplicate();
+            slab.position((int) address);
+            slab.put(bytes);
+            index.put(key, new Slot(address, bytes.length, sizeClass, expireAt));
+            usedBytes += bytes.length;
+            allocatedBytes += chunkSize(sizeClass);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 读取数据并拷贝到堆内
+     *
+     * @return 不存在或已过期返回null
+     */
+    public byte[] get(K key) {
+        lock.lock();
+        try {
+            Slot slot = index.get(key);
+            if (slot == null) {
+                misses.increment();
+                return null;
+            }
+            if (slot.isExpired(System.nanoTime())) {
+                index.remove(key);
+                free(slot);
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return read(slot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取出并删除数据,用于晋升回堆内
+     *
+     * @return 不存在或已过期返回null
+     */
+    public Entry take(K key) {
+        lock.lock();
+        try {
+            Slot slot = index.remove(key);
+            if (slot == null) {
+                misses.increment();
+                return null;
+            }
+            free(slot);
+            if (slot.isExpired(System.nanoTime())) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return new Entry(read(slot), slot.expireAt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean remove(K key) {
+        lock.lock();
+        try {
+            Slot slot = index.remove(key);
+            if (slot != null) {
+                free(slot);
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 清理已过期的数据,由调用方定期执行
+     */
+    public int purgeExpired() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            int purged = 0;
+            Iterator<Map.Entry<K, Slot>> iterator = index.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Slot slot = iterator.next().getValue();
+                if (slot.isExpired(now)) {
+                    iterator.remove();
+                    free(slot);
+                    purged++;
+                }
+            }
+            return purged;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return index.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 数据实际占用的字节数
+     */
+    public long usedBytes() {
+        lock.lock();
+        try {
+            return usedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按块大小计算的已分配字节数,与usedBytes的差值就是内部碎片
+     */
+    public long allocatedBytes() {
+        lock.lock();
+        try {
+            return allocatedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 已申请的直接内存字节数
+     */
+    public long reservedBytes() {
+        lock.lock();
+        try {
+            return (long) slabs.size() * slabSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    private byte[] read(Slot slot) {
+        byte[] bytes = new byte[slot.length];
+        ByteBuffer slab = slabs.get((int) (slot.address >>> 32)).duplicate();
+        slab.position((int) slot.address);
+        slab.get(bytes);
+        return bytes;
+    }
+
+    private long allocate(int sizeClass) {
+        if (freeCounts[sizeClass] > 0) {
+            return freeChunks[sizeClass][--freeCounts[sizeClass]];
+        }
+        int chunkSize = chunkSize(sizeClass);
+        if (slabs.isEmpty() || slabOffset + chunkSize > slabSize) {
+            if (slabs.size() >= maxSlabs) {
+                return -1;
+            }
+            // 当前slab剩余的零头放不下就丢弃,开一个新的slab
+            slabs.add(ByteBuffer.allocateDirect(slabSize));
+            slabOffset = 0;
+        }
+        long address = ((long) (slabs.size() - 1) << 32) | slabOffset;
+        slabOffset += chunkSize;
+        return address;
+    }
+
+    private void free(Slot slot) {
+        int sizeClass = slot.sizeClass;
+        if (freeCounts[sizeClass] == freeChunks[sizeClass].length) {
+            freeChunks[sizeClass] = Arrays.copyOf(freeChunks[sizeClass], freeCounts[sizeClass] * 2);
+        }
+        freeChunks[sizeClass][freeCounts[sizeClass]++] = slot.address;
+        usedBytes -= slot.length;
+        allocatedBytes -= chunkSize(sizeClass);
+    }
+
+    /**
+     * 淘汰sizeClass级别里最久未访问的数据,没有这个级别的数据返回false
+     */
+    private boolean evictEldest(int sizeClass) {
+        Iterator<Map.Entry<K, Slot>> iterator = index.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Slot slot = iterator.next().getValue();
+            if (slot.sizeClass == sizeClass) {
+                iterator.remove();
+                free(slot);
+                evictions.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int sizeClass(int length) {
+        int size = Math.max(length, 1 << MIN_CHUNK_SHIFT);
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_CHUNK_SHIFT;
+    }
+
+    private static int chunkSize(int sizeClass) {
+        return 1 << (sizeClass + MIN_CHUNK_SHIFT);
+    }
+
+    /**
+     * 从堆外取出的数据
+     */
+    public static final class Entry {
+        private final byte[] bytes;
+        private final long expireAt;
+
+        Entry(byte[] bytes, long expireAt) {
+            this.bytes = bytes;
+            this.expireAt = expireAt;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        /**
+         * 过期时间(System.nanoTime()),0表示永不过期
+         */
+        public long getExpireAt() {
+            return expireAt;
+        }
+    }
+
+    /**
+     * 数据在直接内存中的位置
+     */
+    static final class Slot {
+        final long address;
+        final int length;
+        final int sizeClass;
+        final long expireAt;
+
+        Slot(long address, int length, int sizeClass, long expireAt) {
+            this.address = address;
+            this.length = length;
+            this.sizeClass = sizeClass;
+            this.expireAt = expireAt;
+        }
+
+        boolean isExpired(long now) {
+            return expireAt != 0 && now - expireAt >= 0;
+        }
+    }
+}
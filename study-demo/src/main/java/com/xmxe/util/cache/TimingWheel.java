@@ -0,0 +1,227 @@
+package com.xmxe.util.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分层时间轮(Hierarchical Timing Wheel)
+ * 每层64个槽,第0层每个槽跨度为tickMs,第n层每个槽跨度为tickMs*64^n,类似时钟的秒针、分针、时针。
+ * 添加、删除一个节点都是O(1)的链表操作,推进时只处理到期槽位里的节点,不需要像定时扫描那样遍历全部数据。
+ * 高层槽位到点后把其中的节点重新降级(cascade)放入低层,直到落入第0层并到期。
+ * 参考:Varghese & Lauck《Hashed and Hierarchical Timing Wheels》,Kafka/Netty中的时间轮实现
+ */
+public class TimingWheel<N extends TimingWheel.Node> {
+
+    /**
+     * 每层槽位数 2^6=64
+     */
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    /**
+     * 层数,tickMs=10时6层可以覆盖 10ms*64^6 约22年
+     */
+    private static final int LEVELS = 6;
+
+    /**
+     * 每一格的时间跨度（毫秒）
+     */
+    private final long tickMs;
+
+    /**
+     * 每层的槽位,槽位是一个双向链表的哨兵节点
+     */
+    private final Bucket[][] wheels = new Bucket[LEVELS][WHEEL_SIZE];
+
+    /**
+     * 当前已经推进到的刻度（绝对值：时间戳/tickMs）
+     */
+    private long currentTick;
+
+    /**
+     * 时间轮中的节点数量
+     */
+    private int size;
+
+    public TimingWheel(long tickMs) {
+        this(tickMs, System.currentTimeMillis());
+    }
+
+    public TimingWheel(long tickMs, long startMs) {
+        if (tickMs <= 0) {
+            throw new IllegalArgumentException("tickMs must be positive");
+        }
+        this.tickMs = tickMs;
+        this.currentTick = startMs / tickMs;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                wheels[level][slot] = new Bucket();
+            }
+        }
+    }
+
+    /**
+     * 添加节点,过期时间取node.getDeadline()
+     *
+     * @param node 节点,不能已经在某个时间轮中
+     * @return false表示节点已经过期,没有加入时间轮,由调用方自行处理
+     */
+    public synchronized boolean add(N node) {
+        long expireTick = toTick(node.getDeadline());
+        if (expireTick <= currentTick) {
+            return false;
+        }
+        place(node, expireTick);
+        size++;
+        return true;
+    }
+
+    /**
+     * 从时间轮中移除节点,节点不在时间轮中时什么也不做
+     */
+    public synchronized boolean remove(N node) {
+        if (node.bucket == null) {
+            return false;
+        }
+        unlink(node);
+        size--;
+        return true;
+    }
+
+    /**
+     * 将时间轮推进到nowMs,返回所有到期的节点
+     * 跨度较大时（如长时间GC停顿）按刻度逐格推进,每格只处理对应的槽位
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<N> advance(long nowMs) {
+        long targetTick = nowMs / tickMs;
+        List<N> expired = null;
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade();
+            Bucket bucket = wheels[0][(int) (currentTick & WHEEL_MASK)];
+            Node node = bucket.detach();
+            while (node != null) {
+                Node next = node.next;
+                node.next = null;
+                if (expired == null) {
+                    expired = new ArrayList<>();
+                }
+                expired.add((N) node);
+                size--;
+                node = next;
+            }
+        }
+        return expired == null ? new ArrayList<>(0) : expired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public long getTickMs() {
+        return tickMs;
+    }
+
+    /**
+     * 当低层转完一圈时,把高层当前槽位的节点重新分配到低层
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            long lowBits = currentTick & ((1L << (WHEEL_BITS * level)) - 1);
+            if (lowBits != 0) {
+                return;
+            }
+            Bucket bucket = wheels[level][(int) ((currentTick >> (WHEEL_BITS * level)) & WHEEL_MASK)];
+            Node node = bucket.detach();
+            while (node != null) {
+                Node next = node.next;
+                node.next = null;
+                place(node, Math.max(toTick(node.getDeadline()), currentTick));
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * 根据剩余刻度数选择层级和槽位
+     */
+    private void place(Node node, long expireTick) {
+        long delta = expireTick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (WHEEL_BITS * (level + 1)))) {
+            level++;
+        }
+        Bucket bucket = wheels[level][(int) ((expireTick >> (WHEEL_BITS * level)) & WHEEL_MASK)];
+        bucket.link(node);
+    }
+
+    private void unlink(Node node) {
+        node.prev.next = node.next;
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        node.bucket = null;
+    }
+
+    /**
+     * 向上取整,保证节点不会早于过期时间被触发
+     */
+    private long toTick(long deadlineMs) {
+        return (deadlineMs + tickMs - 1) / tickMs;
+    }
+
+    /**
+     * 时间轮中的节点,使用方继承该类把链表指针嵌入自己的对象中,避免额外包装对象
+     */
+    public abstract static class Node {
+
+        Node prev;
+        Node next;
+        Bucket bucket;
+
+        /**
+         * 过期时间戳（毫秒）
+         */
+        protected abstract long getDeadline();
+    }
+
+    /**
+     * 槽位,带哨兵头节点的双向链表
+     */
+    static final class Bucket {
+
+        private final Node head = new Node() {
+            @Override
+            protected long getDeadline() {
+                return Long.MAX_VALUE;
+            }
+        };
+
+        void link(Node node) {
+            node.bucket = this;
+            node.prev = head;
+            node.next = head.next;
+            if (head.next != null) {
+                head.next.prev = node;
+            }
+            head.next = node;
+        }
+
+        /**
+         * 整体摘下链表,返回第一个节点,节点之间仍通过next相连
+         */
+        Node detach() {
+            Node first = head.next;
+            head.next = null;
+            for (Node node = first; node != null; node = node.next) {
+                node.prev = null;
+                node.bucket = null;
+            }
+            return first;
+        }
+    }
+}
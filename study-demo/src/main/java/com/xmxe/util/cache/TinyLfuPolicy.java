@@ -0,0 +1,428 @@
+package com.xmxe.util.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.xmxe.util.cache.CacheCustom.CacheEntity;
+
+/**
+ * W-TinyLFU淘汰策略,直接在CacheEntity上维护链表,不额外包装节点
+ * 新数据先进入一个占总容量1%的窗口LRU,被挤出窗口后进入主区的试用段(probation),
+ * 与试用段最久未访问的数据比较频率（Count-Min Sketch估算）,频率高的留下。主区中再次被访问的数据晋升到保护段(protected)。
+ * 窗口能吸收突发的新key,频率过滤可以抵抗一次性扫描把热点数据冲掉,这是LinkedHashMap实现的LRU做不到的。
+ * 参考:Einziger & Friedman《TinyLFU: A Highly Efficient Cache Admission Policy》,Caffeine的BoundedLocalCache
+ */
+class TinyLfuPolicy {
+
+    static final int WINDOW = 0;
+    static final int PROBATION = 1;
+    static final int PROTECTED = 2;
+
+    /**
+     * 节点状态,防止并发下已删除的节点又被加入策略
+     */
+    static final int STATE_NEW = 0;
+    static final int STATE_ALIVE = 1;
+    static final int STATE_DEAD = 2;
+
+    private final long maximum;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    private long windowWeight;
+    private long mainWeight;
+    private long protectedWeight;
+
+    private final AccessOrderQueue window = new AccessOrderQueue();
+    private final AccessOrderQueue probation = new AccessOrderQueue();
+    private final AccessOrderQueue protectedQueue = new AccessOrderQueue();
+
+    private final FrequencySketch sketch;
+
+    private final ReadBuffer readBuffer = new ReadBuffer();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * @param maximum 最大权重,每个数据权重为1时就是最大数量
+     */
+    TinyLfuPolicy(long maximum) {
+        if (maximum <= 0) {
+            throw new IllegalArgumentException("maximum must be positive");
+        }
+        this.maximum = maximum;
+        this.windowMaximum = Math.max(1, maximum / 100);
+        this.protectedMaximum = (long) ((maximum - windowMaximum) * 0.8);
+        this.sketch = new FrequencySketch(maximum);
+    }
+
+    /**
+     * 新增数据,返回需要淘汰的数据
+     */
+    List<CacheEntity> onAdd(CacheEntity entity) {
+        lock.lock();
+        try {
+            drainReadBuffer();
+            if (entity.policyState != STATE_NEW) {
+                return emptyList();
+            }
+            return admitNew(entity);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 从旧策略迁移过来的数据,不管原来是什么状态都重新作为新数据加入,返回需要淘汰的数据
+     */
+    List<CacheEntity> onTransfer(CacheEntity entity) {
+        lock.lock();
+        try {
+            drainReadBuffer();
+            return admitNew(entity);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 读取命中,读多写少的场景下不能让所有读都排队等锁,拿不到锁就把key记进读缓冲区,放弃这一次的顺序调整,
+     * 缓冲区在下次拿到锁时再计入频率。Sketch不是线程安全的,只能在锁内修改
+     */
+    void onAccess(CacheEntity entity) {
+        if (!lock.tryLock()) {
+            readBuffer.offer(entity.getKey());
+            return;
+        }
+        try {
+            drainReadBuffer();
+            sketch.increment(entity.getKey());
+            if (entity.policyState != STATE_ALIVE) {
+                return;
+            }
+            if (entity.queueType == WINDOW) {
+                window.moveToLast(entity);
+            } else if (entity.queueType == PROBATION) {
+                probation.remove(entity);
+                entity.queueType = PROTECTED;
+                protectedQueue.addLast(entity);
+                protectedWeight += entity.getWeight();
+                demoteFromProtected();
+            } else {
+                protectedQueue.moveToLast(entity);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * 数据被删除（过期、覆盖、手动删除）
+     */
+    void onRemove(CacheEntity entity) {
+        lock.lock();
+        try {
+            if (entity.policyState == STATE_ALIVE) {
+                unlink(entity);
+            }
+            entity.policyState = STATE_DEAD;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long weightedSize() {
+        lock.lock();
+        try {
+            return windowWeight + mainWeight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getMaximum() {
+        return maximum;
+    }
+
+    private List<CacheEntity> admitNew(CacheEntity entity) {
+        entity.policyState = STATE_ALIVE;
+        entity.queueType = WINDOW;
+        window.addLast(entity);
+        windowWeight += entity.getWeight();
+        sketch.increment(entity.getKey());
+        return evict();
+    }
+
+    private void drainReadBuffer() {
+        readBuffer.drainTo(sketch);
+    }
+
+    private void unlink(CacheEntity entity) {
+        int weight = entity.getWeight();
+        if (entity.queueType == WINDOW) {
+            window.remove(entity);
+            windowWeight -= weight;
+        } else if (entity.queueType == PROBATION) {
+            probation.remove(entity);
+            mainWeight -= weight;
+        } else {
+            protectedQueue.remove(entity);
+            protectedWeight -= weight;
+            mainWeight -= weight;
+        }
+    }
+
+    private void demoteFromProtected() {
+        while (protectedWeight > protectedMaximum) {
+            CacheEntity demoted = protectedQueue.pollFirst();
+            if (demoted == null) {
+                return;
+            }
+            protectedWeight -= demoted.getWeight();
+            demoted.queueType = PROBATION;
+            probation.addLast(demoted);
+        }
+    }
+
+    private List<CacheEntity> evict() {
+        // 1.窗口超出后,最久未访问的数据进入试用段,成为候选者
+        CacheEntity firstCandidate = null;
+        while (windowWeight > windowMaximum) {
+            CacheEntity candidate = window.pollFirst();
+            if (candidate == null) {
+                break;
+            }
+            windowWeight -= candidate.getWeight();
+            mainWeight += candidate.getWeight();
+            candidate.queueType = PROBATION;
+            probation.addLast(candidate);
+            if (firstCandidate == null) {
+                firstCandidate = candidate;
+            }
+        }
+
+        // 2.总权重超出后,候选者和试用段队首的受害者比较频率,淘汰频率低的
+        List<CacheEntity> evicted = null;
+        CacheEntity candidate = firstCandidate;
+        while (windowWeight + mainWeight > maximum) {
+            CacheEntity victim = probation.peekFirst();
+            if (victim == null) {
+                victim = protectedQueue.peekFirst();
+            }
+            if (victim == null) {
+                victim = window.peekFirst();
+            }
+            if (victim == null) {
+                break;
+            }
+            CacheEntity evict = victim;
+            if (candidate != null && candidate.queueType == PROBATION) {
+                if (candidate == victim) {
+                    candidate = candidate.policyNext;
+                } else if (!admit(candidate, victim)) {
+                    // 候选者落选,换下一个候选者;否则受害者出局,候选者继续与下一个受害者比较
+                    evict = candidate;
+                    candidate = candidate.policyNext;
+                }
+            }
+            if (evicted == null) {
+                evicted = new ArrayList<>();
+            }
+            unlink(evict);
+            evict.policyState = STATE_DEAD;
+            evicted.add(evict);
+        }
+        return evicted == null ? emptyList() : evicted;
+    }
+
+    /**
+     * 候选者频率高于受害者才准入;频率相同时淘汰候选者,避免新数据轮流把老数据挤掉
+     */
+    private boolean admit(CacheEntity candidate, CacheEntity victim) {
+        return sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey());
+    }
+
+    private static List<CacheEntity> emptyList() {
+        return new ArrayList<>(0);
+    }
+
+    /**
+     * 有损的分段读缓冲区,按线程分段减少CAS冲突,段满时覆盖旧记录。丢掉少量访问频率对准入判断影响很小,
+     * 换来的是读路径永远不阻塞
+     */
+    static final class ReadBuffer {
+
+        private static final int STRIPES = Integer.highestOneBit(
+                Math.min(16, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        private static final int SLOTS = 32;
+
+        private final AtomicLong[] counters = new AtomicLong[STRIPES];
+        private final AtomicReferenceArray<Object> slots = new AtomicReferenceArray<>(STRIPES * SLOTS);
+
+        ReadBuffer() {
+            for (int i = 0; i < STRIPES; i++) {
+                counters[i] = new AtomicLong();
+            }
+        }
+
+        void offer(Object key) {
+            int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+            int slot = (int) (counters[stripe].getAndIncrement() & (SLOTS - 1));
+            slots.lazySet(stripe * SLOTS + slot, key);
+        }
+
+        /**
+         * 只能在策略锁内调用
+         */
+        void drainTo(FrequencySketch sketch) {
+            for (int i = 0; i < slots.length(); i++) {
+                if (slots.get(i) != null) {
+                    Object key = slots.getAndSet(i, null);
+                    if (key != null) {
+                        sketch.increment(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 按访问顺序排列的双向链表,队首是最久未访问的数据
+     */
+    static final class AccessOrderQueue {
+
+        private CacheEntity first;
+        private CacheEntity last;
+
+        void addLast(CacheEntity entity) {
+            entity.policyPrev = last;
+            entity.policyNext = null;
+            if (last == null) {
+                first = entity;
+            } else {
+                last.policyNext = entity;
+            }
+            last = entity;
+        }
+
+        void remove(CacheEntity entity) {
+            CacheEntity prev = entity.policyPrev;
+            CacheEntity next = entity.policyNext;
+            if (prev == null) {
+                first = next;
+            } else {
+                prev.policyNext = next;
+            }
+            if (next == null) {
+                last = prev;
+            } else {
+                next.policyPrev = prev;
+            }
+            entity.policyPrev = null;
+            entity.policyNext = null;
+        }
+
+        void moveToLast(CacheEntity entity) {
+            if (entity != last) {
+                remove(entity);
+                addLast(entity);
+            }
+        }
+
+        CacheEntity peekFirst() {
+            return first;
+        }
+
+        CacheEntity pollFirst() {
+            CacheEntity entity = first;
+            if (entity != null) {
+                remove(entity);
+            }
+            return entity;
+        }
+    }
+
+    /**
+     * Count-Min Sketch频率统计,每个计数器4位,一个long存16个计数器,最大计数15
+     * 累计增加次数达到容量的10倍时所有计数器减半,让历史热点逐渐老化
+     */
+    static final class FrequencySketch {
+
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+                0xcbf29ce484222325L };
+
+        private final long[] table;
+        private final int tableMask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(long maximum) {
+            int capacity = (int) Math.min(maximum, 1 << 30);
+            int length = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+            this.table = new long[length];
+            this.tableMask = length - 1;
+            this.sampleSize = (int) Math.min(10L * capacity, Integer.MAX_VALUE);
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int offset = counterOffset(hash, i);
+                int count = (int) ((table[index] >>> offset) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int offset = counterOffset(hash, i);
+                long mask = 0xfL << offset;
+                if ((table[index] & mask) != mask) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions >>>= 1;
+        }
+
+        /**
+         * 第i行计数器在long中的偏移:每行占用4个计数器中的一个,共16个位置
+         */
+        private int counterOffset(int hash, int i) {
+            int start = (hash >>> (i << 3)) & 3;
+            return ((start << 2) + i) << 2;
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return ((int) h) & tableMask;
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
+}
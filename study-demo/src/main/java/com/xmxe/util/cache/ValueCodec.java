@@ -0,0 +1,66 @@
+package com.xmxe.util.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.xmxe.util.httpclient.okhttp.JacksonObjectUtil;
+
+/**
+ * 缓存值的序列化方式,堆外存储只能存字节,放入堆外前编码,取出后解码
+ */
+public interface ValueCodec {
+
+    /**
+     * @return 序列化失败时返回null,调用方放弃存入堆外
+     */
+    byte[] encode(Object value);
+
+    Object decode(byte[] bytes);
+
+    /**
+     * JDK序列化,值需要实现Serializable,不需要知道具体类型
+     */
+    static ValueCodec jdk() {
+        return new ValueCodec() {
+            @Override
+            public byte[] encode(Object value) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+                try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+                    oos.writeObject(value);
+                } catch (Exception e) {
+                    return null;
+                }
+                return bos.toByteArray();
+            }
+
+            @Override
+            public Object decode(byte[] bytes) {
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    return ois.readObject();
+                } catch (Exception e) {
+                    return null;
+                }
+            }
+        };
+    }
+
+    /**
+     * Jackson序列化,体积比JDK序列化小,所有值需要是同一种类型
+     */
+    static <T> ValueCodec jackson(TypeReference<T> referenceType) {
+        return new ValueCodec() {
+            @Override
+            public byte[] encode(Object value) {
+                return JacksonObjectUtil.objToByte(value);
+            }
+
+            @Override
+            public Object decode(byte[] bytes) {
+                return JacksonObjectUtil.byteToObj(bytes, referenceType);
+            }
+        };
+    }
+}
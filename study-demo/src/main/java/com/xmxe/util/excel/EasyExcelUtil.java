@@ -17,6 +17,7 @@ import org.springframework.util.StringUtils;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 @Slf4j
@@ -171,6 +172,73 @@ public class EasyExcelUtil {
 
    }
 
+   /**
+    * 分批生成excle,数据从data里逐行拉取,每攒够batchSize行写一次,内存里只有一批数据和EasyExcel内部SXSSF保留的最近几行
+    * 一个sheet写满ExcelExporter.MAX_ROWS_PER_SHEET行后换到下一个sheet,每个sheet都有表头
+    * 
+    * @param filePath  绝对路径,如-/home/chenmingjian/Downloads/aaa.xlsx
+    * @param data      数据源
+    * @param head      表头
+    * @param batchSize 每批写入的行数
+    * @return 写入的数据行数
+    */
+   public static long writeByBatch(String filePath, Iterator<? extends List<?>> data, List<String> head,
+         int batchSize) {
+      List<List<String>> headList = null;
+      if (head != null) {
+         headList = new ArrayList<>();
+         for (String h : head) {
+            headList.add(Collections.singletonList(h));
+         }
+      }
+
+      long count = 0;
+      OutputStream outputStream = null;
+      ExcelWriter writer = null;
+      try {
+         outputStream = new FileOutputStream(filePath);
+         writer = EasyExcel.write().file(outputStream).build();
+         // 写入后批次里的行已经在SXSSF里了,List可以复用
+         List<Object> batch = new ArrayList<>(batchSize);
+         int sheetNo = 0;
+         int sheetRows = 0;
+         WriteSheet sheet = EasyExcel.writerSheet(sheetNo, "Sheet" + (sheetNo + 1)).head(headList).build();
+         while (data.hasNext()) {
+            if (sheetRows == ExcelExporter.MAX_ROWS_PER_SHEET) {
+               writer.write(batch, sheet);
+               batch.clear();
+               sheetNo++;
+               sheetRows = 0;
+               sheet = EasyExcel.writerSheet(sheetNo, "Sheet" + (sheetNo + 1)).head(headList).build();
+            }
+            batch.add(data.next());
+            sheetRows++;
+            count++;
+            if (batch.size() == batchSize) {
+               writer.write(batch, sheet);
+               batch.clear();
+            }
+         }
+         // 没有数据时也写出只有表头的sheet
+         writer.write(batch, sheet);
+      } catch (FileNotFoundException e) {
+         log.error("找不到文件或文件路径错误, 文件-{}", filePath);
+      } finally {
+         try {
+            if (writer != null) {
+               writer.finish();
+            }
+
+            if (outputStream != null) {
+               outputStream.close();
+            }
+         } catch (IOException e) {
+            log.error("excel文件导出失败, 失败原因-{}", e);
+         }
+      }
+      return count;
+   }
+
    /**
     * 生成excle
     * 
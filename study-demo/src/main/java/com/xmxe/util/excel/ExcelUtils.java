@@ -270,6 +270,44 @@ public class ExcelUtils {
 		}
 	}
 
+	/**
+	 * 流式创建Excel文件,只支持xlsx
+	 * 和上面的writeExcel不同,数据从values里逐行拉取,不在内存里建整个Workbook,超过一个sheet的行数上限时自动换到下一个sheet,
+	 * 百万行以上的导出用这个方法,详见ExcelExporter
+	 * 
+	 * @param filepath  文件全路径
+	 * @param sheetName 新Sheet页的名字,有多个sheet时依次加上序号
+	 * @param titles    表头
+	 * @param values    每行的单元格,按表头取值
+	 * @return 写入的数据行数
+	 */
+	public static long writeExcel(String filepath, String sheetName, List<String> titles,
+			Iterator<? extends Map<String, Object>> values) throws IOException {
+		if (StringUtils.isBlank(filepath)) {
+			throw new IllegalArgumentException("文件路径不能为空");
+		}
+		if (!OFFICE_EXCEL_XLSX.equalsIgnoreCase(getSuffiex(filepath))) {
+			throw new IllegalArgumentException("流式导出只支持xlsx文件");
+		}
+		Iterator<List<Object>> rows = new Iterator<List<Object>>() {
+			@Override
+			public boolean hasNext() {
+				return values.hasNext();
+			}
+
+			@Override
+			public List<Object> next() {
+				Map<String, Object> value = values.next();
+				List<Object> row = new ArrayList<>(titles.size());
+				for (String title : titles) {
+					row.add(value.get(title));
+				}
+				return row;
+			}
+		};
+		return ExcelExporter.DEFAULT.export(new File(filepath).toPath(), sheetName, titles, rows);
+	}
+
 	public static Workbook createWorkbook(String filepath) {
 		String suffiex = getSuffiex(filepath);
 		if (StringUtils.isBlank(suffiex)) {
@@ -287,7 +325,7 @@ public class ExcelUtils {
 	/**
 	 * 设置格式
 	 */
-	private static Map<String, CellStyle> createStyles(Workbook wb) {
+	static Map<String, CellStyle> createStyles(Workbook wb) {
 		Map<String, CellStyle> styles = Maps.newHashMap();
 
 		// 标题样式
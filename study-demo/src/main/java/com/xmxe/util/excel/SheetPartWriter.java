@@ -0,0 +1,395 @@
+package com.xmxe.util.excel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+/**
+ * 把一个sheet的worksheet XML直接写进只有一个条目的临时zip,写的时候就压缩好
+ * 1.不建Row/Cell对象,值直接编码成UTF-8写进64K的缓冲区,内存只有缓冲区和Deflater,与行数无关
+ * 2.字符串用inlineStr,不经过共享字符串表(SXSSF默认也是这样),各个sheet之间没有共享状态,可以在不同线程里同时写
+ * 3.压缩好的条目由ExcelExporter原样拷进最终的xlsx,不再解压和二次压缩
+ * 值的写法和ExcelUtils.writeExcel一致:Number写数值,Boolean写布尔,Date/Calendar/LocalDateTime格式化成yyyy-MM-dd HH:mm:ss,
+ * 其他类型toString,null留空
+ */
+final class SheetPartWriter implements Closeable {
+
+    static final String ENTRY = "sheet.xml";
+
+    static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final byte[] HEAD = ascii("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+            + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+            + "<sheetFormatPr baseColWidth=\"15\" defaultRowHeight=\"15\"/><sheetData>");
+
+    private static final byte[] TAIL = ascii("</sheetData></worksheet>");
+
+    private static final byte[] ROW_OPEN = ascii("<row r=\"");
+
+    private static final byte[] ROW_OPEN_END = ascii("\">");
+
+    private static final byte[] ROW_CLOSE = ascii("</row>");
+
+    private static final byte[] CELL_OPEN = ascii("<c r=\"");
+
+    private static final byte[] NUMBER_OPEN = ascii("\"><v>");
+
+    private static final byte[] BOOLEAN_OPEN = ascii("\" t=\"b\"><v>");
+
+    private static final byte[] VALUE_CLOSE = ascii("</v></c>");
+
+    private static final byte[] STRING_OPEN = ascii("\" t=\"inlineStr\"><is><t>");
+
+    private static final byte[] STRING_OPEN_PRESERVE = ascii("\" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+
+    private static final byte[] STRING_CLOSE = ascii("</t></is></c>");
+
+    private static final byte[] STYLE = ascii("\" s=\"");
+
+    private final ZipArchiveOutputStream zip;
+
+    private final byte[] buffer = new byte[64 * 1024];
+
+    private int position;
+
+    /**
+     * 列名A、B...AA,按需要增长
+     */
+    private byte[][] columns = new byte[0][];
+
+    private final boolean header;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    /**
+     * 已写的行数,含表头
+     */
+    private int rows;
+
+    /**
+     * @param titles      表头,null表示没有表头
+     * @param headerStyle 表头单元格的样式序号
+     * @param level       Deflater压缩级别
+     */
+    SheetPartWriter(Path file, List<String> titles, int headerStyle, int level) throws IOException {
+        this.header = titles != null;
+        this.zip = new ZipArchiveOutputStream(file.toFile());
+        zip.setLevel(level);
+        ZipArchiveEntry entry = new ZipArchiveEntry(ENTRY);
+        entry.setMethod(ZipEntry.DEFLATED);
+        zip.putArchiveEntry(entry);
+        write(HEAD);
+        if (titles != null) {
+            writeRow(titles, headerStyle);
+        }
+    }
+
+    /**
+     * 已写的数据行数,不含表头
+     */
+    int dataRows() {
+        return header ? rows - 1 : rows;
+    }
+
+    void writeRow(List<?> values) throws IOException {
+        writeRow(values, -1);
+    }
+
+    private void writeRow(List<?> values, int style) throws IOException {
+        int r = ++rows;
+        write(ROW_OPEN);
+        writeInt(r);
+        write(ROW_OPEN_END);
+        int size = values.size();
+        for (int i = 0; i < size; i++) {
+            Object value = values.get(i);
+            if (value == null) {
+                continue;
+            }
+            write(CELL_OPEN);
+            write(column(i));
+            writeInt(r);
+            if (style >= 0) {
+                write(STYLE);
+                writeInt(style);
+            }
+            writeValue(value);
+        }
+        write(ROW_CLOSE);
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value instanceof Number) {
+            String number = number((Number) value);
+            if (number != null) {
+                write(NUMBER_OPEN);
+                writeAscii(number);
+                write(VALUE_CLOSE);
+                return;
+            }
+        } else if (value instanceof Boolean) {
+            write(BOOLEAN_OPEN);
+            write((byte) ((Boolean) value ? '1' : '0'));
+            write(VALUE_CLOSE);
+            return;
+        }
+        LocalDateTime dateTime = dateTime(value);
+        if (dateTime != null && dateTime.getYear() >= 0 && dateTime.getYear() <= 9999) {
+            write(STRING_OPEN);
+            writeDateTime(dateTime);
+            write(STRING_CLOSE);
+            return;
+        }
+        String text = dateTime != null ? DATE_TIME.format(dateTime) : value.toString();
+        boolean preserve = !text.isEmpty()
+                && (Character.isWhitespace(text.charAt(0)) || Character.isWhitespace(text.charAt(text.length() - 1)));
+        write(preserve ? STRING_OPEN_PRESERVE : STRING_OPEN);
+        writeEscaped(text);
+        write(STRING_CLOSE);
+    }
+
+    /**
+     * @return 不能作为数值写出时(NaN、无穷大)返回null,改按字符串写
+     */
+    private static String number(Number value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+                || value instanceof BigInteger || value instanceof BigDecimal) {
+            return value.toString();
+        }
+        double d = value.doubleValue();
+        return Double.isFinite(d) ? Double.toString(d) : null;
+    }
+
+    /**
+     * Date、Calendar、LocalDateTime转成本地时间,其他类型返回null
+     */
+    private LocalDateTime dateTime(Object value) {
+        if (value instanceof Date) {
+            // java.sql.Date不支持toInstant
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(((Date) value).getTime()), zone);
+        }
+        if (value instanceof Calendar) {
+            Calendar calendar = (Calendar) value;
+            return LocalDateTime.ofInstant(calendar.toInstant(), calendar.getTimeZone().toZoneId());
+        }
+        if (value instanceof LocalDateTime) {
+            return (LocalDateTime) value;
+        }
+        return null;
+    }
+
+    /**
+     * 按yyyy-MM-dd HH:mm:ss逐位写出,和DATE_TIME.format的结果相同,省掉格式化器和中间的String
+     */
+    private void writeDateTime(LocalDateTime t) throws IOException {
+        if (buffer.length - position < 19) {
+            flush();
+        }
+        int p = position;
+        int year = t.getYear();
+        buffer[p] = (byte) ('0' + year / 1000);
+        buffer[p + 1] = (byte) ('0' + year / 100 % 10);
+        buffer[p + 2] = (byte) ('0' + year / 10 % 10);
+        buffer[p + 3] = (byte) ('0' + year % 10);
+        buffer[p + 4] = '-';
+        twoDigits(p + 5, t.getMonthValue());
+        buffer[p + 7] = '-';
+        twoDigits(p + 8, t.getDayOfMonth());
+        buffer[p + 10] = ' ';
+        twoDigits(p + 11, t.getHour());
+        buffer[p + 13] = ':';
+        twoDigits(p + 14, t.getMinute());
+        buffer[p + 16] = ':';
+        twoDigits(p + 17, t.getSecond());
+        position = p + 19;
+    }
+
+    private void twoDigits(int p, int value) {
+        buffer[p] = (byte) ('0' + value / 10);
+        buffer[p + 1] = (byte) ('0' + value % 10);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            write(TAIL);
+            flush();
+            zip.closeArchiveEntry();
+            zip.finish();
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * 出错时关闭,不再补全XML
+     */
+    void abort() {
+        try {
+            zip.close();
+        } catch (IOException | RuntimeException e) {
+            // 临时文件随后被删除
+        }
+    }
+
+    private byte[] column(int index) {
+        if (index >= columns.length) {
+            columns = Arrays.copyOf(columns, Math.max(index + 1, columns.length * 2));
+        }
+        byte[] name = columns[index];
+        if (name == null) {
+            name = ascii(columnName(index));
+            columns[index] = name;
+        }
+        return name;
+    }
+
+    static String columnName(int index) {
+        StringBuilder name = new StringBuilder(3);
+        for (int n = index + 1; n > 0; n = (n - 1) / 26) {
+            name.append((char) ('A' + (n - 1) % 26));
+        }
+        return name.reverse().toString();
+    }
+
+    private void writeInt(int value) throws IOException {
+        if (buffer.length - position < 11) {
+            flush();
+        }
+        if (value == 0) {
+            buffer[position++] = '0';
+            return;
+        }
+        int digits = 0;
+        for (int v = value; v > 0; v /= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int p = end - 1, v = value; p >= position; p--, v /= 10) {
+            buffer[p] = (byte) ('0' + v % 10);
+        }
+        position = end;
+    }
+
+    private void writeAscii(String s) throws IOException {
+        int length = s.length();
+        if (buffer.length - position < length) {
+            flush();
+            if (buffer.length < length) {
+                write(ascii(s));
+                return;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            buffer[position++] = (byte) s.charAt(i);
+        }
+    }
+
+    /**
+     * 按UTF-8写出并转义XML特殊字符,去掉XML 1.0不允许出现的控制字符和不成对的代理字符
+     */
+    private void writeEscaped(String s) throws IOException {
+        int length = s.length();
+        // 一个字符最多写6个字节(&quot;),短字符串一次留够空间,长字符串逐个字符检查
+        int check = length * 6 <= buffer.length ? -1 : 0;
+        if (check < 0 && buffer.length - position < length * 6) {
+            flush();
+        }
+        for (int i = 0; i < length; i++) {
+            if (check == 0 && buffer.length - position < 6) {
+                flush();
+            }
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '<':
+                        position = put(position, "&lt;");
+                        break;
+                    case '>':
+                        position = put(position, "&gt;");
+                        break;
+                    case '&':
+                        position = put(position, "&amp;");
+                        break;
+                    case '"':
+                        position = put(position, "&quot;");
+                        break;
+                    default:
+                        if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                            buffer[position++] = (byte) c;
+                        }
+                }
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | c >> 6);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c)) {
+                if (i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buffer[position++] = (byte) (0xF0 | cp >> 18);
+                    buffer[position++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                    buffer[position++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                    buffer[position++] = (byte) (0x80 | cp & 0x3F);
+                }
+            } else if (!Character.isLowSurrogate(c) && c < 0xFFFE) {
+                buffer[position++] = (byte) (0xE0 | c >> 12);
+                buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private int put(int p, String entity) {
+        for (int i = 0; i < entity.length(); i++) {
+            buffer[p++] = (byte) entity.charAt(i);
+        }
+        return p;
+    }
+
+    private void write(byte b) throws IOException {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = b;
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        if (buffer.length - position < bytes.length) {
+            flush();
+            if (buffer.length < bytes.length) {
+                zip.write(bytes, 0, bytes.length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void flush() throws IOException {
+        if (position > 0) {
+            zip.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) s.charAt(i);
+        }
+        return bytes;
+    }
+}
@@ -32,6 +32,8 @@ import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.xmxe.util.IoExecutors;
+
 import javax.net.ssl.SSLContext;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -41,6 +43,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 public class HttpClientUtil3 {
 
@@ -379,6 +382,22 @@ public class HttpClientUtil3 {
         return result;
     }
 
+    /**
+     * 异步发送http请求,在IoExecutors上执行
+     * 并发超过连接池大小(300)的请求会在池上排队等连接,最长等connectionRequestTimeout
+     */
+    public static CompletableFuture<String> sendHttpAsync(HttpMethod httpMethod, String url, Map<String, String> header, String params) {
+        return IoExecutors.supplyAsync(() -> sendHttp(httpMethod, url, header, params));
+    }
+
+    public static CompletableFuture<String> getUrlAsync(String url) {
+        return sendHttpAsync(HttpMethod.GET, url, null, null);
+    }
+
+    public static CompletableFuture<String> postJsonAsync(String url, Map<String, String> header, String params) {
+        return sendHttpAsync(HttpMethod.POST, url, header, params);
+    }
+
     /**
      * 请求方法（全大些）
      */
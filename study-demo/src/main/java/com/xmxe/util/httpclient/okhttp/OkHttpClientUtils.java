@@ -3,11 +3,13 @@ package com.xmxe.util.httpclient.okhttp;
 import java.nio.charset.Charset;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.xmxe.util.IoExecutors;
 
 import okhttp3.FormBody;
 import okhttp3.Headers;
@@ -125,6 +127,47 @@ public class OkHttpClientUtils {
     }
 
 
+    /**
+     * 异步get请求,在IoExecutors上执行同步调用,同步调用不受Dispatcher的maxRequests(100)限制
+     * @param url
+     * @param headers
+     * @return
+     */
+    public static CompletableFuture<String> getAsync(String url, Map<String, String> headers){
+        return IoExecutors.supplyAsync(() -> get(url, headers));
+    }
+
+    public static <T> CompletableFuture<T> getAsync(String url, Map<String, String> headers, TypeReference<T> responseType){
+        return IoExecutors.supplyAsync(() -> get(url, headers, responseType));
+    }
+
+    /**
+     * 异步post表单请求
+     * @param url
+     * @param paramMap
+     * @param headers
+     * @return
+     */
+    public static CompletableFuture<String> postByFormAsync(String url, Map<String, String> paramMap, Map<String, String> headers){
+        return IoExecutors.supplyAsync(() -> postByForm(url, paramMap, headers));
+    }
+
+    /**
+     * 异步post + json请求
+     * @param url
+     * @param value
+     * @param headers
+     * @return
+     */
+    public static CompletableFuture<String> postByJsonAsync(String url, Object value, Map<String, String> headers){
+        return IoExecutors.supplyAsync(() -> postByJson(url, value, headers));
+    }
+
+    public static <T> CompletableFuture<T> postByJsonAsync(String url, Object value, Map<String, String> headers, TypeReference<T> responseType){
+        return IoExecutors.supplyAsync(() -> postByJson(url, value, headers, responseType));
+    }
+
+
     /**
      * 包装请求头部
      * @param headers
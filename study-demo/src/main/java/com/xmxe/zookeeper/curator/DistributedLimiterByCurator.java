@@ -0,0 +1,352 @@
+package com.xmxe.zookeeper.curator;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于zookeeper的集群限流,所有节点共享一个"每个时间窗口permitsPerWindow个许可"的配额
+ * 1.计数节点/limiter/{name}/counter的数据是"窗口编号:已租出的许可数",节点每次用版本号CAS租一批许可,
+ *   集群内同一窗口租出的总数不会超过配额
+ * 2.租到的许可记在本地,请求只在本地CAS扣减,不需要访问zookeeper;剩余不足半批时后台线程提前续租
+ *   窗口内按时间比例放出配额(最多提前一批),避免配额在窗口开头被一次租光,跨窗口边界的1秒内放行接近两倍配额
+ * 3.每个节点在/limiter/{name}/members下注册临时顺序节点,批大小 = 配额/(节点数*4),
+ *   节点加入时后续每批变小,离开时变大;正常关闭时把没用完的许可还回计数节点
+ * 4.窗口按墙上时钟划分,各节点时钟偏差会让窗口边界附近的许可提前或推迟发放,这是与配额的主要误差来源
+ *
+ * 用法:
+ * DistributedLimiterByCurator limiter = new DistributedLimiterByCurator(client, "order-api", 10000, 1, TimeUnit.SECONDS);
+ * limiter.start();
+ * if (limiter.tryAcquire()) { ... }
+ */
+public class DistributedLimiterByCurator implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(DistributedLimiterByCurator.class);
+
+    private static final String ROOT = "/limiter";
+
+    /**
+     * 每个节点一个窗口内大约租几批
+     */
+    private static final int BATCHES_PER_NODE = 4;
+
+    private static final int MAX_LEASE_ATTEMPTS = 16;
+
+    private final CuratorFramework client;
+
+    private final String counterPath;
+
+    private final String membersPath;
+
+    private final long permitsPerWindow;
+
+    private final long windowMillis;
+
+    private final LongSupplier clock;
+
+    /**
+     * 本地租约:高32位窗口编号 | 低32位剩余许可数
+     */
+    private final AtomicLong lease = new AtomicLong();
+
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    /**
+     * 已知配额已经租完的窗口,这个窗口内不再续租
+     */
+    private volatile long exhaustedWindow = -1;
+
+    /**
+     * 按时间比例放出的配额暂时用完时,下次可以续租的时间
+     */
+    private volatile long nextLeaseAt;
+
+    private volatile int memberCount = 1;
+
+    private final LongAdder leasedPermits = new LongAdder();
+
+    private final LongAdder leaseRequests = new LongAdder();
+
+    private final LongAdder leaseConflicts = new LongAdder();
+
+    private ExecutorService refiller;
+
+    private PathChildrenCache members;
+
+    private String memberPath;
+
+    /**
+     * @param name             限流器名称,同名的限流器共享配额
+     * @param permitsPerWindow 集群每个窗口的总配额
+     */
+    public DistributedLimiterByCurator(CuratorFramework client, String name, long permitsPerWindow, long window,
+            TimeUnit unit) {
+        this(client, name, permitsPerWindow, window, unit, System::currentTimeMillis);
+    }
+
+    DistributedLimiterByCurator(CuratorFramework client, String name, long permitsPerWindow, long window,
+            TimeUnit unit, LongSupplier clock) {
+        if (permitsPerWindow <= 0 || permitsPerWindow > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("permitsPerWindow must be in [1, " + Integer.MAX_VALUE + "]");
+        }
+        if (unit.toMillis(window) <= 0) {
+            throw new IllegalArgumentException("window must be at least 1ms");
+        }
+        this.client = client;
+        this.counterPath = ZKPaths.makePath(ROOT, name, "counter");
+        this.membersPath = ZKPaths.makePath(ROOT, name, "members");
+        this.permitsPerWindow = permitsPerWindow;
+        this.windowMillis = unit.toMillis(window);
+        this.clock = clock;
+    }
+
+    /**
+     * 使用CuratorClientUtil的单例客户端
+     */
+    public static DistributedLimiterByCurator create(String zkAddress, String name, long permitsPerWindow,
+            long window, TimeUnit unit) throws Exception {
+        DistributedLimiterByCurator limiter = new DistributedLimiterByCurator(
+                CuratorClientUtil.getInstance(zkAddress), name, permitsPerWindow, window, unit);
+        limiter.start();
+        return limiter;
+    }
+
+    /**
+     * 注册成员并开始监听成员变化,之后才能获取许可
+     */
+    public synchronized void start() throws Exception {
+        if (refiller != null) {
+            return;
+        }
+        if (client.checkExists().forPath(counterPath) == null) {
+            // 并发创建时只有一个成功,失败的直接使用已存在的节点
+            CuratorClientUtil.createNode(client, counterPath, "0:0");
+        }
+        memberPath = client.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL_SEQUENTIAL)
+                .forPath(ZKPaths.makePath(membersPath, "member-"));
+        members = new PathChildrenCache(client, membersPath, false);
+        members.getListenable().addListener((c, event) -> updateMemberCount());
+        members.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+        updateMemberCount();
+        refiller = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "limiter-lease-" + ZKPaths.getNodeFromPath(memberPath));
+            thread.setDaemon(true);
+            return thread;
+        });
+        refill(currentWindow());
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * 从本地租约扣减许可,不访问zookeeper,租约不足时触发后台续租并返回false
+     */
+    public boolean tryAcquire(int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        long window = currentWindow();
+        for (;;) {
+            long current = lease.get();
+            long remaining = (int) (current >>> 32) == (int) window ? current & 0xffffffffL : 0;
+            if (remaining < permits) {
+                refill(window);
+                return false;
+            }
+            long left = remaining - permits;
+            if (lease.compareAndSet(current, window << 32 | left)) {
+                if (left < batchSize() / 2) {
+                    refill(window);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 当前每次续租的许可数
+     */
+    public long batchSize() {
+        return Math.max(1, permitsPerWindow / ((long) memberCount * BATCHES_PER_NODE));
+    }
+
+    public int memberCount() {
+        return memberCount;
+    }
+
+    /**
+     * 本节点累计租到的许可数
+     */
+    public long leasedPermits() {
+        return leasedPermits.sum();
+    }
+
+    /**
+     * 本节点访问计数节点的次数和因版本冲突重试的次数
+     */
+    public long leaseRequests() {
+        return leaseRequests.sum();
+    }
+
+    public long leaseConflicts() {
+        return leaseConflicts.sum();
+    }
+
+    /**
+     * 归还未用完的许可,注销成员
+     */
+    @Override
+    public synchronized void close() {
+        if (refiller == null) {
+            return;
+        }
+        refiller.shutdown();
+        try {
+            refiller.awaitTermination(5, TimeUnit.SECONDS);
+            giveBack();
+            members.close();
+            client.delete().guaranteed().forPath(memberPath);
+        } catch (Exception e) {
+            log.warn("关闭集群限流器{}失败", counterPath, e);
+        }
+        refiller = null;
+    }
+
+    private long currentWindow() {
+        return clock.getAsLong() / windowMillis;
+    }
+
+    private void updateMemberCount() {
+        PathChildrenCache cache = members;
+        if (cache != null) {
+            memberCount = Math.max(1, cache.getCurrentData().size());
+        }
+    }
+
+    /**
+     * 后台续租,同一时刻最多一个续租任务
+     */
+    private void refill(long window) {
+        if (window == exhaustedWindow || clock.getAsLong() < nextLeaseAt || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+        ExecutorService executor = refiller;
+        if (executor == null || executor.isShutdown()) {
+            refilling.set(false);
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                leaseBatch(clock.getAsLong());
+            } catch (Exception e) {
+                log.warn("集群限流器{}续租失败", counterPath, e);
+            } finally {
+                refilling.set(false);
+            }
+        });
+    }
+
+    private void leaseBatch(long now) throws Exception {
+        long window = now / windowMillis;
+        long batch = batchSize();
+        // 到现在为止这个窗口最多放出的配额
+        long budget = Math.min(permitsPerWindow, permitsPerWindow * (now - window * windowMillis) / windowMillis + batch);
+        for (int attempt = 0; attempt < MAX_LEASE_ATTEMPTS; attempt++) {
+            leaseRequests.increment();
+            Stat stat = new Stat();
+            long[] counter = parse(client.getData().storingStatIn(stat).forPath(counterPath));
+            if (counter[0] > window) {
+                // 本节点时钟落后,其他节点已经进入下一个窗口,这个窗口的配额拿不到了
+                exhaustedWindow = window;
+                return;
+            }
+            long consumed = counter[0] == window ? counter[1] : 0;
+            if (consumed >= permitsPerWindow) {
+                exhaustedWindow = window;
+                return;
+            }
+            long grant = Math.min(batch, budget - consumed);
+            if (grant <= 0) {
+                // 等到按比例又能放出一批时再来
+                nextLeaseAt = window * windowMillis + (consumed - batch + 1) * windowMillis / permitsPerWindow;
+                return;
+            }
+            try {
+                client.setData().withVersion(stat.getVersion()).forPath(counterPath, format(window, consumed + grant));
+            } catch (KeeperException.BadVersionException e) {
+                leaseConflicts.increment();
+                continue;
+            }
+            leasedPermits.add(grant);
+            credit(window, grant);
+            return;
+        }
+    }
+
+    private void credit(long window, long grant) {
+        for (;;) {
+            long current = lease.get();
+            int leaseWindow = (int) (current >>> 32);
+            long remaining = leaseWindow == (int) window ? current & 0xffffffffL : 0;
+            if (lease.compareAndSet(current, window << 32 | (remaining + grant))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 把本窗口没用完的许可还回计数节点,其他节点还能继续租
+     */
+    private void giveBack() throws Exception {
+        long window = currentWindow();
+        long current = lease.getAndSet(0);
+        long remaining = (int) (current >>> 32) == (int) window ? current & 0xffffffffL : 0;
+        while (remaining > 0) {
+            Stat stat = new Stat();
+            long[] counter = parse(client.getData().storingStatIn(stat).forPath(counterPath));
+            if (counter[0] != window) {
+                return;
+            }
+            try {
+                client.setData().withVersion(stat.getVersion()).forPath(counterPath,
+                        format(window, Math.max(0, counter[1] - remaining)));
+                return;
+            } catch (KeeperException.BadVersionException e) {
+                leaseConflicts.increment();
+            }
+        }
+    }
+
+    private static long[] parse(byte[] data) {
+        if (data == null || data.length == 0) {
+            return new long[] { 0, 0 };
+        }
+        String value = new String(data, StandardCharsets.UTF_8);
+        int colon = value.indexOf(':');
+        if (colon < 0) {
+            return new long[] { 0, 0 };
+        }
+        return new long[] { Long.parseLong(value.substring(0, colon)), Long.parseLong(value.substring(colon + 1)) };
+    }
+
+    private static byte[] format(long window, long consumed) {
+        return (window + ":" + consumed).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,273 @@
+package com.xmxe.zookeeper.curator;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xmxe.algorithm.balance.Endpoint;
+import com.xmxe.algorithm.balance.LoadBalancer;
+
+/**
+ * 基于zookeeper的服务发现,把/services/{service}下的临时节点同步给负载均衡器
+ * 1.服务提供方用register(address, weight)注册临时节点,节点名是地址,数据是权重,会话断开后节点自动删除;权重<=0表示摘除流量
+ * 2.PathChildrenCache监听子节点变化,事件只触发一次延迟debounceMillis的重建,这段时间内的所有变化合并成一次,
+ *   发布上线/批量下线几百个节点时只重建几次
+ * 3.重建生成不可变的节点列表,通过LoadBalancer.setEndpoints一次volatile替换交给负载均衡器,pick不访问zookeeper
+ * 4.地址和权重都没变的节点复用原来的Endpoint对象,活跃数、延迟、摘除状态不会因为其他节点变化而丢失
+ * 5.与zookeeper断开连接时保留最后一次的节点列表
+ *
+ * 用法:
+ * ServiceDiscoveryByCurator discovery = new ServiceDiscoveryByCurator(client, "order-service");
+ * discovery.start();
+ * LoadBalancer balancer = new P2cLeastActive(Collections.emptyList());
+ * discovery.bind(balancer);
+ * balancer.execute(endpoint -> 调用endpoint.getAddress());
+ */
+public class ServiceDiscoveryByCurator implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ServiceDiscoveryByCurator.class);
+
+    private static final String ROOT = "/services";
+
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 50;
+
+    private final CuratorFramework client;
+
+    private final String servicePath;
+
+    private final long debounceMillis;
+
+    private final PathChildrenCache cache;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+    private final List<LoadBalancer> balancers = new CopyOnWriteArrayList<>();
+
+    /**
+     * 当前节点列表的不可变快照
+     */
+    private volatile List<Endpoint> endpoints = Collections.emptyList();
+
+    /**
+     * 地址 -> 节点,只在scheduler线程中访问
+     */
+    private Map<String, Endpoint> byAddress = new HashMap<>();
+
+    private final LongAdder events = new LongAdder();
+
+    private final LongAdder rebuilds = new LongAdder();
+
+    public ServiceDiscoveryByCurator(CuratorFramework client, String service) {
+        this(client, service, DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * @param debounceMillis 收到第一个变化事件后等待多久再重建,0表示立即重建
+     */
+    public ServiceDiscoveryByCurator(CuratorFramework client, String service, long debounceMillis) {
+        if (debounceMillis < 0) {
+            throw new IllegalArgumentException("debounceMillis must not be negative");
+        }
+        this.client = client;
+        this.servicePath = ZKPaths.makePath(ROOT, service);
+        this.debounceMillis = debounceMillis;
+        this.cache = new PathChildrenCache(client, servicePath, true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "discovery-" + service);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 使用CuratorClientUtil的单例客户端
+     */
+    public static ServiceDiscoveryByCurator create(String zkAddress, String service) throws Exception {
+        ServiceDiscoveryByCurator discovery = new ServiceDiscoveryByCurator(CuratorClientUtil.getInstance(zkAddress),
+                service);
+        discovery.start();
+        return discovery;
+    }
+
+    /**
+     * 加载当前节点并开始监听,返回时快照已经是zookeeper上的最新状态
+     */
+    public void start() throws Exception {
+        try {
+            client.create().creatingParentsIfNeeded().forPath(servicePath);
+        } catch (KeeperException.NodeExistsException e) {
+            // 已存在
+        }
+        cache.getListenable().addListener((c, event) -> onEvent(event));
+        cache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+        try {
+            scheduler.submit(this::rebuild).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * 注册一个服务节点,会话断开后自动删除
+     * 节点已存在时看它属于哪个会话:属于当前会话说明是重复注册,只更新权重;属于旧会话(进程重启或会话过期重连后,
+     * 旧会话还没超时)时删掉重建,否则旧会话超时后节点会被zookeeper删除,服务从此不在列表里
+     *
+     * @return 节点路径
+     */
+    public String register(String address, int weight) throws Exception {
+        String path = ZKPaths.makePath(servicePath, address);
+        byte[] data = String.valueOf(weight).getBytes(StandardCharsets.UTF_8);
+        for (;;) {
+            try {
+                return client.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(path, data);
+            } catch (KeeperException.NodeExistsException e) {
+                // 继续往下检查节点的所有者
+            }
+            Stat stat = client.checkExists().forPath(path);
+            if (stat == null) {
+                // 检查前旧节点刚好被删除,重新创建
+                continue;
+            }
+            try {
+                if (stat.getEphemeralOwner() == client.getZookeeperClient().getZooKeeper().getSessionId()) {
+                    client.setData().withVersion(stat.getVersion()).forPath(path, data);
+                    return path;
+                }
+                log.info("{}属于会话0x{},删除后重建", path, Long.toHexString(stat.getEphemeralOwner()));
+                client.delete().withVersion(stat.getVersion()).forPath(path);
+            } catch (KeeperException.NoNodeException | KeeperException.BadVersionException e) {
+                // 节点在检查之后被删除或修改,重新检查
+            }
+        }
+    }
+
+    public void unregister(String address) throws Exception {
+        try {
+            client.delete().guaranteed().forPath(ZKPaths.makePath(servicePath, address));
+        } catch (KeeperException.NoNodeException e) {
+            // 已删除
+        }
+    }
+
+    /**
+     * 把节点列表同步给负载均衡器,立即设置一次当前快照,之后每次变化都会更新
+     */
+    public synchronized void bind(LoadBalancer balancer) {
+        balancer.setEndpoints(endpoints);
+        balancers.add(balancer);
+    }
+
+    public void unbind(LoadBalancer balancer) {
+        balancers.remove(balancer);
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * 收到的子节点变化事件数和实际重建次数
+     */
+    public long eventCount() {
+        return events.sum();
+    }
+
+    public long rebuildCount() {
+        return rebuilds.sum();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            cache.close();
+        } catch (Exception e) {
+            log.warn("关闭服务发现{}失败", servicePath, e);
+        }
+    }
+
+    private void onEvent(PathChildrenCacheEvent event) {
+        switch (event.getType()) {
+            case CHILD_ADDED:
+            case CHILD_UPDATED:
+            case CHILD_REMOVED:
+            case INITIALIZED:
+                events.increment();
+                break;
+            default:
+                // 连接状态变化不改变节点列表
+                return;
+        }
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::rebuild, debounceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void rebuild() {
+        // 先清除标记,重建期间的新事件会再安排一次重建
+        rebuildScheduled.set(false);
+        List<ChildData> children = cache.getCurrentData();
+        Map<String, Endpoint> next = new HashMap<>(children.size() * 2);
+        List<Endpoint> list = new ArrayList<>(children.size());
+        for (ChildData child : children) {
+            String address = ZKPaths.getNodeFromPath(child.getPath());
+            int weight = parseWeight(address, child.getData());
+            if (weight <= 0) {
+                continue;
+            }
+            Endpoint endpoint = byAddress.get(address);
+            if (endpoint == null || endpoint.getWeight() != weight) {
+                endpoint = new Endpoint(address, weight);
+            }
+            next.put(address, endpoint);
+            list.add(endpoint);
+        }
+        byAddress = next;
+        publish(Collections.unmodifiableList(list));
+        rebuilds.increment();
+        log.debug("服务{}节点列表更新,共{}个节点", servicePath, list.size());
+    }
+
+    private synchronized void publish(List<Endpoint> snapshot) {
+        endpoints = snapshot;
+        for (LoadBalancer balancer : balancers) {
+            balancer.setEndpoints(snapshot);
+        }
+    }
+
+    private int parseWeight(String address, byte[] data) {
+        if (data == null || data.length == 0) {
+            return 1;
+        }
+        try {
+            return Integer.parseInt(new String(data, StandardCharsets.UTF_8).trim());
+        } catch (NumberFormatException e) {
+            log.warn("服务{}节点{}的权重格式错误,按1处理", servicePath, address);
+            return 1;
+        }
+    }
+}
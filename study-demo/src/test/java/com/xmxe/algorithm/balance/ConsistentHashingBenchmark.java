@@ -0,0 +1,159 @@
+package com.xmxe.algorithm.balance;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * 一致性哈希实现的查找吞吐量、节点变更时key的移动比例和负载均匀程度
+ * TreeMap是原Balance.ConsistentHash的写法:TreeMap<Integer,String> + tailMap().firstKey()
+ * 运行方式:java ConsistentHashingBenchmark [节点数] [key数]
+ */
+public class ConsistentHashingBenchmark {
+
+    public static void main(String[] args) {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int keyCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        List<String> nodes = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            nodes.add("10.0." + i / 256 + "." + i % 256 + ":8080");
+        }
+        String[] keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "192.168." + (i >> 8 & 0xff) + "." + (i & 0xff) + "-" + i;
+        }
+
+        Map<String, Function<List<String>, ConsistentHashing<String>>> factories = new LinkedHashMap<>();
+        factories.put("TreeMap", TreeMapRing::new);
+        factories.put("HashRing", HashRing::new);
+        factories.put("JumpHash", JumpHash::new);
+        factories.put("MaglevHash", MaglevHash::new);
+
+        System.out.printf("%d nodes, %,d keys%n", nodeCount, keyCount);
+        for (int round = 0; round < 2; round++) {
+            for (Map.Entry<String, Function<List<String>, ConsistentHashing<String>>> entry : factories.entrySet()) {
+                ConsistentHashing<String> hashing = entry.getValue().apply(nodes);
+                long checksum = 0;
+                long begin = System.nanoTime();
+                for (int r = 0; r < 5; r++) {
+                    for (String key : keys) {
+                        checksum += hashing.select(key).length();
+                    }
+                }
+                long nanos = System.nanoTime() - begin;
+                System.out.printf("round %d %-11s %,12.0f lookups/s (%d)%n", round, entry.getKey(),
+                        keyCount * 5 * 1e9 / nanos, checksum);
+            }
+        }
+
+        System.out.println("remap fraction (ideal: add 1/(n+1), remove 1/n) and load max/avg:");
+        for (Map.Entry<String, Function<List<String>, ConsistentHashing<String>>> entry : factories.entrySet()) {
+            ConsistentHashing<String> hashing = entry.getValue().apply(nodes);
+            String[] before = assign(hashing, keys);
+            double load = maxOverAvg(before, nodeCount);
+            hashing.addNode("10.1.0.0:8080");
+            String[] added = assign(hashing, keys);
+            hashing.removeNode("10.1.0.0:8080");
+            hashing.removeNode(nodes.get(nodeCount / 2));
+            String[] removed = assign(hashing, keys);
+            System.out.printf("%-11s add %.4f (ideal %.4f), remove middle %.4f (ideal %.4f), load max/avg %.3f%n",
+                    entry.getKey(), moved(before, added), 1.0 / (nodeCount + 1), moved(before, removed),
+                    1.0 / nodeCount, load);
+        }
+    }
+
+    private static String[] assign(ConsistentHashing<String> hashing, String[] keys) {
+        String[] result = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            result[i] = hashing.select(keys[i]);
+        }
+        return result;
+    }
+
+    private static double moved(String[] before, String[] after) {
+        int moved = 0;
+        for (int i = 0; i < before.length; i++) {
+            if (!before[i].equals(after[i])) {
+                moved++;
+            }
+        }
+        return (double) moved / before.length;
+    }
+
+    private static double maxOverAvg(String[] assignment, int nodeCount) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String node : assignment) {
+            counts.merge(node, 1, Integer::sum);
+        }
+        int max = 0;
+        for (int count : counts.values()) {
+            max = Math.max(max, count);
+        }
+        return max / ((double) assignment.length / nodeCount);
+    }
+
+    /**
+     * 原Balance.ConsistentHash的实现,修正了越过环末尾时抛异常的问题,用于对比
+     */
+    static class TreeMapRing implements ConsistentHashing<String> {
+
+        private final TreeMap<Integer, String> virtualNodes = new TreeMap<>();
+
+        TreeMapRing(List<String> nodes) {
+            nodes.forEach(this::addNode);
+        }
+
+        @Override
+        public String select(CharSequence key) {
+            int hashCode = getHashCode(key.toString());
+            SortedMap<Integer, String> sortedMap = virtualNodes.tailMap(hashCode);
+            Integer treeNodeKey = sortedMap.isEmpty() ? virtualNodes.firstKey() : sortedMap.firstKey();
+            return virtualNodes.get(treeNodeKey);
+        }
+
+        @Override
+        public String select(long keyHash) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public synchronized boolean addNode(String node) {
+            virtualNodes.put(getHashCode(node), node);
+            for (int i = 0; i < HashRing.DEFAULT_VIRTUAL_NODES; i++) {
+                virtualNodes.put(getHashCode(node + i), node);
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized boolean removeNode(String node) {
+            return virtualNodes.values().removeIf(node::equals);
+        }
+
+        @Override
+        public List<String> nodes() {
+            return new ArrayList<>(new LinkedHashSet<>(virtualNodes.values()));
+        }
+
+        static int getHashCode(String IP) {
+            final int p = 1904390101;
+            int hash = (int) 1901102097L;
+            for (int i = 0; i < IP.length(); i++)
+                hash = (hash ^ IP.charAt(i)) * p;
+            hash += hash << 13;
+            hash ^= hash >> 7;
+            hash += hash << 3;
+            hash ^= hash >> 17;
+            hash += hash << 5;
+            if (hash < 0)
+                hash = Math.abs(hash);
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.xmxe.algorithm.balance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class ConsistentHashingTest {
+
+    private static final int KEYS = 100_000;
+
+    private static List<String> servers(int n) {
+        List<String> servers = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            servers.add("10.0.0." + i + ":8080");
+        }
+        return servers;
+    }
+
+    @Test
+    public void ringWrapsAround() {
+        HashRing<String> ring = new HashRing<>(servers(3), 1);
+        // 比所有虚拟节点都大的哈希回到第一个虚拟节点
+        String first = ring.select(Long.MIN_VALUE);
+        assertEquals(first, ring.select(0xffffffffL << 32));
+        assertEquals(first, ring.select(-1L));
+    }
+
+    @Test
+    public void emptyAndMembership() {
+        ConsistentHashing<String> ring = new HashRing<>(new ArrayList<>());
+        assertNull(ring.select("a"));
+        assertTrue(ring.addNode("n1"));
+        assertFalse(ring.addNode("n1"));
+        assertEquals("n1", ring.select("a"));
+        assertTrue(ring.removeNode("n1"));
+        assertFalse(ring.removeNode("n1"));
+        assertNull(ring.select("a"));
+    }
+
+    @Test
+    public void remapOnAddIsMinimal() {
+        check(nodes -> new HashRing<>(nodes), true, 0.15, 0.15);
+        check(nodes -> new JumpHash<>(nodes), true, 0.1, 0.25);
+        // Maglev重建查找表时少量槽会在老节点之间换主人
+        check(nodes -> new MaglevHash<>(nodes), false, 0.15, 0.15);
+    }
+
+    /**
+     * 加一个节点后移动的key比例接近1/11,删除一个中间节点移动的比例不超过removeLimit
+     *
+     * @param monotone 加节点时key是否只会移动到新节点
+     */
+    private static void check(Function<List<String>, ConsistentHashing<String>> factory, boolean monotone,
+            double addLimit, double removeLimit) {
+        ConsistentHashing<String> hashing = factory.apply(servers(10));
+        String[] before = assign(hashing);
+        hashing.addNode("10.0.0.10:8080");
+        String[] after = assign(hashing);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            if (!before[i].equals(after[i])) {
+                moved++;
+                if (monotone) {
+                    assertEquals("10.0.0.10:8080", after[i]);
+                }
+            }
+        }
+        double fraction = (double) moved / KEYS;
+        assertTrue(hashing.getClass().getSimpleName() + " add " + fraction, fraction > 0.05 && fraction < addLimit);
+
+        hashing.removeNode("10.0.0.3:8080");
+        String[] removed = assign(hashing);
+        moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            if (!after[i].equals(removed[i])) {
+                moved++;
+            }
+            if (after[i].equals("10.0.0.3:8080")) {
+                assertFalse(removed[i].equals("10.0.0.3:8080"));
+            }
+        }
+        fraction = (double) moved / KEYS;
+        assertTrue(hashing.getClass().getSimpleName() + " remove " + fraction, fraction < removeLimit);
+
+        // 分布基本均匀
+        Map<String, Integer> counts = new HashMap<>();
+        for (String node : removed) {
+            counts.merge(node, 1, Integer::sum);
+        }
+        assertEquals(10, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(hashing.getClass().getSimpleName() + " " + counts, count > KEYS / 10 * 0.7
+                    && count < KEYS / 10 * 1.3);
+        }
+    }
+
+    private static String[] assign(ConsistentHashing<String> hashing) {
+        String[] result = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            result[i] = hashing.select("user-" + i);
+        }
+        return result;
+    }
+
+    @Test
+    public void jumpHashMatchesReference() {
+        // 论文参考实现的结果
+        assertEquals(0, JumpHash.bucket(0, 1));
+        for (long key = 0; key < 1000; key++) {
+            int b = JumpHash.bucket(key, 100);
+            assertTrue(b >= 0 && b < 100);
+            int next = JumpHash.bucket(key, 101);
+            assertTrue(next == b || next == 100);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.xmxe.algorithm.balance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 1.吞吐:1~64个线程并发pick的次数/秒,synchronized是原Balance.RoundRobinWeight的写法(遍历Weight对象再加锁)
+ * 2.尾延迟:64个客户端线程闭环调用10个模拟后端,后端延迟随自身并发数上升,其中一个后端基础延迟是其他的10倍,
+ *   统计各策略的p50/p99/p999
+ * 运行方式:java LoadBalancerBenchmark [每轮秒数]
+ */
+public class LoadBalancerBenchmark {
+
+    private static final int ENDPOINTS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        throughput(seconds);
+        tailLatency(seconds * 2);
+    }
+
+    private static void throughput(int seconds) throws Exception {
+        Map<String, Supplier<Picker>> pickers = new LinkedHashMap<>();
+        pickers.put("synchronized", () -> new SynchronizedRoundRobin(endpoints())::pick);
+        pickers.put(LoadBalancers.ROUND_ROBIN, () -> balancer(LoadBalancers.ROUND_ROBIN)::pick);
+        pickers.put(LoadBalancers.LEAST_ACTIVE, () -> balancer(LoadBalancers.LEAST_ACTIVE)::pick);
+        pickers.put(LoadBalancers.EWMA, () -> balancer(LoadBalancers.EWMA)::pick);
+        for (int threads : new int[] { 1, 4, 16, 64 }) {
+            for (Map.Entry<String, Supplier<Picker>> entry : pickers.entrySet()) {
+                Picker picker = entry.getValue().get();
+                LongAdder picks = new LongAdder();
+                long nanos = run(threads, seconds, stop -> {
+                    long local = 0;
+                    while (!stop.get()) {
+                        if (picker.pick() != null) {
+                            local++;
+                        }
+                    }
+                    picks.add(local);
+                });
+                System.out.printf("%2d threads %-13s %,14.0f picks/s%n", threads, entry.getKey(),
+                        picks.sum() * 1e9 / nanos);
+            }
+        }
+    }
+
+    private static void tailLatency(int seconds) throws Exception {
+        System.out.printf("%d clients, %d backends, backend 0 is 10x slower%n", 64, ENDPOINTS);
+        for (String strategy : new String[] { LoadBalancers.ROUND_ROBIN, LoadBalancers.LEAST_ACTIVE,
+                LoadBalancers.EWMA }) {
+            LoadBalancer balancer = balancer(strategy);
+            Backend[] backends = new Backend[ENDPOINTS];
+            for (int i = 0; i < ENDPOINTS; i++) {
+                backends[i] = new Backend(i == 0 ? 10_000 : 1_000);
+            }
+            Map<Endpoint, Backend> backendOf = new LinkedHashMap<>();
+            for (int i = 0; i < ENDPOINTS; i++) {
+                backendOf.put(balancer.getEndpoints().get(i), backends[i]);
+            }
+            long[][] samples = new long[64][];
+            int[] counts = new int[64];
+            LongAdder slowHits = new LongAdder();
+            long nanos = run(64, seconds, new Client() {
+                private final AtomicInteger ids = new AtomicInteger();
+
+                @Override
+                public void run(AtomicBoolean stop) throws Exception {
+                    int id = ids.getAndIncrement();
+                    long[] latencies = new long[1 << 16];
+                    int n = 0;
+                    while (!stop.get()) {
+                        long begin = System.nanoTime();
+                        Backend backend = balancer.execute(endpoint -> {
+                            Backend b = backendOf.get(endpoint);
+                            b.call();
+                            return b;
+                        });
+                        if (backend == backends[0]) {
+                            slowHits.increment();
+                        }
+                        if (n == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, n * 2);
+                        }
+                        latencies[n++] = System.nanoTime() - begin;
+                    }
+                    samples[id] = latencies;
+                    counts[id] = n;
+                }
+            });
+            int total = 0;
+            for (int count : counts) {
+                total += count;
+            }
+            long[] all = new long[total];
+            int offset = 0;
+            for (int i = 0; i < samples.length; i++) {
+                System.arraycopy(samples[i], 0, all, offset, counts[i]);
+                offset += counts[i];
+            }
+            Arrays.sort(all);
+            System.out.printf("%-13s %,8.0f req/s  slow backend %5.1f%%  p50 %6.2fms  p99 %6.2fms  p999 %6.2fms%n",
+                    strategy, total * 1e9 / nanos, slowHits.sum() * 100.0 / total, percentile(all, 0.5),
+                    percentile(all, 0.99), percentile(all, 0.999));
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+    }
+
+    private static long run(int threads, int seconds, Client client) throws Exception {
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(threads);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    client.run(stop);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            });
+            workers.add(thread);
+        }
+        long begin = System.nanoTime();
+        workers.forEach(Thread::start);
+        TimeUnit.SECONDS.sleep(seconds);
+        stop.set(true);
+        done.await();
+        return System.nanoTime() - begin;
+    }
+
+    private static LoadBalancer balancer(String strategy) {
+        return LoadBalancers.create(strategy, endpoints());
+    }
+
+    private static List<Endpoint> endpoints() {
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (int i = 0; i < ENDPOINTS; i++) {
+            endpoints.add(new Endpoint("10.0.0." + i + ":8080", 1 + i % 3));
+        }
+        return endpoints;
+    }
+
+    interface Picker {
+        Endpoint pick();
+    }
+
+    interface Client {
+        void run(AtomicBoolean stop) throws Exception;
+    }
+
+    /**
+     * 模拟后端:延迟 = 基础延迟 * (1 + 并发数/4) 再乘以0.5~1.5的随机抖动
+     */
+    private static final class Backend {
+
+        private final long baseMicros;
+
+        private final AtomicInteger inflight = new AtomicInteger();
+
+        Backend(long baseMicros) {
+            this.baseMicros = baseMicros;
+        }
+
+        void call() {
+            int concurrency = inflight.incrementAndGet();
+            try {
+                double jitter = 0.5 + ThreadLocalRandom.current().nextDouble();
+                TimeUnit.MICROSECONDS.sleep((long) (baseMicros * (1 + concurrency / 4.0) * jitter));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inflight.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 原Balance.RoundRobinWeight的写法:每次请求遍历所有节点调整动态权重,整个方法加锁
+     */
+    private static final class SynchronizedRoundRobin {
+
+        private final Endpoint[] endpoints;
+
+        private final int[] currentWeights;
+
+        private final int totalWeight;
+
+        SynchronizedRoundRobin(List<Endpoint> endpoints) {
+            this.endpoints = endpoints.toArray(new Endpoint[0]);
+            this.currentWeights = new int[this.endpoints.length];
+            int total = 0;
+            for (Endpoint endpoint : endpoints) {
+                total += endpoint.getWeight();
+            }
+            this.totalWeight = total;
+        }
+
+        synchronized Endpoint pick() {
+            int max = 0;
+            for (int i = 0; i < endpoints.length; i++) {
+                currentWeights[i] += endpoints[i].getWeight();
+                if (currentWeights[i] > currentWeights[max]) {
+                    max = i;
+                }
+            }
+            currentWeights[max] -= totalWeight;
+            return endpoints[max];
+        }
+    }
+}
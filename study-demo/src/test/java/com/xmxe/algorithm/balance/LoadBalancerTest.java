@@ -0,0 +1,132 @@
+package com.xmxe.algorithm.balance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class LoadBalancerTest {
+
+    @Test
+    public void smoothWeightedOrderMatchesNginx() {
+        Endpoint a = new Endpoint("a", 3);
+        Endpoint b = new Endpoint("b", 2);
+        Endpoint c = new Endpoint("c", 1);
+        LoadBalancer balancer = new SmoothWeightedRoundRobin(Arrays.asList(a, b, c));
+        StringBuilder order = new StringBuilder();
+        for (int i = 0; i < 12; i++) {
+            order.append(balancer.pick().getAddress());
+        }
+        assertEquals("abacbaabacba", order.toString());
+    }
+
+    @Test
+    public void smoothWeightedLargeWeights() {
+        LoadBalancer balancer = new SmoothWeightedRoundRobin(
+                Arrays.asList(new Endpoint("a", 1_000_000), new Endpoint("b", 3_000_000)));
+        Map<String, Integer> counts = count(balancer, 40_000);
+        assertEquals(10_000, counts.get("a"), 10);
+        assertEquals(30_000, counts.get("b"), 10);
+    }
+
+    @Test
+    public void leastActivePrefersIdle() {
+        Endpoint busy = new Endpoint("busy");
+        Endpoint idle = new Endpoint("idle");
+        for (int i = 0; i < 10; i++) {
+            busy.begin();
+        }
+        LoadBalancer balancer = new P2cLeastActive(Arrays.asList(busy, idle));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(idle, balancer.pick());
+        }
+    }
+
+    @Test
+    public void ewmaPrefersFast() {
+        Endpoint slow = new Endpoint("slow");
+        Endpoint fast = new Endpoint("fast");
+        slow.end(slow.begin() - 50_000_000L, true);
+        fast.end(fast.begin() - 1_000_000L, true);
+        assertTrue(slow.getEwmaNanos() > fast.getEwmaNanos());
+        LoadBalancer balancer = new EwmaLatencyBalancer(Arrays.asList(slow, fast));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(fast, balancer.pick());
+        }
+    }
+
+    @Test
+    public void failingEndpointEjected() {
+        Endpoint bad = new Endpoint("bad");
+        Endpoint good = new Endpoint("good");
+        for (int i = 0; i < 5; i++) {
+            bad.end(bad.begin(), false);
+        }
+        assertFalse(bad.isAvailable());
+        for (String strategy : new String[] { LoadBalancers.ROUND_ROBIN, LoadBalancers.LEAST_ACTIVE,
+                LoadBalancers.EWMA }) {
+            LoadBalancer balancer = LoadBalancers.create(strategy, Arrays.asList(bad, good));
+            assertEquals(strategy, 1000, (int) count(balancer, 1000).get("good"));
+        }
+        // 全部不可用时仍然返回节点
+        LoadBalancer balancer = new P2cLeastActive(Arrays.asList(bad));
+        assertEquals(bad, balancer.pick());
+    }
+
+    @Test
+    public void onlyOneProbeAfterEjectionExpires() {
+        Endpoint bad = new Endpoint("bad");
+        for (int i = 0; i < 5; i++) {
+            bad.end(bad.begin(), false);
+        }
+        assertFalse(bad.isAvailable());
+        // 摘除到期
+        bad.ejectedUntilNanos.set(System.nanoTime() - 1);
+        assertTrue(bad.isAvailable());
+        assertFalse(bad.isAvailable());
+        bad.end(bad.begin(), true);
+        assertTrue(bad.isAvailable());
+        assertTrue(bad.isAvailable());
+    }
+
+    @Test
+    public void executeFeedsBack() {
+        Endpoint endpoint = new Endpoint("a");
+        LoadBalancer balancer = new EwmaLatencyBalancer(new ArrayList<>(Arrays.asList(endpoint)));
+        assertEquals("a", balancer.execute(Endpoint::getAddress));
+        assertEquals(0, endpoint.getActive());
+        try {
+            balancer.execute(e -> {
+                throw new IllegalStateException();
+            });
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(0, endpoint.getActive());
+        balancer.setEndpoints(new ArrayList<>());
+        assertNull(balancer.pick());
+    }
+
+    private static Map<String, Integer> count(LoadBalancer balancer, int picks) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < picks; i++) {
+            counts.merge(balancer.pick().getAddress(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    static List<Endpoint> endpoints(int n) {
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            endpoints.add(new Endpoint("10.0.0." + i));
+        }
+        return endpoints;
+    }
+}
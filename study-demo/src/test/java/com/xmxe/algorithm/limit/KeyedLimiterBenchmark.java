@@ -0,0 +1,79 @@
+package com.xmxe.algorithm.limit;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.xmxe.util.IpLongUtil;
+
+/**
+ * 500万个活跃IP时每个key的内存占用和tryAcquire延迟分布
+ * 对比:ConcurrentHashMap<Long, GcraLimiter>,每个key一个限流器对象
+ * 运行方式:java -Xmx3g KeyedLimiterBenchmark [key数量] [map]
+ */
+public class KeyedLimiterBenchmark {
+
+    private static final int SAMPLES = 2_000_000;
+
+    /**
+     * 每个key 100秒才恢复一个许可,测试期间所有key都保持活跃,不会被当作空闲清理
+     */
+    private static final double RATE = 0.01;
+
+    public static void main(String[] args) {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        boolean map = args.length > 1 && "map".equals(args[1]);
+        long base = IpLongUtil.ip2Long("10.0.0.0");
+
+        long heapBefore = usedHeap();
+        KeyedLimiter limiter = new KeyedLimiter(RATE, 20);
+        Map<Long, GcraLimiter> limiters = new ConcurrentHashMap<>();
+        Acquire acquire = map
+                ? ip -> limiters.computeIfAbsent(ip, k -> new GcraLimiter(RATE, 20)).tryAcquire()
+                : limiter::tryAcquire;
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < keys; i++) {
+            acquire.tryAcquire(base + i);
+        }
+        System.out.printf("%s: inserted %,d keys in %,d ms%n", map ? "map" : "KeyedLimiter", keys,
+                (System.nanoTime() - begin) / 1_000_000);
+        long heap = usedHeap() - heapBefore;
+        System.out.printf("heap %,d MB, %.1f bytes/key", heap >> 20, (double) heap / keys);
+        if (!map) {
+            System.out.printf(" (arrays %.1f bytes/key)", (double) limiter.memoryBytes() / limiter.size());
+        }
+        System.out.println();
+
+        for (int round = 0; round < 3; round++) {
+            long[] latencies = new long[SAMPLES];
+            int admitted = 0;
+            for (int i = 0; i < SAMPLES; i++) {
+                long ip = base + ThreadLocalRandom.current().nextInt(keys);
+                long start = System.nanoTime();
+                if (acquire.tryAcquire(ip)) {
+                    admitted++;
+                }
+                latencies[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(latencies);
+            System.out.printf("round %d: p50 %d ns, p99 %d ns, p99.9 %d ns, max %,d ns (admitted %d)%n", round,
+                    latencies[SAMPLES / 2], latencies[SAMPLES * 99 / 100], latencies[SAMPLES * 999 / 1000],
+                    latencies[SAMPLES - 1], admitted);
+        }
+        System.out.printf("tracked keys %,d%n", map ? limiters.size() : limiter.size());
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    interface Acquire {
+        boolean tryAcquire(long key);
+    }
+}
@@ -0,0 +1,86 @@
+package com.xmxe.algorithm.limit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.xmxe.util.IpLongUtil;
+
+import org.junit.Test;
+
+public class KeyedLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong(5_000_000_000L);
+
+    @Test
+    public void keysAreIndependent() {
+        KeyedLimiter limiter = new KeyedLimiter(1, 3, 4, clock::get);
+        long a = IpLongUtil.ip2Long("192.168.0.1");
+        long b = IpLongUtil.ip2Long("192.168.0.2");
+        assertTrue(limiter.tryAcquire(a, 3));
+        assertFalse(limiter.tryAcquire(a));
+        assertTrue(limiter.tryAcquire(b));
+        assertTrue(limiter.tryAcquire("user-1", 2));
+        assertFalse(limiter.tryAcquire("user-1", 2));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(limiter.tryAcquire(a));
+        assertFalse(limiter.tryAcquire(a));
+        assertEquals(3, limiter.size());
+    }
+
+    /**
+     * 空闲key被清理后行为和新key一样,被限流中的key不能被清理
+     */
+    @Test
+    public void idleKeysEvicted() {
+        KeyedLimiter limiter = new KeyedLimiter(10, 10, 1, clock::get);
+        for (long key = 0; key < 100_000; key++) {
+            assertTrue(limiter.tryAcquire(key));
+        }
+        assertEquals(100_000, limiter.size());
+        for (long key = 0; key < 100; key++) {
+            assertTrue(limiter.tryAcquire(key, 9));
+        }
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(100_000 - 100, limiter.evictIdle());
+        assertEquals(100, limiter.size());
+        for (long key = 0; key < 100; key++) {
+            assertFalse(limiter.tryAcquire(key, 9));
+        }
+        for (long key = 100; key < 100_000; key++) {
+            assertTrue(limiter.tryAcquire(key, 10));
+        }
+    }
+
+    /**
+     * 同样多的活跃key,持续有key空闲时数组不会一直扩容
+     */
+    @Test
+    public void lazyEvictionBoundsMemory() {
+        KeyedLimiter limiter = new KeyedLimiter(100, 1, 1, clock::get);
+        for (long key = 0; key < 1_000_000; key++) {
+            limiter.tryAcquire(key);
+            clock.addAndGet(TimeUnit.MICROSECONDS.toNanos(10));
+        }
+        // 每个key 10ms后空闲,任一时刻最多约1000个活跃key
+        assertTrue("size=" + limiter.size(), limiter.size() < 10_000);
+        assertTrue(limiter.memoryBytes() <= 16 * 16_384);
+    }
+
+    @Test
+    public void parseIp() {
+        assertEquals(3232235521L, IpLongUtil.ip2Long("192.168.0.1"));
+        assertEquals(0xFFFFFFFFL, IpLongUtil.ip2Long("255.255.255.255"));
+        assertEquals(3232235521L, IpLongUtil.ip2Long(new byte[] { (byte) 192, (byte) 168, 0, 1 }));
+        for (String bad : new String[] { "1.2.3", "1.2.3.4.5", "256.1.1.1", "1..2.3", "a.b.c.d", "1.2.3." }) {
+            try {
+                IpLongUtil.ip2Long(bad);
+                throw new AssertionError(bad);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.xmxe.algorithm.limit;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * 1~64个线程同时调用tryAcquire时各限流器的吞吐量(次/秒,包含被拒绝的调用)
+ * 阈值设为20万/秒,大部分调用被拒绝,测的是限流器本身的争用开销
+ * LimitAlgorithm.RateLimiterSimpleWindow是静态的、阈值固定为2,只用来对比synchronized的开销
+ * 运行方式:java LimiterContentionBenchmark [每轮毫秒数]
+ */
+public class LimiterContentionBenchmark {
+
+    private static final int QPS = 200_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 2_000;
+        int[] threadCounts = { 1, 2, 4, 8, 16, 32, 64 };
+        run("RateLimiterSimpleWindow", () -> LimitAlgorithm.RateLimiterSimpleWindow::tryAcquire, threadCounts, millis);
+        run("RateLimiterSlidingWindow", () -> new LimitAlgorithm.RateLimiterSlidingWindow(QPS)::tryAcquire, threadCounts, millis);
+        run("RateLimiterSildingLog", () -> new LimitAlgorithm.RateLimiterSildingLog(QPS)::tryAcquire, threadCounts, millis);
+        run("Guava RateLimiter", () -> RateLimiter.create(QPS)::tryAcquire, threadCounts, millis);
+        run("FixedWindowLimiter", () -> new FixedWindowLimiter(QPS, 1, TimeUnit.SECONDS)::tryAcquire, threadCounts, millis);
+        run("SlidingWindowLimiter", () -> new SlidingWindowLimiter(QPS, 1, TimeUnit.SECONDS, 10)::tryAcquire, threadCounts, millis);
+        run("GcraLimiter", () -> new GcraLimiter(QPS, QPS / 10)::tryAcquire, threadCounts, millis);
+    }
+
+    private static void run(String name, Supplier<BooleanSupplier> factory, int[] threadCounts, long millis)
+            throws InterruptedException {
+        StringBuilder line = new StringBuilder(String.format("%-26s", name));
+        for (int threads : threadCounts) {
+            BooleanSupplier limiter = factory.get();
+            LongAdder calls = new LongAdder();
+            LongAdder admitted = new LongAdder();
+            CountDownLatch done = new CountDownLatch(threads);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            long begin = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                new Thread(() -> {
+                    long localCalls = 0;
+                    long localAdmitted = 0;
+                    while (System.nanoTime() < deadline) {
+                        for (int i = 0; i < 100; i++) {
+                            if (limiter.getAsBoolean()) {
+                                localAdmitted++;
+                            }
+                        }
+                        localCalls += 100;
+                    }
+                    calls.add(localCalls);
+                    admitted.add(localAdmitted);
+                    done.countDown();
+                }).start();
+            }
+            done.await();
+            double seconds = (System.nanoTime() - begin) / 1e9;
+            line.append(String.format(" %2dT %,13.0f (admit %,9.0f/s)", threads, calls.sum() / seconds,
+                    admitted.sum() / seconds));
+            System.out.println(line);
+            line.setLength(0);
+            line.append(String.format("%-26s", ""));
+        }
+    }
+}
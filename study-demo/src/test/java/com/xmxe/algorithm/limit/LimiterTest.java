@@ -0,0 +1,101 @@
+package com.xmxe.algorithm.limit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class LimiterTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+
+    @Test
+    public void fixedWindow() {
+        FixedWindowLimiter limiter = new FixedWindowLimiter(10, 1, TimeUnit.SECONDS, clock::get);
+        assertTrue(limiter.tryAcquire(6));
+        assertTrue(limiter.tryAcquire(4));
+        assertFalse(limiter.tryAcquire());
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(limiter.tryAcquire(10));
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void fixedWindowReserveNextWindow() {
+        FixedWindowLimiter limiter = new FixedWindowLimiter(10, 1, TimeUnit.SECONDS, clock::get);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(300));
+        assertTrue(limiter.tryAcquire(10));
+        assertEquals(-1, limiter.tryReserve(1, 500, TimeUnit.MILLISECONDS));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(700), limiter.tryReserve(10, 1, TimeUnit.SECONDS));
+        // 下一个窗口已经被预约满
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1700), limiter.tryReserve(5, 2, TimeUnit.SECONDS));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(700));
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void slidingWindow() {
+        SlidingWindowLimiter limiter = new SlidingWindowLimiter(10, 1, TimeUnit.SECONDS, 10, clock::get);
+        assertTrue(limiter.tryAcquire(5));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertTrue(limiter.tryAcquire(5));
+        assertFalse(limiter.tryAcquire());
+        assertEquals(10, limiter.used());
+        // 固定窗口在这里会整体重置,滑动窗口只滑出前一半
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(5, limiter.used());
+        assertTrue(limiter.tryAcquire(5));
+        assertFalse(limiter.tryAcquire());
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertEquals(0, limiter.used());
+        assertTrue(limiter.tryAcquire(10));
+    }
+
+    @Test
+    public void gcra() {
+        // 每秒10个,突发5个
+        GcraLimiter limiter = new GcraLimiter(10, 5, clock::get);
+        assertEquals(5, limiter.availablePermits());
+        assertTrue(limiter.tryAcquire(5));
+        assertFalse(limiter.tryAcquire());
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        // 预约:需要等100ms
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), limiter.tryReserve(1, 1, TimeUnit.SECONDS));
+        assertEquals(-1, limiter.tryReserve(1, 150, TimeUnit.MILLISECONDS));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(5, limiter.availablePermits());
+    }
+
+    /**
+     * 多线程争抢时不能多放行
+     */
+    @Test
+    public void concurrentNoOverAdmission() throws InterruptedException {
+        Limiter[] limiters = { new FixedWindowLimiter(1000, 1, TimeUnit.HOURS),
+                new SlidingWindowLimiter(1000, 1, TimeUnit.HOURS, 60), new GcraLimiter(0.001, 1000) };
+        for (Limiter limiter : limiters) {
+            AtomicInteger admitted = new AtomicInteger();
+            CountDownLatch latch = new CountDownLatch(8);
+            for (int t = 0; t < 8; t++) {
+                new Thread(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        if (limiter.tryAcquire()) {
+                            admitted.incrementAndGet();
+                        }
+                    }
+                    latch.countDown();
+                }).start();
+            }
+            assertTrue(latch.await(1, TimeUnit.MINUTES));
+            assertEquals(limiter.getClass().getSimpleName(), 1000, admitted.get());
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.xmxe.designpattern.producer_consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.xmxe.jdkfeature.thread.dynamic_threadpool.LatencyHistogram;
+
+/**
+ * RingBuffer和ArrayBlockingQueue、LinkedBlockingQueue、ProducerAndConsumer里两种加锁容器的吞吐量和延迟对比
+ * 1P1C、1P3C、3P3C三种组合,容量都是1024;负载是(int)System.nanoTime(),消费时相减得到从生产到消费的延迟
+ * (int)截断后相减在2秒以内是准确的;延迟每16个抽样1个,避免统计本身拖慢消费者
+ * RingBuffer生产者每次批量发布BATCH个,消费者每次最多取BATCH个
+ * 运行方式:java RingBufferBenchmark [每轮消息数]
+ */
+public class RingBufferBenchmark {
+
+    private static final int CAPACITY = 1024;
+
+    private static final int BATCH = 16;
+
+    private static final int[][] SHAPES = {{1, 1}, {1, 3}, {3, 3}};
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 3_000_000;
+        ProducerAndConsumer.verbose = false;
+        for (int round = 0; round < 2; round++) {
+            System.out.println("round " + round + (round == 0 ? " (warm-up)" : ""));
+            for (int[] shape : SHAPES) {
+                int producers = shape[0];
+                int consumers = shape[1];
+                // 消息数要能被生产者数和消费者数整除
+                int total = messages / (producers * consumers) * producers * consumers;
+                String name = producers + "P" + consumers + "C";
+                runQueue(name, "ArrayBlockingQueue", () -> new ArrayBlockingQueue<>(CAPACITY), producers, consumers, total);
+                runQueue(name, "LinkedBlockingQueue", () -> new LinkedBlockingQueue<>(CAPACITY), producers, consumers, total);
+                runContainer(name, "Container(wait/notify)", producers, consumers, total / 10);
+                runContainerDemo(name, "ContainerDemo(2 conditions)", producers, consumers, total / 10);
+                runRing(name, "RingBuffer yielding", WaitStrategy.yielding(), producers, consumers, total);
+                runRing(name, "RingBuffer blocking", WaitStrategy.blocking(), producers, consumers, total);
+                if (Runtime.getRuntime().availableProcessors() >= producers + consumers) {
+                    runRing(name, "RingBuffer busy-spin", WaitStrategy.busySpin(), producers, consumers, total);
+                }
+            }
+        }
+    }
+
+    private static void runQueue(String shape, String name, Supplier<BlockingQueue<Integer>> factory, int producers,
+            int consumers, int total) throws Exception {
+        BlockingQueue<Integer> queue = factory.get();
+        LatencyHistogram latency = new LatencyHistogram(5, 4);
+        run(shape, name, latency, total, producers, consumers,
+                () -> {
+                    for (int i = 0; i < total / producers; i++) {
+                        queue.put((int) System.nanoTime());
+                    }
+                },
+                () -> {
+                    for (int i = 0; i < total / consumers; i++) {
+                        record(latency, queue.take(), i);
+                    }
+                });
+    }
+
+    private static void runContainer(String shape, String name, int producers, int consumers, int total) throws Exception {
+        ProducerAndConsumer.Container container = new ProducerAndConsumer.Container(CAPACITY);
+        LatencyHistogram latency = new LatencyHistogram(5, 4);
+        run(shape, name, latency, total, producers, consumers,
+                () -> {
+                    for (int i = 0; i < total / producers; i++) {
+                        container.add((int) System.nanoTime());
+                    }
+                },
+                () -> {
+                    for (int i = 0; i < total / consumers; i++) {
+                        record(latency, container.get(), i);
+                    }
+                });
+    }
+
+    private static void runContainerDemo(String shape, String name, int producers, int consumers, int total) throws Exception {
+        ProducerAndConsumer.ContainerDemo container = new ProducerAndConsumer.ContainerDemo(CAPACITY);
+        LatencyHistogram latency = new LatencyHistogram(5, 4);
+        run(shape, name, latency, total, producers, consumers,
+                () -> {
+                    for (int i = 0; i < total / producers; i++) {
+                        container.add((int) System.nanoTime());
+                    }
+                },
+                () -> {
+                    for (int i = 0; i < total / consumers; i++) {
+                        record(latency, container.get(), i);
+                    }
+                });
+    }
+
+    private static void runRing(String shape, String name, WaitStrategy waitStrategy, int producers, int consumers,
+            int total) throws Exception {
+        ProducerAndConsumer.RingBufferContainer container = new ProducerAndConsumer.RingBufferContainer(CAPACITY, waitStrategy);
+        LatencyHistogram latency = new LatencyHistogram(5, 4);
+        LongAdder consumed = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < consumers; c++) {
+            // 消费者要在生产者开始之前创建
+            RingBuffer.Consumer<ProducerAndConsumer.RingBufferContainer.IntEvent> consumer = container.newConsumer();
+            threads.add(new Thread(() -> {
+                int[] count = {0};
+                try {
+                    while (true) {
+                        consumer.consume((event, sequence, endOfBatch) -> {
+                            record(latency, event.value, count[0]++);
+                            if (endOfBatch) {
+                                consumed.add(count[0]);
+                                count[0] = 0;
+                            }
+                        }, BATCH);
+                    }
+                } catch (AlertException | InterruptedException e) {
+                    consumer.close();
+                }
+            }));
+        }
+        List<Thread> writers = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            writers.add(new Thread(() -> {
+                int[] values = new int[BATCH];
+                int quota = total / producers;
+                for (int i = 0; i < quota; i += BATCH) {
+                    int n = Math.min(BATCH, quota - i);
+                    for (int j = 0; j < n; j++) {
+                        values[j] = (int) System.nanoTime();
+                    }
+                    container.addAll(values, 0, n);
+                }
+            }));
+        }
+        threads.addAll(writers);
+        long begin = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        while (consumed.sum() < total) {
+            Thread.yield();
+        }
+        long elapsed = System.nanoTime() - begin;
+        container.halt();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        print(shape, name, total, elapsed, latency);
+    }
+
+    private static void record(LatencyHistogram latency, int sent, int i) {
+        if ((i & 15) == 0) {
+            latency.record((int) System.nanoTime() - sent);
+        }
+    }
+
+    private static void run(String shape, String name, LatencyHistogram latency, int total, int producers, int consumers,
+            Task producer, Task consumer) throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < consumers; i++) {
+            threads.add(new Thread(() -> call(consumer)));
+        }
+        for (int i = 0; i < producers; i++) {
+            threads.add(new Thread(() -> call(producer)));
+        }
+        long begin = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        print(shape, name, total, elapsed, latency);
+    }
+
+    private static void print(String shape, String name, int total, long elapsed, LatencyHistogram latency) {
+        long[] snapshot = latency.snapshot();
+        System.out.printf("  %s %-28s %12.0f ops/s  p50 %8.1fus  p99 %9.1fus  p99.9 %9.1fus%n", shape, name,
+                total * 1e9 / elapsed, latency.percentile(snapshot, 0.5) / 1e3, latency.percentile(snapshot, 0.99) / 1e3,
+                latency.percentile(snapshot, 0.999) / 1e3);
+    }
+
+    private static void call(Task task) {
+        try {
+            task.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Task {
+        void run() throws InterruptedException;
+    }
+}
@@ -0,0 +1,204 @@
+package com.xmxe.designpattern.producer_consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+public class RingBufferTest {
+
+    static final class LongEvent {
+        long value;
+    }
+
+    @Test
+    public void singleProducerKeepsOrderAcrossWraps() throws Exception {
+        RingBuffer<LongEvent> ring = RingBuffer.createSingleProducer(LongEvent::new, 8, WaitStrategy.yielding());
+        RingBuffer.Consumer<LongEvent> consumer = ring.newConsumer();
+        int total = 100_000;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            long[] expected = {0};
+            try {
+                while (expected[0] < total) {
+                    consumer.consume((event, sequence, endOfBatch) -> {
+                        assertEquals(expected[0]++, event.value);
+                        assertEquals(event.value, sequence);
+                    }, 4);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < total; ) {
+            // 交替单个发布和批量发布
+            int n = i % 3 == 0 ? 1 : Math.min(5, total - i);
+            long hi = ring.next(n);
+            for (long s = hi - n + 1; s <= hi; s++) {
+                ring.get(s).value = i++;
+            }
+            ring.publish(hi - n + 1, hi);
+        }
+        reader.join(10_000);
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void multiProducerMultiConsumerDeliversEachEventOnce() throws Exception {
+        for (Supplier<WaitStrategy> strategy : List.<Supplier<WaitStrategy>>of(WaitStrategy::busySpin,
+                WaitStrategy::yielding, WaitStrategy::blocking)) {
+            deliverOnce(strategy.get());
+        }
+    }
+
+    private void deliverOnce(WaitStrategy waitStrategy) throws Exception {
+        int producers = 3;
+        int consumers = 3;
+        int perProducer = 50_000;
+        RingBuffer<LongEvent> ring = RingBuffer.createMultiProducer(LongEvent::new, 64, waitStrategy);
+        AtomicIntegerArray seen = new AtomicIntegerArray(producers * perProducer);
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < consumers; c++) {
+            RingBuffer.Consumer<LongEvent> consumer = ring.newConsumer();
+            threads.add(new Thread(() -> {
+                try {
+                    while (true) {
+                        consumer.consume((event, sequence, endOfBatch) -> seen.incrementAndGet((int) event.value), 16);
+                    }
+                } catch (AlertException | InterruptedException e) {
+                    consumer.close();
+                }
+            }));
+        }
+        List<Thread> writers = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    long value = base + i;
+                    ring.publishEvent((event, v) -> event.value = v, value);
+                }
+            }));
+        }
+        threads.addAll(writers);
+        threads.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (ring.size() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        ring.halt();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        for (int i = 0; i < seen.length(); i++) {
+            if (seen.get(i) != 1) {
+                fail(waitStrategy.getClass().getSimpleName() + ": value " + i + " seen " + seen.get(i) + " times");
+            }
+        }
+    }
+
+    @Test
+    public void tryNextAndTryConsumeDoNotWait() {
+        RingBuffer<LongEvent> ring = RingBuffer.createMultiProducer(LongEvent::new, 4, WaitStrategy.busySpin());
+        RingBuffer.Consumer<LongEvent> consumer = ring.newConsumer();
+        assertEquals(0, consumer.tryConsume((event, sequence, endOfBatch) -> fail(), 8));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.tryPublishEvent((event, v) -> event.value = v, (long) i));
+        }
+        assertEquals(-1, ring.tryNext());
+        long[] sum = {0};
+        boolean[] last = {false};
+        assertEquals(3, consumer.tryConsume((event, sequence, endOfBatch) -> {
+            sum[0] += event.value;
+            last[0] = endOfBatch;
+        }, 3));
+        assertEquals(3, sum[0]);
+        assertTrue(last[0]);
+        // 消费了3个,可以再领取3个
+        assertEquals(6, ring.tryNext(3));
+        ring.publish(4, 6);
+        assertEquals(4, consumer.tryConsume((event, sequence, endOfBatch) -> {
+        }, 8));
+    }
+
+    @Test
+    public void closedConsumerDoesNotGateProducers() {
+        RingBuffer<LongEvent> ring = RingBuffer.createSingleProducer(LongEvent::new, 2, WaitStrategy.busySpin());
+        RingBuffer.Consumer<LongEvent> consumer = ring.newConsumer();
+        ring.publish(ring.next(2) - 1, 1);
+        assertEquals(-1, ring.tryNext());
+        consumer.close();
+        assertEquals(2, ring.tryNext());
+    }
+
+    @Test
+    public void haltWakesBlockedConsumer() throws Exception {
+        RingBuffer<LongEvent> ring = RingBuffer.createMultiProducer(LongEvent::new, 8, WaitStrategy.blocking());
+        RingBuffer.Consumer<LongEvent> consumer = ring.newConsumer();
+        CountDownLatch halted = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                consumer.consume((event, sequence, endOfBatch) -> {
+                }, 1);
+            } catch (AlertException e) {
+                halted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        Thread.sleep(50);
+        ring.halt();
+        assertTrue(halted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void lockContainersHandleManyProducersAndConsumers() throws Exception {
+        ProducerAndConsumer.verbose = false;
+        try {
+            ProducerAndConsumer.ContainerDemo container = new ProducerAndConsumer.ContainerDemo(4);
+            int threads = 4;
+            int perThread = 10_000;
+            AtomicIntegerArray seen = new AtomicIntegerArray(threads * perThread);
+            List<Thread> all = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int base = t * perThread;
+                all.add(new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        container.add(base + i);
+                    }
+                }));
+                all.add(new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        seen.incrementAndGet(container.get());
+                    }
+                }));
+            }
+            all.forEach(Thread::start);
+            for (Thread thread : all) {
+                thread.join(20_000);
+            }
+            for (int i = 0; i < seen.length(); i++) {
+                assertEquals(1, seen.get(i));
+            }
+        } finally {
+            ProducerAndConsumer.verbose = true;
+        }
+    }
+}
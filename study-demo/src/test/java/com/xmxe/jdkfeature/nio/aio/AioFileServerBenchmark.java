@@ -0,0 +1,207 @@
+package com.xmxe.jdkfeature.nio.aio;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.sun.management.OperatingSystemMXBean;
+import com.xmxe.jdkfeature.nio.reactor.FrameDecoder;
+import com.xmxe.jdkfeature.nio.reactor.ReactorServer;
+import com.xmxe.jdkfeature.nio.reactor.StaticFileHandler;
+
+/**
+ * 通过loopback下载1GB文件的吞吐量:
+ * blocking-copy     每连接一个线程,FileInputStream读进byte[]再写给socket,两次用户态拷贝(IO.copy的写法)
+ * aio-pooled        AioServer,AsynchronousFileChannel读进池化的直接内存缓冲区再写给socket
+ * reactor-transfer  ReactorServer + StaticFileHandler,FileChannel.transferTo(sendfile),不经过用户态
+ * 8个128MB的文件,4个连接各下载2个,文件在第一轮之后都在页缓存里;cpu是整个进程(客户端和服务端)消耗的CPU时间
+ * 运行方式:java AioFileServerBenchmark [轮数]
+ */
+public class AioFileServerBenchmark {
+
+    private static final int FILES = 8;
+
+    private static final int FILE_SIZE = 128 * 1024 * 1024;
+
+    private static final int CLIENTS = 4;
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        Path root = Files.createTempDirectory("file-server-bench");
+        byte[] block = new byte[1024 * 1024];
+        new Random(1).nextBytes(block);
+        for (int i = 0; i < FILES; i++) {
+            try (OutputStream out = Files.newOutputStream(root.resolve("file" + i))) {
+                for (int j = 0; j < FILE_SIZE / block.length; j++) {
+                    out.write(block);
+                }
+            }
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d x %d MB files, %d connections, %d CPUs%n", FILES, FILE_SIZE >> 20, CLIENTS, threads);
+        try {
+            try (BlockingCopyServer server = new BlockingCopyServer(root)) {
+                run("blocking-copy", server.port(), rounds);
+            }
+            try (AioServer server = new AioServer(0, threads, root)) {
+                server.start();
+                run("aio-pooled", server.getPort(), rounds);
+            }
+            try (ReactorServer server = new ReactorServer(0, threads, FrameDecoder.line(1024), new StaticFileHandler(root))) {
+                server.start();
+                run("reactor-transfer", server.getPort(), rounds);
+            }
+        } finally {
+            for (int i = 0; i < FILES; i++) {
+                Files.deleteIfExists(root.resolve("file" + i));
+            }
+            Files.deleteIfExists(root);
+        }
+        System.exit(0);
+    }
+
+    private static void run(String name, int port, int rounds) throws Exception {
+        OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        for (int round = 0; round < rounds; round++) {
+            long cpuBegin = os.getProcessCpuTime();
+            long begin = System.nanoTime();
+            List<Thread> clients = new ArrayList<>();
+            long[] received = new long[CLIENTS];
+            for (int c = 0; c < CLIENTS; c++) {
+                int client = c;
+                clients.add(new Thread(() -> received[client] = download(port, client)));
+            }
+            clients.forEach(Thread::start);
+            for (Thread client : clients) {
+                client.join();
+            }
+            long elapsed = System.nanoTime() - begin;
+            long cpu = os.getProcessCpuTime() - cpuBegin;
+            long total = 0;
+            for (long r : received) {
+                total += r;
+            }
+            if (total != (long) FILES * FILE_SIZE) {
+                throw new IllegalStateException(name + " received " + total);
+            }
+            System.out.printf("  %-17s round %d %6d ms %8.0f MB/s  cpu %5.2f s%n", name, round, elapsed / 1_000_000,
+                    (total >> 20) * 1e9 / elapsed, cpu / 1e9);
+        }
+    }
+
+    /**
+     * 下载FILES/CLIENTS个文件,返回收到的文件字节数
+     */
+    private static long download(int port, int client) {
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port))) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+            long total = 0;
+            for (int i = client; i < FILES; i += CLIENTS) {
+                channel.write(ByteBuffer.wrap(("file" + i + "\n").getBytes(StandardCharsets.UTF_8)));
+                ByteBuffer header = ByteBuffer.allocate(8);
+                while (header.hasRemaining()) {
+                    if (channel.read(header) < 0) {
+                        throw new IOException("closed");
+                    }
+                }
+                long length = header.getLong(0);
+                long remaining = length;
+                while (remaining > 0) {
+                    buffer.clear();
+                    if (remaining < buffer.capacity()) {
+                        buffer.limit((int) remaining);
+                    }
+                    int n = channel.read(buffer);
+                    if (n < 0) {
+                        throw new IOException("closed");
+                    }
+                    remaining -= n;
+                }
+                total += length;
+            }
+            return total;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 每连接一个线程,经过byte[]拷贝
+     */
+    private static final class BlockingCopyServer implements AutoCloseable {
+
+        private final ServerSocket server;
+
+        BlockingCopyServer(Path root) throws IOException {
+            server = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+            Thread acceptor = new Thread(() -> {
+                while (!server.isClosed()) {
+                    try {
+                        Socket socket = server.accept();
+                        new Thread(() -> serve(socket, root)).start();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        private static void serve(Socket socket, Path root) {
+            try (Socket s = socket;
+                    InputStream in = new BufferedInputStream(s.getInputStream());
+                    DataOutputStream out = new DataOutputStream(s.getOutputStream())) {
+                byte[] buffer = new byte[8192];
+                ByteArrayOutputStream line = new ByteArrayOutputStream();
+                int b;
+                while ((b = in.read()) >= 0) {
+                    if (b != '\n') {
+                        line.write(b);
+                        continue;
+                    }
+                    Path file = StaticFileHandler.resolve(root, line.toString("UTF-8").trim());
+                    line.reset();
+                    if (file == null || !Files.isRegularFile(file)) {
+                        out.writeLong(StaticFileHandler.NOT_FOUND);
+                        continue;
+                    }
+                    out.writeLong(Files.size(file));
+                    try (InputStream fileIn = Files.newInputStream(file)) {
+                        int n;
+                        while ((n = fileIn.read(buffer)) > 0) {
+                            out.write(buffer, 0, n);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // 客户端断开
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+}
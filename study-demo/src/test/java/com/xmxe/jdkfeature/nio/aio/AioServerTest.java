@@ -0,0 +1,146 @@
+package com.xmxe.jdkfeature.nio.aio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.xmxe.jdkfeature.nio.reactor.StaticFileHandler;
+
+public class AioServerTest {
+
+    private Path root;
+
+    private byte[] big;
+
+    private byte[] small;
+
+    @Before
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("aio-root");
+        Files.createDirectories(root.resolve("sub"));
+        big = new byte[3 * AioServer.CHUNK_SIZE + 123];
+        new Random(1).nextBytes(big);
+        small = "hello".getBytes(StandardCharsets.UTF_8);
+        Files.write(root.resolve("big.bin"), big);
+        Files.write(root.resolve("sub/small.txt"), small);
+        Files.write(root.resolve("empty"), new byte[0]);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(root.resolve("sub/small.txt"));
+        Files.deleteIfExists(root.resolve("sub"));
+        Files.deleteIfExists(root.resolve("big.bin"));
+        Files.deleteIfExists(root.resolve("empty"));
+        Files.deleteIfExists(root);
+    }
+
+    /**
+     * 读一个响应,不存在时返回null
+     */
+    static byte[] response(DataInputStream in) throws Exception {
+        long length = in.readLong();
+        if (length == StaticFileHandler.NOT_FOUND) {
+            return null;
+        }
+        byte[] body = new byte[(int) length];
+        in.readFully(body);
+        return body;
+    }
+
+    /**
+     * 一次写出多个请求,响应按顺序返回,大文件跨越多个池化缓冲区
+     */
+    @Test
+    public void servesPipelinedRequests() throws Exception {
+        try (AioServer server = new AioServer(0, 2, root)) {
+            server.start();
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                socket.setSoTimeout(10_000);
+                OutputStream out = socket.getOutputStream();
+                out.write("big.bin\nsub/small.txt\r\nempty\nbig.bin\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                assertArrayEquals(big, response(in));
+                assertArrayEquals(small, response(in));
+                assertArrayEquals(new byte[0], response(in));
+                assertArrayEquals(big, response(in));
+            }
+        }
+    }
+
+    @Test
+    public void missingAndEscapingPathsAreNotFound() throws Exception {
+        try (AioServer server = new AioServer(0, 1, root.resolve("sub"))) {
+            server.start();
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                socket.setSoTimeout(10_000);
+                OutputStream out = socket.getOutputStream();
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                // 请求行分两次到达
+                out.write("small".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                Thread.sleep(50);
+                out.write(".txt\nmissing\n../big.bin\n".getBytes(StandardCharsets.UTF_8));
+                out.write((root.resolve("big.bin").toAbsolutePath() + "\n.\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                assertArrayEquals(small, response(in));
+                assertNull(response(in));
+                assertNull(response(in));
+                assertNull(response(in));
+                assertNull(response(in));
+            }
+        }
+    }
+
+    @Test
+    public void concurrentClientsShareTheBufferPool() throws Exception {
+        try (AioServer server = new AioServer(0, 2, root)) {
+            server.start();
+            List<CompletableFuture<Void>> clients = new ArrayList<>();
+            for (int c = 0; c < 20; c++) {
+                clients.add(CompletableFuture.runAsync(() -> {
+                    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                        socket.setSoTimeout(10_000);
+                        DataInputStream in = new DataInputStream(socket.getInputStream());
+                        for (int i = 0; i < 5; i++) {
+                            socket.getOutputStream().write("big.bin\n".getBytes(StandardCharsets.UTF_8));
+                            assertArrayEquals(big, response(in));
+                        }
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }));
+            }
+            for (CompletableFuture<Void> client : clients) {
+                client.get(30, TimeUnit.SECONDS);
+            }
+            // 响应发完缓冲区都归还了,池里的数量不超过同时在发送的连接数
+            long deadline = System.currentTimeMillis() + 5000;
+            while (server.connections() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, server.connections());
+            int pooled = server.pool.pooled();
+            assertTrue("pooled " + pooled, pooled >= 1 && pooled <= 20);
+        }
+    }
+}
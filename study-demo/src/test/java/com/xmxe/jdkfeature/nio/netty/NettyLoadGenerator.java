@@ -0,0 +1,195 @@
+package com.xmxe.jdkfeature.nio.netty;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.xmxe.jdkfeature.thread.dynamic_threadpool.LatencyHistogram;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+
+/**
+ * NettyServer的压测客户端,基于NettyClient.framedBootstrap
+ * 每个连接保持window个在途请求,请求是长度前缀的帧[序号long][发送时间long][填充],收到响应后记录往返延迟并立即补发一个
+ * 统计预热之后measureSeconds秒内的msgs/s和往返延迟的p50/p99/p99.9
+ * 依次压三个服务端:
+ * naive/nio    对照组,按帧处理但用NIO、非池化堆内存、每个响应单独flush
+ * echo/nio     NettyServer默认模式,不切帧,每次读到的字节整体写回,没有按消息处理的开销,是吞吐的上限参考
+ * framed/epoll NettyServer高吞吐模式
+ * 运行方式:
+ * java NettyLoadGenerator [连接数] [每连接在途数] [帧大小] [秒数]              (进程内先后启动两种模式的服务端,走回环地址)
+ * java NettyLoadGenerator [连接数] [每连接在途数] [帧大小] [秒数] host port    (压已经启动的服务端)
+ * -Dnetty.transport.native=false 强制NIO
+ */
+public class NettyLoadGenerator {
+
+    private static final int WARMUP_SECONDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int window = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int frameSize = args.length > 2 ? Math.max(16, Integer.parseInt(args[2])) : 128;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        System.out.printf("transport %s, %d connections x %d in flight, %d byte frames%n", NettyTransport.name(),
+                connections, window, frameSize);
+        if (args.length > 5) {
+            run("remote", args[4], Integer.parseInt(args[5]), connections, window, frameSize, seconds);
+            return;
+        }
+        runNaive(connections, window, frameSize, seconds);
+        for (boolean framed : new boolean[] {false, true}) {
+            NettyServer server = new NettyServer(0, framed);
+            int port = ((InetSocketAddress) server.start().localAddress()).getPort();
+            try {
+                run(framed ? "framed/" + NettyTransport.name() : "echo/nio", "127.0.0.1", port, connections, window,
+                        frameSize, seconds);
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    /**
+     * 对照组:同样按帧处理,但用NIO、非池化的堆内存缓冲区、LengthFieldPrepender,每个响应单独flush
+     */
+    private static void runNaive(int connections, int window, int frameSize, int seconds) throws Exception {
+        EventLoopGroup bossGroup = new NioEventLoopGroup(1);
+        EventLoopGroup workerGroup = new NioEventLoopGroup();
+        try {
+            Channel server = new ServerBootstrap().group(bossGroup, workerGroup)
+                    .channel(NioServerSocketChannel.class)
+                    .childOption(ChannelOption.ALLOCATOR, new UnpooledByteBufAllocator(false))
+                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        public void initChannel(SocketChannel ch) {
+                            ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(NettyServer.MAX_FRAME_LENGTH, 0, 4, 0, 4),
+                                    new LengthFieldPrepender(4),
+                                    new ChannelInboundHandlerAdapter() {
+                                        @Override
+                                        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                            ctx.writeAndFlush(msg);
+                                        }
+                                    });
+                        }
+                    })
+                    .bind(0).sync().channel();
+            run("naive/nio", "127.0.0.1", ((InetSocketAddress) server.localAddress()).getPort(), connections, window,
+                    frameSize, seconds);
+            server.close().sync();
+        } finally {
+            bossGroup.shutdownGracefully();
+            workerGroup.shutdownGracefully();
+        }
+    }
+
+    private static void run(String name, String host, int port, int connections, int window, int frameSize,
+            int seconds) throws Exception {
+        EventLoopGroup group = NettyTransport.newEventLoopGroup(0, "load");
+        LatencyHistogram latency = new LatencyHistogram(5, 4);
+        LongAdder completed = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Channel> channels = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) {
+                channels.add(NettyClient.framedBootstrap(group,
+                        () -> new LoadHandler(window, frameSize, latency, completed, running))
+                        .connect(host, port).sync().channel());
+            }
+            Thread.sleep(WARMUP_SECONDS * 1000L);
+            long[] before = latency.snapshot();
+            long count = completed.sum();
+            long begin = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            long[] measured = LatencyHistogram.minus(latency.snapshot(), before);
+            long messages = completed.sum() - count;
+            long elapsed = System.nanoTime() - begin;
+            System.out.printf("  %-14s %10.0f msgs/s  p50 %8.1fus  p99 %8.1fus  p99.9 %8.1fus  max %8.1fus%n", name,
+                    messages * 1e9 / elapsed, latency.percentile(measured, 0.5) / 1e3,
+                    latency.percentile(measured, 0.99) / 1e3, latency.percentile(measured, 0.999) / 1e3,
+                    latency.max(measured) / 1e3);
+        } finally {
+            running.set(false);
+            for (Channel channel : channels) {
+                channel.close().syncUninterruptibly();
+            }
+            group.shutdownGracefully().syncUninterruptibly();
+        }
+    }
+
+    static class LoadHandler extends ChannelInboundHandlerAdapter {
+
+        private final int window;
+        private final int frameSize;
+        private final LatencyHistogram latency;
+        private final LongAdder completed;
+        private final AtomicBoolean running;
+        private long sequence;
+
+        LoadHandler(int window, int frameSize, LatencyHistogram latency, LongAdder completed, AtomicBoolean running) {
+            this.window = window;
+            this.frameSize = frameSize;
+            this.latency = latency;
+            this.completed = completed;
+            this.running = running;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            for (int i = 0; i < window; i++) {
+                send(ctx);
+            }
+            ctx.flush();
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ByteBuf frame = (ByteBuf) msg;
+            try {
+                latency.record(System.nanoTime() - frame.getLong(frame.readerIndex() + 8));
+                completed.increment();
+            } finally {
+                frame.release();
+            }
+            if (running.get()) {
+                send(ctx);
+            }
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            ctx.flush();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            if (running.get()) {
+                cause.printStackTrace();
+            }
+            ctx.close();
+        }
+
+        private void send(ChannelHandlerContext ctx) {
+            ByteBuf request = ctx.alloc().directBuffer(frameSize);
+            request.writeLong(sequence++);
+            request.writeLong(System.nanoTime());
+            request.writeZero(frameSize - 16);
+            ctx.write(request, ctx.voidPromise());
+        }
+    }
+}
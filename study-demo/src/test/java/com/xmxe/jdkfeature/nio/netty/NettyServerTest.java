@@ -0,0 +1,83 @@
+package com.xmxe.jdkfeature.nio.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class NettyServerTest {
+
+    private static EmbeddedChannel framedChannel() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        NettyServer.addFrameCodec(channel.pipeline());
+        channel.pipeline().addLast(NettyServer.FramedEchoHandler.INSTANCE);
+        return channel;
+    }
+
+    private static ByteBuf frame(long id, int size) {
+        ByteBuf frame = Unpooled.buffer(4 + size);
+        frame.writeInt(size);
+        frame.writeLong(id);
+        frame.writeZero(size - 8);
+        return frame;
+    }
+
+    /**
+     * 帧被拆成多段、多个帧粘在一起都能正确切分,每个帧原样带长度前缀写回
+     */
+    @Test
+    public void echoesSplitAndCoalescedFrames() {
+        EmbeddedChannel channel = framedChannel();
+        ByteBuf stream = Unpooled.buffer();
+        for (int i = 0; i < 3; i++) {
+            stream.writeBytes(frame(i, 100));
+        }
+        ByteBuf expected = stream.copy();
+        // 第一段在第一个帧中间截断,第二段包含剩下的全部
+        assertFalse(channel.writeInbound(stream.readRetainedSlice(50)));
+        assertFalse(channel.writeInbound(stream));
+
+        ByteBuf echoed = Unpooled.buffer();
+        ByteBuf part;
+        while ((part = channel.readOutbound()) != null) {
+            echoed.writeBytes(part);
+            part.release();
+        }
+        assertEquals(expected, echoed);
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void oversizedFrameClosesConnection() {
+        EmbeddedChannel channel = framedChannel();
+        ByteBuf header = Unpooled.buffer(4);
+        header.writeInt(NettyServer.MAX_FRAME_LENGTH + 1);
+        channel.writeInbound(header);
+        assertFalse(channel.isOpen());
+    }
+
+    /**
+     * 写缓冲超过高水位时停止读取
+     */
+    @Test
+    public void stopsReadingWhenNotWritable() {
+        EmbeddedChannel channel = framedChannel();
+        assertTrue(channel.config().isAutoRead());
+        channel.config().setWriteBufferLowWaterMark(1);
+        channel.config().setWriteBufferHighWaterMark(8);
+        // 只写不flush,数据留在出站缓冲区里
+        channel.write(Unpooled.wrappedBuffer(new byte[64]));
+        assertFalse(channel.isWritable());
+        assertFalse(channel.config().isAutoRead());
+        channel.flush();
+        channel.runPendingTasks();
+        assertTrue(channel.isWritable());
+        assertTrue(channel.config().isAutoRead());
+        channel.finishAndReleaseAll();
+    }
+}
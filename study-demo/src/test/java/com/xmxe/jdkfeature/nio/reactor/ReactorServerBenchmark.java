@@ -0,0 +1,480 @@
+package com.xmxe.jdkfeature.nio.reactor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.xmxe.jdkfeature.thread.dynamic_threadpool.LatencyHistogram;
+
+/**
+ * ReactorServer和SocketServer里几种写法在大量并发连接下的对比,都是长度前缀帧的echo:
+ * reactor           ReactorServer,1个boss + CPU数个worker
+ * nio-single        SocketServer.nioServer的写法:单个selector线程,读写切换时重新register,每条消息new一个byte[]
+ * bio-pool          SocketServer.twoWayCommunicationServerUseThread的写法:100个线程的线程池,一个线程服务一个连接
+ * thread-per-conn   每个连接一个线程
+ * aio               SocketServer.aioServer的写法:AsynchronousChannelGroup,CPU数个线程
+ * 服务端在子进程里(两端各1万个连接会超过单进程的文件描述符上限),客户端用2个selector线程,
+ * 每个连接同时只有一个请求在途(收到响应再发下一个),统计msgs/s、往返延迟、测量期间至少完成一次往返的连接数,以及服务端的线程数和RSS
+ * bio-pool只有100个线程,其余连接一直排队得不到服务
+ * 运行方式:java ReactorServerBenchmark [连接数] [测量秒数] [variant...]
+ */
+public class ReactorServerBenchmark {
+
+    private static final int PAYLOAD = 64;
+
+    private static final int FRAME = 4 + PAYLOAD;
+
+    private static final String[] VARIANTS = {"reactor", "nio-single", "bio-pool", "thread-per-conn", "aio"};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 1 && "server".equals(args[0])) {
+            serve(args[1]);
+            return;
+        }
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        String[] variants = args.length > 2 ? java.util.Arrays.copyOfRange(args, 2, args.length) : VARIANTS;
+        System.out.printf("%d connections, %d byte frames, 1 request in flight per connection, %d CPUs%n", connections,
+                FRAME, Runtime.getRuntime().availableProcessors());
+        for (String variant : variants) {
+            Process server = new ProcessBuilder(System.getProperty("java.home") + "/bin/java", "-Xss256k",
+                    "-cp", System.getProperty("java.class.path"), ReactorServerBenchmark.class.getName(), "server", variant)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+                int port = Integer.parseInt(reader.readLine().trim());
+                new LoadClient(port, connections).run(variant, seconds, server.pid());
+            } finally {
+                server.destroyForcibly().waitFor();
+            }
+        }
+        System.exit(0);
+    }
+
+    // ---------------------------------------------------------------- 服务端
+
+    private static void serve(String variant) throws Exception {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int port;
+        switch (variant) {
+            case "reactor": {
+                ReactorServer server = new ReactorServer(0, cpus, FrameDecoder.lengthField(1 << 20), FrameHandler.echo());
+                server.start();
+                port = server.getPort();
+                break;
+            }
+            case "nio-single":
+                port = singleSelector();
+                break;
+            case "bio-pool":
+                port = blocking(Executors.newFixedThreadPool(100));
+                break;
+            case "thread-per-conn":
+                port = blocking(null);
+                break;
+            case "aio":
+                port = aio(cpus);
+                break;
+            default:
+                throw new IllegalArgumentException(variant);
+        }
+        System.out.println(port);
+        System.out.flush();
+        Thread.sleep(Long.MAX_VALUE);
+    }
+
+    private static int blocking(ExecutorService pool) throws IOException {
+        ServerSocket server = new ServerSocket(0, 4096, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            while (true) {
+                try {
+                    Socket socket = server.accept();
+                    socket.setTcpNoDelay(true);
+                    Runnable task = () -> echoBlocking(socket);
+                    if (pool != null) {
+                        pool.execute(task);
+                    } else {
+                        new Thread(task).start();
+                    }
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        acceptor.start();
+        return server.getLocalPort();
+    }
+
+    private static void echoBlocking(Socket socket) {
+        try (Socket s = socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            byte[] payload = new byte[1024];
+            while (true) {
+                int length = in.readInt();
+                if (payload.length < length) {
+                    payload = new byte[length];
+                }
+                in.readFully(payload, 0, length);
+                out.writeInt(length);
+                out.write(payload, 0, length);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // 客户端断开
+        }
+    }
+
+    /**
+     * 照SocketServer.nioServer的写法:一个selector线程做所有事,读完register(OP_WRITE),写完register(OP_READ),消息拷成新的byte[]
+     */
+    private static int singleSelector() throws IOException {
+        Selector selector = Selector.open();
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    selector.select();
+                    Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+                        try {
+                            if (key.isAcceptable()) {
+                                SocketChannel channel = server.accept();
+                                channel.configureBlocking(false);
+                                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                                channel.register(selector, SelectionKey.OP_READ, new SingleState());
+                            } else if (key.isReadable()) {
+                                SocketChannel channel = (SocketChannel) key.channel();
+                                SingleState state = (SingleState) key.attachment();
+                                if (channel.read(state.in) < 0) {
+                                    channel.close();
+                                    continue;
+                                }
+                                state.in.flip();
+                                while (state.in.remaining() >= 4 && state.in.remaining() >= 4 + state.in.getInt(state.in.position())) {
+                                    byte[] message = new byte[4 + state.in.getInt(state.in.position())];
+                                    state.in.get(message);
+                                    state.pending.add(message);
+                                }
+                                state.in.compact();
+                                if (!state.pending.isEmpty()) {
+                                    channel.register(selector, SelectionKey.OP_WRITE, state);
+                                }
+                            } else if (key.isWritable()) {
+                                SocketChannel channel = (SocketChannel) key.channel();
+                                SingleState state = (SingleState) key.attachment();
+                                while (!state.pending.isEmpty()) {
+                                    ByteBuffer out = ByteBuffer.wrap(state.pending.peekFirst());
+                                    while (out.hasRemaining()) {
+                                        channel.write(out);
+                                    }
+                                    state.pending.pollFirst();
+                                }
+                                channel.register(selector, SelectionKey.OP_READ, state);
+                            }
+                        } catch (IOException e) {
+                            key.cancel();
+                            key.channel().close();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        thread.start();
+        return server.socket().getLocalPort();
+    }
+
+    private static final class SingleState {
+        final ByteBuffer in = ByteBuffer.allocate(1024);
+        final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+    }
+
+    private static int aio(int threads) throws IOException {
+        AsynchronousChannelGroup group = AsynchronousChannelGroup.withFixedThreadPool(threads, Executors.defaultThreadFactory());
+        AsynchronousServerSocketChannel server = AsynchronousServerSocketChannel.open(group)
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+        server.accept(null, new CompletionHandler<AsynchronousSocketChannel, Object>() {
+            @Override
+            public void completed(AsynchronousSocketChannel channel, Object attachment) {
+                server.accept(null, this);
+                try {
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                } catch (IOException e) {
+                    // ignore
+                }
+                new AioConnection(channel).read();
+            }
+
+            @Override
+            public void failed(Throwable exc, Object attachment) {
+                if (server.isOpen()) {
+                    server.accept(null, this);
+                }
+            }
+        });
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * 读到完整的帧就整段写回,写完再接着读
+     */
+    private static final class AioConnection implements CompletionHandler<Integer, Boolean> {
+
+        private final AsynchronousSocketChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+        private int writeEnd;
+
+        AioConnection(AsynchronousSocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() {
+            channel.read(buffer, Boolean.TRUE, this);
+        }
+
+        @Override
+        public void completed(Integer n, Boolean reading) {
+            if (reading) {
+                if (n < 0) {
+                    failed(null, reading);
+                    return;
+                }
+                buffer.flip();
+                int end = 0;
+                while (buffer.limit() - end >= 4 && buffer.limit() - end >= 4 + buffer.getInt(end)) {
+                    end += 4 + buffer.getInt(end);
+                }
+                if (end == 0) {
+                    buffer.position(buffer.limit()).limit(buffer.capacity());
+                    read();
+                    return;
+                }
+                writeEnd = buffer.limit();
+                buffer.limit(end);
+            }
+            if (buffer.hasRemaining()) {
+                channel.write(buffer, Boolean.FALSE, this);
+                return;
+            }
+            // 写完了,把没处理的半个帧挪到开头继续读
+            buffer.limit(writeEnd);
+            buffer.compact();
+            read();
+        }
+
+        @Override
+        public void failed(Throwable exc, Boolean reading) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- 客户端
+
+    private static final class LoadClient {
+
+        private final int port;
+        private final int connections;
+        private final LatencyHistogram latency = new LatencyHistogram(5, 4);
+        private final LongAdder completed = new LongAdder();
+        private final long[] lastCompleted;
+        private volatile boolean running = true;
+
+        LoadClient(int port, int connections) {
+            this.port = port;
+            this.connections = connections;
+            this.lastCompleted = new long[connections];
+        }
+
+        void run(String variant, int seconds, long serverPid) throws Exception {
+            int threads = 2;
+            List<ClientLoop> loops = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                loops.add(new ClientLoop());
+            }
+            long connectBegin = System.nanoTime();
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+            List<ClientConnection> all = new ArrayList<>(connections);
+            for (int i = 0; i < connections; i++) {
+                SocketChannel channel = SocketChannel.open(address);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.configureBlocking(false);
+                ClientConnection connection = new ClientConnection(i, channel);
+                loops.get(i % threads).pending.add(connection);
+                all.add(connection);
+            }
+            long connectMillis = (System.nanoTime() - connectBegin) / 1_000_000;
+            List<Thread> threadList = new ArrayList<>();
+            for (ClientLoop loop : loops) {
+                Thread thread = new Thread(loop);
+                thread.start();
+                threadList.add(thread);
+            }
+            Thread.sleep(2000);
+            long[] before = latency.snapshot();
+            long count = completed.sum();
+            long[] perConnection = new long[connections];
+            for (ClientConnection connection : all) {
+                perConnection[connection.index] = connection.rounds;
+            }
+            long begin = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            long elapsed = System.nanoTime() - begin;
+            long messages = completed.sum() - count;
+            long[] measured = LatencyHistogram.minus(latency.snapshot(), before);
+            int served = 0;
+            for (ClientConnection connection : all) {
+                if (connection.rounds > perConnection[connection.index]) {
+                    served++;
+                }
+            }
+            String status = new String(Files.readAllBytes(Paths.get("/proc/" + serverPid + "/status")), StandardCharsets.UTF_8);
+            System.out.printf("  %-16s connect %6d ms  %9.0f msgs/s  p50 %9.1fus  p99 %10.1fus  served %6d/%d  server threads %6s  rss %s%n",
+                    variant, connectMillis, messages * 1e9 / elapsed, latency.percentile(measured, 0.5) / 1e3,
+                    latency.percentile(measured, 0.99) / 1e3, served, connections, field(status, "Threads:"),
+                    field(status, "VmRSS:"));
+            running = false;
+            for (ClientLoop loop : loops) {
+                loop.selector.wakeup();
+            }
+            for (Thread thread : threadList) {
+                thread.join();
+            }
+            for (ClientConnection connection : all) {
+                connection.channel.close();
+            }
+        }
+
+        private static String field(String status, String name) {
+            for (String line : status.split("\n")) {
+                if (line.startsWith(name)) {
+                    return line.substring(name.length()).trim();
+                }
+            }
+            return "?";
+        }
+
+        private final class ClientLoop implements Runnable {
+
+            final Selector selector;
+            final List<ClientConnection> pending = new ArrayList<>();
+
+            ClientLoop() throws IOException {
+                selector = Selector.open();
+            }
+
+            @Override
+            public void run() {
+                try {
+                    for (ClientConnection connection : pending) {
+                        connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+                        connection.send();
+                    }
+                    while (running) {
+                        selector.select();
+                        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                        while (iterator.hasNext()) {
+                            SelectionKey key = iterator.next();
+                            iterator.remove();
+                            ClientConnection connection = (ClientConnection) key.attachment();
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                connection.read();
+                            }
+                        }
+                    }
+                    selector.close();
+                } catch (IOException e) {
+                    if (running) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        private final class ClientConnection {
+
+            final int index;
+            final SocketChannel channel;
+            final ByteBuffer out = ByteBuffer.allocateDirect(FRAME);
+            final ByteBuffer in = ByteBuffer.allocateDirect(FRAME);
+            SelectionKey key;
+            volatile long rounds;
+
+            ClientConnection(int index, SocketChannel channel) {
+                this.index = index;
+                this.channel = channel;
+            }
+
+            void send() throws IOException {
+                out.clear();
+                out.putInt(PAYLOAD).putLong(System.nanoTime());
+                out.position(FRAME);
+                out.flip();
+                flush();
+            }
+
+            void flush() throws IOException {
+                channel.write(out);
+                key.interestOps(out.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            }
+
+            void read() throws IOException {
+                if (channel.read(in) < 0) {
+                    key.cancel();
+                    return;
+                }
+                if (in.hasRemaining()) {
+                    return;
+                }
+                latency.record(System.nanoTime() - in.getLong(4));
+                completed.increment();
+                rounds++;
+                in.clear();
+                if (running) {
+                    send();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.xmxe.jdkfeature.nio.reactor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class ReactorServerTest {
+
+    private static byte[] frame(int size, int seed) {
+        byte[] frame = new byte[4 + size];
+        ByteBuffer.wrap(frame).putInt(size);
+        Random random = new Random(seed);
+        for (int i = 4; i < frame.length; i++) {
+            frame[i] = (byte) random.nextInt();
+        }
+        return frame;
+    }
+
+    private static Socket connect(ReactorServer server) throws Exception {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        socket.setSoTimeout(10_000);
+        return socket;
+    }
+
+    /**
+     * 粘在一起的帧、拆成两半的帧、比池化缓冲区大得多的帧都能原样写回
+     */
+    @Test
+    public void echoesCoalescedSplitAndLargeFrames() throws Exception {
+        try (ReactorServer server = new ReactorServer(0, 2, FrameDecoder.lengthField(1 << 20), FrameHandler.echo())) {
+            server.start();
+            try (Socket socket = connect(server)) {
+                OutputStream out = socket.getOutputStream();
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                List<byte[]> frames = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    frames.add(frame(100, i));
+                }
+                frames.add(frame(300_000, 3));
+                byte[] all = new byte[frames.stream().mapToInt(f -> f.length).sum()];
+                int offset = 0;
+                for (byte[] f : frames) {
+                    System.arraycopy(f, 0, all, offset, f.length);
+                    offset += f.length;
+                }
+                // 前三个帧和第四个帧的开头一起发,剩下的分两次发
+                out.write(all, 0, 350);
+                out.flush();
+                Thread.sleep(50);
+                out.write(all, 350, 1000);
+                out.write(all, 1350, all.length - 1350);
+                out.flush();
+                byte[] echoed = new byte[all.length];
+                in.readFully(echoed);
+                assertArrayEquals(all, echoed);
+            }
+        }
+    }
+
+    @Test
+    public void connectionsArePinnedRoundRobin() throws Exception {
+        Map<String, AtomicInteger> perWorker = new ConcurrentHashMap<>();
+        FrameHandler handler = new FrameHandler() {
+            @Override
+            public void onOpen(Connection connection) {
+                perWorker.computeIfAbsent(Thread.currentThread().getName(), k -> new AtomicInteger()).incrementAndGet();
+            }
+
+            @Override
+            public void onFrame(Connection connection, ByteBuffer frame) {
+                connection.write(frame);
+            }
+        };
+        try (ReactorServer server = new ReactorServer(0, 4, FrameDecoder.line(1024), handler)) {
+            server.start();
+            List<Socket> sockets = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                Socket socket = connect(server);
+                sockets.add(socket);
+                socket.getOutputStream().write("ping\n".getBytes(StandardCharsets.UTF_8));
+                byte[] reply = new byte[5];
+                new DataInputStream(socket.getInputStream()).readFully(reply);
+                assertEquals("ping\n", new String(reply, StandardCharsets.UTF_8));
+            }
+            assertEquals(8, server.connections());
+            assertEquals(4, perWorker.size());
+            for (AtomicInteger count : perWorker.values()) {
+                assertEquals(2, count.get());
+            }
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            Thread.sleep(100);
+            assertEquals(0, server.connections());
+        }
+    }
+
+    /**
+     * 每个连接的状态放在attachment里,行解码器给出的帧包括换行符
+     */
+    @Test
+    public void lineDecoderWithPerConnectionState() throws Exception {
+        FrameHandler handler = new FrameHandler() {
+            @Override
+            public void onOpen(Connection connection) {
+                connection.attach(new int[1]);
+            }
+
+            @Override
+            public void onFrame(Connection connection, ByteBuffer frame) {
+                int[] count = (int[]) connection.attachment();
+                count[0]++;
+                byte[] reply = (count[0] + ":" + (frame.remaining() - 1) + "\n").getBytes(StandardCharsets.UTF_8);
+                connection.write(ByteBuffer.wrap(reply));
+            }
+        };
+        try (ReactorServer server = new ReactorServer(0, 1, FrameDecoder.line(64), handler);) {
+            server.start();
+            try (Socket socket = connect(server)) {
+                socket.getOutputStream().write("a\nbb\nccc\n".getBytes(StandardCharsets.UTF_8));
+                byte[] reply = new byte[12];
+                new DataInputStream(socket.getInputStream()).readFully(reply);
+                assertEquals("1:1\n2:2\n3:3\n", new String(reply, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * 长度头走write,文件内容走transferFile,两者在发送队列里保持顺序;文件比socket缓冲区大,要分多次transferTo
+     */
+    @Test
+    public void servesFilesWithTransferFile() throws Exception {
+        Path root = Files.createTempDirectory("reactor-root");
+        byte[] big = new byte[5 * 1024 * 1024 + 17];
+        new Random(5).nextBytes(big);
+        Files.write(root.resolve("big.bin"), big);
+        Files.write(root.resolve("small.txt"), "hi".getBytes(StandardCharsets.UTF_8));
+        try (ReactorServer server = new ReactorServer(0, 1, FrameDecoder.line(1024), new StaticFileHandler(root))) {
+            server.start();
+            try (Socket socket = connect(server)) {
+                socket.getOutputStream().write("big.bin\nsmall.txt\nmissing\n../big.bin\nbig.bin\n".getBytes(StandardCharsets.UTF_8));
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                for (byte[] expected : new byte[][] {big, "hi".getBytes(StandardCharsets.UTF_8), null, null, big}) {
+                    long length = in.readLong();
+                    if (expected == null) {
+                        assertEquals(StaticFileHandler.NOT_FOUND, length);
+                        continue;
+                    }
+                    byte[] body = new byte[(int) length];
+                    in.readFully(body);
+                    assertArrayEquals(expected, body);
+                }
+            }
+        } finally {
+            Files.delete(root.resolve("big.bin"));
+            Files.delete(root.resolve("small.txt"));
+            Files.delete(root);
+        }
+    }
+
+    @Test
+    public void invalidFrameClosesConnection() throws Exception {
+        try (ReactorServer server = new ReactorServer(0, 1, FrameDecoder.lengthField(1024), FrameHandler.echo())) {
+            server.start();
+            try (Socket socket = connect(server)) {
+                new DataOutputStream(socket.getOutputStream()).writeInt(4096);
+                assertEquals(-1, socket.getInputStream().read());
+            }
+        }
+    }
+
+    /**
+     * 客户端只发不收时,服务端待发送数据超过高水位后停止读取,而不是把请求全部读进内存;客户端开始读以后全部正常写回
+     */
+    @Test
+    public void stopsReadingWhenClientDoesNotRead() throws Exception {
+        AtomicLong received = new AtomicLong();
+        FrameHandler handler = (connection, frame) -> {
+            received.addAndGet(frame.remaining());
+            connection.write(frame);
+        };
+        int frameSize = 64 * 1024;
+        int frames = 1024;
+        try (ReactorServer server = new ReactorServer(0, 1, FrameDecoder.lengthField(frameSize), handler)) {
+            server.start();
+            try (Socket socket = connect(server)) {
+                byte[] frame = frame(frameSize, 7);
+                Thread writer = new Thread(() -> {
+                    try {
+                        OutputStream out = socket.getOutputStream();
+                        for (int i = 0; i < frames; i++) {
+                            out.write(frame);
+                        }
+                        out.flush();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                writer.start();
+                Thread.sleep(500);
+                long stalled = received.get();
+                // 两端socket缓冲区加上高水位,远小于总量64MB
+                assertTrue("received " + stalled, stalled < 32L * 1024 * 1024);
+                Thread.sleep(200);
+                assertEquals(stalled, received.get());
+
+                InputStream in = socket.getInputStream();
+                byte[] echoed = new byte[frame.length];
+                DataInputStream data = new DataInputStream(in);
+                for (int i = 0; i < frames; i++) {
+                    data.readFully(echoed);
+                    if (i == 0 || i == frames - 1) {
+                        assertArrayEquals(frame, echoed);
+                    }
+                }
+                writer.join();
+                assertEquals((long) frames * frame.length, received.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.xmxe.jdkfeature.thread.dynamic_threadpool;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 突发负载下固定大小线程池与自动调整线程池的对比
+ * 负载:每秒交替 低谷200个/秒 与 突发4000个/秒,开环提交(不等任务完成);任务是5ms的IO等待加20us计算
+ * 统计从提交到完成的延迟、拒绝数、完成数以及结束时的线程数
+ * 运行方式:java DynamicThreadPoolBenchmark [周期数]
+ */
+public class DynamicThreadPoolBenchmark {
+
+    private static final int LOW_RATE = 200;
+
+    private static final int BURST_RATE = 4000;
+
+    public static void main(String[] args) throws Exception {
+        int cycles = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        run("fixed 4", cycles, new DynamicThreadPool(4, 4, 60, TimeUnit.SECONDS, new ResizableBlockingQueue<>(1000)),
+                false);
+        run("fixed 64", cycles, new DynamicThreadPool(64, 64, 60, TimeUnit.SECONDS,
+                new ResizableBlockingQueue<>(1000)), false);
+        run("auto 4~64", cycles, new DynamicThreadPool(4, 8, 5, TimeUnit.SECONDS, new ResizableBlockingQueue<>(1000)),
+                true);
+    }
+
+    private static void run(String name, int cycles, DynamicThreadPool pool, boolean autoTune) throws Exception {
+        if (autoTune) {
+            pool.startAutoTuning(new AutoTuner(pool, 4, 64, 50, 1000, TimeUnit.MILLISECONDS.toNanos(20)), 200);
+        }
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder rejected = new LongAdder();
+        long submitted = 0;
+        int peakThreads = 0;
+        long begin = System.nanoTime();
+        for (int cycle = 0; cycle < cycles * 2; cycle++) {
+            int rate = cycle % 2 == 0 ? LOW_RATE : BURST_RATE;
+            long phaseStart = System.nanoTime();
+            long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+            for (int i = 0; i < rate; i++) {
+                long due = phaseStart + i * interval;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                long submittedAt = System.nanoTime();
+                try {
+                    pool.getThreadPoolExecutor().execute(() -> {
+                        task();
+                        latency.record(System.nanoTime() - submittedAt);
+                    });
+                } catch (RejectedExecutionException e) {
+                    rejected.increment();
+                }
+                submitted++;
+            }
+            peakThreads = Math.max(peakThreads, pool.getThreadPoolExecutor().getPoolSize());
+        }
+        pool.shutdown();
+        pool.getThreadPoolExecutor().awaitTermination(1, TimeUnit.MINUTES);
+        long nanos = System.nanoTime() - begin;
+        System.out.printf("%-10s submitted %6d  completed %6d (%,6.0f/s)  rejected %5d  p50 %6.1fms  p99 %7.1fms"
+                + "  p999 %7.1fms  peak threads %d%n", name, submitted, pool.getCompletedTaskCount(),
+                pool.getCompletedTaskCount() * 1e9 / nanos, rejected.sum(), latency.percentile(0.5) / 1e6,
+                latency.percentile(0.99) / 1e6, latency.percentile(0.999) / 1e6, peakThreads);
+    }
+
+    private static void task() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long end = System.nanoTime() + 20_000;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+}
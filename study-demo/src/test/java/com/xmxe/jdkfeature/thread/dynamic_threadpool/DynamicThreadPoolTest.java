@@ -0,0 +1,212 @@
+package com.xmxe.jdkfeature.thread.dynamic_threadpool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class DynamicThreadPoolTest {
+
+    @Test
+    public void queueCapacityCanChange() throws Exception {
+        ResizableBlockingQueue<Integer> queue = new ResizableBlockingQueue<>(2);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertFalse(queue.offer(3));
+        Thread putter = new Thread(() -> {
+            try {
+                queue.put(3);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        putter.start();
+        queue.setCapacity(3);
+        putter.join(5000);
+        assertEquals(3, queue.size());
+
+        // 调小后已有元素保留,降到容量以下前不能放入
+        queue.setCapacity(1);
+        assertFalse(queue.offer(4));
+        assertEquals(Integer.valueOf(1), queue.take());
+        assertEquals(Integer.valueOf(2), queue.poll(1, TimeUnit.SECONDS));
+        assertFalse(queue.offer(4));
+        assertEquals(Integer.valueOf(3), queue.poll());
+        assertTrue(queue.offer(4));
+        assertEquals(0, queue.remainingCapacity());
+    }
+
+    @Test
+    public void histogramPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        long p99 = histogram.percentile(0.99);
+        assertTrue(p99 + "", p99 >= 990_000 && p99 <= 990_000 * 1.25);
+        for (LatencyHistogram h : new LatencyHistogram[] { histogram, new LatencyHistogram(5, 4) }) {
+            for (long v : new long[] { 0, 3, 4, 7, 8, 31, 32, 33, 1000, 123_456_789, Long.MAX_VALUE }) {
+                int bucket = h.bucket(v);
+                assertTrue(v + "", h.upperBound(bucket) >= v);
+                assertTrue(v + "", bucket == 0 || h.upperBound(bucket - 1) < v);
+            }
+        }
+        LatencyHistogram fine = new LatencyHistogram(5, 4);
+        for (int i = 1; i <= 1000; i++) {
+            fine.record(i * 1000L);
+        }
+        long fineP99 = fine.percentile(0.99);
+        assertTrue(fineP99 + "", fineP99 >= 990_000 && fineP99 <= 990_000 * 1.04);
+        assertEquals(1000, LatencyHistogram.count(fine.snapshot()));
+    }
+
+    @Test
+    public void countsCompletedAndRejected() throws Exception {
+        DynamicThreadPool pool = new DynamicThreadPool(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ResizableBlockingQueue<>(1));
+        CountDownLatch release = new CountDownLatch(1);
+        pool.getThreadPoolExecutor().execute(() -> await(release));
+        pool.getThreadPoolExecutor().submit(() -> await(release));
+        try {
+            pool.getThreadPoolExecutor().execute(() -> {
+            });
+        } catch (RejectedExecutionException expected) {
+        }
+        pool.setQueueCapacity(2);
+        pool.getThreadPoolExecutor().execute(() -> {
+        });
+        release.countDown();
+        pool.shutdown();
+        assertTrue(pool.getThreadPoolExecutor().awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(3, pool.getCompletedTaskCount());
+        assertEquals(1, pool.getRejectedCount());
+        assertTrue(pool.getTotalQueueNanos() > 0);
+    }
+
+    /**
+     * remove和shutdownNow面对的是调用方提交的原始任务,而不是计时包装
+     */
+    @Test
+    public void removeAndShutdownNowSeeOriginalTasks() throws Exception {
+        DynamicThreadPool pool = new DynamicThreadPool(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ResizableBlockingQueue<>(10));
+        CountDownLatch release = new CountDownLatch(1);
+        pool.getThreadPoolExecutor().execute(() -> await(release));
+        Runnable removed = () -> {
+        };
+        Runnable pending = () -> {
+        };
+        pool.getThreadPoolExecutor().execute(removed);
+        pool.getThreadPoolExecutor().execute(pending);
+        assertTrue(pool.getThreadPoolExecutor().remove(removed));
+        assertFalse(pool.getThreadPoolExecutor().remove(removed));
+        assertEquals(Collections.singletonList(pending), pool.getThreadPoolExecutor().shutdownNow());
+        release.countDown();
+        assertTrue(pool.getThreadPoolExecutor().awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void growsWhenOverloadedAndRevertsWithoutGain() {
+        DynamicThreadPool pool = new DynamicThreadPool(2, 4, 1, TimeUnit.SECONDS, new ResizableBlockingQueue<>(10));
+        long target = TimeUnit.MILLISECONDS.toNanos(50);
+        AutoTuner tuner = new AutoTuner(pool, 2, 34, 10, 1000, target);
+        long exec = TimeUnit.MILLISECONDS.toNanos(10);
+
+        tuner.adjust(new AutoTuner.Window(100, 5, target * 2, exec), 2);
+        assertEquals(6, pool.getThreadPoolExecutor().getCorePoolSize());
+        assertEquals(12, pool.getThreadPoolExecutor().getMaximumPoolSize());
+        // 排队容量 = 50ms * 6线程 / 10ms
+        assertEquals(30, pool.getQueueCapacity());
+
+        tuner.adjust(new AutoTuner.Window(300, 5, target * 2, exec), 6);
+        assertEquals(10, pool.getThreadPoolExecutor().getCorePoolSize());
+        // 吞吐没有提升,退回上一步,之后几个窗口不再加线程
+        tuner.adjust(new AutoTuner.Window(301, 5, target * 2, exec), 10);
+        assertEquals(6, pool.getThreadPoolExecutor().getCorePoolSize());
+        tuner.adjust(new AutoTuner.Window(301, 5, target * 2, exec), 6);
+        assertEquals(6, pool.getThreadPoolExecutor().getCorePoolSize());
+
+        // 连续空闲5个窗口后每次减少1/4,不低于下限
+        for (int i = 0; i < 4; i++) {
+            tuner.adjust(new AutoTuner.Window(10, 0, 0, exec), 0);
+        }
+        assertEquals(6, pool.getThreadPoolExecutor().getCorePoolSize());
+        tuner.adjust(new AutoTuner.Window(10, 0, 0, exec), 0);
+        assertEquals(5, pool.getThreadPoolExecutor().getCorePoolSize());
+        for (int i = 0; i < 10; i++) {
+            tuner.adjust(new AutoTuner.Window(10, 0, 0, exec), 0);
+        }
+        assertEquals(2, pool.getThreadPoolExecutor().getCorePoolSize());
+        assertEquals(10, pool.getQueueCapacity());
+        pool.shutdown();
+    }
+
+    @Test
+    public void autoTuningCannotResumeWithoutTuner() {
+        DynamicThreadPool pool = new DynamicThreadPool(2, 4, 1, TimeUnit.SECONDS, new ResizableBlockingQueue<>(10));
+        AutoTuner tuner = new AutoTuner(pool, 2, 8, 10, 100, TimeUnit.MILLISECONDS.toNanos(50));
+        pool.startAutoTuning(tuner, 1000);
+        pool.setAutoTuning(false);
+        pool.setAutoTuning(true);
+        assertTrue(pool.isAutoTuning());
+        pool.stopAutoTuning();
+        assertResumeRejected(pool);
+        pool.shutdown();
+        assertResumeRejected(pool);
+        try {
+            pool.startAutoTuning(tuner, 1000);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertFalse(pool.isAutoTuning());
+    }
+
+    private static void assertResumeRejected(DynamicThreadPool pool) {
+        try {
+            pool.setAutoTuning(true);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertFalse(pool.isAutoTuning());
+    }
+
+    @Test
+    public void metricsOnMBean() throws Exception {
+        DynamicThreadPool pool = new DynamicThreadPool(2, 4, 1, TimeUnit.SECONDS, new ResizableBlockingQueue<>(10));
+        ObjectName name = new ObjectName("com.xmxe:type=DynamicThreadPool,name=test");
+        new DynamicThreadPoolMBean(pool, name.toString());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            pool.getThreadPoolExecutor().submit(() -> {
+            }).get();
+            server.setAttribute(name, new javax.management.Attribute("QueueCapacity", 20));
+            assertEquals(20, pool.getQueueCapacity());
+            assertEquals(20, server.getAttribute(name, "QueueCapacity"));
+            assertEquals(1L, server.getAttribute(name, "CompletedTaskCount"));
+            assertEquals(0L, server.getAttribute(name, "RejectedCount"));
+            assertTrue((Double) server.getAttribute(name, "QueueDelayP99Millis") >= 0);
+        } finally {
+            server.unregisterMBean(name);
+            pool.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.xmxe.jdkfeature.thread.keyed;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.xmxe.jdkfeature.thread.dynamic_threadpool.LatencyHistogram;
+
+/**
+ * KeyedExecutor和"ThreadPoolExecutor + 按key加synchronized锁"的对比
+ * 1.均匀:P个生产者,每个负责一部分key,按顺序提交,统计吞吐和乱序次数
+ *   线程池里同一个key的相邻任务可能被两个线程同时取走,锁只保证互斥不保证先后,所以会乱序
+ * 2.热点:一个生产者全力提交同一个慢key,其他生产者匀速提交冷key,统计冷key从提交到执行完的p99
+ *   线程池里热点任务占满工作线程和队列,都在等同一把锁,冷key排在后面;KeyedExecutor只有热点通道被塞满
+ * 运行方式:java KeyedExecutorBenchmark [线程数] [生产者数] [每个任务的计算量]
+ */
+public class KeyedExecutorBenchmark {
+
+    private static final int KEYS = 1024;
+
+    private static final int TASKS = 2_000_000;
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        int producers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int work = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        for (int round = 0; round < 3; round++) {
+            System.out.println("round " + round);
+            uniform("ThreadPoolExecutor+synchronized", new LockedPool(threads), producers, work);
+            uniform("KeyedExecutor", new Keyed(threads), producers, work);
+            hotKey("ThreadPoolExecutor+synchronized", new LockedPool(threads), producers, work);
+            hotKey("KeyedExecutor", new Keyed(threads), producers, work);
+        }
+    }
+
+    private static void uniform(String name, Target target, int producers, int work) throws Exception {
+        AtomicIntegerArray last = new AtomicIntegerArray(KEYS);
+        LongAdder violations = new LongAdder();
+        int perProducer = TASKS / producers;
+        Thread[] threads = new Thread[producers];
+        long begin = System.nanoTime();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                // 生产者p负责 key % producers == p 的key,同一个key的序号递增
+                int[] seq = new int[KEYS];
+                for (int i = 0; i < perProducer; i++) {
+                    int key = (i % (KEYS / producers)) * producers + producer;
+                    int expected = ++seq[key];
+                    target.execute(key, () -> {
+                        compute(work);
+                        if (last.get(key) + 1 != expected) {
+                            violations.increment();
+                        }
+                        last.set(key, expected);
+                    });
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        target.close();
+        long elapsed = System.nanoTime() - begin;
+        System.out.printf("  uniform %-32s %10.0f tasks/s, out of order %d%n", name,
+                (double) perProducer * producers * 1e9 / elapsed, violations.sum());
+    }
+
+    private static void hotKey(String name, Target target, int producers, int work) throws Exception {
+        LatencyHistogram cold = new LatencyHistogram(5, 1);
+        LongAdder hotDone = new LongAdder();
+        int coldTasks = 20_000;
+        Thread hot = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    // 热点任务比冷任务慢10倍
+                    target.execute(0, () -> {
+                        compute(work * 10);
+                        hotDone.increment();
+                    });
+                }
+            } catch (RejectedExecutionException e) {
+                // 等待通道空位时被中断,结束提交
+            }
+        });
+        hot.start();
+        Thread.sleep(100);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < coldTasks / producers; i++) {
+                    int key = 1 + (i * producers + producer) % (KEYS - 1);
+                    long submitted = System.nanoTime();
+                    target.execute(key, () -> {
+                        compute(work);
+                        cold.record(System.nanoTime() - submitted);
+                    });
+                    // 冷key匀速提交,每个生产者每秒约1万个
+                    long until = submitted + 100_000;
+                    while (System.nanoTime() < until) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        hot.interrupt();
+        hot.join();
+        target.close();
+        long[] snapshot = cold.snapshot();
+        System.out.printf("  hot key %-32s cold p50 %8.3fms p99 %8.3fms max %8.3fms, hot done %d%n", name,
+                cold.percentile(snapshot, 0.5) / 1e6, cold.percentile(snapshot, 0.99) / 1e6,
+                cold.max(snapshot) / 1e6, hotDone.sum());
+    }
+
+    private static void compute(int work) {
+        long x = work;
+        for (int i = 0; i < work; i++) {
+            x = x * 6364136223846793005L + 1442695040888963407L;
+        }
+        sink = x;
+    }
+
+    private interface Target {
+
+        void execute(int key, Runnable task);
+
+        void close() throws InterruptedException;
+    }
+
+    /**
+     * 队列有界,满了提交线程阻塞,和KeyedExecutor.execute一样的背压
+     */
+    private static final class LockedPool implements Target {
+
+        private final Object[] locks = new Object[KEYS];
+
+        private final ThreadPoolExecutor executor;
+
+        LockedPool(int threads) {
+            for (int i = 0; i < KEYS; i++) {
+                locks[i] = new Object();
+            }
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(4096), (r, e) -> {
+                        try {
+                            e.getQueue().put(r);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+        }
+
+        @Override
+        public void execute(int key, Runnable task) {
+            executor.execute(() -> {
+                synchronized (locks[key]) {
+                    task.run();
+                }
+            });
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static final class Keyed implements Target {
+
+        private final KeyedExecutor executor;
+
+        Keyed(int threads) {
+            this.executor = new KeyedExecutor("benchmark", threads, threads * 4, 1024);
+        }
+
+        @Override
+        public void execute(int key, Runnable task) {
+            executor.execute(key, task);
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+}
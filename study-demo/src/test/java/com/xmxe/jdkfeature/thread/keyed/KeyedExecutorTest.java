@@ -0,0 +1,187 @@
+package com.xmxe.jdkfeature.thread.keyed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+public class KeyedExecutorTest {
+
+    @Test
+    public void preservesOrderPerKey() throws Exception {
+        int producers = 4;
+        int keysPerProducer = 16;
+        int tasksPerKey = 2000;
+        KeyedExecutor executor = new KeyedExecutor("order", 4, 8, 64);
+        AtomicIntegerArray last = new AtomicIntegerArray(producers * keysPerProducer);
+        AtomicInteger violations = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int first = p * keysPerProducer;
+            threads[p] = new Thread(() -> {
+                for (int seq = 1; seq <= tasksPerKey; seq++) {
+                    for (int k = first; k < first + keysPerProducer; k++) {
+                        int key = k;
+                        int expected = seq;
+                        executor.execute(key, () -> {
+                            if (last.get(key) != expected - 1) {
+                                violations.incrementAndGet();
+                            }
+                            last.set(key, expected);
+                            done.incrementAndGet();
+                        });
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(0, violations.get());
+        assertEquals(producers * keysPerProducer * tasksPerKey, done.get());
+    }
+
+    @Test
+    public void fullLaneDoesNotStallOtherKeys() throws Exception {
+        KeyedExecutor executor = new KeyedExecutor("isolate", 2, 8, 4);
+        int hot = 0;
+        // 和hot同一个所属线程但不同通道的key,只能被另一个线程偷走执行
+        int cold = 1;
+        while (executor.homeWorker(cold) != executor.homeWorker(hot) || executor.laneIndex(cold) == executor.laneIndex(hot)) {
+            cold++;
+        }
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(hot, () -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        int accepted = 0;
+        while (executor.tryExecute(hot, () -> {
+        })) {
+            accepted++;
+        }
+        assertEquals(4, accepted);
+        assertFalse(executor.execute(hot, () -> {
+        }, 10, TimeUnit.MILLISECONDS));
+        assertEquals(4, executor.backlog(hot));
+
+        CountDownLatch coldDone = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            executor.execute(cold, coldDone::countDown);
+        }
+        assertTrue(coldDone.await(5, TimeUnit.SECONDS));
+        assertEquals(4, executor.backlog(hot));
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.backlog());
+    }
+
+    @Test
+    public void failedTaskDoesNotBreakLane() throws Exception {
+        KeyedExecutor executor = new KeyedExecutor("failure", 1);
+        CountDownLatch after = new CountDownLatch(1);
+        executor.execute("k", () -> {
+            throw new IllegalStateException("boom");
+        });
+        executor.execute("k", after::countDown);
+        assertTrue(after.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shutdownDrainsAndRejects() throws Exception {
+        KeyedExecutor executor = new KeyedExecutor("shutdown", 2);
+        AtomicInteger done = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute("blocked", () -> await(release));
+        for (int i = 0; i < 500; i++) {
+            executor.execute(i, done::incrementAndGet);
+        }
+        executor.shutdown();
+        try {
+            executor.execute("late", () -> {
+            });
+            fail();
+        } catch (RejectedExecutionException expected) {
+        }
+        assertFalse(executor.awaitTermination(50, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(500, done.get());
+    }
+
+    @Test
+    public void ringBufferIsBoundedFifo() throws Exception {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(3);
+        assertEquals(4, ring.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+        assertEquals(Integer.valueOf(0), ring.poll());
+        assertTrue(ring.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), ring.poll());
+        }
+        assertTrue(ring.isEmpty());
+        assertEquals(null, ring.poll());
+
+        // 多个生产者并发写入,单个消费者按每个生产者的顺序读出
+        MpscRingBuffer<long[]> shared = new MpscRingBuffer<>(1024);
+        int producers = 3;
+        int count = 100_000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            long id = p;
+            threads[p] = new Thread(() -> {
+                for (long i = 0; i < count; i++) {
+                    long[] item = {id, i};
+                    while (!shared.offer(item)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        long[] next = new long[producers];
+        for (int received = 0; received < producers * count; ) {
+            long[] item = shared.poll();
+            if (item == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(next[(int) item[0]]++, item[1]);
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNotEquals(0, next[0]);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
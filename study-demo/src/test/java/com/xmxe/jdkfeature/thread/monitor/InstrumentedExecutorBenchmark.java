@@ -0,0 +1,48 @@
+package com.xmxe.jdkfeature.thread.monitor;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 统计本身的开销:同样的空任务分别交给普通ThreadPoolExecutor和InstrumentedExecutor,
+ * 两者每个任务耗时的差就是包装、计时、写直方图的成本,目标是每个任务100ns以内
+ * 单核机器上提交线程和工作线程轮流运行,每个任务的耗时就是两边CPU时间之和
+ * 运行方式:java InstrumentedExecutorBenchmark [任务数] [线程数]
+ */
+public class InstrumentedExecutorBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        for (int round = 0; round < 5; round++) {
+            double plain = run(new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>()), tasks);
+            double instrumented = run(InstrumentedExecutor.create("benchmark", threads, threads, 0,
+                    TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), Executors.defaultThreadFactory(),
+                    new ThreadPoolExecutor.AbortPolicy()), tasks);
+            System.out.printf("round %d: ThreadPoolExecutor %6.1f ns/task, InstrumentedExecutor %6.1f ns/task, "
+                    + "overhead %5.1f ns/task%n", round, plain, instrumented, instrumented - plain);
+        }
+    }
+
+    private static double run(ThreadPoolExecutor executor, int tasks) throws InterruptedException {
+        LongAdder done = new LongAdder();
+        Runnable task = done::increment;
+        long begin = System.nanoTime();
+        for (int i = 0; i < tasks; i++) {
+            executor.execute(task);
+            // 积压控制在几千个以内,否则几百万个排队的包装对象会让GC成本淹没统计本身的开销
+            if ((i & 255) == 0) {
+                while (executor.getQueue().size() > 4096) {
+                    Thread.yield();
+                }
+            }
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        return (double) (System.nanoTime() - begin) / tasks;
+    }
+}
@@ -0,0 +1,153 @@
+package com.xmxe.jdkfeature.thread.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+
+import org.junit.Test;
+
+public class InstrumentedExecutorTest {
+
+    @Test
+    public void countsAndHistograms() throws Exception {
+        InstrumentedExecutor executor = executor("count", new LinkedBlockingQueue<>());
+        for (int i = 0; i < 100; i++) {
+            executor.execute(() -> sleep(1));
+        }
+        executor.execute(() -> {
+            throw new IllegalStateException("boom");
+        });
+        executor.submit(() -> sleep(1)).get();
+        awaitTermination(executor);
+        assertEquals(102, executor.getSubmittedCount());
+        assertEquals(102, executor.getCompletedCount());
+        assertEquals(1, executor.getFailedCount());
+        assertTrue(executor.getRunP50Millis() >= 1);
+        assertTrue(executor.getWaitP99Millis() > executor.getWaitP50Millis());
+    }
+
+    @Test
+    public void countsRejections() throws Exception {
+        InstrumentedExecutor executor = executor("reject", new ArrayBlockingQueue<>(1));
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> await(release));
+        executor.execute(() -> await(release));
+        try {
+            executor.execute(() -> {
+            });
+        } catch (RejectedExecutionException expected) {
+        }
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        executor.execute(() -> {
+        });
+        assertEquals(2, executor.getRejectedCount());
+        assertEquals(1, executor.getQueueSize());
+        release.countDown();
+        awaitTermination(executor);
+    }
+
+    @Test
+    public void removeShutdownNowAndRejectionSeeOriginalTasks() throws Exception {
+        InstrumentedExecutor executor = executor("unwrap", new ArrayBlockingQueue<>(2));
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> await(release));
+        Runnable removed = () -> {
+        };
+        Runnable pending = () -> {
+        };
+        executor.execute(removed);
+        executor.execute(pending);
+        List<Runnable> rejected = new ArrayList<>();
+        executor.setRejectedExecutionHandler((r, e) -> rejected.add(r));
+        Runnable overflow = () -> {
+        };
+        executor.execute(overflow);
+        assertEquals(Collections.singletonList(overflow), rejected);
+        assertTrue(executor.remove(removed));
+        assertFalse(executor.remove(removed));
+        assertEquals(Collections.singletonList(pending), executor.shutdownNow());
+        release.countDown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void capturesSlowTaskStack() throws Exception {
+        InstrumentedExecutor executor = executor("slow", new LinkedBlockingQueue<>());
+        executor.setSlowThresholdMillis(50);
+        executor.execute(InstrumentedExecutorTest::slowMethod);
+        executor.execute(() -> {
+        });
+        awaitTermination(executor);
+        List<SlowTask> slowTasks = executor.getSlowTasks();
+        assertEquals(1, slowTasks.size());
+        assertEquals(1, executor.getSlowCount());
+        SlowTask task = slowTasks.get(0);
+        assertTrue(task.getElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(300));
+        assertTrue(task.toString(), Arrays.stream(task.getStackTrace())
+                .anyMatch(e -> e.getMethodName().equals("slowMethod")));
+    }
+
+    @Test
+    public void registryPublishesAndUnregisters() throws Exception {
+        InstrumentedExecutor executor = executor("registry-test", new LinkedBlockingQueue<>());
+        executor.submit(() -> {
+        }).get();
+        assertSame(executor, ExecutorRegistry.get("registry-test"));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(1L, server.getAttribute(ExecutorRegistry.objectName("registry-test"), "CompletedCount"));
+        String dump = ExecutorRegistry.dump();
+        assertTrue(dump, dump.contains("registry-test"));
+        assertTrue(executor.dump().contains("registry-test"));
+
+        awaitTermination(executor);
+        assertNull(ExecutorRegistry.get("registry-test"));
+        assertFalse(server.isRegistered(ExecutorRegistry.objectName("registry-test")));
+    }
+
+    private static void slowMethod() {
+        sleep(300);
+    }
+
+    private static InstrumentedExecutor executor(String name, java.util.concurrent.BlockingQueue<Runnable> queue) {
+        return InstrumentedExecutor.create(name, 1, 1, 0, TimeUnit.MILLISECONDS, queue, Executors.defaultThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private static void awaitTermination(InstrumentedExecutor executor) throws InterruptedException {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.xmxe.jdkfeature.thread.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WheelTimer、DelayQueue、ScheduledThreadPoolExecutor管理大量超时的对比
+ * 1.schedule:多个线程并发提交N个30~60分钟后到期的超时(模拟待支付订单)
+ * 2.memory:N个超时都在等待时,每个超时占用的堆内存(System.gc之后的已用堆差值/N,句柄数组提前分配不计入)
+ * 3.cancel:多个线程并发取消全部超时(模拟支付成功);DelayQueue.remove是O(n)遍历,只抽样取消前CANCEL_SAMPLE个再折算
+ * 4.expire:N个超时在1秒内陆续到期,统计全部执行完的速度和最大延迟
+ * ScheduledThreadPoolExecutor开启了removeOnCancelPolicy,否则取消的任务要等到期才从队列里移除
+ * 三者的任务对象都是共享的同一个实例,内存只统计定时器自身的结构和句柄
+ * 运行方式:java -Xmx4g WheelTimerBenchmark [N] [线程数]
+ */
+public class WheelTimerBenchmark {
+
+    private static final int CANCEL_SAMPLE = 20_000;
+
+    private static final Runnable NOOP = () -> {
+    };
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        for (int round = 0; round < 2; round++) {
+            System.out.println("round " + round + (round == 0 ? " (warm-up)" : "") + ", " + n + " timeouts, " + threads
+                    + " threads");
+            run(new WheelTimerSubject(), n, threads);
+            run(new DelayQueueSubject(), n, threads);
+            run(new ScheduledExecutorSubject(), n, threads);
+        }
+        System.exit(0);
+    }
+
+    private static void run(Subject subject, int n, int threads) throws Exception {
+        Object[] handles = new Object[n];
+        long baseline = usedHeap();
+
+        long begin = System.nanoTime();
+        parallel(threads, n, i -> handles[i] = subject.schedule(TimeUnit.MINUTES.toMillis(30)
+                + ThreadLocalRandom.current().nextLong(TimeUnit.MINUTES.toMillis(30))));
+        long scheduleNanos = System.nanoTime() - begin;
+        subject.settle();
+        double bytesPerTask = (usedHeap() - baseline) / (double) n;
+
+        int cancelled = subject.cancelIsLinear() ? Math.min(n, CANCEL_SAMPLE) : n;
+        begin = System.nanoTime();
+        parallel(threads, cancelled, i -> subject.cancel(handles[i]));
+        long cancelNanos = System.nanoTime() - begin;
+        subject.stop();
+        handles[0] = null;
+
+        Subject expiring = subject.fresh();
+        CountDownLatch fired = new CountDownLatch(n);
+        AtomicLong maxLate = new AtomicLong();
+        long start = System.currentTimeMillis();
+        begin = System.nanoTime();
+        parallel(threads, n, i -> {
+            long deadline = start + 100 + i % 1000;
+            expiring.schedule(deadline - System.currentTimeMillis(), () -> {
+                long late = System.currentTimeMillis() - deadline;
+                if (late > maxLate.get()) {
+                    maxLate.accumulateAndGet(late, Math::max);
+                }
+                fired.countDown();
+            });
+        });
+        fired.await();
+        long expireNanos = System.nanoTime() - begin;
+        expiring.stop();
+
+        System.out.printf("  %-30s schedule %10.0f ops/s  %6.1f B/task  cancel %10.0f ops/s%s  expire %10.0f ops/s max late %5d ms%n",
+                subject.name(), n * 1e9 / scheduleNanos, bytesPerTask, cancelled * 1e9 / cancelNanos,
+                cancelled < n ? " (sampled)" : "          ", n * 1e9 / expireNanos, maxLate.get());
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void parallel(int threads, int n, IntTask task) throws InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int from = (int) ((long) n * t / threads);
+            int to = (int) ((long) n * (t + 1) / threads);
+            workers.add(new Thread(() -> {
+                for (int i = from; i < to; i++) {
+                    task.run(i);
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    private interface IntTask {
+        void run(int i);
+    }
+
+    private interface Subject {
+
+        String name();
+
+        default Object schedule(long delayMs) {
+            return schedule(delayMs, NOOP);
+        }
+
+        Object schedule(long delayMs, Runnable task);
+
+        void cancel(Object handle);
+
+        default boolean cancelIsLinear() {
+            return false;
+        }
+
+        /**
+         * 等提交的超时真正进入数据结构
+         */
+        default void settle() throws InterruptedException {
+        }
+
+        void stop() throws InterruptedException;
+
+        Subject fresh();
+    }
+
+    private static final class WheelTimerSubject implements Subject {
+
+        private static final TimerTask NOOP_TASK = timeout -> {
+        };
+
+        private final WheelTimer timer = new WheelTimer("bench", 10, Runnable::run, 256);
+
+        @Override
+        public String name() {
+            return "WheelTimer";
+        }
+
+        @Override
+        public Object schedule(long delayMs) {
+            return timer.newTimeout(NOOP_TASK, delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public Object schedule(long delayMs, Runnable task) {
+            return timer.newTimeout(timeout -> task.run(), delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void cancel(Object handle) {
+            ((Timeout) handle).cancel();
+        }
+
+        @Override
+        public void settle() throws InterruptedException {
+            Thread.sleep(100);
+        }
+
+        @Override
+        public void stop() {
+            timer.stop();
+        }
+
+        @Override
+        public Subject fresh() {
+            return new WheelTimerSubject();
+        }
+    }
+
+    private static final class DelayQueueSubject implements Subject {
+
+        private final DelayQueue<DelayedTask> queue = new DelayQueue<>();
+
+        private final Thread consumer = new Thread(() -> {
+            try {
+                while (true) {
+                    queue.take().task.run();
+                }
+            } catch (InterruptedException e) {
+                // stop
+            }
+        });
+
+        DelayQueueSubject() {
+            consumer.start();
+        }
+
+        @Override
+        public String name() {
+            return "DelayQueue";
+        }
+
+        @Override
+        public Object schedule(long delayMs, Runnable task) {
+            DelayedTask delayed = new DelayedTask(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs), task);
+            queue.put(delayed);
+            return delayed;
+        }
+
+        @Override
+        public void cancel(Object handle) {
+            queue.remove(handle);
+        }
+
+        @Override
+        public boolean cancelIsLinear() {
+            return true;
+        }
+
+        @Override
+        public void stop() throws InterruptedException {
+            consumer.interrupt();
+            consumer.join();
+            queue.clear();
+        }
+
+        @Override
+        public Subject fresh() {
+            return new DelayQueueSubject();
+        }
+    }
+
+    private static final class DelayedTask implements Delayed {
+
+        private final long deadlineNanos;
+
+        private final Runnable task;
+
+        DelayedTask(long deadlineNanos, Runnable task) {
+            this.deadlineNanos = deadlineNanos;
+            this.task = task;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(deadlineNanos, ((DelayedTask) other).deadlineNanos);
+        }
+    }
+
+    private static final class ScheduledExecutorSubject implements Subject {
+
+        private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+
+        ScheduledExecutorSubject() {
+            executor.setRemoveOnCancelPolicy(true);
+        }
+
+        @Override
+        public String name() {
+            return "ScheduledThreadPoolExecutor";
+        }
+
+        @Override
+        public Object schedule(long delayMs, Runnable task) {
+            return executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void cancel(Object handle) {
+            ((Future<?>) handle).cancel(false);
+        }
+
+        @Override
+        public void stop() throws InterruptedException {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public Subject fresh() {
+            return new ScheduledExecutorSubject();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.xmxe.jdkfeature.thread.timer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class WheelTimerTest {
+
+    /**
+     * 不早于到期时间触发,晚的部分不超过一格加调度抖动,并且在工作线程池里执行
+     */
+    @Test
+    public void firesOnWorkersNotBeforeDeadline() throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(2);
+        WheelTimer timer = new WheelTimer("test", 10, workers, 256);
+        int n = 1000;
+        CountDownLatch fired = new CountDownLatch(n);
+        AtomicInteger early = new AtomicInteger();
+        AtomicInteger late = new AtomicInteger();
+        AtomicInteger onTick = new AtomicInteger();
+        for (int i = 0; i < n; i++) {
+            timer.newTimeout(timeout -> {
+                long now = System.currentTimeMillis();
+                if (now < timeout.deadline()) {
+                    early.incrementAndGet();
+                }
+                if (now > timeout.deadline() + 500) {
+                    late.incrementAndGet();
+                }
+                if (Thread.currentThread().getName().endsWith("-tick")) {
+                    onTick.incrementAndGet();
+                }
+                fired.countDown();
+            }, ThreadLocalRandom.current().nextInt(300), TimeUnit.MILLISECONDS);
+        }
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertEquals(0, early.get());
+        assertEquals(0, late.get());
+        assertEquals(0, onTick.get());
+        assertEquals(0, timer.pending());
+        timer.stop();
+        workers.shutdown();
+    }
+
+    /**
+     * 调用方留着的Timeout不能通过提交链表引用住之后提交的超时,取出后的超时执行完就能被回收
+     */
+    @Test
+    public void drainedTimeoutsCanBeCollected() throws Exception {
+        WheelTimer timer = new WheelTimer("test", 10, Runnable::run, 256);
+        Timeout held = timer.newTimeout(timeout -> { }, 1, TimeUnit.HOURS);
+        WeakReference<Timeout> drained = new WeakReference<>(timer.newTimeout(timeout -> { }, 0, TimeUnit.MILLISECONDS));
+        CountDownLatch fired = new CountDownLatch(1);
+        timer.newTimeout(timeout -> fired.countDown(), 0, TimeUnit.MILLISECONDS);
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        // 再提交一个,让上面的超时也不再是链表头
+        CountDownLatch fired2 = new CountDownLatch(1);
+        timer.newTimeout(timeout -> fired2.countDown(), 0, TimeUnit.MILLISECONDS);
+        assertTrue(fired2.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 50 && drained.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(drained.get());
+        assertFalse(held.isExpired());
+        timer.stop();
+    }
+
+    @Test
+    public void cancelledTimeoutsNeverRun() throws Exception {
+        WheelTimer timer = new WheelTimer("test", 10, Runnable::run, 256);
+        AtomicInteger runs = new AtomicInteger();
+        List<Timeout> timeouts = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            timeouts.add(timer.newTimeout(timeout -> runs.incrementAndGet(), 200, TimeUnit.MILLISECONDS));
+        }
+        for (int i = 0; i < timeouts.size(); i += 2) {
+            assertTrue(timeouts.get(i).cancel());
+            assertFalse(timeouts.get(i).cancel());
+        }
+        assertEquals(5_000, timer.pending());
+        Thread.sleep(500);
+        assertEquals(5_000, runs.get());
+        assertEquals(0, timer.pending());
+        for (int i = 0; i < timeouts.size(); i++) {
+            assertEquals(i % 2 == 0, timeouts.get(i).isCancelled());
+            assertEquals(i % 2 == 1, timeouts.get(i).isExpired());
+            // 已经到期的不能再取消
+            assertFalse(timeouts.get(i).cancel());
+        }
+        timer.stop();
+    }
+
+    /**
+     * 多个线程并发提交,每个超时恰好执行一次
+     */
+    @Test
+    public void concurrentScheduleFiresExactlyOnce() throws Exception {
+        WheelTimer timer = new WheelTimer("test", 5, Runnable::run, 256);
+        int threads = 8;
+        int perThread = 20_000;
+        Set<Timeout> seen = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        CountDownLatch fired = new CountDownLatch(threads * perThread);
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    timer.newTimeout(timeout -> {
+                        if (!seen.add(timeout)) {
+                            duplicates.incrementAndGet();
+                        }
+                        fired.countDown();
+                    }, ThreadLocalRandom.current().nextInt(100), TimeUnit.MILLISECONDS);
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertTrue(fired.await(10, TimeUnit.SECONDS));
+        assertEquals(0, duplicates.get());
+        timer.stop();
+    }
+
+    /**
+     * 同一格到期的超时按batchSize打包提交
+     */
+    @Test
+    public void expiredTimeoutsAreDispatchedInBatches() throws Exception {
+        AtomicInteger batches = new AtomicInteger();
+        WheelTimer timer = new WheelTimer("test", 10, r -> {
+            batches.incrementAndGet();
+            r.run();
+        }, 100);
+        CountDownLatch fired = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            timer.newTimeout(timeout -> fired.countDown(), 100, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        // 1000个超时最多落在几格里,每格最多多出一个不满的批次
+        assertTrue("batches " + batches.get(), batches.get() >= 10 && batches.get() <= 20);
+        timer.stop();
+    }
+
+    /**
+     * 持久化的超时在重启后装回,取消和执行过的不会再出现
+     */
+    @Test
+    public void persistentTimeoutsSurviveRestart() throws Exception {
+        Path dir = Files.createTempDirectory("wheel-timer");
+        Path path = dir.resolve("timeouts.log");
+        Set<String> fired = ConcurrentHashMap.newKeySet();
+
+        WheelTimer first = new WheelTimer("test", 10, Runnable::run, 256);
+        assertEquals(0, first.recover(new TimeoutJournal(path), timeout -> fired.add(timeout.key())));
+        first.newTimeout("order-1", 300, TimeUnit.MILLISECONDS);
+        first.newTimeout("order-2", 60, TimeUnit.SECONDS);
+        first.newTimeout("order-3", 60, TimeUnit.SECONDS);
+        first.newTimeout("order-4", 10, TimeUnit.MILLISECONDS);
+        // 同一个key重新计时,旧的被取消
+        first.newTimeout("order-2", 120, TimeUnit.SECONDS);
+        assertTrue(first.cancel("order-3"));
+        Thread.sleep(150);
+        assertTrue(fired.contains("order-4"));
+        assertEquals(2, first.stop());
+
+        // 重启:order-1在停机期间到期,装回后立即执行
+        Thread.sleep(300);
+        WheelTimer second = new WheelTimer("test", 10, Runnable::run, 256);
+        assertEquals(2, second.recover(new TimeoutJournal(path), timeout -> fired.add(timeout.key())));
+        Thread.sleep(100);
+        assertTrue(fired.contains("order-1"));
+        assertFalse(fired.contains("order-2"));
+        assertFalse(fired.contains("order-3"));
+        assertEquals(1, second.pending());
+        second.stop();
+
+        Map<String, Long> left = new TimeoutJournal(path).load();
+        assertEquals(1, left.size());
+        long expected = System.currentTimeMillis() + 120_000;
+        assertTrue(Math.abs(left.get("order-2") - expected) < 2_000);
+
+        // 末尾写了一半的记录被丢弃,前面的内容照常装回
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(file.length());
+            file.write(new byte[] {0, 0, 0, 40, 1, 2, 3});
+        }
+        WheelTimer third = new WheelTimer("test", 10, Runnable::run, 256);
+        assertEquals(1, third.recover(new TimeoutJournal(path), timeout -> fired.add(timeout.key())));
+        assertTrue(third.cancel("order-2"));
+        third.stop();
+        assertEquals(0, new TimeoutJournal(path).load().size());
+    }
+
+    @Test
+    public void journalIsCompactedWhenMostRecordsAreDone() throws Exception {
+        Path path = Files.createTempDirectory("wheel-timer").resolve("timeouts.log");
+        WheelTimer timer = new WheelTimer("test", 10, Runnable::run, 256);
+        timer.recover(new TimeoutJournal(path), timeout -> {
+        });
+        for (int i = 0; i < 150_000; i++) {
+            timer.newTimeout("order-" + i, 1, TimeUnit.HOURS);
+        }
+        Thread.sleep(200);
+        for (int i = 0; i < 149_000; i++) {
+            timer.cancel("order-" + i);
+        }
+        Thread.sleep(300);
+        timer.stop();
+        // 不压缩时约30万条记录9MB左右;记录数不到10万时不再压缩,所以文件里还会有一些DONE
+        assertTrue("size " + Files.size(path), Files.size(path) < 1024 * 1024);
+        assertEquals(1000, new TimeoutJournal(path).load().size());
+    }
+}
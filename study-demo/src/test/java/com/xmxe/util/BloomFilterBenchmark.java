@@ -0,0 +1,77 @@
+package com.xmxe.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+import com.google.common.hash.Funnels;
+
+/**
+ * 与Guava BloomFilter对比吞吐量和实际误判率
+ * 运行方式:java BloomFilterBenchmark [插入数量] [线程数]
+ */
+public class BloomFilterBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        double fpp = 0.01;
+        String[] keys = new String[n];
+        String[] absent = new String[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = "key" + i;
+            absent[i] = "absent" + i;
+        }
+
+        for (int round = 0; round < 2; round++) {
+            BloomFilter filter = new BloomFilter(n, fpp);
+            com.google.common.hash.BloomFilter<String> guava = com.google.common.hash.BloomFilter
+                    .create(Funnels.stringFunnel(StandardCharsets.UTF_8), n, fpp);
+
+            long ours = run(threads, keys, key -> filter.add(key));
+            long theirs = run(threads, keys, key -> guava.put(key));
+            report(round, "add", n, ours, theirs);
+
+            ours = run(threads, absent, key -> filter.contains(key));
+            theirs = run(threads, absent, key -> guava.mightContain(key));
+            report(round, "contains", n, ours, theirs);
+
+            if (round == 1) {
+                int ourFp = 0;
+                int guavaFp = 0;
+                for (String key : absent) {
+                    ourFp += filter.contains(key) ? 1 : 0;
+                    guavaFp += guava.mightContain(key) ? 1 : 0;
+                }
+                System.out.printf("fpp: BloomFilter %.4f%%, Guava %.4f%%, bits %,d%n", ourFp * 100.0 / n,
+                        guavaFp * 100.0 / n, filter.bitSize());
+            }
+        }
+    }
+
+    private static void report(int round, String op, int n, long ours, long theirs) {
+        if (round == 0) {
+            // 第一轮是预热
+            return;
+        }
+        System.out.printf("%-9s BloomFilter %,.0f ops/s, Guava %,.0f ops/s%n", op, n * 1e9 / ours, n * 1e9 / theirs);
+    }
+
+    private static long run(int threads, String[] keys, java.util.function.Consumer<String> op)
+            throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(threads);
+        int per = keys.length / threads;
+        long begin = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int start = t * per;
+            int end = t == threads - 1 ? keys.length : start + per;
+            new Thread(() -> {
+                for (int i = start; i < end; i++) {
+                    op.accept(keys[i]);
+                }
+                latch.countDown();
+            }).start();
+        }
+        latch.await();
+        return System.nanoTime() - begin;
+    }
+}
@@ -0,0 +1,92 @@
+package com.xmxe.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.hash.Hashing;
+
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+    /**
+     * 与Guava的murmur3_128结果一致
+     */
+    @Test
+    public void murmur3MatchesGuava() {
+        String[] values = { "", "a", "abc", "123456789012345", "1234567890123456", "12345678901234567", "八股文",
+                "the quick brown fox jumps over the lazy dog" };
+        for (String value : values) {
+            byte[] guava = Hashing.murmur3_128().hashString(value, StandardCharsets.UTF_8).asBytes();
+            long[] hash = Murmur3.hash128(value);
+            ByteBuffer buffer = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putLong(hash[0]).putLong(hash[1]);
+            assertArrayEquals(value, guava, buffer.array());
+        }
+    }
+
+    @Test
+    public void falsePositiveRate() {
+        BloomFilter filter = new BloomFilter(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            filter.add("in" + i);
+        }
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(filter.contains("in" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.contains("out" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("fpp=" + falsePositives / 100_000.0, falsePositives < 1_500);
+        assertTrue(Math.abs(filter.approximateElementCount() - 100_000) < 2_000);
+    }
+
+    @Test
+    public void serialize() {
+        BloomFilter filter = new BloomFilter(1_000, 0.001);
+        for (int i = 0; i < 1_000; i++) {
+            filter.add("v" + i);
+        }
+        byte[] bytes = filter.toByteArray();
+        assertEquals(6 + filter.bitSize() / 8, bytes.length);
+        BloomFilter copy = BloomFilter.fromByteArray(bytes);
+        assertEquals(filter.numHashFunctions(), copy.numHashFunctions());
+        assertEquals(filter.expectedFpp(), copy.expectedFpp(), 1e-12);
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(copy.contains("v" + i));
+        }
+    }
+
+    /**
+     * 并发写入不能丢位
+     */
+    @Test
+    public void concurrentAdd() throws InterruptedException {
+        BloomFilter filter = new BloomFilter(200_000, 0.01);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            int start = t * 25_000;
+            pool.execute(() -> {
+                for (int i = start; i < start + 25_000; i++) {
+                    filter.add("c" + i);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+        for (int i = 0; i < 200_000; i++) {
+            assertTrue(filter.contains("c" + i));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.xmxe.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * 单个大文件和大量小文件目录树的复制/删除耗时
+ * 大文件:旧FileUtils.copy(4KB byte[]循环)、Files.copy、FileCopier单任务transferTo、FileCopier 4个任务分段并行
+ * 目录树:旧写法(递归listFiles + byte[]循环复制 / 递归delete)和FileCopier.copyTree/deleteTree(4个任务有界并行遍历)
+ * 计时包含最后的sync:数据落盘才算复制完成,不然结果主要取决于脏页什么时候开始回写;每项之前也先sync
+ * 运行方式:java FileCopierBenchmark [大文件GB] [小文件数]
+ */
+public class FileCopierBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        double gigabytes = args.length > 0 ? Double.parseDouble(args[0]) : 10;
+        int smallFiles = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        Path dir = Files.createTempDirectory("copier-bench");
+        try {
+            largeFile(dir, (long) (gigabytes * (1L << 30)));
+            tree(dir, smallFiles);
+        } finally {
+            FileCopier.DEFAULT.deleteTree(dir);
+        }
+        System.exit(0);
+    }
+
+    private static void largeFile(Path dir, long size) throws Exception {
+        Path src = dir.resolve("large.bin");
+        byte[] block = new byte[1 << 20];
+        new Random(1).nextBytes(block);
+        try (OutputStream out = Files.newOutputStream(src)) {
+            for (long written = 0; written < size; written += block.length) {
+                out.write(block);
+            }
+        }
+        System.out.printf("single file %.1f GB, %d CPUs%n", Files.size(src) / (double) (1L << 30),
+                Runtime.getRuntime().availableProcessors());
+        Path dst = dir.resolve("large.copy");
+        FileCopier sequential = new FileCopier(1, FileCopier.DEFAULT_RANGE_SIZE, null);
+        // 跑两轮,减少先后顺序(页缓存、删除上一个目标文件的回收)的影响
+        for (int round = 0; round < 2; round++) {
+            time("FileUtils.copy (old)", Files.size(src), () -> oldCopy(src.toFile(), dst.toFile()), dst);
+            time("Files.copy", Files.size(src), () -> Files.copy(src, dst, StandardCopyOption.REPLACE_EXISTING), dst);
+            time("FileCopier 1 task", Files.size(src), () -> sequential.copy(src, dst), dst);
+            time("FileCopier 4 ranges", Files.size(src), () -> FileCopier.DEFAULT.copy(src, dst), dst);
+        }
+        Files.delete(src);
+    }
+
+    private static void tree(Path dir, int files) throws Exception {
+        Path src = dir.resolve("tree");
+        // 每个目录1000个文件,每个文件几百字节到几KB
+        Random random = new Random(2);
+        byte[] content = new byte[8192];
+        random.nextBytes(content);
+        long bytes = 0;
+        for (int i = 0; i < files; i++) {
+            Path parent = src.resolve("d" + (i / 100_000)).resolve("d" + (i / 1000 % 100));
+            if (i % 1000 == 0) {
+                Files.createDirectories(parent);
+            }
+            int length = 200 + random.nextInt(4000);
+            try (OutputStream out = Files.newOutputStream(parent.resolve("f" + i))) {
+                out.write(content, 0, length);
+            }
+            bytes += length;
+        }
+        System.out.printf("tree of %d files, %d MB%n", files, bytes >> 20);
+        Path dst = dir.resolve("tree.copy");
+        timeTree("copy (old)", files, () -> oldCopyDir(src.toFile(), dst.toFile()));
+        timeTree("delete (old)", files, () -> oldDelete(dst.toFile()));
+        timeTree("FileCopier.copyTree", files, () -> FileCopier.DEFAULT.copyTree(src, dst));
+        timeTree("FileCopier.deleteTree", files, () -> FileCopier.DEFAULT.deleteTree(dst));
+        FileCopier.DEFAULT.deleteTree(src);
+    }
+
+    private static void time(String name, long size, Task task, Path dst) throws Exception {
+        sync();
+        long begin = System.nanoTime();
+        task.run();
+        sync();
+        long elapsed = System.nanoTime() - begin;
+        if (Files.size(dst) != size) {
+            throw new IllegalStateException(name + " copied " + Files.size(dst));
+        }
+        System.out.printf("  %-24s %8d ms %8.0f MB/s%n", name, elapsed / 1_000_000, (size >> 20) * 1e9 / elapsed);
+        Files.delete(dst);
+    }
+
+    private static void timeTree(String name, int files, Task task) throws Exception {
+        sync();
+        long begin = System.nanoTime();
+        task.run();
+        sync();
+        long elapsed = System.nanoTime() - begin;
+        System.out.printf("  %-24s %8d ms %8.0f files/s%n", name, elapsed / 1_000_000, files * 1e9 / elapsed);
+    }
+
+    private static void sync() throws Exception {
+        new ProcessBuilder("sync").inheritIO().start().waitFor();
+    }
+
+    /**
+     * 改动前的FileUtils.copy
+     */
+    private static void oldCopy(File src, File dst) throws Exception {
+        int bufferSize = 4096;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(src), bufferSize);
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(dst), bufferSize)) {
+            byte[] buffer = new byte[bufferSize];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                out.write(buffer, 0, len);
+            }
+        }
+    }
+
+    private static void oldCopyDir(File src, File dst) throws Exception {
+        dst.mkdirs();
+        File[] children = src.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            File target = new File(dst, child.getName());
+            if (child.isDirectory()) {
+                oldCopyDir(child, target);
+            } else {
+                oldCopy(child, target);
+            }
+        }
+    }
+
+    /**
+     * 改动前的FileUtils.deleteEveryThing
+     */
+    private static void oldDelete(File file) {
+        if (file.isFile()) {
+            file.delete();
+            return;
+        }
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                oldDelete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,156 @@
+package com.xmxe.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class FileCopierTest {
+
+    private static final int RANGE = 64 * 1024;
+
+    private final FileCopier copier = new FileCopier(3, RANGE, null);
+
+    private static byte[] random(int size, int seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void copiesSmallAndRangedFiles() throws Exception {
+        Path dir = Files.createTempDirectory("copier");
+        try {
+            for (int size : new int[] {0, 10_000, 2 * RANGE, 10 * RANGE + 13}) {
+                byte[] content = random(size, size);
+                Path src = dir.resolve("src-" + size);
+                Path dst = dir.resolve("dst-" + size);
+                Files.write(src, content);
+                // 已存在且更长的目标文件被覆盖
+                Files.write(dst, random(size + 5000, 1));
+                copier.copy(src, dst);
+                assertArrayEquals(content, Files.readAllBytes(dst));
+                assertFalse(Files.exists(FileCopier.checkpointOf(dst)));
+            }
+        } finally {
+            FileCopier.DEFAULT.deleteTree(dir);
+        }
+    }
+
+    /**
+     * 模拟中断:checkpoint记录区段0已完成,其余区段被破坏;再次复制只重做没完成的区段
+     * 区段0故意写成标记字节,复制后仍是标记,说明确实被跳过了;源文件改动后checkpoint失效,从头复制
+     */
+    @Test
+    public void resumesFromCheckpoint() throws Exception {
+        Path dir = Files.createTempDirectory("copier");
+        try {
+            byte[] content = random(10 * RANGE, 3);
+            Path src = dir.resolve("src");
+            Path dst = dir.resolve("dst");
+            Files.write(src, content);
+            byte[] interrupted = new byte[content.length];
+            Arrays.fill(interrupted, 0, RANGE, (byte) 0x5A);
+            Files.write(dst, interrupted);
+            BitSet done = new BitSet();
+            done.set(0);
+            new FileCopier.Checkpoint(content.length, Files.getLastModifiedTime(src).toMillis(), RANGE, done)
+                    .save(FileCopier.checkpointOf(dst));
+
+            copier.copy(src, dst);
+            byte[] resumed = Files.readAllBytes(dst);
+            assertArrayEquals(Arrays.copyOfRange(interrupted, 0, RANGE), Arrays.copyOfRange(resumed, 0, RANGE));
+            assertArrayEquals(Arrays.copyOfRange(content, RANGE, content.length), Arrays.copyOfRange(resumed, RANGE, resumed.length));
+            assertFalse(Files.exists(FileCopier.checkpointOf(dst)));
+
+            new FileCopier.Checkpoint(content.length, Files.getLastModifiedTime(src).toMillis(), RANGE, done)
+                    .save(FileCopier.checkpointOf(dst));
+            Files.setLastModifiedTime(src, FileTime.fromMillis(Files.getLastModifiedTime(src).toMillis() - 60_000));
+            copier.copy(src, dst);
+            assertArrayEquals(content, Files.readAllBytes(dst));
+        } finally {
+            FileCopier.DEFAULT.deleteTree(dir);
+        }
+    }
+
+    @Test
+    public void checkpointRoundTrip() throws Exception {
+        Path file = Files.createTempFile("checkpoint", ".bin");
+        try {
+            BitSet done = new BitSet();
+            done.set(3);
+            done.set(130);
+            new FileCopier.Checkpoint(1L << 40, 42, RANGE, done).save(file);
+            FileCopier.Checkpoint loaded = FileCopier.Checkpoint.load(file);
+            assertTrue(loaded.matches(1L << 40, 42, RANGE));
+            assertFalse(loaded.matches(1L << 40, 43, RANGE));
+            assertTrue(loaded.isDone(3) && loaded.isDone(130) && !loaded.isDone(4));
+            assertEquals(2, loaded.doneCount());
+            // 损坏的checkpoint当作没有
+            Files.write(file, new byte[] {1, 2, 3});
+            assertEquals(null, FileCopier.Checkpoint.load(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void copiesAndDeletesDirectoryTrees() throws Exception {
+        Path src = Files.createTempDirectory("tree-src");
+        Path dst = Files.createTempDirectory("tree-dst").resolve("copy");
+        try {
+            int files = 0;
+            for (int a = 0; a < 5; a++) {
+                for (int b = 0; b < 4; b++) {
+                    Path leaf = Files.createDirectories(src.resolve("a" + a).resolve("b" + b).resolve("c"));
+                    for (int f = 0; f < 10; f++) {
+                        Files.write(leaf.resolve("f" + f), random(f * 100, a * 100 + b * 10 + f));
+                        files++;
+                    }
+                }
+            }
+            Files.createDirectories(src.resolve("empty"));
+            Files.write(src.resolve("big"), random(5 * RANGE, 9));
+            files++;
+            Files.createSymbolicLink(src.resolve("link"), src.resolve("big"));
+            files++;
+
+            assertEquals(files, FileUtils.copyDir(src.toFile(), dst.toFile()));
+            try (Stream<Path> walk = Files.walk(src)) {
+                for (Path path : (Iterable<Path>) walk::iterator) {
+                    Path copy = dst.resolve(src.relativize(path).toString());
+                    assertEquals(path.toString(), Files.isDirectory(path), Files.isDirectory(copy));
+                    if (Files.isSymbolicLink(path)) {
+                        assertEquals(Files.readSymbolicLink(path), Files.readSymbolicLink(copy));
+                    } else if (Files.isRegularFile(path)) {
+                        assertArrayEquals(Files.readAllBytes(path), Files.readAllBytes(copy));
+                    }
+                }
+            }
+            // 删除链接本身,不删链接指向的文件
+            Path outside = Files.createTempFile("outside", ".txt");
+            Files.createSymbolicLink(dst.resolve("outside-link"), outside);
+            FileUtils.deleteEveryThing(dst.toString());
+            assertFalse(Files.exists(dst));
+            assertTrue(Files.exists(outside));
+            Files.delete(outside);
+
+            FileUtils.deleteDir(src.toFile());
+            assertFalse(Files.exists(src));
+            assertEquals(0, copier.deleteTree(src));
+        } finally {
+            FileCopier.DEFAULT.deleteTree(src);
+            FileCopier.DEFAULT.deleteTree(dst.getParent());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.xmxe.util;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.xmxe.util.httpclient.apache.HttpClientUtil;
+
+/**
+ * HttpClientUtil.getAsync的并发能力:桩服务每个请求延迟DELAY_MS后返回,同时发出N个请求,
+ * 统计全部完成的耗时和服务端看到的最大同时在途请求数
+ * 虚拟线程下耗时应接近DELAY_MS且在途数等于N;平台线程池下在途数被池大小限制,耗时随N线性增长
+ * 桩服务放在子进程里,10k个连接的客户端和服务端两头各占一个文件描述符,同一进程会超过ulimit
+ * 运行方式:
+ * java IoExecutorsLoadBenchmark                         (JDK21+虚拟线程)
+ * java -Dio.executor.virtual=false IoExecutorsLoadBenchmark  (平台线程池)
+ */
+public class IoExecutorsLoadBenchmark {
+
+    private static final int DELAY_MS = 200;
+
+    private static final int[] IN_FLIGHT = {100, 1000, 10_000};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "server".equals(args[0])) {
+            serve();
+            return;
+        }
+        Process server = new ProcessBuilder(System.getProperty("java.home") + "/bin/java",
+                "-cp", System.getProperty("java.class.path"), IoExecutorsLoadBenchmark.class.getName(), "server")
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+            int port = Integer.parseInt(reader.readLine().trim());
+            String url = "http://127.0.0.1:" + port;
+            System.out.println("mode " + (IoExecutors.isVirtual() ? "virtual threads" : "platform pool")
+                    + ", server delay " + DELAY_MS + "ms");
+            // 预热,顺便清零peak
+            run(url, 100);
+            HttpClientUtil.get(url + "/peak");
+            for (int n : IN_FLIGHT) {
+                // 第一轮要新建连接,第二轮复用连接池里的连接
+                for (String round : new String[] {"cold", "warm"}) {
+                    long begin = System.nanoTime();
+                    int failed = run(url, n);
+                    long elapsed = System.nanoTime() - begin;
+                    String peak = HttpClientUtil.get(url + "/peak").trim();
+                    System.out.printf("  in-flight %6d %s: %7d ms, %8.0f calls/s, server peak %s, failed %d%n", n, round,
+                            elapsed / 1_000_000, n * 1e9 / elapsed, peak, failed);
+                }
+            }
+        } finally {
+            server.destroy();
+        }
+        System.exit(0);
+    }
+
+    private static int run(String url, int n) throws InterruptedException {
+        List<CompletableFuture<String>> futures = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            futures.add(HttpClientUtil.getAsync(url + "/delay"));
+        }
+        int failed = 0;
+        for (CompletableFuture<String> future : futures) {
+            try {
+                future.join();
+            } catch (RuntimeException e) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 极简的HTTP/1.1桩服务,每个连接一个任务(JDK21+是虚拟线程),支持keep-alive,只处理不带body的请求
+     * JDK自带的HttpServer单线程accept和解析,单核下每秒只能处理几百个新连接,自己先成了瓶颈
+     */
+    private static void serve() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        ExecutorService handlers = IoExecutors.isVirtual() ? IoExecutors.executor() : Executors.newCachedThreadPool();
+        ServerSocket server = new ServerSocket(0, 16384, InetAddress.getLoopbackAddress());
+        System.out.println(server.getLocalPort());
+        System.out.flush();
+        while (true) {
+            Socket socket = server.accept();
+            handlers.execute(() -> {
+                try (Socket s = socket;
+                     BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.ISO_8859_1));
+                     OutputStream out = s.getOutputStream()) {
+                    String requestLine;
+                    while ((requestLine = in.readLine()) != null) {
+                        String line;
+                        while ((line = in.readLine()) != null && !line.isEmpty()) {
+                            // 跳过请求头
+                        }
+                        String body;
+                        if (requestLine.contains(" /peak")) {
+                            // 读取后清零
+                            body = String.valueOf(peak.getAndSet(0));
+                        } else {
+                            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                            Thread.sleep(DELAY_MS);
+                            inFlight.decrementAndGet();
+                            body = "ok";
+                        }
+                        out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: " + body.length()
+                                + "\r\n\r\n" + body).getBytes(StandardCharsets.ISO_8859_1));
+                        out.flush();
+                    }
+                } catch (Exception e) {
+                    // 客户端断开
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.xmxe.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+import com.xmxe.util.httpclient.apache.HttpClientUtil;
+
+public class IoExecutorsTest {
+
+    @Test
+    public void usesVirtualThreadsWhenRuntimeSupportsThem() throws Exception {
+        boolean supported = Runtime.version().feature() >= 21
+                && Boolean.parseBoolean(System.getProperty("io.executor.virtual", "true"));
+        assertEquals(supported, IoExecutors.isVirtual());
+        int threads = supported ? 2000 : 16;
+        // 所有任务同时阻塞,只有并发数达到threads时闸门才会打开
+        CountDownLatch allStarted = new CountDownLatch(threads);
+        ExecutorService executor = supported ? IoExecutors.executor() : IoExecutors.newPlatformExecutor("test-io", threads);
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(IoExecutors.supplyAsync(() -> {
+                allStarted.countDown();
+                return allStarted.await(10, TimeUnit.SECONDS);
+            }, executor));
+        }
+        for (CompletableFuture<Boolean> future : futures) {
+            assertTrue(future.get(20, TimeUnit.SECONDS));
+        }
+        if (!supported) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void checkedExceptionIsWrapped() throws Exception {
+        CompletableFuture<String> future = IoExecutors.supplyAsync(() -> {
+            throw new IOException("refused");
+        });
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            return;
+        }
+        throw new AssertionError("expected failure");
+    }
+
+    @Test
+    public void platformPoolRunsOnCallerWhenSaturated() throws Exception {
+        ExecutorService executor = IoExecutors.newPlatformExecutor("test-saturated", 1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger onCaller = new AtomicInteger();
+        Thread caller = Thread.currentThread();
+        // 1个线程 + 4个排队,第6个由提交线程执行
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(IoExecutors.supplyAsync(() -> release.await(5, TimeUnit.SECONDS), executor));
+        }
+        IoExecutors.supplyAsync(() -> Thread.currentThread() == caller ? onCaller.incrementAndGet() : 0, executor);
+        assertEquals(1, onCaller.get());
+        release.countDown();
+        for (CompletableFuture<Boolean> future : futures) {
+            assertTrue(future.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void httpAsyncAgainstStubServer() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/ping", exchange -> {
+            byte[] body = "pong".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/ping";
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(HttpClientUtil.getAsync(url));
+            }
+            for (CompletableFuture<String> future : futures) {
+                assertEquals("pong", future.get(20, TimeUnit.SECONDS).trim());
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+}
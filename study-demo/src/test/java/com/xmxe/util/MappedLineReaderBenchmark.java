@@ -0,0 +1,165 @@
+package com.xmxe.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 在一个几GB的日志文件上对比:
+ * BufferedReader       逐行readLine,统计含ERROR的行(不留在内存里,是旧写法的最好情况)
+ * readFileContent(旧)  BufferedReader读进ArrayList<String>,堆放不下时记录OOM
+ * mapped               MappedLineReader.forEachLine,CharSequence视图上查找
+ * mapped parallel      MappedLineReader.parallelCollect,ForkJoinPool按块并行
+ * 随机访问:旧readLineContent每次从头readLine到第n行;MappedLineReader建一次稀疏索引后line(n)
+ * 文件比内存大时各项主要受磁盘读速度限制,每项跑两遍,第二遍能用上的页缓存各项一样多
+ * 运行方式:java -Xmx1g MappedLineReaderBenchmark [文件大小GB]
+ */
+public class MappedLineReaderBenchmark {
+
+    private static final String[] LEVELS = {"INFO ", "INFO ", "INFO ", "DEBUG", "WARN "};
+
+    public static void main(String[] args) throws Exception {
+        double gigabytes = args.length > 0 ? Double.parseDouble(args[0]) : 5;
+        long size = (long) (gigabytes * (1L << 30));
+        Path file = Files.createTempFile("mapped-bench", ".log");
+        try {
+            long lines = generate(file, size);
+            System.out.printf("%.1f GB, %d lines, %d CPUs, max heap %d MB%n", size / (double) (1L << 30), lines,
+                    Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory() >> 20);
+            for (int round = 0; round < 2; round++) {
+                bufferedReader(file);
+                readFileContentIntoList(file);
+                mapped(file, false);
+                mapped(file, true);
+            }
+            randomAccess(file, lines);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static long generate(Path file, long size) throws Exception {
+        Random random = new Random(1);
+        long lines = 0;
+        long written = 0;
+        StringBuilder line = new StringBuilder(160);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            while (written < size) {
+                line.setLength(0);
+                line.append("2024-05-01 12:").append(10 + random.nextInt(50)).append(':').append(10 + random.nextInt(50))
+                        .append(' ').append(random.nextInt(100) == 0 ? "ERROR" : LEVELS[random.nextInt(LEVELS.length)])
+                        .append(" [order-worker-").append(random.nextInt(16)).append("] order ").append(random.nextInt(1_000_000))
+                        .append(" processed in ").append(random.nextInt(500)).append("ms");
+                for (int i = random.nextInt(60); i > 0; i--) {
+                    line.append((char) ('a' + random.nextInt(26)));
+                }
+                line.append('\n');
+                writer.append(line);
+                written += line.length();
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private static void bufferedReader(Path file) throws Exception {
+        long begin = System.nanoTime();
+        long errors = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.contains("ERROR")) {
+                    errors++;
+                }
+            }
+        }
+        print("BufferedReader", file, begin, "errors " + errors);
+    }
+
+    private static void readFileContentIntoList(Path file) throws Exception {
+        long begin = System.nanoTime();
+        List<String> lines = new ArrayList<>();
+        String result;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            result = "lines " + lines.size();
+        } catch (OutOfMemoryError e) {
+            int loaded = lines.size();
+            lines = null;
+            result = "OutOfMemoryError after " + loaded + " lines";
+        }
+        lines = null;
+        System.gc();
+        print("readFileContent (old)", file, begin, result);
+    }
+
+    private static void mapped(Path file, boolean parallel) throws Exception {
+        long begin = System.nanoTime();
+        long errors;
+        try (MappedLineReader reader = MappedLineReader.open(file, StandardCharsets.UTF_8)) {
+            if (parallel) {
+                errors = reader.parallelCollect(() -> new long[1], (count, line) -> {
+                    if (MappedLineReader.contains(line, "ERROR")) {
+                        count[0]++;
+                    }
+                }, (a, b) -> {
+                    a[0] += b[0];
+                    return a;
+                })[0];
+            } else {
+                long[] count = new long[1];
+                reader.forEachLine(line -> {
+                    if (MappedLineReader.contains(line, "ERROR")) {
+                        count[0]++;
+                    }
+                });
+                errors = count[0];
+            }
+        }
+        print(parallel ? "mapped parallel" : "mapped", file, begin, "errors " + errors);
+    }
+
+    private static void randomAccess(Path file, long lines) throws Exception {
+        Random random = new Random(3);
+        long target = lines / 2;
+        long begin = System.nanoTime();
+        String old = null;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (long i = 0; i <= target; i++) {
+                old = reader.readLine();
+            }
+        }
+        System.out.printf("  %-22s line %d: %8d ms per call%n", "readLineContent (old)", target,
+                (System.nanoTime() - begin) / 1_000_000);
+        try (MappedLineReader reader = MappedLineReader.open(file, StandardCharsets.UTF_8)) {
+            begin = System.nanoTime();
+            reader.lineCount();
+            System.out.printf("  %-22s index build: %8d ms once%n", "MappedLineReader", (System.nanoTime() - begin) / 1_000_000);
+            if (!old.equals(reader.line(target))) {
+                throw new IllegalStateException("line mismatch");
+            }
+            int calls = 1_000_000;
+            long checksum = 0;
+            begin = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                checksum += reader.line((long) (random.nextDouble() * lines)).length();
+            }
+            System.out.printf("  %-22s random line(n): %8.0f ns per call (checksum %d)%n", "MappedLineReader",
+                    (System.nanoTime() - begin) / (double) calls, checksum);
+        }
+    }
+
+    private static void print(String name, Path file, long begin, String result) throws Exception {
+        long elapsed = System.nanoTime() - begin;
+        System.out.printf("  %-22s %8d ms %8.0f MB/s  %s%n", name, elapsed / 1_000_000,
+                (Files.size(file) >> 20) * 1e9 / elapsed, result);
+    }
+}
@@ -0,0 +1,171 @@
+package com.xmxe.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MappedLineReaderTest {
+
+    private static Path write(String content) throws Exception {
+        Path file = Files.createTempFile("lines", ".log");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    /**
+     * 随机长度的行(含空行、\r\n、比块还长的行),在不同块大小下逐行、并行、按行号读取的结果都一致
+     */
+    @Test
+    public void sameLinesForAnyChunkSize() throws Exception {
+        Random random = new Random(42);
+        List<String> expected = new ArrayList<>();
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            int length = random.nextInt(10) == 0 ? 0 : random.nextInt(i % 500 == 0 ? 3000 : 80);
+            StringBuilder line = new StringBuilder();
+            for (int j = 0; j < length; j++) {
+                line.append((char) ('a' + random.nextInt(26)));
+            }
+            expected.add(line.toString());
+            content.append(line).append(random.nextBoolean() ? "\r\n" : "\n");
+        }
+        // 最后一行没有换行符
+        expected.add("tail");
+        content.append("tail");
+        Path file = write(content.toString());
+        for (int chunkSize : new int[] {1, 7, 1000, 64 * 1024, MappedLineReader.DEFAULT_CHUNK_SIZE}) {
+            try (MappedLineReader reader = MappedLineReader.open(file, StandardCharsets.UTF_8, chunkSize)) {
+                List<String> sequential = new ArrayList<>();
+                reader.forEachLine(line -> sequential.add(line.toString()));
+                assertEquals("chunk " + chunkSize, expected, sequential);
+
+                List<String> parallel = reader.parallelCollect(ArrayList::new, (list, line) -> list.add(line.toString()),
+                        (a, b) -> {
+                            a.addAll(b);
+                            return a;
+                        });
+                assertEquals("chunk " + chunkSize, expected, parallel);
+
+                // 建索引之前按行号顺序扫描
+                for (int i : new int[] {0, 1, 63, 64, 2500, expected.size() - 1}) {
+                    assertEquals("chunk " + chunkSize + " line " + i, expected.get(i), reader.findLine(i));
+                }
+                assertNull(reader.findLine(expected.size()));
+                assertNull(reader.findLine(-1));
+                assertEquals(expected.subList(63, 200), reader.findLines(63, 199));
+
+                assertEquals(expected.size(), reader.lineCount());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals("chunk " + chunkSize + " line " + i, expected.get(i), reader.line(i));
+                }
+                assertNull(reader.line(expected.size()));
+                assertNull(reader.line(-1));
+                assertEquals(expected.subList(63, 200), reader.lines(63, 199));
+                assertEquals(expected.subList(expected.size() - 2, expected.size()), reader.lines(expected.size() - 2, expected.size() + 10));
+            }
+        }
+    }
+
+    @Test
+    public void viewsAreBytesAndToStringDecodes() throws Exception {
+        Path file = write("ERROR 订单超时 id=42\nINFO ok\n");
+        try (MappedLineReader reader = MappedLineReader.open(file, StandardCharsets.UTF_8)) {
+            List<String> errors = reader.parallelCollect(ArrayList::new, (list, line) -> {
+                if (MappedLineReader.contains(line, "ERROR")) {
+                    list.add(line.toString());
+                }
+            }, (a, b) -> {
+                a.addAll(b);
+                return a;
+            });
+            assertEquals(Collections.singletonList("ERROR 订单超时 id=42"), errors);
+            List<Integer> lengths = new ArrayList<>();
+            List<String> prefixes = new ArrayList<>();
+            reader.forEachLine(line -> {
+                lengths.add(line.length());
+                prefixes.add(line.subSequence(0, 4).toString());
+            });
+            // 视图的长度是字节数,中文每个字3个字节
+            assertEquals(Arrays.asList("ERROR 订单超时 id=42".getBytes(StandardCharsets.UTF_8).length, 7), lengths);
+            assertEquals(Arrays.asList("ERRO", "INFO"), prefixes);
+            assertFalse(MappedLineReader.contains("INFO ok", "ERROR"));
+            assertTrue(MappedLineReader.contains("INFO ok", "ok"));
+        }
+    }
+
+    @Test
+    public void emptyFileAndTrailingNewlines() throws Exception {
+        try (MappedLineReader reader = MappedLineReader.open(write(""))) {
+            assertEquals(0, reader.lineCount());
+            assertNull(reader.line(0));
+            assertEquals(0, reader.chunkCount());
+            assertEquals(Integer.valueOf(0), reader.parallelCollect(() -> 0, (a, line) -> { }, Integer::sum));
+        }
+        assertEquals(Collections.singletonList(""), FileUtils.readFileContent(write("\n").toString()));
+        assertEquals(Collections.singletonList("a"), FileUtils.readFileContent(write("a\n").toString()));
+        assertEquals(Arrays.asList("a", "", "b"), FileUtils.readFileContent(write("a\n\r\nb").toString()));
+        Path file = write("0\n1\n2\n3\n");
+        assertEquals("2", FileUtils.readLineContent(file.toString(), 2));
+        assertNull(FileUtils.readLineContent(file.toString(), 4));
+        assertEquals(Arrays.asList("1", "2"), FileUtils.readLinesContent(file.toString(), 1, 2));
+    }
+
+    /**
+     * 换行符不是单字节的编码不能映射读取,FileUtils改用Reader
+     */
+    @Test
+    public void multiByteNewlineCharsetsFallBackToReader() throws Exception {
+        assertTrue(MappedLineReader.supports(StandardCharsets.UTF_8));
+        assertTrue(MappedLineReader.supports(Charset.forName("GBK")));
+        assertFalse(MappedLineReader.supports(StandardCharsets.UTF_16LE));
+        Path file = Files.createTempFile("lines", ".log");
+        file.toFile().deleteOnExit();
+        Files.write(file, "第一行\r\n第二行\n".getBytes(StandardCharsets.UTF_16));
+        try {
+            MappedLineReader.open(file, StandardCharsets.UTF_16).close();
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(Arrays.asList("第一行", "第二行"), FileUtils.readFileContent(file.toString(), "UTF-16"));
+    }
+
+    @Test
+    public void swarNewlineSearchMatchesByteScan() {
+        Random random = new Random(7);
+        ByteBuffer buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+        for (int round = 0; round < 2000; round++) {
+            for (int i = 0; i < buffer.capacity(); i++) {
+                // 包括0x0A附近的值和高位为1的字节,检查借位误判
+                int b = random.nextInt(4) == 0 ? 0x0B + random.nextInt(3) - 2 : random.nextInt(256);
+                buffer.put(i, (byte) (random.nextInt(200) == 0 ? '\n' : b == '\n' ? 0x8A : b));
+            }
+            int from = random.nextInt(100);
+            int limit = from + random.nextInt(buffer.capacity() - from);
+            int expected = -1;
+            for (int i = from; i < limit; i++) {
+                if (buffer.get(i) == '\n') {
+                    expected = i;
+                    break;
+                }
+            }
+            assertEquals(expected, MappedLineReader.indexOfNewline(buffer, from, limit));
+        }
+    }
+}
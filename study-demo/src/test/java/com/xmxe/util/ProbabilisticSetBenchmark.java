@@ -0,0 +1,51 @@
+package com.xmxe.util;
+
+import java.util.function.LongFunction;
+
+/**
+ * 各ProbabilisticSet实现的单线程吞吐量、实际误判率和每个元素占用的位数
+ * 可扩容布隆过滤器按初始容量n/16创建,模拟预估不足的情况
+ * 运行方式:java ProbabilisticSetBenchmark [插入数量]
+ */
+public class ProbabilisticSetBenchmark {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        String[] keys = new String[n];
+        String[] absent = new String[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = "key" + i;
+            absent[i] = "absent" + i;
+        }
+        for (int round = 0; round < 2; round++) {
+            System.out.println("round " + round);
+            run("BloomFilter(1%)", size -> new BloomFilter(size, 0.01), keys, absent);
+            run("CountingBloomFilter(1%)", size -> new CountingBloomFilter(size, 0.01), keys, absent);
+            run("ScalableBloomFilter(1%)", size -> new ScalableBloomFilter(size / 16, 0.01), keys, absent);
+            run("BloomFilter(0.01%)", size -> new BloomFilter(size, 0.0001), keys, absent);
+            run("CuckooFilter", CuckooFilter::new, keys, absent);
+        }
+    }
+
+    private static void run(String name, LongFunction<ProbabilisticSet> factory, String[] keys, String[] absent) {
+        ProbabilisticSet set = factory.apply(keys.length);
+        long begin = System.nanoTime();
+        for (String key : keys) {
+            set.add(key);
+        }
+        long addNanos = System.nanoTime() - begin;
+
+        begin = System.nanoTime();
+        int falsePositives = 0;
+        for (String key : absent) {
+            if (set.contains(key)) {
+                falsePositives++;
+            }
+        }
+        long containsNanos = System.nanoTime() - begin;
+
+        System.out.printf("%-26s add %,12.0f ops/s, contains %,12.0f ops/s, fpp %.5f, %.2f bits/element%n", name,
+                keys.length * 1e9 / addNanos, absent.length * 1e9 / containsNanos,
+                (double) falsePositives / absent.length, (double) set.bitSize() / keys.length);
+    }
+}
@@ -0,0 +1,110 @@
+package com.xmxe.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ProbabilisticSetTest {
+
+    @Test
+    public void countingRemove() {
+        CountingBloomFilter filter = new CountingBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("v" + i);
+        }
+        for (int i = 0; i < 5_000; i++) {
+            assertTrue(filter.remove("v" + i));
+        }
+        // 没删的不能漏判
+        for (int i = 5_000; i < 10_000; i++) {
+            assertTrue(filter.contains("v" + i));
+        }
+        int stillPresent = 0;
+        for (int i = 0; i < 5_000; i++) {
+            if (filter.contains("v" + i)) {
+                stillPresent++;
+            }
+        }
+        assertTrue("stillPresent=" + stillPresent, stillPresent < 100);
+        // 每个位换成4位计数器
+        assertEquals(BloomFilter.optimalNumOfBits(10_000, 0.01) * 4, filter.bitSize(), 64);
+    }
+
+    @Test
+    public void scalableGrowsPastCapacity() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            filter.add("in" + i);
+        }
+        assertTrue(filter.sliceCount() > 1);
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(filter.contains("in" + i));
+        }
+        // 总误判率不超过初始设定
+        assertTrue(falsePositives(filter, 100_000) < 1_200);
+    }
+
+    @Test
+    public void cuckooRemoveAndFpp() {
+        CuckooFilter filter = new CuckooFilter(100_000);
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(filter.add("in" + i));
+        }
+        assertEquals(100_000, filter.size());
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(filter.contains("in" + i));
+        }
+        assertTrue(falsePositives(filter, 100_000) < 100);
+        for (int i = 0; i < 50_000; i++) {
+            assertTrue(filter.remove("in" + i));
+        }
+        for (int i = 50_000; i < 100_000; i++) {
+            assertTrue(filter.contains("in" + i));
+        }
+        assertEquals(50_000, filter.size());
+    }
+
+    @Test
+    public void cuckooRejectsWhenFull() {
+        CuckooFilter filter = new CuckooFilter(1_000);
+        int added = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.add("v" + i)) {
+                added++;
+            }
+        }
+        assertTrue(added < 10_000);
+        assertTrue(filter.loadFactor() > 0.9);
+        for (int i = 0; i < added; i++) {
+            assertTrue(filter.contains("v" + i));
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void bloomRemoveUnsupported() {
+        ProbabilisticSet set = new BloomFilter(100, 0.01);
+        set.remove("a");
+    }
+
+    @Test
+    public void nullIsAbsent() {
+        ProbabilisticSet[] sets = { new BloomFilter(100, 0.01), new CountingBloomFilter(100, 0.01),
+                new ScalableBloomFilter(100, 0.01), new CuckooFilter(100) };
+        for (ProbabilisticSet set : sets) {
+            assertFalse(set.add(null));
+            assertFalse(set.contains(null));
+        }
+    }
+
+    private static int falsePositives(ProbabilisticSet set, int n) {
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (set.contains("out" + i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
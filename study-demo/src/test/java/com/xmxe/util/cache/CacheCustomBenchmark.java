@@ -0,0 +1,113 @@
+package com.xmxe.util.cache;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 过期清理开销对比:旧版每500毫秒全量扫描 vs 分层时间轮
+ * 使用模拟时钟跑完60秒的过期窗口,只统计清理本身的耗时,不需要真的等待
+ * 运行方式:java CacheCustomBenchmark 1000000 10000000 (10M需要-Xmx4g以上)
+ */
+public class CacheCustomBenchmark {
+
+    /**
+     * 过期时间在1~60秒之间均匀分布
+     */
+    private static final long MAX_TTL_MS = 60_000;
+
+    private static final long SWEEP_INTERVAL_MS = 500;
+
+    private static final long TICK_MS = 100;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0 ? new int[] { 1_000_000, 10_000_000 } : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        for (int size : sizes) {
+            // 预热一轮
+            sweep(size / 10);
+            wheel(size / 10);
+            System.gc();
+            long[] sweep = sweep(size);
+            System.gc();
+            long[] wheel = wheel(size);
+            System.out.printf("keys=%,d%n", size);
+            System.out.printf("  sweep : put %,d ms, expire %,d ms (%d passes, %.1f ns/key/pass)%n",
+                    sweep[0], sweep[1], sweep[2], sweep[1] * 1e6 / size / sweep[2]);
+            System.out.printf("  wheel : put %,d ms, expire %,d ms (%d ticks, %.1f ns/key)%n",
+                    wheel[0], wheel[1], wheel[2], wheel[1] * 1e6 / size);
+        }
+    }
+
+    /**
+     * 旧实现:ConcurrentHashMap + 定时全量扫描（修正了原来颠倒的判断）
+     */
+    private static long[] sweep(int size) {
+        Map<String, CacheCustom.CacheEntity> map = new ConcurrentHashMap<>(size * 2);
+        long start = 0;
+        long begin = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            map.put("key" + i, entity("key" + i, start));
+        }
+        long putMs = (System.nanoTime() - begin) / 1_000_000;
+
+        long passes = 0;
+        begin = System.nanoTime();
+        for (long now = start; now <= start + MAX_TTL_MS; now += SWEEP_INTERVAL_MS) {
+            passes++;
+            Iterator<Map.Entry<String, CacheCustom.CacheEntity>> iterator = map.entrySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getValue().isExpired(now)) {
+                    iterator.remove();
+                }
+            }
+        }
+        long expireMs = (System.nanoTime() - begin) / 1_000_000;
+        check(map.isEmpty());
+        return new long[] { putMs, expireMs, passes };
+    }
+
+    private static long[] wheel(int size) {
+        Map<String, CacheCustom.CacheEntity> map = new ConcurrentHashMap<>(size * 2);
+        long start = 0;
+        TimingWheel<CacheCustom.CacheEntity> wheel = new TimingWheel<>(TICK_MS, start);
+        long begin = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            CacheCustom.CacheEntity entity = entity("key" + i, start);
+            map.put(entity.getKey(), entity);
+            wheel.add(entity);
+        }
+        long putMs = (System.nanoTime() - begin) / 1_000_000;
+
+        long ticks = 0;
+        begin = System.nanoTime();
+        for (long now = start; now <= start + MAX_TTL_MS; now += TICK_MS) {
+            ticks++;
+            List<CacheCustom.CacheEntity> expired = wheel.advance(now);
+            for (CacheCustom.CacheEntity entity : expired) {
+                map.remove(entity.getKey(), entity);
+            }
+        }
+        long expireMs = (System.nanoTime() - begin) / 1_000_000;
+        check(map.isEmpty());
+        return new long[] { putMs, expireMs, ticks };
+    }
+
+    private static CacheCustom.CacheEntity entity(String key, long now) {
+        CacheCustom.CacheEntity entity = new CacheCustom.CacheEntity();
+        entity.setKey(key);
+        entity.setValue(key);
+        entity.setExpireTime(now + 1000 + ThreadLocalRandom.current().nextLong(MAX_TTL_MS - 1000));
+        return entity;
+    }
+
+    private static void check(boolean condition) {
+        if (!condition) {
+            throw new IllegalStateException("not all keys expired");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.xmxe.util.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheCustomTest {
+
+    private final AtomicLong now = new AtomicLong(System.currentTimeMillis());
+
+    private LongSupplier systemClock;
+
+    @Before
+    public void setUp() {
+        systemClock = CacheCustom.clock;
+        CacheCustom.clock = now::get;
+    }
+
+    @After
+    public void tearDown() {
+        CacheCustom.clock = systemClock;
+    }
+
+    @Test
+    public void expireAndNotify() {
+        Map<String, CacheCustom.RemovalCause> causes = new ConcurrentHashMap<>();
+        CacheCustom.RemovalListener listener = (key, value, cause) -> causes.put(key, cause);
+        CacheCustom.addRemovalListener(listener);
+        try {
+            CacheCustom.putMillis("expire-a", "a", 50);
+            CacheCustom.put("expire-b", "b");
+            assertEquals("a", CacheCustom.get("expire-a"));
+            now.addAndGet(400);
+            assertNull(CacheCustom.get("expire-a"));
+            assertEquals(CacheCustom.RemovalCause.EXPIRED, causes.get("expire-a"));
+            assertEquals("b", CacheCustom.get("expire-b"));
+            CacheCustom.put("expire-b", "b2");
+            assertEquals(CacheCustom.RemovalCause.REPLACED, causes.get("expire-b"));
+            CacheCustom.remove("expire-b");
+            assertEquals(CacheCustom.RemovalCause.EXPLICIT, causes.get("expire-b"));
+        } finally {
+            CacheCustom.removeRemovalListener(listener);
+        }
+    }
+
+    /**
+     * 一次性扫描不应该把高频数据挤出去,总权重不超过上限
+     */
+    @Test
+    public void tinyLfuResistsScan() {
+        TinyLfuPolicy policy = new TinyLfuPolicy(100);
+        Set<CacheCustom.CacheEntity> alive = new HashSet<>();
+        CacheCustom.CacheEntity hot = entity("hot");
+        alive.add(hot);
+        policy.onAdd(hot);
+        for (int i = 0; i < 20; i++) {
+            policy.onAccess(hot);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            CacheCustom.CacheEntity entity = entity("scan" + i);
+            alive.add(entity);
+            alive.removeAll(policy.onAdd(entity));
+            // 热点数据在扫描期间仍然被持续访问,否则频率会随老化归零
+            if (i % 50 == 0) {
+                policy.onAccess(hot);
+            }
+            assertTrue(policy.weightedSize() <= 100);
+        }
+        assertTrue(alive.contains(hot));
+        assertEquals(100, alive.size());
+    }
+
+    private static CacheCustom.CacheEntity entity(String key) {
+        CacheCustom.CacheEntity entity = new CacheCustom.CacheEntity();
+        entity.setKey(key);
+        entity.setValue(key);
+        return entity;
+    }
+}
@@ -0,0 +1,144 @@
+package com.xmxe.util.cache;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 容量淘汰策略对比:CacheCustom(W-TinyLFU) vs CacheByCaffeine.LRUCache(LinkedHashMap)
+ * 回放两种访问轨迹,统计命中率和吞吐量:
+ * zipf:热点分布,zipf+scan:热点访问中穿插一次性的顺序扫描（例如定时任务全量遍历）
+ * 运行方式:java CacheEvictionBenchmark [容量] [请求数]
+ */
+public class CacheEvictionBenchmark {
+
+    private static final int KEY_SPACE = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int capacity = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+
+        String[] keys = new String[KEY_SPACE];
+        for (int i = 0; i < KEY_SPACE; i++) {
+            keys[i] = "key" + i;
+        }
+        int[] zipf = zipfTrace(requests, 0.99, new Random(1));
+        int[] scan = withScans(zipf, capacity * 2);
+
+        replay("zipf", zipf, keys, capacity);
+        replay("zipf+scan", scan, keys, capacity);
+        concurrent(zipf, keys, capacity, 8);
+    }
+
+    private static void replay(String name, int[] trace, String[] keys, int capacity) {
+        // 先各跑一遍预热
+        lru(trace, keys, capacity);
+        tinyLfu(trace, keys, capacity);
+
+        long begin = System.nanoTime();
+        long lruHits = lru(trace, keys, capacity);
+        long lruNanos = System.nanoTime() - begin;
+
+        begin = System.nanoTime();
+        long lfuHits = tinyLfu(trace, keys, capacity);
+        long lfuNanos = System.nanoTime() - begin;
+
+        System.out.printf("%-10s capacity=%,d requests=%,d%n", name, capacity, trace.length);
+        System.out.printf("  LRUCache    hit=%5.2f%%  %,.0f ops/s%n", lruHits * 100.0 / trace.length,
+                trace.length * 1e9 / lruNanos);
+        System.out.printf("  W-TinyLFU   hit=%5.2f%%  %,.0f ops/s%n", lfuHits * 100.0 / trace.length,
+                trace.length * 1e9 / lfuNanos);
+    }
+
+    private static long lru(int[] trace, String[] keys, int capacity) {
+        CacheByCaffeine.LRUCache<String, Object> cache = new CacheByCaffeine.LRUCache<>(capacity);
+        long hits = 0;
+        for (int index : trace) {
+            String key = keys[index];
+            if (cache.get(key) != null) {
+                hits++;
+            } else {
+                cache.put(key, key);
+            }
+        }
+        return hits;
+    }
+
+    private static long tinyLfu(int[] trace, String[] keys, int capacity) {
+        CacheCustom.clear();
+        CacheCustom.setMaximumSize(capacity);
+        long hits = 0;
+        for (int index : trace) {
+            String key = keys[index];
+            if (CacheCustom.get(key) != null) {
+                hits++;
+            } else {
+                CacheCustom.put(key, key);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * LRUCache的get在访问顺序模式下会修改链表,读锁下并发调用不安全,所以多线程只测CacheCustom
+     */
+    private static void concurrent(int[] trace, String[] keys, int capacity, int threads) throws InterruptedException {
+        CacheCustom.clear();
+        CacheCustom.setMaximumSize(capacity);
+        LongAdder hits = new LongAdder();
+        CountDownLatch latch = new CountDownLatch(threads);
+        long begin = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int offset = t * (trace.length / threads);
+            new Thread(() -> {
+                for (int i = 0; i < trace.length; i++) {
+                    String key = keys[trace[(offset + i) % trace.length]];
+                    if (CacheCustom.get(key) != null) {
+                        hits.increment();
+                    } else {
+                        CacheCustom.put(key, key);
+                    }
+                }
+                latch.countDown();
+            }).start();
+        }
+        latch.await();
+        long nanos = System.nanoTime() - begin;
+        long total = (long) trace.length * threads;
+        System.out.printf("W-TinyLFU %d threads: hit=%5.2f%%  %,.0f ops/s, size=%,d%n", threads,
+                hits.sum() * 100.0 / total, total * 1e9 / nanos, CacheCustom.size());
+    }
+
+    /**
+     * 按zipf分布生成访问轨迹,排名越靠前的key访问越频繁
+     */
+    private static int[] zipfTrace(int requests, double exponent, Random random) {
+        double[] cdf = new double[KEY_SPACE];
+        double sum = 0;
+        for (int i = 0; i < KEY_SPACE; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        int[] trace = new int[requests];
+        for (int i = 0; i < requests; i++) {
+            int index = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            trace[i] = index >= 0 ? index : Math.min(-index - 1, KEY_SPACE - 1);
+        }
+        return trace;
+    }
+
+    /**
+     * 每隔一段请求插入一次顺序扫描,扫描的key只访问一次
+     */
+    private static int[] withScans(int[] trace, int scanLength) {
+        int[] result = Arrays.copyOf(trace, trace.length);
+        int scanStart = KEY_SPACE / 2;
+        for (int i = 0; i + scanLength < result.length; i += scanLength * 5) {
+            for (int j = 0; j < scanLength; j++) {
+                result[i + j] = scanStart++ % KEY_SPACE;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,154 @@
+package com.xmxe.util.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+
+public class CacheProviderTest {
+
+    private final CacheProvider cacheProvider = new CacheProvider();
+
+    /**
+     * 手动推进的时钟,从系统时间开始,避免和其它测试留下的缓存项的时间点差太远
+     */
+    private final AtomicLong now = new AtomicLong(System.nanoTime());
+
+    @Before
+    public void useManualTicker() {
+        CacheProvider.ticker = now::get;
+    }
+
+    @After
+    public void restoreTicker() {
+        CacheProvider.ticker = Ticker.systemTicker();
+    }
+
+    /**
+     * 并发未命中只加载一次
+     */
+    @Test
+    public void singleFlight() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                return cacheProvider.<String, String>get("single-flight", key -> {
+                    loads.incrementAndGet();
+                    sleep(200);
+                    return "v";
+                }, "single-flight", 10_000L);
+            }));
+        }
+        start.countDown();
+        for (Future<String> result : results) {
+            assertEquals("v", result.get());
+        }
+        pool.shutdown();
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * 接近过期的缓存被访问时后台刷新,读请求拿到旧值不阻塞
+     */
+    @Test
+    public void refreshAhead() throws Exception {
+        AtomicInteger version = new AtomicInteger();
+        assertEquals("v1",
+                cacheProvider.get("refresh-ahead", key -> "v" + version.incrementAndGet(), "refresh-ahead", 500L));
+        advance(420);
+        CountDownLatch release = new CountDownLatch(1);
+        // 刷新函数被挡住时读请求仍然立即拿到旧值,阻塞的话这里会超时
+        String stale = cacheProvider.<String, String>getAsync("refresh-ahead", key -> {
+            await(release);
+            return "v" + version.incrementAndGet();
+        }, "refresh-ahead", 500L).get(5, TimeUnit.SECONDS);
+        assertEquals("v1", stale);
+        CompletableFuture<Object> refresh = CacheProvider.inFlight.get("refresh-ahead");
+        release.countDown();
+        assertEquals("v2", refresh.get(5, TimeUnit.SECONDS));
+        assertEquals("v2", cacheProvider.get("refresh-ahead"));
+    }
+
+    /**
+     * 刷新线程池满时放弃这次提前刷新,不留下永远不完成的Future,过期后的读请求照常加载
+     */
+    @Test
+    public void refreshSkippedWhenPoolIsFull() throws Exception {
+        assertEquals("v1", cacheProvider.get("refresh-full", key -> "v1", "refresh-full", 500L));
+        CountDownLatch block = new CountDownLatch(1);
+        try {
+            // 占满所有线程和队列,线程池满了应该拒绝而不是静默丢弃
+            try {
+                for (int i = 0; i < 100_000; i++) {
+                    CacheProvider.refreshExecutor.execute(() -> await(block));
+                }
+                fail("refresh pool never rejected");
+            } catch (RejectedExecutionException full) {
+                // 满了
+            }
+            advance(420);
+            assertEquals("v1", cacheProvider.get("refresh-full", key -> "v2", "refresh-full", 500L));
+            assertNull(CacheProvider.inFlight.get("refresh-full"));
+            advance(100);
+            assertEquals("v3", cacheProvider.<String, String>getAsync("refresh-full", key -> "v3", "refresh-full", 500L)
+                    .get(5, TimeUnit.SECONDS));
+        } finally {
+            block.countDown();
+        }
+    }
+
+    /**
+     * 不同过期时间的缓存项互不影响,remove对任意过期时间都生效
+     */
+    @Test
+    public void variableExpiry() throws Exception {
+        cacheProvider.set("short", "s", 200L);
+        cacheProvider.set("long", "l", 10_000L);
+        advance(300);
+        assertNull(cacheProvider.get("short"));
+        assertEquals("l", cacheProvider.get("long"));
+        cacheProvider.remove("long");
+        assertNull(cacheProvider.get("long"));
+    }
+
+    private void advance(long millis) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
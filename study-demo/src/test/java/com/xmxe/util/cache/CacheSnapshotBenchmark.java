@@ -0,0 +1,56 @@
+package com.xmxe.util.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 快照全量写入和启动装载耗时
+ * 运行方式:java -Xmx6g CacheSnapshotBenchmark 5000000
+ */
+public class CacheSnapshotBenchmark {
+
+    /**
+     * 字符串直接按UTF-8编码,排除JDK序列化本身的开销
+     */
+    private static final ValueCodec STRING_CODEC = new ValueCodec() {
+        @Override
+        public byte[] encode(Object value) {
+            return ((String) value).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Object decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    public static void main(String[] args) throws Exception {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        Path file = Files.createTempFile("cache-snapshot-benchmark", ".log");
+
+        String padding = "x".repeat(80);
+        for (int i = 0; i < entries; i++) {
+            CacheCustom.putMillis("key" + i, padding + i, 3_600_000);
+        }
+
+        CacheSnapshot snapshot = new CacheSnapshot(file, STRING_CODEC);
+        long begin = System.nanoTime();
+        snapshot.compact();
+        long writeMs = (System.nanoTime() - begin) / 1_000_000;
+        long fileSize = Files.size(file);
+
+        CacheCustom.clear();
+        System.gc();
+
+        begin = System.nanoTime();
+        long records = new CacheSnapshot(file, STRING_CODEC).load();
+        long loadMs = (System.nanoTime() - begin) / 1_000_000;
+
+        System.out.printf("entries=%,d file=%,d MB%n", entries, fileSize >> 20);
+        System.out.printf("  full snapshot : %,d ms%n", writeMs);
+        System.out.printf("  warm start    : %,d ms (%,d records, %,.0f records/s, cache size %,d)%n", loadMs,
+                records, records * 1000.0 / Math.max(loadMs, 1), CacheCustom.size());
+        Files.deleteIfExists(file);
+    }
+}
@@ -0,0 +1,62 @@
+package com.xmxe.util.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheSnapshotTest {
+
+    private final AtomicLong now = new AtomicLong(System.currentTimeMillis());
+
+    private LongSupplier systemClock;
+
+    @Before
+    public void setUp() {
+        systemClock = CacheCustom.clock;
+        CacheCustom.clock = now::get;
+    }
+
+    @After
+    public void tearDown() {
+        CacheCustom.clock = systemClock;
+    }
+
+    @Test
+    public void snapshotAndWarmStart() throws Exception {
+        Path file = Files.createTempFile("cache-snapshot", ".log");
+        Files.delete(file);
+        try (CacheSnapshot snapshot = new CacheSnapshot(file, ValueCodec.jdk())) {
+            CacheCustom.put("snapshot-a", "a");
+            CacheCustom.putMillis("snapshot-b", "b", 60_000);
+            CacheCustom.putMillis("snapshot-c", "c", 100);
+            snapshot.start(3600);
+            // 增量:覆盖、删除、新增
+            CacheCustom.put("snapshot-a", "a2");
+            CacheCustom.remove("snapshot-b");
+            CacheCustom.put("snapshot-d", "d");
+            snapshot.flush();
+        }
+        // 模拟进程在写入中途退出留下的半条记录
+        Files.write(file, new byte[] { 0, 0, 0, 100, 1, 2, 3 }, StandardOpenOption.APPEND);
+
+        now.addAndGet(200);
+        CacheCustom.clear();
+        long records = new CacheSnapshot(file, ValueCodec.jdk()).load();
+        assertTrue(records >= 5);
+        assertEquals("a2", CacheCustom.get("snapshot-a"));
+        assertNull(CacheCustom.get("snapshot-b"));
+        assertNull(CacheCustom.get("snapshot-c"));
+        assertEquals("d", CacheCustom.get("snapshot-d"));
+        Files.deleteIfExists(file);
+    }
+}
@@ -0,0 +1,77 @@
+package com.xmxe.util.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class OffHeapStoreTest {
+
+    @Test
+    public void putGetTake() {
+        OffHeapStore<String> store = new OffHeapStore<>(1 << 20, 1 << 16);
+        byte[] bytes = "hello off heap".getBytes();
+        assertTrue(store.put("a", bytes, 0));
+        assertArrayEquals(bytes, store.get("a"));
+        assertEquals(bytes.length, store.usedBytes());
+        assertEquals(64, store.allocatedBytes());
+
+        OffHeapStore.Entry entry = store.take("a");
+        assertArrayEquals(bytes, entry.getBytes());
+        assertNull(store.get("a"));
+        assertEquals(0, store.usedBytes());
+        assertFalse(store.put("big", new byte[(1 << 16) + 1], 0));
+    }
+
+    /**
+     * 容量用完后淘汰最久未访问的数据,释放的块被复用
+     */
+    @Test
+    public void evictLeastRecentlyUsed() {
+        OffHeapStore<Integer> store = new OffHeapStore<>(1 << 16, 1 << 16);
+        byte[] bytes = new byte[1024];
+        for (int i = 0; i < 64; i++) {
+            Arrays.fill(bytes, (byte) i);
+            assertTrue(store.put(i, bytes, 0));
+        }
+        store.get(0);
+        assertTrue(store.put(64, bytes, 0));
+        assertEquals(1, store.evictionCount());
+        assertNull(store.get(1));
+        assertEquals(0, store.get(0)[0]);
+        assertEquals(64, store.size());
+        assertEquals(1 << 16, store.reservedBytes());
+    }
+
+    /**
+     * slab用完后,其他级别的数据腾不出本级别的块,不能为了存一个大小不同的数据把整个存储淘汰掉
+     */
+    @Test
+    public void evictsOnlySameSizeClass() {
+        OffHeapStore<Integer> store = new OffHeapStore<>(1 << 16, 1 << 16);
+        for (int i = 0; i < 64; i++) {
+            assertTrue(store.put(i, new byte[1024], 0));
+        }
+        assertFalse(store.put(-1, new byte[100], 0));
+        assertEquals(0, store.evictionCount());
+        assertEquals(64, store.size());
+        assertTrue(store.put(64, new byte[1000], 0));
+        assertEquals(1, store.evictionCount());
+        assertNull(store.get(0));
+    }
+
+    @Test
+    public void expire() {
+        OffHeapStore<String> store = new OffHeapStore<>(1 << 20, 1 << 16);
+        store.put("a", new byte[10], System.nanoTime() - 1);
+        store.put("b", new byte[10], 0);
+        assertNull(store.get("a"));
+        assertEquals(0, store.purgeExpired());
+        assertEquals(1, store.size());
+    }
+}
@@ -0,0 +1,99 @@
+package com.xmxe.util.cache;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 堆内 vs 堆外存放大量序列化数据时的GC开销和吞吐量对比
+ * 先装入totalMb的数据,再跑一段读请求+制造短命垃圾的负载,统计这段时间内的GC次数、GC总耗时、平均停顿和读吞吐量
+ * 运行方式（4GB）:
+ * java -Xmx8g -XX:MaxDirectMemorySize=5g OffHeapTierBenchmark heap 4096
+ * java -Xmx2g -XX:MaxDirectMemorySize=5g OffHeapTierBenchmark offheap 4096
+ * 两种模式分开跑,避免前一种模式留下的堆状态影响后一种
+ */
+public class OffHeapTierBenchmark {
+
+    private static final int VALUE_SIZE = 4096;
+
+    private static final long RUN_MILLIS = 20_000;
+
+    public static void main(String[] args) {
+        String mode = args.length > 0 ? args[0] : "offheap";
+        long totalMb = args.length > 1 ? Long.parseLong(args[1]) : 1024;
+        int entries = (int) (totalMb * 1024 * 1024 / VALUE_SIZE);
+
+        Store store;
+        if ("heap".equals(mode)) {
+            Map<String, byte[]> map = new ConcurrentHashMap<>(entries * 2);
+            store = new Store() {
+                public void put(String key, byte[] bytes) {
+                    map.put(key, bytes);
+                }
+
+                public byte[] get(String key) {
+                    return map.get(key);
+                }
+            };
+        } else {
+            OffHeapStore<String> offHeap = new OffHeapStore<>((totalMb + 64) * 1024 * 1024, 64 << 20);
+            store = new Store() {
+                public void put(String key, byte[] bytes) {
+                    offHeap.put(key, bytes, 0);
+                }
+
+                public byte[] get(String key) {
+                    return offHeap.get(key);
+                }
+            };
+        }
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < entries; i++) {
+            byte[] bytes = new byte[VALUE_SIZE];
+            ThreadLocalRandom.current().nextBytes(bytes);
+            store.put("key" + i, bytes);
+        }
+        System.out.printf("%s: loaded %,d entries (%,d MB) in %,d ms%n", mode, entries, totalMb,
+                (System.nanoTime() - begin) / 1_000_000);
+
+        long[] gcBefore = gc();
+        long reads = 0;
+        long checksum = 0;
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        begin = System.nanoTime();
+        while (System.currentTimeMillis() < deadline) {
+            for (int i = 0; i < 10_000; i++) {
+                byte[] bytes = store.get("key" + ThreadLocalRandom.current().nextInt(entries));
+                checksum += bytes[0];
+                // 模拟业务请求产生的短命对象,触发young gc
+                checksum += new byte[512].length;
+                reads++;
+            }
+        }
+        long nanos = System.nanoTime() - begin;
+        long[] gcAfter = gc();
+        long count = gcAfter[0] - gcBefore[0];
+        long time = gcAfter[1] - gcBefore[1];
+        System.out.printf("%s: reads %,.0f ops/s, gc count %d, gc time %,d ms, avg pause %.1f ms (checksum %d)%n",
+                mode, reads * 1e9 / nanos, count, time, count == 0 ? 0.0 : (double) time / count, checksum);
+    }
+
+    private static long[] gc() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += bean.getCollectionCount();
+            time += bean.getCollectionTime();
+        }
+        return new long[] { count, time };
+    }
+
+    interface Store {
+        void put(String key, byte[] bytes);
+
+        byte[] get(String key);
+    }
+}
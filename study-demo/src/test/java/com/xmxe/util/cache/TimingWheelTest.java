@@ -0,0 +1,78 @@
+package com.xmxe.util.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+    static class TestNode extends TimingWheel.Node {
+        final long deadline;
+
+        TestNode(long deadline) {
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected long getDeadline() {
+            return deadline;
+        }
+    }
+
+    /**
+     * 跨多层的节点都应该在到期的那一格被触发,不早也不晚
+     */
+    @Test
+    public void expireOnTime() {
+        TimingWheel<TestNode> wheel = new TimingWheel<>(10, 0);
+        Random random = new Random(42);
+        List<TestNode> nodes = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            TestNode node = new TestNode(1 + random.nextInt(50_000_000));
+            nodes.add(node);
+            assertTrue(wheel.add(node));
+        }
+        // 以不同步长推进,模拟定时任务抖动
+        long now = 0;
+        int fired = 0;
+        while (fired < nodes.size()) {
+            now += 1 + random.nextInt(100_000);
+            for (TestNode node : wheel.advance(now)) {
+                assertTrue(node.deadline <= now);
+                assertTrue(node.deadline > now - 100_000 - 10);
+                fired++;
+            }
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void remove() {
+        TimingWheel<TestNode> wheel = new TimingWheel<>(10, 0);
+        TestNode late = new TestNode(100_000);
+        TestNode early = new TestNode(50);
+        TestNode removed = new TestNode(60);
+        wheel.add(late);
+        wheel.add(early);
+        wheel.add(removed);
+        assertTrue(wheel.remove(removed));
+        assertFalse(wheel.remove(removed));
+        assertEquals(2, wheel.size());
+        assertEquals(Arrays.asList(early, late), wheel.advance(1_000_000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void alreadyExpired() {
+        TimingWheel<TestNode> wheel = new TimingWheel<>(10, 1000);
+        assertFalse(wheel.add(new TestNode(995)));
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,181 @@
+package com.xmxe.util.excel;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * 导出N行(默认500万)10列数据的耗时和堆占用:
+ * ExcelUtils.writeExcel(List<Map>)、EasyExcelUtil.writeBySimple(List<List>)、EasyExcelUtil.writeByBatch、
+ * ExcelExporter.export(单个Iterator)、ExcelExporter.exportParallel(4个分区)
+ * 旧的两个方法只能写一个sheet,行数取min(N, 1048575),耗时包含先把数据备进List
+ * 每个方法在单独的子进程里跑,堆上限相同;堆占用取每次GC之后已用堆的最大值,也就是导出过程中的最大存活数据量
+ * 子进程OOM时直接退出,记为OOM
+ * 运行方式:java ExcelExportBenchmark [行数] [堆上限,默认2g]
+ */
+public class ExcelExportBenchmark {
+
+    private static final String[] VARIANTS = {"ExcelUtils.writeExcel", "EasyExcelUtil.writeBySimple",
+            "EasyExcelUtil.writeByBatch", "ExcelExporter.export", "ExcelExporter.exportParallel"};
+
+    private static final List<String> TITLES = Arrays.asList("编号", "订单号", "客户", "城市", "金额", "数量", "下单时间",
+            "已支付", "状态", "备注");
+
+    private static final String[] CITIES = {"北京", "上海", "广州", "深圳", "杭州", "南京", "成都", "武汉", "西安", "重庆"};
+
+    private static final String[] STATUS = {"待支付", "已支付", "已发货", "已完成", "已取消"};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "child".equals(args[0])) {
+            child(args[1], Long.parseLong(args[2]), Path.of(args[3]));
+            return;
+        }
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 5_000_000;
+        String heap = args.length > 1 ? args[1] : "2g";
+        System.out.printf("%,d rows x %d columns, -Xmx%s, %d cpus%n", rows, TITLES.size(), heap,
+                Runtime.getRuntime().availableProcessors());
+        for (String variant : VARIANTS) {
+            Path file = Files.createTempFile("export-bench", ".xlsx");
+            try {
+                Process child = new ProcessBuilder(System.getProperty("java.home") + "/bin/java", "-Xmx" + heap,
+                        "-XX:+ExitOnOutOfMemoryError", "-cp", System.getProperty("java.class.path"),
+                        ExcelExportBenchmark.class.getName(), "child", variant, String.valueOf(rows), file.toString())
+                        .redirectErrorStream(true).start();
+                String result = null;
+                String last = null;
+                BufferedReader reader = new BufferedReader(new InputStreamReader(child.getInputStream(), StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("RESULT ")) {
+                        result = line.substring(7);
+                    } else if (!line.contains(" INFO ")) {
+                        last = line;
+                    }
+                }
+                if (!child.waitFor(1, TimeUnit.HOURS)) {
+                    child.destroyForcibly();
+                }
+                if (result != null) {
+                    String[] r = result.split(" ");
+                    System.out.printf("  %-30s %,10d rows %8.1f s %10.0f rows/s  peak live heap %6d MB  file %5d MB%n",
+                            variant, Long.parseLong(r[0]), Long.parseLong(r[1]) / 1e3,
+                            Long.parseLong(r[0]) * 1e3 / Long.parseLong(r[1]), Long.parseLong(r[2]) >> 20,
+                            Files.size(file) >> 20);
+                } else {
+                    System.out.printf("  %-30s failed (exit %d): %s%n", variant, child.exitValue(),
+                            last != null && last.contains("OutOfMemoryError") ? "OOM" : last);
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static void child(String variant, long rows, Path file) throws Exception {
+        AtomicLong peak = watchHeap();
+        long begin = System.nanoTime();
+        long written;
+        int oneSheet = (int) Math.min(rows, ExcelExporter.MAX_ROWS_PER_SHEET);
+        switch (variant) {
+            case "ExcelUtils.writeExcel": {
+                List<Map<String, Object>> values = new ArrayList<>(oneSheet);
+                for (long i = 0; i < oneSheet; i++) {
+                    List<Object> row = row(i);
+                    Map<String, Object> value = new HashMap<>();
+                    for (int c = 0; c < TITLES.size(); c++) {
+                        value.put(TITLES.get(c), row.get(c));
+                    }
+                    values.add(value);
+                }
+                ExcelUtils.writeExcel(file.toString(), "订单", TITLES, values);
+                written = values.size();
+                break;
+            }
+            case "EasyExcelUtil.writeBySimple": {
+                List<List<Object>> data = LongStream.range(0, oneSheet).mapToObj(ExcelExportBenchmark::row)
+                        .collect(Collectors.toCollection(() -> new ArrayList<>(oneSheet)));
+                EasyExcelUtil.writeBySimple(file.toString(), data, TITLES);
+                written = data.size();
+                break;
+            }
+            case "EasyExcelUtil.writeByBatch":
+                written = EasyExcelUtil.writeByBatch(file.toString(), rows(0, rows), TITLES, 5000);
+                break;
+            case "ExcelExporter.export":
+                written = ExcelExporter.DEFAULT.export(file, "订单", TITLES, rows(0, rows));
+                break;
+            case "ExcelExporter.exportParallel": {
+                // 按编号区间拆成4个分区,模拟4个按主键区间的查询
+                int partitions = 4;
+                List<Stream<List<Object>>> streams = IntStream.range(0, partitions)
+                        .mapToObj(p -> LongStream.range(rows * p / partitions, rows * (p + 1) / partitions)
+                                .mapToObj(ExcelExportBenchmark::row))
+                        .collect(Collectors.toList());
+                written = ExcelExporter.DEFAULT.exportParallel(file, "订单", TITLES, streams);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException(variant);
+        }
+        long elapsed = System.nanoTime() - begin;
+        System.out.println("RESULT " + written + " " + elapsed / 1_000_000 + " " + peak.get());
+        System.exit(0);
+    }
+
+    private static Iterator<List<Object>> rows(long from, long to) {
+        return LongStream.range(from, to).mapToObj(ExcelExportBenchmark::row).iterator();
+    }
+
+    private static List<Object> row(long id) {
+        return Arrays.asList(id, "NO" + (20230000000L + id), "客户" + id % 100_000, CITIES[(int) (id % CITIES.length)],
+                (id % 100_000) / 100.0, (int) (id % 20) + 1, new Date(1_672_531_200_000L + id * 6000),
+                id % 3 != 0, STATUS[(int) (id % STATUS.length)], id % 7 == 0 ? "加急,请尽快发货" : null);
+    }
+
+    /**
+     * 每次GC结束时记录GC后堆内存池已用的总量,取最大值
+     */
+    private static AtomicLong watchHeap() {
+        AtomicLong peak = new AtomicLong();
+        Set<String> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP).map(MemoryPoolMXBean::getName).collect(Collectors.toSet());
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    return;
+                }
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+                        .from((CompositeData) notification.getUserData());
+                long used = info.getGcInfo().getMemoryUsageAfterGc().entrySet().stream()
+                        .filter(pool -> heapPools.contains(pool.getKey())).mapToLong(pool -> pool.getValue().getUsed()).sum();
+                peak.accumulateAndGet(used, Math::max);
+            }, null, null);
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,258 @@
+package com.xmxe.util.excel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import com.alibaba.excel.EasyExcel;
+
+public class ExcelExporterTest {
+
+    private static final List<String> TITLES = Arrays.asList("编号", "名称", "金额", "时间", "有效", "备注");
+
+    private final ExcelExporter exporter = new ExcelExporter(1000, 2, null);
+
+    private static List<Object> row(int id) {
+        return Arrays.asList((long) id, "订单<" + id + "> & \"x\"", id * 1.5, new Date(1_600_000_000_000L + id * 1000L),
+                id % 2 == 0, id % 3 == 0 ? null : " 前后空格 ");
+    }
+
+    private static Stream<List<Object>> rows(int from, int to) {
+        return IntStream.range(from, to).mapToObj(ExcelExporterTest::row);
+    }
+
+    /**
+     * 每个sheet都有表头,sheet写满rowsPerSheet行后换下一个,值的类型、转义和空格都原样读回来
+     */
+    @Test
+    public void rollsOverToNewSheets() throws Exception {
+        Path file = Files.createTempFile("export", ".xlsx");
+        try {
+            assertEquals(2500, exporter.export(file, "订单", TITLES, rows(0, 2500).iterator()));
+            try (XSSFWorkbook workbook = new XSSFWorkbook(file.toFile())) {
+                assertEquals(3, workbook.getNumberOfSheets());
+                int[] sizes = {1000, 1000, 500};
+                int id = 0;
+                for (int s = 0; s < 3; s++) {
+                    Sheet sheet = workbook.getSheetAt(s);
+                    assertEquals("订单" + (s + 1), sheet.getSheetName());
+                    assertEquals(sizes[s], sheet.getLastRowNum());
+                    Row header = sheet.getRow(0);
+                    assertEquals("备注", header.getCell(5).getStringCellValue());
+                    assertTrue(header.getCell(0).getCellStyle().getIndex() > 0);
+                    for (int r = 1; r <= sizes[s]; r++, id++) {
+                        Row row = sheet.getRow(r);
+                        assertEquals(id, (long) row.getCell(0).getNumericCellValue());
+                        assertEquals("订单<" + id + "> & \"x\"", row.getCell(1).getStringCellValue());
+                        assertEquals(id * 1.5, row.getCell(2).getNumericCellValue(), 0);
+                        assertEquals(SheetPartWriter.DATE_TIME.format(LocalDateTime.ofInstant(
+                                Instant.ofEpochMilli(1_600_000_000_000L + id * 1000L), ZoneId.systemDefault())),
+                                row.getCell(3).getStringCellValue());
+                        assertEquals(CellType.BOOLEAN, row.getCell(4).getCellType());
+                        assertEquals(id % 2 == 0, row.getCell(4).getBooleanCellValue());
+                        if (id % 3 == 0) {
+                            assertEquals(null, row.getCell(5));
+                        } else {
+                            assertEquals(" 前后空格 ", row.getCell(5).getStringCellValue());
+                        }
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * sheet按分区顺序排列,空分区也占一个只有表头的sheet,分区的Stream都被关闭,EasyExcel也能读
+     */
+    @Test
+    public void exportsPartitionsInOrder() throws Exception {
+        Path file = Files.createTempFile("export", ".xlsx");
+        AtomicInteger closed = new AtomicInteger();
+        try {
+            List<Stream<List<Object>>> partitions = Arrays.asList(rows(0, 1500), rows(1500, 1500), rows(1500, 2200));
+            partitions.forEach(p -> p.onClose(closed::incrementAndGet));
+            assertEquals(2200, exporter.exportParallel(file, null, TITLES, partitions));
+            assertEquals(3, closed.get());
+            try (XSSFWorkbook workbook = new XSSFWorkbook(file.toFile())) {
+                assertEquals(4, workbook.getNumberOfSheets());
+                assertEquals("Sheet4", workbook.getSheetAt(3).getSheetName());
+                int[] sizes = {1000, 500, 0, 700};
+                int id = 0;
+                for (int s = 0; s < sizes.length; s++) {
+                    Sheet sheet = workbook.getSheetAt(s);
+                    assertEquals(sizes[s], sheet.getLastRowNum());
+                    for (int r = 1; r <= sizes[s]; r++, id++) {
+                        assertEquals(id, (long) sheet.getRow(r).getCell(0).getNumericCellValue());
+                    }
+                }
+            }
+            List<Object> read = EasyExcel.read(file.toFile()).sheet(3).doReadSync();
+            assertEquals(700, read.size());
+            assertEquals("2199", ((Map<?, ?>) read.get(699)).get(0));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * 一个分区出错时异常抛给调用方,所有分区都被关闭,临时分片都被删除
+     */
+    @Test
+    public void failedPartitionCleansUp() throws Exception {
+        Path file = Files.createTempFile("export", ".xlsx");
+        AtomicInteger closed = new AtomicInteger();
+        long partsBefore = countParts();
+        try {
+            Stream<List<Object>> broken = rows(0, 3000).peek(row -> {
+                if ((long) row.get(0) == 1200) {
+                    throw new IllegalStateException("broken");
+                }
+            });
+            List<Stream<List<Object>>> partitions = new ArrayList<>(Arrays.asList(broken, rows(0, 3000), rows(0, 10)));
+            partitions.forEach(p -> p.onClose(closed::incrementAndGet));
+            try {
+                new ExcelExporter(1000, 1, null).exportParallel(file, null, TITLES, partitions);
+                fail();
+            } catch (IllegalStateException e) {
+                assertEquals("broken", e.getMessage());
+            }
+            assertEquals(3, closed.get());
+            assertEquals(partsBefore, countParts());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void writeByBatchAndIteratorOverloads() throws Exception {
+        Path easy = Files.createTempFile("easy", ".xlsx");
+        Path utils = Files.createTempFile("utils", ".xlsx");
+        try {
+            assertEquals(2500, EasyExcelUtil.writeByBatch(easy.toString(), rows(0, 2500).iterator(), TITLES, 300));
+            List<Object> read = EasyExcel.read(easy.toFile()).sheet(0).doReadSync();
+            assertEquals(2500, read.size());
+            assertEquals("订单<2499> & \"x\"", ((Map<?, ?>) read.get(2499)).get(1));
+
+            List<Map<String, Object>> values = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                values.add(Map.of("编号", i, "名称", "n" + i));
+            }
+            assertEquals(10, ExcelUtils.writeExcel(utils.toString(), "数据", TITLES, values.iterator()));
+            try (XSSFWorkbook workbook = new XSSFWorkbook(utils.toFile())) {
+                Row row = workbook.getSheet("数据").getRow(10);
+                assertEquals(9, (int) row.getCell(0).getNumericCellValue());
+                assertEquals("n9", row.getCell(1).getStringCellValue());
+                assertEquals(null, row.getCell(2));
+            }
+        } finally {
+            Files.deleteIfExists(easy);
+            Files.deleteIfExists(utils);
+        }
+    }
+
+    /**
+     * 结果集按游标逐行导出,表头取列标签;读取时的SQLException原样抛出
+     */
+    @Test
+    public void exportsResultSet() throws Exception {
+        Path file = Files.createTempFile("export", ".xlsx");
+        try {
+            assertEquals(3, exporter.export(file, "结果", resultSet(3, -1)));
+            try (XSSFWorkbook workbook = new XSSFWorkbook(file.toFile())) {
+                Sheet sheet = workbook.getSheet("结果");
+                assertEquals("ID", sheet.getRow(0).getCell(0).getStringCellValue());
+                assertEquals("NAME", sheet.getRow(0).getCell(1).getStringCellValue());
+                assertEquals(2, (int) sheet.getRow(3).getCell(0).getNumericCellValue());
+                assertEquals("name2", sheet.getRow(3).getCell(1).getStringCellValue());
+            }
+            try {
+                exporter.export(file, "结果", resultSet(3, 2));
+                fail();
+            } catch (SQLException e) {
+                assertEquals("connection reset", e.getMessage());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * 两列(ID, NAME)、rows行的结果集,读到第failAt行时抛出SQLException
+     */
+    private static ResultSet resultSet(int rows, int failAt) {
+        ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(getClassLoader(),
+                new Class<?>[] {ResultSetMetaData.class}, (proxy, method, args) -> {
+                    if ("getColumnCount".equals(method.getName())) {
+                        return 2;
+                    }
+                    return (int) args[0] == 1 ? "ID" : "NAME";
+                });
+        int[] cursor = {-1};
+        return (ResultSet) Proxy.newProxyInstance(getClassLoader(), new Class<?>[] {ResultSet.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMetaData":
+                            return metaData;
+                        case "next":
+                            if (++cursor[0] == failAt) {
+                                throw new SQLException("connection reset");
+                            }
+                            return cursor[0] < rows;
+                        case "getObject":
+                            return (int) args[0] == 1 ? (Object) cursor[0] : "name" + cursor[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static ClassLoader getClassLoader() {
+        return ExcelExporterTest.class.getClassLoader();
+    }
+
+    @Test
+    public void sheetNames() {
+        assertEquals("Sheet1", ExcelExporter.sheetName(null, 0, 1));
+        assertEquals("订单", ExcelExporter.sheetName("订单", 0, 1));
+        assertEquals("订单12", ExcelExporter.sheetName("订单", 11, 12));
+        assertEquals("a b", ExcelExporter.sheetName("a/b", 0, 1));
+        String name = ExcelExporter.sheetName("abcdefghijklmnopqrstuvwxyz0123456789", 9, 10);
+        assertEquals(31, name.length());
+        assertTrue(name.endsWith("10"));
+        assertEquals("AA", SheetPartWriter.columnName(26));
+        assertEquals("XFD", SheetPartWriter.columnName(16383));
+    }
+
+    private static long countParts() throws Exception {
+        try (Stream<Path> files = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(p -> p.getFileName().toString().startsWith("excel-part")).count();
+        }
+    }
+}
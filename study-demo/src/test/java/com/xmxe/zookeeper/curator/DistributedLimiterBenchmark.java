@@ -0,0 +1,119 @@
+package com.xmxe.zookeeper.curator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+
+/**
+ * 8个节点(各自一个zookeeper客户端)共享集群配额时的吞吐量和配额误差
+ * 每个节点的时钟随机偏移±skew毫秒,模拟机器之间的时钟偏差
+ * 放行的请求按真实时间记入10ms的桶,统计:
+ * 1.按真实时间对齐的每个窗口放行数的最大值、平均值(配额利用率)
+ * 2.任意1秒滑动窗口内放行数的最大值,即与配额相比的超发比例
+ * 运行方式:java DistributedLimiterBenchmark [节点数] [每秒配额] [时钟偏差ms] [秒数]
+ */
+public class DistributedLimiterBenchmark {
+
+    private static final int BUCKET_MILLIS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int quota = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int skew = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int threadsPerNode = 2;
+
+        try (TestingServer server = new TestingServer()) {
+            List<CuratorFramework> clients = new ArrayList<>();
+            List<DistributedLimiterByCurator> limiters = new ArrayList<>();
+            for (int i = 0; i < nodes; i++) {
+                CuratorFramework client = CuratorFrameworkFactory.newClient(server.getConnectString(),
+                        new RetryOneTime(100));
+                client.start();
+                clients.add(client);
+                long offset = skew == 0 ? 0 : ThreadLocalRandom.current().nextLong(-skew, skew + 1);
+                DistributedLimiterByCurator limiter = new DistributedLimiterByCurator(client, "bench", quota, 1,
+                        TimeUnit.SECONDS, () -> System.currentTimeMillis() + offset);
+                limiter.start();
+                limiters.add(limiter);
+            }
+            Thread.sleep(1000);
+
+            // 从下一个整秒开始,方便按窗口对齐统计
+            long start = (System.currentTimeMillis() / 1000 + 1) * 1000;
+            long end = start + seconds * 1000L;
+            AtomicLongArray buckets = new AtomicLongArray((int) ((end - start) / BUCKET_MILLIS) + 1);
+            LongAdder calls = new LongAdder();
+            CountDownLatch done = new CountDownLatch(nodes * threadsPerNode);
+            for (DistributedLimiterByCurator limiter : limiters) {
+                for (int t = 0; t < threadsPerNode; t++) {
+                    new Thread(() -> {
+                        while (System.currentTimeMillis() < start) {
+                            Thread.onSpinWait();
+                        }
+                        long localCalls = 0;
+                        long now;
+                        while ((now = System.currentTimeMillis()) < end) {
+                            if (limiter.tryAcquire()) {
+                                buckets.incrementAndGet((int) ((now - start) / BUCKET_MILLIS));
+                            }
+                            localCalls++;
+                        }
+                        calls.add(localCalls);
+                        done.countDown();
+                    }).start();
+                }
+            }
+            done.await();
+
+            int perWindow = 1000 / BUCKET_MILLIS;
+            long total = 0;
+            long maxAligned = 0;
+            for (int w = 0; w < seconds; w++) {
+                long sum = 0;
+                for (int b = w * perWindow; b < (w + 1) * perWindow; b++) {
+                    sum += buckets.get(b);
+                }
+                total += sum;
+                maxAligned = Math.max(maxAligned, sum);
+            }
+            long maxSliding = 0;
+            long sliding = 0;
+            for (int b = 0; b < seconds * perWindow; b++) {
+                sliding += buckets.get(b);
+                if (b >= perWindow) {
+                    sliding -= buckets.get(b - perWindow);
+                }
+                if (b >= perWindow - 1) {
+                    maxSliding = Math.max(maxSliding, sliding);
+                }
+            }
+            long leaseRequests = 0;
+            long conflicts = 0;
+            for (DistributedLimiterByCurator limiter : limiters) {
+                leaseRequests += limiter.leaseRequests();
+                conflicts += limiter.leaseConflicts();
+            }
+            System.out.printf("%d nodes x %d threads, quota %,d/s, clock skew ±%d ms, batch %,d%n", nodes,
+                    threadsPerNode, quota, skew, limiters.get(0).batchSize());
+            System.out.printf("tryAcquire %,.0f calls/s, admitted %,.0f/s (%.1f%% of quota)%n",
+                    calls.sum() / (double) seconds, total / (double) seconds, total * 100.0 / seconds / quota);
+            System.out.printf("max per aligned window %,d (%+.2f%%), max per sliding 1s %,d (%+.2f%%)%n", maxAligned,
+                    (maxAligned - quota) * 100.0 / quota, maxSliding, (maxSliding - quota) * 100.0 / quota);
+            System.out.printf("zookeeper lease reads %,.0f/s, version conflicts %,.0f/s%n",
+                    leaseRequests / (double) seconds, conflicts / (double) seconds);
+
+            limiters.forEach(DistributedLimiterByCurator::close);
+            clients.forEach(CuratorFramework::close);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.xmxe.zookeeper.curator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DistributedLimiterByCuratorTest {
+
+    /**
+     * 停在窗口末尾,按时间比例可以放出整个窗口的配额
+     */
+    private final AtomicLong clock = new AtomicLong(1_000_999L);
+
+    private TestingServer server;
+
+    private final List<CuratorFramework> clients = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new TestingServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        clients.forEach(CuratorFramework::close);
+        server.close();
+    }
+
+    @Test
+    public void clusterNeverExceedsQuota() throws Exception {
+        List<DistributedLimiterByCurator> nodes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            nodes.add(start("quota"));
+        }
+        waitFor(() -> nodes.get(0).memberCount() == 3);
+        assertEquals(1000 / (3 * 4), nodes.get(0).batchSize());
+
+        assertEquals(1000, drain(nodes));
+        // 下一个窗口重新发放
+        clock.addAndGet(1000);
+        assertEquals(1000, drain(nodes));
+        for (DistributedLimiterByCurator node : nodes) {
+            node.close();
+        }
+    }
+
+    /**
+     * 节点离开后剩余节点的批大小变大,归还的许可可以被其他节点租走
+     */
+    @Test
+    public void rebalanceOnLeave() throws Exception {
+        DistributedLimiterByCurator a = start("rebalance");
+        DistributedLimiterByCurator b = start("rebalance");
+        waitFor(() -> a.memberCount() == 2);
+        assertEquals(125, a.batchSize());
+        waitFor(() -> b.leasedPermits() > 0);
+        b.close();
+        waitFor(() -> a.memberCount() == 1);
+        assertEquals(250, a.batchSize());
+        List<DistributedLimiterByCurator> rest = new ArrayList<>();
+        rest.add(a);
+        assertEquals(1000, drain(rest));
+        a.close();
+    }
+
+    /**
+     * 窗口内按时间比例放出配额,最多提前一批
+     */
+    @Test
+    public void pacedWithinWindow() throws Exception {
+        clock.set(2_000_000L);
+        DistributedLimiterByCurator node = start("paced");
+        List<DistributedLimiterByCurator> nodes = new ArrayList<>();
+        nodes.add(node);
+        assertEquals(250, drain(nodes));
+        clock.addAndGet(500);
+        assertEquals(500, drain(nodes));
+        clock.addAndGet(499);
+        assertEquals(250, drain(nodes));
+        node.close();
+    }
+
+    private DistributedLimiterByCurator start(String name) throws Exception {
+        CuratorFramework client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100));
+        client.start();
+        clients.add(client);
+        DistributedLimiterByCurator limiter = new DistributedLimiterByCurator(client, name, 1000, 1, TimeUnit.SECONDS,
+                clock::get);
+        limiter.start();
+        return limiter;
+    }
+
+    /**
+     * 反复获取直到各节点都拿不到许可,返回这个窗口放行的总数
+     */
+    private static int drain(List<DistributedLimiterByCurator> nodes) throws InterruptedException {
+        int admitted = 0;
+        int idleRounds = 0;
+        while (idleRounds < 50) {
+            boolean any = false;
+            for (DistributedLimiterByCurator node : nodes) {
+                while (node.tryAcquire()) {
+                    admitted++;
+                    any = true;
+                }
+            }
+            idleRounds = any ? 0 : idleRounds + 1;
+            Thread.sleep(5);
+        }
+        return admitted;
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
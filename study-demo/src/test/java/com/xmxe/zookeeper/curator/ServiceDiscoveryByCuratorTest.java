@@ -0,0 +1,203 @@
+package com.xmxe.zookeeper.curator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.xmxe.algorithm.balance.Endpoint;
+import com.xmxe.algorithm.balance.LoadBalancer;
+import com.xmxe.algorithm.balance.P2cLeastActive;
+import com.xmxe.algorithm.balance.SmoothWeightedRoundRobin;
+
+public class ServiceDiscoveryByCuratorTest {
+
+    private static final int NODES = 500;
+
+    private TestingServer server;
+
+    private final List<CuratorFramework> clients = new ArrayList<>();
+
+    private final List<ServiceDiscoveryByCurator> discoveries = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new TestingServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        discoveries.forEach(ServiceDiscoveryByCurator::close);
+        clients.forEach(CuratorFramework::close);
+        server.close();
+    }
+
+    @Test
+    public void batchesChangesAndKeepsUnchangedEndpoints() throws Exception {
+        ServiceDiscoveryByCurator provider = discovery("batch");
+        ServiceDiscoveryByCurator consumer = discovery("batch");
+        LoadBalancer balancer = new SmoothWeightedRoundRobin(Collections.emptyList());
+        consumer.bind(balancer);
+
+        for (int i = 0; i < NODES; i++) {
+            provider.register(address(i), 1 + i % 3);
+        }
+        waitFor(() -> balancer.getEndpoints().size() == NODES);
+        assertTrue(consumer.eventCount() >= NODES);
+        // 500个变化合并成少数几次重建
+        assertTrue(consumer.rebuildCount() + " rebuilds", consumer.rebuildCount() < consumer.eventCount() / 5);
+
+        Endpoint first = find(balancer, address(0));
+        provider.unregister(address(1));
+        // 权重<=0表示摘除流量
+        provider.register(address(2), 0);
+        waitFor(() -> balancer.getEndpoints().size() == NODES - 2);
+        assertSame(first, find(balancer, address(0)));
+
+        provider.register(address(0), 10);
+        waitFor(() -> find(balancer, address(0)).getWeight() == 10);
+    }
+
+    @Test
+    public void sessionCloseRemovesEndpoints() throws Exception {
+        ServiceDiscoveryByCurator consumer = discovery("session");
+        CuratorFramework providerClient = client();
+        ServiceDiscoveryByCurator provider = new ServiceDiscoveryByCurator(providerClient, "session", 0);
+        provider.register("10.0.0.1:8080", 1);
+        provider.register("10.0.0.2:8080", 1);
+        waitFor(() -> consumer.getEndpoints().size() == 2);
+        providerClient.close();
+        clients.remove(providerClient);
+        waitFor(() -> consumer.getEndpoints().isEmpty());
+    }
+
+    /**
+     * 节点还挂在旧会话上时重新注册,要转到当前会话,旧会话结束后节点仍然存在
+     */
+    @Test
+    public void registerTakesOverNodeOfStaleSession() throws Exception {
+        ServiceDiscoveryByCurator consumer = discovery("takeover");
+        CuratorFramework oldClient = client();
+        new ServiceDiscoveryByCurator(oldClient, "takeover", 0).register("10.0.0.1:8080", 1);
+        CuratorFramework newClient = client();
+        String path = new ServiceDiscoveryByCurator(newClient, "takeover", 0).register("10.0.0.1:8080", 2);
+        assertEquals(newClient.getZookeeperClient().getZooKeeper().getSessionId(),
+                newClient.checkExists().forPath(path).getEphemeralOwner());
+        // close返回时服务端已经删除了旧会话的临时节点
+        oldClient.close();
+        clients.remove(oldClient);
+        assertNotNull(newClient.checkExists().forPath(path));
+        waitFor(() -> consumer.getEndpoints().size() == 1 && consumer.getEndpoints().get(0).getWeight() == 2);
+    }
+
+    /**
+     * 500个节点持续上下线时pick的延迟,pick只读本地快照,不受zookeeper影响
+     */
+    @Test
+    public void pickLatencyUnderChurn() throws Exception {
+        ServiceDiscoveryByCurator provider = discovery("churn");
+        for (int i = 0; i < NODES; i++) {
+            provider.register(address(i), 1 + i % 3);
+        }
+        ServiceDiscoveryByCurator consumer = discovery("churn");
+        List<LoadBalancer> balancers = Arrays.asList(new SmoothWeightedRoundRobin(Collections.emptyList()),
+                new P2cLeastActive(Collections.emptyList()));
+        balancers.forEach(consumer::bind);
+        waitFor(() -> consumer.getEndpoints().size() == NODES);
+
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong changes = new AtomicLong();
+        Thread churn = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            try {
+                while (!stop.get()) {
+                    int i = random.nextInt(NODES);
+                    provider.unregister(address(i));
+                    provider.register(address(i), 1 + random.nextInt(3));
+                    changes.addAndGet(2);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        churn.start();
+
+        long[] latencies = new long[1 << 22];
+        int n = 0;
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (System.nanoTime() < deadline || changes.get() < 200) {
+            for (LoadBalancer balancer : balancers) {
+                long begin = System.nanoTime();
+                Endpoint endpoint = balancer.pick();
+                long nanos = System.nanoTime() - begin;
+                assertNotNull(endpoint);
+                if (n < latencies.length) {
+                    latencies[n++] = nanos;
+                }
+            }
+        }
+        stop.set(true);
+        churn.join();
+
+        latencies = Arrays.copyOf(latencies, n);
+        Arrays.sort(latencies);
+        System.out.printf("%d changes, %d rebuilds, %d picks: p50 %dns p99 %dns p999 %dns max %dns%n", changes.get(),
+                consumer.rebuildCount(), n, latencies[n / 2], latencies[(int) (n * 0.99)],
+                latencies[(int) (n * 0.999)], latencies[n - 1]);
+        // 变化停止后最终与zookeeper一致
+        waitFor(() -> balancers.get(0).getEndpoints().size() == NODES
+                && balancers.get(1).getEndpoints().size() == NODES);
+    }
+
+    private ServiceDiscoveryByCurator discovery(String service) throws Exception {
+        ServiceDiscoveryByCurator discovery = new ServiceDiscoveryByCurator(client(), service);
+        discovery.start();
+        discoveries.add(discovery);
+        return discovery;
+    }
+
+    private CuratorFramework client() {
+        CuratorFramework client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100));
+        client.start();
+        clients.add(client);
+        return client;
+    }
+
+    private static String address(int i) {
+        return "10.0." + i / 256 + "." + i % 256 + ":8080";
+    }
+
+    private static Endpoint find(LoadBalancer balancer, String address) {
+        for (Endpoint endpoint : balancer.getEndpoints()) {
+            if (endpoint.getAddress().equals(address)) {
+                return endpoint;
+            }
+        }
+        throw new AssertionError(address + " not found");
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}